@@ -0,0 +1,158 @@
+package com.lightbend.akka.iot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+// Cost per reading of evaluating a group's alert rules: the compiled AlertRules against the same
+// rules interpreted per reading, with per-device state kept in maps of raised rule names.
+// Arguments: [devices] [readings]
+public class AlertRulesBenchmark {
+    private static final int ROUNDS = 10;
+    private static final int[] RULE_COUNTS = {1, 4, 16, AlertRules.MAX_RULES};
+
+    public static void main(String[] args) {
+        int devices = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int readings = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+
+        int[] slots = new int[readings];
+        long[] recordedAt = new long[readings];
+        double[] values = new double[readings];
+        generateReadings(devices, slots, recordedAt, values, new Random(7L));
+
+        System.out.printf("devices=%d readings=%d%n", devices, readings);
+        for (int ruleCount : RULE_COUNTS) {
+            List<AlertRule> rules = rules(ruleCount);
+            long compiledChanges = 0L;
+            long interpretedChanges = 0L;
+            long compiledNanos = Long.MAX_VALUE;
+            long interpretedNanos = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                AlertRules compiled = new AlertRules(rules, devices);
+                long start = System.nanoTime();
+                compiledChanges = runCompiled(compiled, slots, recordedAt, values);
+                compiledNanos = Math.min(compiledNanos, System.nanoTime() - start);
+
+                InterpretedRules interpreted = new InterpretedRules(rules);
+                start = System.nanoTime();
+                interpretedChanges = runInterpreted(interpreted, slots, recordedAt, values);
+                interpretedNanos = Math.min(interpretedNanos, System.nanoTime() - start);
+            }
+            if (compiledChanges != interpretedChanges) {
+                throw new IllegalStateException("Alert changes differ: " + compiledChanges + " vs " + interpretedChanges);
+            }
+            System.out.printf("rules=%2d changes=%8d compiled: %7.1f ns/reading  interpreted: %7.1f ns/reading%n",
+                    ruleCount, compiledChanges, (double) compiledNanos / readings, (double) interpretedNanos / readings);
+        }
+    }
+
+    // Readings every ~5s per device; a random walk with an occasional jump so rules do fire.
+    private static void generateReadings(int devices, int[] slots, long[] recordedAt, double[] values, Random random) {
+        double[] temperature = new double[devices];
+        long[] timestamp = new long[devices];
+        for (int d = 0; d < devices; d++) {
+            temperature[d] = 21.0;
+            timestamp[d] = 1_570_000_000_000L + random.nextInt(5_000);
+        }
+        for (int i = 0; i < slots.length; i++) {
+            int d = random.nextInt(devices);
+            timestamp[d] += 5_000L;
+            temperature[d] += random.nextInt(50) == 0 ? random.nextGaussian() * 8.0 : random.nextGaussian() * 0.2;
+            slots[i] = d;
+            recordedAt[i] = timestamp[d];
+            values[i] = temperature[d];
+        }
+    }
+
+    private static List<AlertRule> rules(int count) {
+        List<AlertRule> rules = new ArrayList<>(count);
+        for (int r = 0; r < count; r++) {
+            double step = r / 4 * 0.5;
+            switch (r % 4) {
+                case 0:
+                    rules.add(AlertRule.above("above-" + r, 25.0 + step, 24.0 + step));
+                    break;
+                case 1:
+                    rules.add(AlertRule.below("below-" + r, 17.0 - step, 18.0 - step));
+                    break;
+                case 2:
+                    rules.add(AlertRule.risingFasterThan("rising-" + r, 0.5 + step, 0.1));
+                    break;
+                default:
+                    rules.add(AlertRule.fallingFasterThan("falling-" + r, 0.5 + step, 0.1));
+            }
+        }
+        return rules;
+    }
+
+    private static long runCompiled(AlertRules rules, int[] slots, long[] recordedAt, double[] values) {
+        long changes = 0L;
+        for (int i = 0; i < slots.length; i++) {
+            changes += Long.bitCount(rules.evaluate(slots[i], values[i], recordedAt[i]));
+        }
+        return changes;
+    }
+
+    private static long runInterpreted(InterpretedRules rules, int[] slots, long[] recordedAt, double[] values) {
+        long changes = 0L;
+        for (int i = 0; i < slots.length; i++) {
+            changes += rules.evaluate("device" + slots[i], values[i], recordedAt[i]);
+        }
+        return changes;
+    }
+
+    // The straightforward version: walk the rule objects, switch on their kind, and keep each
+    // device's raised rules and previous reading in maps keyed by device id.
+    private static final class InterpretedRules {
+        private final List<AlertRule> rules;
+        private final Map<String, Set<String>> raised = new HashMap<>();
+        private final Map<String, double[]> previous = new HashMap<>();
+
+        InterpretedRules(List<AlertRule> rules) {
+            this.rules = rules;
+        }
+
+        int evaluate(String deviceId, double value, long recordedAt) {
+            double[] last = previous.get(deviceId);
+            if (last != null && recordedAt < (long) last[1]) {
+                return 0;
+            }
+            Double rate = last != null && recordedAt > (long) last[1]
+                    ? (value - last[0]) * 1000.0 / (recordedAt - (long) last[1]) : null;
+            previous.put(deviceId, new double[]{value, recordedAt});
+
+            Set<String> deviceRaised = raised.computeIfAbsent(deviceId, id -> new HashSet<>());
+            int changes = 0;
+            for (AlertRule rule : rules) {
+                boolean isRaised = deviceRaised.contains(rule.name);
+                boolean flip;
+                switch (rule.kind) {
+                    case ABOVE:
+                        flip = isRaised ? value <= rule.clear : value >= rule.threshold;
+                        break;
+                    case BELOW:
+                        flip = isRaised ? value >= rule.clear : value <= rule.threshold;
+                        break;
+                    case RISING_FASTER_THAN:
+                        flip = rate != null && (isRaised ? rate <= rule.clear : rate >= rule.threshold);
+                        break;
+                    default:
+                        flip = rate != null && (isRaised ? -rate <= rule.clear : -rate >= rule.threshold);
+                }
+                if (flip) {
+                    changes++;
+                    if (isRaised) {
+                        deviceRaised.remove(rule.name);
+                    } else {
+                        deviceRaised.add(rule.name);
+                    }
+                }
+            }
+            return changes;
+        }
+    }
+}
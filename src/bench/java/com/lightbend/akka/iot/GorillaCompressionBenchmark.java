@@ -0,0 +1,102 @@
+package com.lightbend.akka.iot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Compares Gorilla blocks with raw long[]/double[] columns: bytes per sample and decode throughput.
+// Arguments: [samples] [blockSamples]
+public class GorillaCompressionBenchmark {
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) {
+        int samples = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int blockSamples = args.length > 1 ? Integer.parseInt(args[1]) : 120;
+
+        long[] timestamps = new long[samples];
+        double[] values = new double[samples];
+        generateReadings(timestamps, values, new Random(7L));
+
+        long encodeStart = System.nanoTime();
+        List<GorillaBlock> blocks = encode(timestamps, values, blockSamples);
+        long encodeNanos = System.nanoTime() - encodeStart;
+
+        long compressedBytes = 0L;
+        for (GorillaBlock block : blocks) {
+            compressedBytes += block.sizeInBytes();
+        }
+
+        double rawChecksum = 0.0;
+        double gorillaChecksum = 0.0;
+        long rawNanos = Long.MAX_VALUE;
+        long gorillaNanos = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            rawChecksum = scanRaw(timestamps, values);
+            rawNanos = Math.min(rawNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            gorillaChecksum = scanGorilla(blocks);
+            gorillaNanos = Math.min(gorillaNanos, System.nanoTime() - start);
+        }
+        if (Double.compare(rawChecksum, gorillaChecksum) != 0) {
+            throw new IllegalStateException("Decoded samples differ: " + rawChecksum + " vs " + gorillaChecksum);
+        }
+
+        System.out.printf("samples=%d blockSamples=%d blocks=%d%n", samples, blockSamples, blocks.size());
+        System.out.printf("raw double[] values:          %6.2f bytes/sample%n", 8.0);
+        System.out.printf("raw long[] + double[]:        %6.2f bytes/sample%n", 16.0);
+        System.out.printf("gorilla (timestamp + value):  %6.2f bytes/sample%n", (double) compressedBytes / samples);
+        System.out.printf("encode:                       %8.1f Msamples/s%n", samples * 1e3 / encodeNanos);
+        System.out.printf("decode raw (best of %d):      %8.1f Msamples/s%n", ROUNDS, samples * 1e3 / rawNanos);
+        System.out.printf("decode gorilla (best of %d):  %8.1f Msamples/s%n", ROUNDS, samples * 1e3 / gorillaNanos);
+    }
+
+    // Readings every ~5s with a little jitter; a slow random walk at 0.1 degree resolution.
+    private static void generateReadings(long[] timestamps, double[] values, Random random) {
+        long timestamp = 1_570_000_000_000L;
+        double temperature = 21.0;
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamp += 5_000L + (random.nextInt(10) == 0 ? random.nextInt(200) - 100 : 0);
+            if (random.nextInt(4) == 0) {
+                temperature += random.nextBoolean() ? 0.1 : -0.1;
+            }
+            timestamps[i] = timestamp;
+            values[i] = Math.round(temperature * 10.0) / 10.0;
+        }
+    }
+
+    private static List<GorillaBlock> encode(long[] timestamps, double[] values, int blockSamples) {
+        List<GorillaBlock> blocks = new ArrayList<>(timestamps.length / blockSamples + 1);
+        GorillaEncoder encoder = new GorillaEncoder(blockSamples);
+        for (int i = 0; i < timestamps.length; i++) {
+            encoder.append(timestamps[i], values[i]);
+            if (encoder.isFull()) {
+                blocks.add(encoder.seal());
+            }
+        }
+        if (!encoder.isEmpty()) {
+            blocks.add(encoder.seal());
+        }
+        return blocks;
+    }
+
+    private static double scanRaw(long[] timestamps, double[] values) {
+        double checksum = 0.0;
+        for (int i = 0; i < timestamps.length; i++) {
+            checksum += values[i] + (timestamps[i] & 0xFF);
+        }
+        return checksum;
+    }
+
+    private static double scanGorilla(List<GorillaBlock> blocks) {
+        double checksum = 0.0;
+        for (GorillaBlock block : blocks) {
+            GorillaBlock.Decoder decoder = block.decoder();
+            while (decoder.next()) {
+                checksum += decoder.value() + (decoder.timestamp() & 0xFF);
+            }
+        }
+        return checksum;
+    }
+}
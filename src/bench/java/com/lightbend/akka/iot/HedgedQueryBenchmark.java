@@ -0,0 +1,78 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import com.typesafe.config.ConfigFactory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Group temperature query latency with hedging off and on while one device at a time is slow.
+// Every burst-every queries a random device of the group gets a burst of RecordTemperature, so
+// the read of the next queries sits behind a deep mailbox the way a device flooded by its
+// gateway would; the other devices answer at once. Queries run back to back from one client.
+// Arguments: [queries] [devices] [burst] [burst-every]
+public class HedgedQueryBenchmark {
+
+    private static final class Sink extends AbstractActor {
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder().matchAny(message -> {
+            }).build();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int queries = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int devices = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int burst = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+        int burstEvery = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+
+        for (boolean hedging : new boolean[]{false, true}) {
+            ActorSystem system = ActorSystem.create("hedging-benchmark", ConfigFactory
+                    .parseString("akka.loglevel = WARNING\nakka.log-dead-letters = off\niot.hedging.enabled = " + hedging)
+                    .withFallback(ConfigFactory.load()));
+            try {
+                IotClient client = new IotClient(system.actorOf(IotSupervisor.props()), Duration.ofSeconds(30));
+                ActorRef manager = client.trackDeviceManager("manager").toCompletableFuture().join();
+                ActorRef[] deviceActors = new ActorRef[devices];
+                for (int d = 0; d < devices; d++) {
+                    deviceActors[d] = client.trackDevice(manager, "group", "device-" + d).toCompletableFuture().join();
+                    client.recordTemperature(deviceActors[d], d).toCompletableFuture().join();
+                }
+                ActorRef group = client.deviceGroup(manager, "group").toCompletableFuture().join();
+                ActorRef sink = system.actorOf(Props.create(Sink.class, Sink::new));
+
+                Random random = new Random(42L);
+                LatencyHistogram latency = new LatencyHistogram();
+                long hedged = 0L;
+                long start = System.nanoTime();
+                for (int q = 0; q < queries; q++) {
+                    if (q % burstEvery == 0) {
+                        ActorRef slow = deviceActors[random.nextInt(devices)];
+                        for (int i = 0; i < burst; i++) {
+                            slow.tell(new IotDevice.RecordTemperature(i, i % 40), sink);
+                        }
+                    }
+                    long queryStart = System.nanoTime();
+                    Map<String, IotDeviceGroup.TemperatureReading> readings =
+                            client.groupTemperatures(group).toCompletableFuture().join();
+                    latency.record(System.nanoTime() - queryStart);
+                    hedged += readings.values().stream()
+                            .filter(reading -> reading instanceof IotDeviceGroup.HedgedTemperature)
+                            .count();
+                }
+                long nanos = System.nanoTime() - start;
+                System.out.printf("hedging %s: %.0f queries/s, %d hedged readings, latency %s%n",
+                        hedging ? "on" : "off", queries * 1e9 / nanos, hedged, latency.summary(TimeUnit.MILLISECONDS));
+            } finally {
+                system.terminate();
+                system.getWhenTerminated().toCompletableFuture().join();
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.pattern.Patterns;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// Starts a device manager behind an IotIngestionGateway on loopback and drives it over TCP from
+// several blocking NIO client threads, then reports sustained frames per second once every frame
+// has been decoded, plus batching and back-pressure counters.
+// Arguments: [connections] [frames-per-connection] [groups] [devices-per-group]
+public class IngestionLoadClient {
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int framesPerConnection = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int groups = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        int devicesPerGroup = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+
+        ActorSystem system = ActorSystem.create("ingestion-load");
+        try {
+            ActorRef manager = system.actorOf(IotDeviceManager.props("load"), "manager");
+            InetSocketAddress loopback = new InetSocketAddress("127.0.0.1", 0);
+            ActorRef gateway = system.actorOf(IotIngestionGateway.props(manager, loopback, loopback), "gateway");
+            IotIngestionGateway.BoundAddresses bound = (IotIngestionGateway.BoundAddresses) Patterns.ask(gateway,
+                    new IotIngestionGateway.RequestBoundAddresses(0L), Duration.ofSeconds(10))
+                    .toCompletableFuture().get();
+
+            long start = System.nanoTime();
+            Thread[] clients = new Thread[connections];
+            for (int c = 0; c < connections; c++) {
+                int client = c;
+                clients[c] = new Thread(() -> send(bound.tcp, client, framesPerConnection, groups, devicesPerGroup));
+                clients[c].start();
+            }
+            for (Thread client : clients) {
+                client.join();
+            }
+            long written = System.nanoTime() - start;
+
+            long expected = (long) connections * framesPerConnection;
+            IotIngestionGateway.GatewayStats stats;
+            do {
+                TimeUnit.MILLISECONDS.sleep(10);
+                stats = (IotIngestionGateway.GatewayStats) Patterns.ask(gateway,
+                        new IotIngestionGateway.RequestGatewayStats(0L), Duration.ofSeconds(10))
+                        .toCompletableFuture().get();
+            } while (stats.frames < expected);
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf("%d frames over %d connections: written in %.2f s, decoded in %.2f s (%.0f frames/s)%n",
+                    expected, connections, written / 1e9, elapsed / 1e9, expected * 1e9 / elapsed);
+            System.out.printf("%d group batches (%.1f readings each), %d read suspensions, %d malformed frames%n",
+                    stats.batches, stats.frames / Math.max(1.0, stats.batches), stats.suspensions,
+                    stats.malformedFrames);
+        } finally {
+            system.terminate();
+        }
+    }
+
+    private static void send(InetSocketAddress address, int client, int frames, int groups, int devicesPerGroup) {
+        byte[][] groupIds = new byte[groups][];
+        for (int g = 0; g < groups; g++) {
+            groupIds[g] = IngestionFrames.idBytes("group-" + g);
+        }
+        byte[][] deviceIds = new byte[devicesPerGroup][];
+        for (int d = 0; d < devicesPerGroup; d++) {
+            deviceIds[d] = IngestionFrames.idBytes("device-" + d);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            for (int i = 0; i < frames; i++) {
+                int device = (client * frames + i) % (groups * devicesPerGroup);
+                double value = 20.0 + (i % 100) / 10.0;
+                if (!IngestionFrames.encode(buffer, groupIds[device / devicesPerGroup],
+                        deviceIds[device % devicesPerGroup], value)) {
+                    write(channel, buffer);
+                    IngestionFrames.encode(buffer, groupIds[device / devicesPerGroup],
+                            deviceIds[device % devicesPerGroup], value);
+                }
+            }
+            write(channel, buffer);
+        } catch (IOException e) {
+            throw new IllegalStateException("Load client " + client + " failed", e);
+        }
+    }
+
+    private static void write(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
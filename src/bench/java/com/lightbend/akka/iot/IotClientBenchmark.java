@@ -0,0 +1,92 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.pattern.Patterns;
+import akka.util.Timeout;
+import scala.concurrent.Await;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+// Compares reading temperatures with the blocking ask + Await.result pattern on many threads
+// against IotClient pipelining from one thread with a bounded number of stages in flight.
+// Arguments: [requests] [blocking-threads] [client-in-flight] [devices]
+public class IotClientBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int inFlight = args.length > 2 ? Integer.parseInt(args[2]) : 1_024;
+        int deviceCount = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+
+        ActorSystem system = ActorSystem.create("client-benchmark");
+        try {
+            IotClient client = new IotClient(system.actorOf(IotSupervisor.props()), Duration.ofSeconds(30));
+            ActorRef manager = client.trackDeviceManager("manager").toCompletableFuture().join();
+            List<ActorRef> devices = new ArrayList<>();
+            for (int i = 0; i < deviceCount; i++) {
+                ActorRef device = client.trackDevice(manager, "group-" + i % 10, "device-" + i).toCompletableFuture().join();
+                client.recordTemperature(device, 20.0).toCompletableFuture().join();
+                devices.add(device);
+            }
+
+            for (int round = 0; round < 3; round++) {
+                long blockingNanos = blocking(devices, requests, threads);
+                long clientNanos = pipelined(client, devices, requests, inFlight);
+                System.out.printf("round %d: blocking (%d threads) %.0f req/s, IotClient (%d in flight) %.0f req/s%n",
+                        round, threads, requests * 1e9 / blockingNanos, inFlight, requests * 1e9 / clientNanos);
+            }
+        } finally {
+            system.terminate();
+        }
+    }
+
+    private static long blocking(List<ActorRef> devices, int requests, int threads) throws InterruptedException {
+        Timeout timeout = Timeout.create(Duration.ofSeconds(30));
+        Thread[] workers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int worker = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    for (int i = worker; i < requests; i += threads) {
+                        Await.result(Patterns.ask(devices.get(i % devices.size()), new IotDevice.ReadTemperature(i), timeout),
+                                timeout.duration());
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long pipelined(IotClient client, List<ActorRef> devices, int requests, int inFlight)
+            throws InterruptedException {
+        Semaphore permits = new Semaphore(inFlight);
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            permits.acquire();
+            client.readTemperature(devices.get(i % devices.size())).whenComplete((value, failure) -> {
+                permits.release();
+                if (failure != null) {
+                    done.completeExceptionally(failure);
+                }
+            });
+        }
+        permits.acquire(inFlight);
+        done.complete(null);
+        // Surfaces the first failed request, if any.
+        done.join();
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,113 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import com.typesafe.config.ConfigFactory;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+// Tracking throughput of one device manager against the number of partitions it is split into.
+// Each run bootstraps groups x devices, then driver actors keep a window of RequestTrackDevice
+// for already tracked devices in flight against the manager, so every request costs a routing
+// step plus one group lookup and the manager actor is the part that partitioning spreads out.
+// Arguments: [requests] [groups] [devices-per-group] [drivers] [window] [partitions ...]
+public class PartitionedManagerBenchmark {
+
+    private static final class Driver extends AbstractActor {
+        private final ActorRef manager;
+        private final int groups;
+        private final int devicesPerGroup;
+        private final int requests;
+        private final CompletableFuture<Long> done;
+        private int sent = 0;
+        private int received = 0;
+        private long seed;
+
+        Driver(ActorRef manager, int groups, int devicesPerGroup, int requests, int window, long seed,
+               CompletableFuture<Long> done) {
+            this.manager = manager;
+            this.groups = groups;
+            this.devicesPerGroup = devicesPerGroup;
+            this.requests = requests;
+            this.seed = seed;
+            this.done = done;
+            for (int i = 0; i < Math.min(window, requests); i++) {
+                sendNext();
+            }
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                    .match(IotDeviceManager.DeviceRegistered.class, r -> {
+                        if (++received == requests) {
+                            done.complete(System.nanoTime());
+                            getContext().stop(getSelf());
+                        } else if (sent < requests) {
+                            sendNext();
+                        }
+                    })
+                    .build();
+        }
+
+        private void sendNext() {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            int device = (int) ((seed >>> 33) % ((long) groups * devicesPerGroup));
+            manager.tell(new IotDeviceManager.RequestTrackDevice("group-" + device % groups, "device-" + device / groups),
+                    getSelf());
+            sent++;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int groups = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        int devicesPerGroup = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int cores = Runtime.getRuntime().availableProcessors();
+        int drivers = args.length > 3 ? Integer.parseInt(args[3]) : cores;
+        int window = args.length > 4 ? Integer.parseInt(args[4]) : 256;
+        int[] partitionCounts = args.length > 5 ? new int[args.length - 5] : new int[]{1, 2, cores, 2 * cores};
+        for (int i = 5; i < args.length; i++) {
+            partitionCounts[i - 5] = Integer.parseInt(args[i]);
+        }
+
+        System.out.printf("%d cores, %d drivers, %d groups of %d devices%n", cores, drivers, groups, devicesPerGroup);
+        for (int partitions : partitionCounts) {
+            ActorSystem system = ActorSystem.create("partition-benchmark", ConfigFactory
+                    .parseString("akka.loglevel = WARNING\niot.manager.partitions = " + partitions)
+                    .withFallback(ConfigFactory.load()));
+            try {
+                IotClient client = new IotClient(system.actorOf(IotSupervisor.props()), Duration.ofSeconds(60));
+                IotTopology.Builder topology = IotTopology.builder();
+                for (int d = 0; d < groups * devicesPerGroup; d++) {
+                    topology.add("manager", "group-" + d % groups, "device-" + d / groups);
+                }
+                client.bootstrap(topology.build(), Duration.ofMinutes(5)).toCompletableFuture().join();
+                ActorRef manager = client.deviceManager("manager").toCompletableFuture().join();
+
+                for (int round = 0; round < 3; round++) {
+                    int perDriver = requests / drivers;
+                    CompletableFuture<?>[] finished = new CompletableFuture<?>[drivers];
+                    long start = System.nanoTime();
+                    for (int d = 0; d < drivers; d++) {
+                        CompletableFuture<Long> done = new CompletableFuture<>();
+                        long seed = 31L * d + round;
+                        system.actorOf(Props.create(Driver.class, () ->
+                                new Driver(manager, groups, devicesPerGroup, perDriver, window, seed, done)));
+                        finished[d] = done;
+                    }
+                    CompletableFuture.allOf(finished).join();
+                    long nanos = System.nanoTime() - start;
+                    System.out.printf("partitions %d, round %d: %.0f track requests/s%n",
+                            partitions, round, (long) perDriver * drivers * 1e9 / nanos);
+                }
+            } finally {
+                system.terminate();
+                system.getWhenTerminated().toCompletableFuture().join();
+            }
+        }
+    }
+}
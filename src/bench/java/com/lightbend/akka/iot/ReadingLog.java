@@ -0,0 +1,132 @@
+package com.lightbend.akka.iot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+// Binary capture of ingestion traffic: an 8 byte header (MAGIC, VERSION) followed by fixed-size
+// little-endian records of (long timestampMillis, int group, int device, double value).
+// Groups and devices are numbered; they are replayed as "group-<n>" and "device-<n>".
+final class ReadingLog {
+    static final int MAGIC = 0x494f5452; // "IOTR"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 8;
+    static final int RECORD_BYTES = 24;
+
+    private ReadingLog() {
+    }
+
+    static String groupName(int group) {
+        return "group-" + group;
+    }
+
+    static String deviceName(int device) {
+        return "device-" + device;
+    }
+
+    // Synthetic traffic: every device reports about every intervalMillis, in timestamp order.
+    static void generate(Path file, long records, int groups, int devicesPerGroup, long intervalMillis, long seed)
+            throws IOException {
+        Random random = new Random(seed);
+        int devices = groups * devicesPerGroup;
+        double[] temperatures = new double[devices];
+        for (int i = 0; i < devices; i++) {
+            temperatures[i] = 15.0 + random.nextDouble() * 15.0;
+        }
+        long start = 1_570_000_000_000L;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD_BYTES * 4096).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer.putInt(MAGIC).putInt(VERSION);
+            for (long i = 0; i < records; i++) {
+                int device = (int) (i % devices);
+                long timestamp = start + (i / devices) * intervalMillis + device * intervalMillis / devices;
+                temperatures[device] += random.nextGaussian() * 0.1;
+                if (buffer.remaining() < RECORD_BYTES) {
+                    write(channel, buffer);
+                }
+                buffer.putLong(timestamp).putInt(device / devicesPerGroup).putInt(device % devicesPerGroup)
+                        .putDouble(temperatures[device]);
+            }
+            write(channel, buffer);
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Reads records through read-only mappings of at most WINDOW_RECORDS records each, so logs
+    // larger than a single 2 GiB mapping can be replayed.
+    static final class Reader implements AutoCloseable {
+        private static final long WINDOW_RECORDS = 1L << 22;
+
+        private final FileChannel channel;
+        private final long records;
+        private MappedByteBuffer window;
+        private long windowStart = -1L;
+
+        Reader(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0L);
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException(file + " is not a reading log");
+            }
+            records = (channel.size() - HEADER_BYTES) / RECORD_BYTES;
+        }
+
+        long records() {
+            return records;
+        }
+
+        long timestamp(long record) {
+            return buffer(record).getLong(offset(record));
+        }
+
+        int group(long record) {
+            return buffer(record).getInt(offset(record) + 8);
+        }
+
+        int device(long record) {
+            return buffer(record).getInt(offset(record) + 12);
+        }
+
+        double value(long record) {
+            return buffer(record).getDouble(offset(record) + 16);
+        }
+
+        private int offset(long record) {
+            return (int) ((record - windowStart) * RECORD_BYTES);
+        }
+
+        private MappedByteBuffer buffer(long record) {
+            if (windowStart < 0 || record < windowStart || record >= windowStart + WINDOW_RECORDS) {
+                windowStart = record - record % WINDOW_RECORDS;
+                long size = Math.min(WINDOW_RECORDS, records - windowStart) * RECORD_BYTES;
+                try {
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + windowStart * RECORD_BYTES, size);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Cannot map records from " + windowStart, e);
+                }
+                window.order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return window;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+
+// Replays a reading log against a fresh IotSupervisor and prints sustained throughput with track,
+// record, group-query and manager-query latency.
+// Arguments: [log-file] [speed (0 = as fast as possible)] [max-in-flight] [managers] [query-every]
+// A missing log file is generated first: 1M records over 100 groups of 100 devices, one reading
+// per device every 5 seconds.
+public class ReadingLogReplay {
+
+    public static void main(String[] args) throws Exception {
+        Path file = Paths.get(args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir") + "/iot-readings.log");
+        double speed = args.length > 1 ? Double.parseDouble(args[1]) : 0.0;
+        int maxInFlight = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+        int managers = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        long queryEvery = args.length > 4 ? Long.parseLong(args[4]) : 50_000L;
+
+        if (!Files.exists(file)) {
+            System.out.println("Generating " + file);
+            ReadingLog.generate(file, 1_000_000L, 100, 100, 5_000L, 7L);
+        }
+
+        ActorSystem system = ActorSystem.create("replay");
+        try (ReadingLog.Reader log = new ReadingLog.Reader(file)) {
+            ActorRef supervisor = system.actorOf(IotSupervisor.props(), "iot-supervisor");
+            CompletableFuture<ReplayDriver.Report> result = new CompletableFuture<>();
+            system.actorOf(ReplayDriver.props(supervisor, log, managers, speed, maxInFlight, queryEvery, result), "replay");
+            System.out.println(ReplayDriver.format(result.get()));
+        } catch (IOException e) {
+            System.err.println("Cannot replay " + file + ": " + e.getMessage());
+        } finally {
+            system.terminate();
+        }
+    }
+}
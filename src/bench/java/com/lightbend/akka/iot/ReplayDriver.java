@@ -0,0 +1,246 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Props;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Replays a ReadingLog against an IotSupervisor. Devices are tracked on first sight (their records
+// wait until DeviceRegistered comes back), then every record becomes a RecordTemperature. At most
+// maxInFlight records are unacknowledged at once; with speed > 0 records are released no earlier
+// than (timestamp - firstTimestamp) / speed after the start.
+//
+// Request ids carry the System.nanoTime() of the send, so acknowledgements give the round trip
+// without any per-request bookkeeping.
+class ReplayDriver extends AbstractActor {
+    private static final int BATCH = 1_000;
+
+    static final class Report {
+        final long records;
+        final long devices;
+        final long elapsedNanos;
+        final LatencyHistogram track;
+        final LatencyHistogram record;
+        final LatencyHistogram groupQuery;
+        final LatencyHistogram managerQuery;
+
+        Report(long records, long devices, long elapsedNanos, LatencyHistogram track, LatencyHistogram record,
+               LatencyHistogram groupQuery, LatencyHistogram managerQuery) {
+            this.records = records;
+            this.devices = devices;
+            this.elapsedNanos = elapsedNanos;
+            this.track = track;
+            this.record = record;
+            this.groupQuery = groupQuery;
+            this.managerQuery = managerQuery;
+        }
+
+        double recordsPerSecond() {
+            return records * 1e9 / Math.max(1L, elapsedNanos);
+        }
+    }
+
+    private static final class Continue {
+        static final Continue INSTANCE = new Continue();
+    }
+
+    private static final class PendingDevice {
+        final long trackSentNanos = System.nanoTime();
+        final ArrayDeque<Long> records = new ArrayDeque<>();
+    }
+
+    private final ActorRef supervisor;
+    private final ReadingLog.Reader log;
+    private final int managers;
+    private final double speed;
+    private final int maxInFlight;
+    private final long queryEvery;
+    private final CompletableFuture<Report> result;
+
+    private final ActorRef[] managerRefs;
+    private final Map<Long, ActorRef> devices = new HashMap<>();
+    private final Map<String, PendingDevice> pendingDevices = new HashMap<>();
+    private final List<ActorRef> groups = new ArrayList<>();
+    private final LatencyHistogram track = new LatencyHistogram();
+    private final LatencyHistogram record = new LatencyHistogram();
+    private final LatencyHistogram groupQuery = new LatencyHistogram();
+    private final LatencyHistogram managerQuery = new LatencyHistogram();
+
+    private int registeredManagers = 0;
+    private long next = 0L;
+    private long inFlight = 0L;
+    private long startNanos;
+    private long firstTimestamp;
+    private boolean continueScheduled = false;
+
+    private ReplayDriver(ActorRef supervisor, ReadingLog.Reader log, int managers, double speed, int maxInFlight,
+                         long queryEvery, CompletableFuture<Report> result) {
+        this.supervisor = supervisor;
+        this.log = log;
+        this.managers = managers;
+        this.speed = speed;
+        this.maxInFlight = maxInFlight;
+        this.queryEvery = queryEvery;
+        this.result = result;
+        this.managerRefs = new ActorRef[managers];
+    }
+
+    static Props props(ActorRef supervisor, ReadingLog.Reader log, int managers, double speed, int maxInFlight,
+                       long queryEvery, CompletableFuture<Report> result) {
+        return Props.create(ReplayDriver.class, () ->
+                new ReplayDriver(supervisor, log, managers, speed, maxInFlight, queryEvery, result));
+    }
+
+    @Override
+    public void preStart() {
+        for (int i = 0; i < managers; i++) {
+            supervisor.tell(new IotSupervisor.TrackDeviceManager(i, "replay-" + i), getSelf());
+        }
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(IotSupervisor.DeviceManagerRegistered.class, this::onManagerRegistered)
+                .match(IotDeviceManager.DeviceRegistered.class, this::onDeviceRegistered)
+                .match(IotDevice.TemperatureRecorded.class, r -> {
+                    record.record(System.nanoTime() - r.requestId);
+                    inFlight--;
+                    pump();
+                })
+                .match(IotDeviceManager.RespondDeviceGroupById.class, r -> groups.add(r.deviceGroupActor))
+                .match(IotDeviceGroup.RespondAllTemperatures.class, r -> groupQuery.record(System.nanoTime() - r.requestId))
+                .match(IotDeviceManager.RespondAllGroupTemperatures.class, r ->
+                        managerQuery.record(System.nanoTime() - r.requestId))
+                .match(Continue.class, c -> {
+                    continueScheduled = false;
+                    pump();
+                })
+                .build();
+    }
+
+    private void onManagerRegistered(IotSupervisor.DeviceManagerRegistered registered) {
+        managerRefs[(int) registered.requestId] = getSender();
+        if (++registeredManagers == managers) {
+            startNanos = System.nanoTime();
+            firstTimestamp = log.records() > 0 ? log.timestamp(0) : 0L;
+            pump();
+        }
+    }
+
+    private void onDeviceRegistered(IotDeviceManager.DeviceRegistered registered) {
+        PendingDevice pending = pendingDevices.remove(registered.groupId + '/' + registered.deviceId);
+        if (pending == null) {
+            return;
+        }
+        track.record(System.nanoTime() - pending.trackSentNanos);
+        long first = pending.records.peekFirst();
+        devices.put(key(log.group(first), log.device(first)), registered.device);
+        if (registered.deviceId.equals(ReadingLog.deviceName(0))) {
+            managerRefs[log.group(first) % managers].tell(
+                    new IotDeviceManager.RequestDeviceGroupById(0L, registered.groupId), getSelf());
+        }
+        for (long queued : pending.records) {
+            send(registered.device, queued);
+        }
+    }
+
+    private void pump() {
+        long records = log.records();
+        int sent = 0;
+        while (next < records && inFlight < maxInFlight && sent < BATCH) {
+            if (speed > 0) {
+                long dueNanos = startNanos + (long) ((log.timestamp(next) - firstTimestamp) * 1_000_000L / speed);
+                long waitNanos = dueNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    scheduleContinue(Duration.ofNanos(waitNanos));
+                    return;
+                }
+            }
+            dispatch(next++);
+            sent++;
+            if (queryEvery > 0 && next % queryEvery == 0) {
+                probe();
+            }
+        }
+        if (next < records && inFlight < maxInFlight) {
+            // Yield to the mailbox so acknowledgements are not starved by a long replay loop.
+            scheduleContinue(Duration.ZERO);
+        } else if (next == records && inFlight == 0) {
+            finish();
+        }
+    }
+
+    private void scheduleContinue(Duration delay) {
+        if (continueScheduled) {
+            return;
+        }
+        continueScheduled = true;
+        if (delay.isZero()) {
+            getSelf().tell(Continue.INSTANCE, getSelf());
+        } else {
+            getContext().getSystem().scheduler().scheduleOnce(delay, getSelf(), Continue.INSTANCE,
+                    getContext().getDispatcher(), getSelf());
+        }
+    }
+
+    private void dispatch(long index) {
+        inFlight++;
+        int group = log.group(index);
+        int device = log.device(index);
+        ActorRef deviceRef = devices.get(key(group, device));
+        if (deviceRef != null) {
+            send(deviceRef, index);
+            return;
+        }
+        String groupId = ReadingLog.groupName(group);
+        String deviceId = ReadingLog.deviceName(device);
+        PendingDevice pending = pendingDevices.get(groupId + '/' + deviceId);
+        if (pending == null) {
+            pending = new PendingDevice();
+            pendingDevices.put(groupId + '/' + deviceId, pending);
+            managerRefs[group % managers].tell(new IotDeviceManager.RequestTrackDevice(groupId, deviceId), getSelf());
+        }
+        pending.records.add(index);
+    }
+
+    private void send(ActorRef device, long index) {
+        device.tell(new IotDevice.RecordTemperature(System.nanoTime(), log.value(index)), getSelf());
+    }
+
+    // One group-level and one manager-level read, to see how query latency holds up under ingestion.
+    private void probe() {
+        if (!groups.isEmpty()) {
+            groups.get((int) ((next / queryEvery) % groups.size()))
+                    .tell(new IotDeviceGroup.RequestAllTemperatures(System.nanoTime()), getSelf());
+        }
+        managerRefs[(int) ((next / queryEvery) % managers)]
+                .tell(new IotDeviceManager.RequestAllGroupTemperatures(System.nanoTime()), getSelf());
+    }
+
+    private void finish() {
+        result.complete(new Report(log.records(), devices.size(), System.nanoTime() - startNanos,
+                track, record, groupQuery, managerQuery));
+        getContext().stop(getSelf());
+    }
+
+    private static long key(int group, int device) {
+        return ((long) group << 32) | (device & 0xffffffffL);
+    }
+
+    static String format(Report report) {
+        return String.format("%d records from %d devices in %.2f s: %.0f records/s%n"
+                        + "  track         %s%n  record        %s%n  group query   %s%n  manager query %s",
+                report.records, report.devices, report.elapsedNanos / 1e9, report.recordsPerSecond(),
+                report.track.summary(TimeUnit.MICROSECONDS), report.record.summary(TimeUnit.MICROSECONDS),
+                report.groupQuery.summary(TimeUnit.MICROSECONDS), report.managerQuery.summary(TimeUnit.MICROSECONDS));
+    }
+}
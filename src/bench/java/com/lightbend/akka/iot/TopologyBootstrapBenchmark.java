@@ -0,0 +1,98 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+// Cold start of a generated topology: writes a topology file, then times reading it and creating
+// the tree with BootstrapTopology, and compares with tracking devices one RequestTrackDevice
+// round trip at a time (pipelined through IotClient). Both run with the shipped logging
+// configuration, which logs bootstrap once per group rather than per device. Most of the heap reported after the bootstrap is
+// the groups' rollup tiers, sized by slot count, so a million devices need a heap of several GB.
+// Arguments: [devices] [managers] [groups-per-manager] [tracked-devices]
+public class TopologyBootstrapBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int devices = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int managers = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int groupsPerManager = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int tracked = args.length > 3 ? Integer.parseInt(args[3]) : 20_000;
+        int groups = managers * groupsPerManager;
+
+        Path file = Files.createTempFile("topology", ".txt");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                for (int i = 0; i < devices; i++) {
+                    int group = i % groups;
+                    writer.write("manager-" + group % managers + " group-" + group + " device-" + i
+                            + (i % 100 == 0 ? " floor=" + (i / 100) % 10 : ""));
+                    writer.newLine();
+                }
+            }
+
+            ActorSystem system = ActorSystem.create("bootstrap-benchmark");
+            try {
+                IotClient client = new IotClient(system.actorOf(IotSupervisor.props()), Duration.ofSeconds(60));
+                long start = System.nanoTime();
+                IotTopology topology = IotTopology.read(file);
+                long parsed = System.nanoTime();
+                IotSupervisor.TopologyBootstrapped bootstrapped =
+                        client.bootstrap(topology, Duration.ofMinutes(10)).toCompletableFuture().join();
+                System.out.printf("bootstrap: %d devices in %d groups: parsed in %d ms, created in %d ms (%.0f devices/s), "
+                                + "%d groups timed out, %d MB heap in use after GC%n",
+                        bootstrapped.devices, bootstrapped.groups, (parsed - start) / 1_000_000,
+                        bootstrapped.elapsed.toMillis(), bootstrapped.devices * 1e9 / bootstrapped.elapsed.toNanos(),
+                        bootstrapped.groupsTimedOut.size(), usedHeapMegabytes());
+            } finally {
+                system.terminate();
+                system.getWhenTerminated().toCompletableFuture().join();
+            }
+
+            system = ActorSystem.create("track-benchmark");
+            try {
+                IotClient client = new IotClient(system.actorOf(IotSupervisor.props()), Duration.ofSeconds(60));
+                List<ActorRef> managerActors = new ArrayList<>();
+                for (int m = 0; m < managers; m++) {
+                    managerActors.add(client.trackDeviceManager("manager-" + m).toCompletableFuture().join());
+                }
+                Semaphore inFlight = new Semaphore(1_024);
+                List<CompletableFuture<ActorRef>> last = new ArrayList<>();
+                long start = System.nanoTime();
+                for (int i = 0; i < tracked; i++) {
+                    int group = i % groups;
+                    inFlight.acquire();
+                    CompletableFuture<ActorRef> registered = client.trackDevice(managerActors.get(group % managers),
+                            "group-" + group, "device-" + i).toCompletableFuture();
+                    registered.whenComplete((device, failure) -> inFlight.release());
+                    if (i >= tracked - 1_024) {
+                        last.add(registered);
+                    }
+                }
+                CompletableFuture.allOf(last.toArray(new CompletableFuture<?>[0])).join();
+                inFlight.acquire(1_024);
+                long nanos = System.nanoTime() - start;
+                System.out.printf("tracking: %d devices one request each in %d ms (%.0f devices/s)%n",
+                        tracked, nanos / 1_000_000, tracked * 1e9 / nanos);
+            } finally {
+                system.terminate();
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static long usedHeapMegabytes() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return (runtime.totalMemory() - runtime.freeMemory()) >> 20;
+    }
+}
@@ -0,0 +1,127 @@
+package com.lightbend.akka.sample;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Greetings per second from a set of Greeters through the batching Printer, which writes to a
+// file, against the per-message log.info of the original Printer, with stdout sent to a file.
+// Arguments: [greeters] [greetsPerGreeter]
+public class PrinterBenchmark {
+    private static final String DONE = "printer-benchmark-done";
+
+    public static void main(String[] args) throws Exception {
+        int greeters = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int greets = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+        long messages = (long) greeters * greets;
+
+        // The default logger prints to stdout; swap it before any actor system exists.
+        PrintStream console = System.out;
+        Path logFile = Files.createTempFile("printer-log", ".txt");
+        Path batchFile = Files.createTempFile("printer-batch", ".txt");
+        System.setOut(new PrintStream(new FileOutputStream(logFile.toFile()), true));
+        try {
+            long loggingNanos = run(greeters, greets, system -> system.actorOf(LoggingPrinter.props(messages)),
+                    () -> endsWith(logFile, DONE));
+            long expectedBytes = 0L;
+            for (int g = 0; g < greeters; g++) {
+                expectedBytes += (long) greets * ("Hello, greeter-" + g + "\n").length();
+            }
+            long batchedBytes = expectedBytes;
+            long batchingNanos = run(greeters, greets, system -> system.actorOf(Printer.props(batchFile)),
+                    () -> Files.size(batchFile) >= batchedBytes);
+
+            console.printf("greeters=%d greetings=%d%n", greeters, messages);
+            console.printf("per-message log.info:   %10.0f greetings/s%n", messages * 1e9 / loggingNanos);
+            console.printf("batching channel sink:  %10.0f greetings/s%n", messages * 1e9 / batchingNanos);
+        } finally {
+            System.setOut(console);
+            Files.deleteIfExists(logFile);
+            Files.deleteIfExists(batchFile);
+        }
+    }
+
+    private interface PrinterFactory {
+        ActorRef create(ActorSystem system);
+    }
+
+    private interface Done {
+        boolean check() throws IOException;
+    }
+
+    private static long run(int greeters, int greets, PrinterFactory printerFactory, Done done) throws Exception {
+        ActorSystem system = ActorSystem.create("printer-benchmark");
+        try {
+            ActorRef printer = printerFactory.create(system);
+            ActorRef[] greeterActors = new ActorRef[greeters];
+            for (int g = 0; g < greeters; g++) {
+                greeterActors[g] = system.actorOf(Greeter.props("Hello", printer));
+                greeterActors[g].tell(new Greeter.WhoToGreet("greeter-" + g), ActorRef.noSender());
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < greets; i++) {
+                for (ActorRef greeter : greeterActors) {
+                    greeter.tell(new Greeter.Greet(), ActorRef.noSender());
+                }
+            }
+            while (!done.check()) {
+                Thread.sleep(5);
+            }
+            return System.nanoTime() - start;
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().get();
+        }
+    }
+
+    private static boolean endsWith(Path file, String marker) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r")) {
+            byte[] tail = new byte[marker.length() + 1];
+            if (raf.length() < tail.length) {
+                return false;
+            }
+            raf.seek(raf.length() - tail.length);
+            raf.readFully(tail);
+            return new String(tail, StandardCharsets.UTF_8).startsWith(marker);
+        }
+    }
+
+    // The Printer as it was: one log.info per greeting. Logs DONE after the last one; the logger
+    // prints in order, so DONE at the end of stdout means every greeting is out.
+    private static final class LoggingPrinter extends AbstractActor {
+        private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
+        private final long expected;
+        private long received = 0L;
+
+        private LoggingPrinter(long expected) {
+            this.expected = expected;
+        }
+
+        static Props props(long expected) {
+            return Props.create(LoggingPrinter.class, () -> new LoggingPrinter(expected));
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                    .match(Printer.Greeting.class, greeting -> {
+                        log.info(greeting.message);
+                        if (++received == expected) {
+                            log.info(DONE);
+                        }
+                    })
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.lightbend.akka.iot;
+
+import com.typesafe.config.Config;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.util.concurrent.TimeUnit;
+
+// Collection timeout for the queries of one group or manager, derived from how long the actors
+// they ask have recently taken to answer: multiplier times the configured percentile of a window
+// of response latencies, kept within [min, max] and at max until minSamples responses have been
+// seen. A response the query stopped waiting for is recorded at twice the time it waited, so a
+// timeout that turned out too tight grows back instead of settling at the cut-off. The window
+// restarts every windowSamples responses to follow changes in load. Not thread safe.
+final class AdaptiveTimeout {
+
+    // Sent by a query to the group or manager that started it when it ends: the latencies of the
+    // responses it got, and how many it gave up on after waitedNanos.
+    static final class RepliesObserved {
+        final long[] answeredNanos;
+        final int unanswered;
+        final long waitedNanos;
+
+        RepliesObserved(long[] answeredNanos, int unanswered, long waitedNanos) {
+            this.answeredNanos = answeredNanos;
+            this.unanswered = unanswered;
+            this.waitedNanos = waitedNanos;
+        }
+    }
+
+    public static final class RequestTimeoutMetrics {
+        final long requestId;
+
+        public RequestTimeoutMetrics(long requestId) {
+            this.requestId = requestId;
+        }
+    }
+
+    // The percentiles are those the current timeout was derived from, all 0 before minSamples
+    // responses were seen.
+    public static final class TimeoutMetrics {
+        final long requestId;
+        final String owner;
+        final long timeoutNanos;
+        final long samples;
+        final long p50Nanos;
+        final long p90Nanos;
+        final long p99Nanos;
+        final long maxNanos;
+
+        TimeoutMetrics(long requestId, String owner, long timeoutNanos, long samples, long p50Nanos, long p90Nanos,
+                       long p99Nanos, long maxNanos) {
+            this.requestId = requestId;
+            this.owner = owner;
+            this.timeoutNanos = timeoutNanos;
+            this.samples = samples;
+            this.p50Nanos = p50Nanos;
+            this.p90Nanos = p90Nanos;
+            this.p99Nanos = p99Nanos;
+            this.maxNanos = maxNanos;
+        }
+    }
+
+    private final double percentile;
+    private final double multiplier;
+    private final long minNanos;
+    private final long maxNanos;
+    private final long minSamples;
+    private final long windowSamples;
+    private final LatencyHistogram window = new LatencyHistogram();
+    private long timeoutNanos;
+    private long samples = 0L;
+    private long p50Nanos = 0L;
+    private long p90Nanos = 0L;
+    private long p99Nanos = 0L;
+    private long observedMaxNanos = 0L;
+
+    AdaptiveTimeout(double percentile, double multiplier, long minNanos, long maxNanos, long minSamples,
+                    long windowSamples) {
+        this.percentile = Math.max(Math.min(percentile, 100.0), Double.MIN_VALUE);
+        this.multiplier = Math.max(0.0, multiplier);
+        this.minNanos = Math.max(0L, minNanos);
+        this.maxNanos = Math.max(this.minNanos, maxNanos);
+        this.minSamples = Math.max(1L, minSamples);
+        this.windowSamples = Math.max(this.minSamples, windowSamples);
+        this.timeoutNanos = this.maxNanos;
+    }
+
+    static AdaptiveTimeout fromConfig(Config config) {
+        return new AdaptiveTimeout(config.getDouble("percentile"), config.getDouble("multiplier"),
+                config.getDuration("min", TimeUnit.NANOSECONDS), config.getDuration("max", TimeUnit.NANOSECONDS),
+                config.getLong("min-samples"), config.getLong("window-samples"));
+    }
+
+    long timeoutNanos() {
+        return timeoutNanos;
+    }
+
+    FiniteDuration timeout() {
+        return FiniteDuration.fromNanos(timeoutNanos);
+    }
+
+    void observe(long[] answeredNanos, int unanswered, long waitedNanos) {
+        for (long nanos : answeredNanos) {
+            window.record(nanos);
+        }
+        long censored = waitedNanos > Long.MAX_VALUE / 2 ? Long.MAX_VALUE : waitedNanos * 2;
+        for (int i = 0; i < unanswered; i++) {
+            window.record(censored);
+        }
+        if (window.count() >= minSamples) {
+            double scaled = window.percentile(percentile) * multiplier;
+            timeoutNanos = scaled >= maxNanos ? maxNanos : Math.max(minNanos, (long) scaled);
+            samples = window.count();
+            p50Nanos = window.percentile(50);
+            p90Nanos = window.percentile(90);
+            p99Nanos = window.percentile(99);
+            observedMaxNanos = window.max();
+        }
+        if (window.count() >= windowSamples) {
+            window.reset();
+        }
+    }
+
+    TimeoutMetrics metrics(long requestId, String owner) {
+        return new TimeoutMetrics(requestId, owner, timeoutNanos, samples, p50Nanos, p90Nanos, p99Nanos,
+                observedMaxNanos);
+    }
+}
@@ -0,0 +1,92 @@
+package com.lightbend.akka.iot;
+
+import com.typesafe.config.Config;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+// One alerting rule on a device's temperature. A rule is raised for a device when the watched
+// signal reaches threshold and cleared once it is back at clear, which lies on the other side of
+// threshold so a signal hovering around it does not flap. Rates are in degrees per second between
+// a device's consecutive readings. Immutable and serializable, so it can travel inside messages.
+public final class AlertRule implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public enum Kind {
+        // value >= threshold, cleared at value <= clear
+        ABOVE,
+        // value <= threshold, cleared at value >= clear
+        BELOW,
+        // rate >= threshold, cleared at rate <= clear
+        RISING_FASTER_THAN,
+        // rate <= -threshold, cleared at rate >= -clear
+        FALLING_FASTER_THAN
+    }
+
+    final String name;
+    final Kind kind;
+    final double threshold;
+    final double clear;
+
+    private AlertRule(String name, Kind kind, double threshold, double clear) {
+        this.name = Objects.requireNonNull(name);
+        this.kind = Objects.requireNonNull(kind);
+        this.threshold = threshold;
+        this.clear = clear;
+        if (kind == Kind.BELOW ? clear < threshold : clear > threshold) {
+            throw new IllegalArgumentException("Rule " + name + " clears at " + clear + " before it is raised at " + threshold);
+        }
+    }
+
+    public static AlertRule above(String name, double threshold, double clear) {
+        return new AlertRule(name, Kind.ABOVE, threshold, clear);
+    }
+
+    public static AlertRule below(String name, double threshold, double clear) {
+        return new AlertRule(name, Kind.BELOW, threshold, clear);
+    }
+
+    public static AlertRule risingFasterThan(String name, double degreesPerSecond, double clearBelow) {
+        return new AlertRule(name, Kind.RISING_FASTER_THAN, degreesPerSecond, clearBelow);
+    }
+
+    public static AlertRule fallingFasterThan(String name, double degreesPerSecond, double clearBelow) {
+        return new AlertRule(name, Kind.FALLING_FASTER_THAN, degreesPerSecond, clearBelow);
+    }
+
+    // { name = ..., kind = above|below|rising-faster-than|falling-faster-than, threshold = ..., clear = ... }
+    static AlertRule fromConfig(Config config) {
+        Kind kind = Kind.valueOf(config.getString("kind").toUpperCase().replace('-', '_'));
+        return new AlertRule(config.getString("name"), kind, config.getDouble("threshold"), config.getDouble("clear"));
+    }
+
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        AlertRule that = (AlertRule) o;
+        return Double.compare(that.threshold, threshold) == 0 &&
+                Double.compare(that.clear, clear) == 0 &&
+                name.equals(that.name) &&
+                kind == that.kind;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, kind, threshold, clear);
+    }
+
+    @Override
+    public String toString() {
+        return "AlertRule{" +
+                "name='" + name + '\'' +
+                ", kind=" + kind +
+                ", threshold=" + threshold +
+                ", clear=" + clear +
+                '}';
+    }
+}
@@ -0,0 +1,126 @@
+package com.lightbend.akka.iot;
+
+import java.util.Arrays;
+import java.util.List;
+
+// The alerting rules of one group compiled for evaluation on every accepted reading. Each rule is
+// an entry in a few primitive arrays: whether it watches the value or the rate, a sign that turns
+// the lower-bound kinds into upper bounds, and the signed raise and clear levels, so a reading
+// costs one branch-light pass over at most MAX_RULES rules and no allocation. Per-device state is
+// slot-indexed like the group's other primitive stores: the previous reading, for rates, and a
+// bit mask of the rules currently raised. Not thread safe.
+final class AlertRules {
+    static final int MAX_RULES = Long.SIZE;
+
+    private final AlertRule[] rules;
+    private final boolean[] watchesRate;
+    private final double[] sign;
+    private final double[] raiseAt;
+    private final double[] clearAt;
+    private final boolean anyRate;
+    private long[] active;
+    private double[] lastValue;
+    // 0 until the slot's first reading.
+    private long[] lastRecordedAt;
+
+    AlertRules(List<AlertRule> rules, int initialSlots) {
+        if (rules.size() > MAX_RULES) {
+            throw new IllegalArgumentException(rules.size() + " alert rules, at most " + MAX_RULES + " are supported");
+        }
+        int n = rules.size();
+        this.rules = rules.toArray(new AlertRule[0]);
+        this.watchesRate = new boolean[n];
+        this.sign = new double[n];
+        this.raiseAt = new double[n];
+        this.clearAt = new double[n];
+        boolean rate = false;
+        for (int r = 0; r < n; r++) {
+            AlertRule rule = this.rules[r];
+            watchesRate[r] = rule.kind == AlertRule.Kind.RISING_FASTER_THAN || rule.kind == AlertRule.Kind.FALLING_FASTER_THAN;
+            rate |= watchesRate[r];
+            switch (rule.kind) {
+                case BELOW:
+                    sign[r] = -1.0;
+                    raiseAt[r] = -rule.threshold;
+                    clearAt[r] = -rule.clear;
+                    break;
+                case FALLING_FASTER_THAN:
+                    sign[r] = -1.0;
+                    raiseAt[r] = rule.threshold;
+                    clearAt[r] = rule.clear;
+                    break;
+                default:
+                    sign[r] = 1.0;
+                    raiseAt[r] = rule.threshold;
+                    clearAt[r] = rule.clear;
+            }
+        }
+        this.anyRate = rate;
+        int slots = Math.max(1, initialSlots);
+        this.active = new long[slots];
+        this.lastValue = new double[slots];
+        this.lastRecordedAt = new long[slots];
+    }
+
+    int size() {
+        return rules.length;
+    }
+
+    AlertRule rule(int index) {
+        return rules[index];
+    }
+
+    // The rules whose state this reading changed, as a bit mask over rule indices; active(slot)
+    // tells which of them are now raised. A reading older than the slot's last one changes nothing.
+    long evaluate(int slot, double value, long recordedAt) {
+        ensureSlot(slot);
+        long previousAt = lastRecordedAt[slot];
+        if (recordedAt < previousAt) {
+            return 0L;
+        }
+        boolean hasRate = anyRate && previousAt != 0L && recordedAt > previousAt;
+        double rate = hasRate ? (value - lastValue[slot]) * 1000.0 / (recordedAt - previousAt) : 0.0;
+        lastValue[slot] = value;
+        lastRecordedAt[slot] = recordedAt;
+
+        long state = active[slot];
+        long changed = 0L;
+        for (int r = 0; r < rules.length; r++) {
+            if (watchesRate[r] && !hasRate) {
+                continue;
+            }
+            double signal = sign[r] * (watchesRate[r] ? rate : value);
+            long bit = 1L << r;
+            if ((state & bit) == 0L ? signal >= raiseAt[r] : signal <= clearAt[r]) {
+                changed |= bit;
+            }
+        }
+        active[slot] = state ^ changed;
+        return changed;
+    }
+
+    long active(int slot) {
+        return slot < active.length ? active[slot] : 0L;
+    }
+
+    // Forgets the device in slot and returns the rules that were raised for it.
+    long clear(int slot) {
+        if (slot >= active.length) {
+            return 0L;
+        }
+        long raised = active[slot];
+        active[slot] = 0L;
+        lastValue[slot] = 0.0;
+        lastRecordedAt[slot] = 0L;
+        return raised;
+    }
+
+    void ensureSlot(int slot) {
+        if (slot >= active.length) {
+            int capacity = Math.max(slot + 1, active.length << 1);
+            active = Arrays.copyOf(active, capacity);
+            lastValue = Arrays.copyOf(lastValue, capacity);
+            lastRecordedAt = Arrays.copyOf(lastRecordedAt, capacity);
+        }
+    }
+}
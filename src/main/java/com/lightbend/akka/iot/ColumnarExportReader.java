@@ -0,0 +1,84 @@
+package com.lightbend.akka.iot;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Reads back files produced by ColumnarExportWriter.
+public final class ColumnarExportReader {
+
+    public static final class Section {
+        final byte kind;
+        final String groupId;
+        final String[] deviceIds;
+        final long[] timestamps;
+        final double[] values;
+
+        Section(byte kind, String groupId, String[] deviceIds, long[] timestamps, double[] values) {
+            this.kind = kind;
+            this.groupId = groupId;
+            this.deviceIds = deviceIds;
+            this.timestamps = timestamps;
+            this.values = values;
+        }
+
+        public boolean isHistory() {
+            return kind == ColumnarExportWriter.HISTORY;
+        }
+    }
+
+    private ColumnarExportReader() {
+    }
+
+    // A file that ends before its END marker was not completely written.
+    public static List<Section> read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != ColumnarExportWriter.MAGIC) {
+                throw new IOException(file + " is not a fleet export");
+            }
+            int version = buffer.getInt();
+            if (version != ColumnarExportWriter.VERSION) {
+                throw new IOException("Unsupported fleet export version " + version);
+            }
+            List<Section> sections = new ArrayList<>();
+            byte kind;
+            while ((kind = buffer.get()) != ColumnarExportWriter.END) {
+                String groupId = readString(buffer);
+                int rows = buffer.getInt();
+                String[] dictionary = new String[buffer.getInt()];
+                for (int i = 0; i < dictionary.length; i++) {
+                    dictionary[i] = readString(buffer);
+                }
+                String[] deviceIds = new String[rows];
+                for (int i = 0; i < rows; i++) {
+                    deviceIds[i] = dictionary[buffer.getInt()];
+                }
+                long[] timestamps = new long[rows];
+                for (int i = 0; i < rows; i++) {
+                    timestamps[i] = buffer.getLong();
+                }
+                double[] values = new double[rows];
+                for (int i = 0; i < rows; i++) {
+                    values[i] = buffer.getDouble();
+                }
+                sections.add(new Section(kind, groupId, deviceIds, timestamps, values));
+            }
+            return sections;
+        } catch (BufferUnderflowException e) {
+            throw new IOException(file + " is truncated", e);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,123 @@
+package com.lightbend.akka.iot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+// Writes fleet exports in a columnar binary layout through a FileChannel and one reused direct buffer:
+//
+//   file    := MAGIC int:version section* END
+//   section := byte:kind string:groupId int:rows
+//              int:dictionarySize string* (distinct device ids)
+//              int[rows] (dictionary index) long[rows] (timestamps) double[rows] (values)
+//   string  := int:length utf8-bytes
+//
+// Device ids are dictionary encoded per section, so repeated ids cost four bytes per row.
+final class ColumnarExportWriter implements AutoCloseable {
+    static final int MAGIC = 0x494f5458; // "IOTX"
+    static final int VERSION = 1;
+    static final byte CURRENT = 1;
+    static final byte HISTORY = 2;
+    static final byte END = 0;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private long bytesWritten = 0L;
+
+    ColumnarExportWriter(Path file, int bufferSize) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(Math.max(bufferSize, 64));
+        buffer.putInt(MAGIC).putInt(VERSION);
+    }
+
+    void writeSection(byte kind, String groupId, String[] deviceIds, long[] timestamps, double[] values, int rows)
+            throws IOException {
+        Map<String, Integer> dictionary = new HashMap<>();
+        int[] indexes = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            Integer index = dictionary.get(deviceIds[i]);
+            if (index == null) {
+                index = dictionary.size();
+                dictionary.put(deviceIds[i], index);
+            }
+            indexes[i] = index;
+        }
+        String[] distinct = new String[dictionary.size()];
+        dictionary.forEach((deviceId, index) -> distinct[index] = deviceId);
+
+        ensure(1);
+        buffer.put(kind);
+        writeString(groupId);
+        ensure(8);
+        buffer.putInt(rows).putInt(distinct.length);
+        for (String deviceId : distinct) {
+            writeString(deviceId);
+        }
+        for (int i = 0; i < rows; i++) {
+            ensure(4);
+            buffer.putInt(indexes[i]);
+        }
+        for (int i = 0; i < rows; i++) {
+            ensure(8);
+            buffer.putLong(timestamps[i]);
+        }
+        for (int i = 0; i < rows; i++) {
+            ensure(8);
+            buffer.putDouble(values[i]);
+        }
+    }
+
+    long bytesWritten() {
+        return bytesWritten + buffer.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            ensure(1);
+            buffer.put(END);
+            flush();
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    // Closes the file as it stands, without END, so readers reject it.
+    void abort() throws IOException {
+        channel.close();
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ensure(4);
+        buffer.putInt(bytes.length);
+        int offset = 0;
+        while (offset < bytes.length) {
+            ensure(1);
+            int n = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, n);
+            offset += n;
+        }
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            bytesWritten += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
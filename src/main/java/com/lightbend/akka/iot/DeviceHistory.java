@@ -0,0 +1,81 @@
+package com.lightbend.akka.iot;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+// Compressed reading history of one device: sealed Gorilla blocks of a fixed sample count plus
+// the block currently being filled. The oldest sealed blocks are dropped past the retention.
+final class DeviceHistory {
+
+    interface SampleConsumer {
+        void accept(long timestamp, double value);
+    }
+
+    private final int blockSamples;
+    private final int maxSealedBlocks;
+    // Created with the first sample, so devices that never report cost no block buffer.
+    private GorillaEncoder encoder = null;
+    private final Deque<GorillaBlock> sealed = new ArrayDeque<>();
+
+    DeviceHistory(int blockSamples, int maxSealedBlocks) {
+        if (blockSamples < 1) {
+            throw new IllegalArgumentException("blockSamples must be positive: " + blockSamples);
+        }
+        this.blockSamples = blockSamples;
+        this.maxSealedBlocks = maxSealedBlocks;
+    }
+
+    // Returns the block sealed by this append, or null if the open block still has room.
+    GorillaBlock append(long timestamp, double value) {
+        if (encoder == null) {
+            encoder = new GorillaEncoder(blockSamples);
+        }
+        encoder.append(timestamp, value);
+        if (!encoder.isFull()) {
+            return null;
+        }
+        GorillaBlock block = encoder.seal();
+        if (maxSealedBlocks > 0) {
+            sealed.addLast(block);
+            if (sealed.size() > maxSealedBlocks) {
+                sealed.removeFirst();
+            }
+        }
+        return block;
+    }
+
+    int sealedBlocks() {
+        return sealed.size();
+    }
+
+    long sizeInBytes() {
+        long size = encoder == null ? 0L : encoder.sizeInBytes();
+        for (GorillaBlock block : sealed) {
+            size += block.sizeInBytes();
+        }
+        return size;
+    }
+
+    // Decodes only the blocks overlapping [from, to], oldest first.
+    void forEachInRange(long from, long to, SampleConsumer consumer) {
+        for (GorillaBlock block : sealed) {
+            decodeInRange(block, from, to, consumer);
+        }
+        if (encoder != null && !encoder.isEmpty() && encoder.firstTimestamp() <= to && encoder.lastTimestamp() >= from) {
+            decodeInRange(encoder.peek(), from, to, consumer);
+        }
+    }
+
+    static void decodeInRange(GorillaBlock block, long from, long to, SampleConsumer consumer) {
+        if (!block.overlaps(from, to)) {
+            return;
+        }
+        GorillaBlock.Decoder decoder = block.decoder();
+        while (decoder.next()) {
+            long timestamp = decoder.timestamp();
+            if (timestamp >= from && timestamp <= to) {
+                consumer.accept(timestamp, decoder.value());
+            }
+        }
+    }
+}
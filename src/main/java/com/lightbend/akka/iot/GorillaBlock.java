@@ -0,0 +1,141 @@
+package com.lightbend.akka.iot;
+
+import java.nio.ByteBuffer;
+
+// A sealed, immutable block of Gorilla-encoded samples. The payload may live on heap or in a
+// mapped segment file; decoding reads it with absolute gets and never copies it.
+final class GorillaBlock {
+    final long firstTimestamp;
+    final long lastTimestamp;
+    final int count;
+    private final ByteBuffer data;
+
+    GorillaBlock(long firstTimestamp, long lastTimestamp, int count, byte[] data) {
+        this(firstTimestamp, lastTimestamp, count, ByteBuffer.wrap(data));
+    }
+
+    GorillaBlock(long firstTimestamp, long lastTimestamp, int count, ByteBuffer data) {
+        this.firstTimestamp = firstTimestamp;
+        this.lastTimestamp = lastTimestamp;
+        this.count = count;
+        this.data = data.asReadOnlyBuffer();
+    }
+
+    int sizeInBytes() {
+        return data.remaining();
+    }
+
+    boolean overlaps(long from, long to) {
+        return count > 0 && firstTimestamp <= to && lastTimestamp >= from;
+    }
+
+    ByteBuffer data() {
+        return data.duplicate();
+    }
+
+    Decoder decoder() {
+        return new Decoder(data, count);
+    }
+
+    // Streams the samples in order; timestamp() and value() are valid after next() returned true.
+    static final class Decoder {
+        private final ByteBuffer data;
+        private final int base;
+        private final int count;
+
+        private long bitPosition = 0L;
+        private int decoded = 0;
+        private long timestamp;
+        private long delta;
+        private long valueBits;
+        private int leadingZeros;
+        private int trailingZeros;
+
+        Decoder(ByteBuffer data, int count) {
+            this.data = data;
+            this.base = data.position();
+            this.count = count;
+        }
+
+        boolean next() {
+            if (decoded == count) {
+                return false;
+            }
+            if (decoded == 0) {
+                timestamp = readBits(64);
+                valueBits = readBits(64);
+                delta = 0L;
+            } else {
+                delta += readDeltaOfDelta();
+                timestamp += delta;
+                readValue();
+            }
+            decoded++;
+            return true;
+        }
+
+        long timestamp() {
+            return timestamp;
+        }
+
+        double value() {
+            return Double.longBitsToDouble(valueBits);
+        }
+
+        private long readDeltaOfDelta() {
+            if (readBit() == 0) {
+                return 0L;
+            }
+            if (readBit() == 0) {
+                return signExtend(readBits(7), 7);
+            }
+            if (readBit() == 0) {
+                return signExtend(readBits(9), 9);
+            }
+            if (readBit() == 0) {
+                return signExtend(readBits(12), 12);
+            }
+            return readBits(64);
+        }
+
+        private void readValue() {
+            if (readBit() == 0) {
+                return;
+            }
+            if (readBit() == 1) {
+                leadingZeros = (int) readBits(5);
+                int significantBits = (int) readBits(6);
+                if (significantBits == 0) {
+                    significantBits = 64;
+                }
+                trailingZeros = 64 - leadingZeros - significantBits;
+            }
+            long xor = readBits(64 - leadingZeros - trailingZeros) << trailingZeros;
+            valueBits ^= xor;
+        }
+
+        private int readBit() {
+            int b = data.get(base + (int) (bitPosition >>> 3)) >>> (7 - (bitPosition & 7));
+            bitPosition++;
+            return b & 1;
+        }
+
+        private long readBits(int width) {
+            long result = 0L;
+            while (width > 0) {
+                int offsetInByte = (int) (bitPosition & 7);
+                int n = Math.min(8 - offsetInByte, width);
+                int current = data.get(base + (int) (bitPosition >>> 3)) & 0xFF;
+                int chunk = (current >>> (8 - offsetInByte - n)) & ((1 << n) - 1);
+                result = (result << n) | chunk;
+                bitPosition += n;
+                width -= n;
+            }
+            return result;
+        }
+
+        private static long signExtend(long bits, int width) {
+            return (bits << (64 - width)) >> (64 - width);
+        }
+    }
+}
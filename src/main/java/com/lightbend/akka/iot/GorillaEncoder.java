@@ -0,0 +1,163 @@
+package com.lightbend.akka.iot;
+
+import java.util.Arrays;
+
+// Gorilla-style encoder for one block of (timestamp, value) samples: timestamps are stored as
+// delta-of-delta in variable-width buckets and values as the XOR against the previous value,
+// reusing the previous leading/trailing-zero window when it fits. The scratch buffer starts small
+// and doubles as samples need it, up to the worst case for a block, and is reused across blocks,
+// so an encoder keeps about what its blocks actually compress to.
+final class GorillaEncoder {
+    // Worst case per sample: 4 + 64 bits of timestamp, 2 + 5 + 6 + 64 bits of value.
+    private static final int MAX_BITS_PER_SAMPLE = 145;
+    private static final int HEADER_BITS = 128;
+    // The header and a few compressed samples.
+    private static final int INITIAL_BUFFER_BYTES = 32;
+
+    private final int blockSamples;
+    private final int maxBufferBytes;
+    private byte[] buffer;
+
+    private int bitPosition;
+    private int count;
+    private long firstTimestamp;
+    private long previousTimestamp;
+    private long previousDelta;
+    private long previousValueBits;
+    private int previousLeadingZeros;
+    private int previousTrailingZeros;
+
+    GorillaEncoder(int blockSamples) {
+        if (blockSamples < 1) {
+            throw new IllegalArgumentException("blockSamples must be positive: " + blockSamples);
+        }
+        this.blockSamples = blockSamples;
+        this.maxBufferBytes = (int) ((HEADER_BITS + (long) blockSamples * MAX_BITS_PER_SAMPLE + 7) / 8);
+        this.buffer = new byte[Math.min(INITIAL_BUFFER_BYTES, maxBufferBytes)];
+        reset();
+    }
+
+    boolean isFull() {
+        return count == blockSamples;
+    }
+
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+    int count() {
+        return count;
+    }
+
+    long firstTimestamp() {
+        return firstTimestamp;
+    }
+
+    long lastTimestamp() {
+        return previousTimestamp;
+    }
+
+    int sizeInBytes() {
+        return (bitPosition + 7) >>> 3;
+    }
+
+    void append(long timestamp, double value) {
+        if (isFull()) {
+            throw new IllegalStateException("Block is full; seal it first");
+        }
+        long valueBits = Double.doubleToRawLongBits(value);
+        if (count == 0) {
+            firstTimestamp = timestamp;
+            writeBits(timestamp, 64);
+            writeBits(valueBits, 64);
+            previousDelta = 0L;
+        } else {
+            long delta = timestamp - previousTimestamp;
+            writeDeltaOfDelta(delta - previousDelta);
+            writeValue(valueBits);
+            previousDelta = delta;
+        }
+        previousTimestamp = timestamp;
+        previousValueBits = valueBits;
+        count++;
+    }
+
+    // Copies the encoded bytes out and makes the encoder ready for the next block.
+    GorillaBlock seal() {
+        GorillaBlock block = new GorillaBlock(firstTimestamp, previousTimestamp, count,
+                Arrays.copyOf(buffer, sizeInBytes()));
+        reset();
+        return block;
+    }
+
+    // Read-only view of the samples appended so far, for queries against the open block.
+    GorillaBlock peek() {
+        return new GorillaBlock(firstTimestamp, previousTimestamp, count, Arrays.copyOf(buffer, sizeInBytes()));
+    }
+
+    private void reset() {
+        Arrays.fill(buffer, 0, sizeInBytes(), (byte) 0);
+        bitPosition = 0;
+        count = 0;
+        previousLeadingZeros = Integer.MAX_VALUE;
+        previousTrailingZeros = 0;
+    }
+
+    private void writeDeltaOfDelta(long deltaOfDelta) {
+        if (deltaOfDelta == 0) {
+            writeBits(0b0, 1);
+        } else if (deltaOfDelta >= -64 && deltaOfDelta <= 63) {
+            writeBits(0b10, 2);
+            writeBits(deltaOfDelta, 7);
+        } else if (deltaOfDelta >= -256 && deltaOfDelta <= 255) {
+            writeBits(0b110, 3);
+            writeBits(deltaOfDelta, 9);
+        } else if (deltaOfDelta >= -2048 && deltaOfDelta <= 2047) {
+            writeBits(0b1110, 4);
+            writeBits(deltaOfDelta, 12);
+        } else {
+            writeBits(0b1111, 4);
+            writeBits(deltaOfDelta, 64);
+        }
+    }
+
+    private void writeValue(long valueBits) {
+        long xor = valueBits ^ previousValueBits;
+        if (xor == 0) {
+            writeBits(0b0, 1);
+            return;
+        }
+        int leadingZeros = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        int trailingZeros = Long.numberOfTrailingZeros(xor);
+        if (previousLeadingZeros != Integer.MAX_VALUE
+                && leadingZeros >= previousLeadingZeros && trailingZeros >= previousTrailingZeros) {
+            writeBits(0b10, 2);
+            writeBits(xor >>> previousTrailingZeros, 64 - previousLeadingZeros - previousTrailingZeros);
+        } else {
+            int significantBits = 64 - leadingZeros - trailingZeros;
+            writeBits(0b11, 2);
+            writeBits(leadingZeros, 5);
+            // 64 significant bits is stored as 0; a non-zero XOR never has 0 significant bits.
+            writeBits(significantBits, 6);
+            writeBits(xor >>> trailingZeros, significantBits);
+            previousLeadingZeros = leadingZeros;
+            previousTrailingZeros = trailingZeros;
+        }
+    }
+
+    // Writes the low `width` bits, most significant first, up to a byte at a time.
+    private void writeBits(long bits, int width) {
+        int bytesNeeded = (bitPosition + width + 7) >>> 3;
+        if (bytesNeeded > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.min(maxBufferBytes, Math.max(bytesNeeded, buffer.length << 1)));
+        }
+        while (width > 0) {
+            int freeInByte = 8 - (bitPosition & 7);
+            int n = Math.min(freeInByte, width);
+            int chunk = (int) (bits >>> (width - n)) & ((1 << n) - 1);
+            buffer[bitPosition >>> 3] |= (byte) (chunk << (freeInByte - n));
+            bitPosition += n;
+            width -= n;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.lightbend.akka.iot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+// Append-only store of sealed Gorilla blocks for one group, spilled into fixed-size memory-mapped
+// segment files. Each block is written as
+//   [int deviceIdLength][deviceId bytes][long first][long last][int count][int length][payload]
+// so segments are self-describing; the on-heap index only keeps offsets and time bounds.
+// Range reads hand out views of the mapped payloads and never copy them.
+final class GroupSegmentStore implements AutoCloseable {
+
+    // A block as it sits in a segment, decodable straight from the mapping.
+    static final class StoredBlock {
+        final String deviceId;
+        final GorillaBlock block;
+
+        StoredBlock(String deviceId, GorillaBlock block) {
+            this.deviceId = deviceId;
+            this.block = block;
+        }
+    }
+
+    private static final int BLOCK_HEADER_BYTES = 4 + 8 + 8 + 4 + 4;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private long nextSegmentNumber = 0L;
+
+    GroupSegmentStore(Path directory, int segmentSize, int maxSegments) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create segment directory " + directory, e);
+        }
+    }
+
+    void append(String deviceId, GorillaBlock block) {
+        byte[] deviceIdBytes = deviceId.getBytes(StandardCharsets.UTF_8);
+        int recordSize = BLOCK_HEADER_BYTES + deviceIdBytes.length + block.sizeInBytes();
+        if (recordSize > segmentSize) {
+            throw new IllegalArgumentException("Block of " + recordSize + " bytes does not fit a segment of " + segmentSize);
+        }
+        Segment segment = segments.peekLast();
+        if (segment == null || segment.remaining() < recordSize) {
+            segment = openSegment();
+        }
+        segment.append(deviceId, deviceIdBytes, block);
+    }
+
+    // Blocks overlapping [from, to], oldest first, as views over the mapped segments.
+    List<StoredBlock> blocksInRange(long from, long to) {
+        List<StoredBlock> blocks = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (segment.blocks > 0 && segment.minTimestamp <= to && segment.maxTimestamp >= from) {
+                segment.collect(from, to, blocks);
+            }
+        }
+        return blocks;
+    }
+
+    int segmentCount() {
+        return segments.size();
+    }
+
+    long blockCount() {
+        long count = 0L;
+        for (Segment segment : segments) {
+            count += segment.blocks;
+        }
+        return count;
+    }
+
+    // Segments hold no file descriptors, only their mappings, which go once they are unreachable.
+    @Override
+    public void close() {
+        segments.clear();
+    }
+
+    // Closes the store and removes its segment files and directory.
+    void delete() {
+        segments.forEach(Segment::delete);
+        segments.clear();
+        try {
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot delete segment directory " + directory, e);
+        }
+    }
+
+    private Segment openSegment() {
+        Path file = directory.resolve(String.format("segment-%08d.seg", nextSegmentNumber++));
+        Segment segment = new Segment(file, segmentSize);
+        segments.addLast(segment);
+        if (maxSegments > 0 && segments.size() > maxSegments) {
+            segments.removeFirst().delete();
+        }
+        return segment;
+    }
+
+    private static final class Segment {
+        final Path file;
+        final MappedByteBuffer buffer;
+
+        int blocks = 0;
+        long minTimestamp = Long.MAX_VALUE;
+        long maxTimestamp = Long.MIN_VALUE;
+        // Per-block index, in primitive columns.
+        String[] deviceIds = new String[64];
+        int[] payloadOffsets = new int[64];
+        int[] payloadLengths = new int[64];
+        int[] counts = new int[64];
+        long[] firstTimestamps = new long[64];
+        long[] lastTimestamps = new long[64];
+
+        Segment(Path file, int size) {
+            this.file = file;
+            // The mapping outlives the channel, so a group does not keep one descriptor per segment.
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot map segment " + file, e);
+            }
+        }
+
+        int remaining() {
+            return buffer.remaining();
+        }
+
+        void append(String deviceId, byte[] deviceIdBytes, GorillaBlock block) {
+            buffer.putInt(deviceIdBytes.length);
+            buffer.put(deviceIdBytes);
+            buffer.putLong(block.firstTimestamp);
+            buffer.putLong(block.lastTimestamp);
+            buffer.putInt(block.count);
+            buffer.putInt(block.sizeInBytes());
+            int payloadOffset = buffer.position();
+            buffer.put(block.data());
+
+            if (blocks == deviceIds.length) {
+                int capacity = blocks << 1;
+                deviceIds = Arrays.copyOf(deviceIds, capacity);
+                payloadOffsets = Arrays.copyOf(payloadOffsets, capacity);
+                payloadLengths = Arrays.copyOf(payloadLengths, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+                firstTimestamps = Arrays.copyOf(firstTimestamps, capacity);
+                lastTimestamps = Arrays.copyOf(lastTimestamps, capacity);
+            }
+            deviceIds[blocks] = deviceId;
+            payloadOffsets[blocks] = payloadOffset;
+            payloadLengths[blocks] = block.sizeInBytes();
+            counts[blocks] = block.count;
+            firstTimestamps[blocks] = block.firstTimestamp;
+            lastTimestamps[blocks] = block.lastTimestamp;
+            blocks++;
+            minTimestamp = Math.min(minTimestamp, block.firstTimestamp);
+            maxTimestamp = Math.max(maxTimestamp, block.lastTimestamp);
+        }
+
+        void collect(long from, long to, List<StoredBlock> into) {
+            for (int i = 0; i < blocks; i++) {
+                if (firstTimestamps[i] <= to && lastTimestamps[i] >= from) {
+                    ByteBuffer payload = buffer.duplicate();
+                    payload.limit(payloadOffsets[i] + payloadLengths[i]).position(payloadOffsets[i]);
+                    into.add(new StoredBlock(deviceIds[i],
+                            new GorillaBlock(firstTimestamps[i], lastTimestamps[i], counts[i], payload.slice())));
+                }
+            }
+        }
+
+        void delete() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot delete segment " + file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.lightbend.akka.iot;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// The last full temperature reading of each group of one manager, with the System.nanoTime at
+// which the query that fetched it started, so a reading is never taken for fresher than it is.
+// Readings are kept unfiltered; callers apply their predicate. Not thread safe.
+final class GroupTemperatureCache {
+    private static final class Entry {
+        final long fetchedAtNanos;
+        final Map<String, IotDeviceGroup.TemperatureReading> temperatures;
+
+        Entry(long fetchedAtNanos, Map<String, IotDeviceGroup.TemperatureReading> temperatures) {
+            this.fetchedAtNanos = fetchedAtNanos;
+            this.temperatures = temperatures;
+        }
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    int size() {
+        return entries.size();
+    }
+
+    // An older fetch that finishes after a newer one does not replace it.
+    void put(String groupId, long fetchedAtNanos, Map<String, IotDeviceGroup.TemperatureReading> temperatures) {
+        Entry current = entries.get(groupId);
+        if (current == null || current.fetchedAtNanos - fetchedAtNanos <= 0) {
+            entries.put(groupId, new Entry(fetchedAtNanos, temperatures));
+        }
+    }
+
+    void remove(String groupId) {
+        entries.remove(groupId);
+    }
+
+    // The group's readings if they were fetched at most maxStalenessNanos before nowNanos, else null.
+    Map<String, IotDeviceGroup.TemperatureReading> fresh(String groupId, long nowNanos, long maxStalenessNanos) {
+        Entry entry = entries.get(groupId);
+        return entry != null && nowNanos - entry.fetchedAtNanos <= maxStalenessNanos ? entry.temperatures : null;
+    }
+}
@@ -0,0 +1,42 @@
+package com.lightbend.akka.iot;
+
+import com.typesafe.config.Config;
+
+import java.util.concurrent.TimeUnit;
+
+// Decides how long a group temperature query waits for a device before answering for it from the
+// group's last known reading: the configured percentile of recent device read latencies, kept
+// within [minDelay, maxDelay] the way AdaptiveTimeout keeps a query timeout, so reads that miss
+// the delay make it back off. Not thread safe.
+final class HedgingPolicy {
+    private final boolean enabled;
+    private final AdaptiveTimeout delay;
+
+    HedgingPolicy(boolean enabled, double percentile, long minDelayNanos, long maxDelayNanos, long minSamples,
+                  long windowSamples) {
+        this.enabled = enabled;
+        this.delay = new AdaptiveTimeout(percentile, 1.0, minDelayNanos, maxDelayNanos, minSamples, windowSamples);
+    }
+
+    static HedgingPolicy fromConfig(Config config) {
+        return new HedgingPolicy(config.getBoolean("enabled"), config.getDouble("percentile"),
+                config.getDuration("min-delay", TimeUnit.NANOSECONDS),
+                config.getDuration("max-delay", TimeUnit.NANOSECONDS),
+                config.getLong("min-samples"), config.getLong("window-samples"));
+    }
+
+    boolean enabled() {
+        return enabled;
+    }
+
+    // Long.MAX_VALUE when hedging is off.
+    long delayNanos() {
+        return enabled ? delay.timeoutNanos() : Long.MAX_VALUE;
+    }
+
+    // answeredNanos are the latencies of the reads that were answered; unanswered reads were given
+    // up on after waitedNanos.
+    void observe(long[] answeredNanos, int unanswered, long waitedNanos) {
+        delay.observe(answeredNanos, unanswered, waitedNanos);
+    }
+}
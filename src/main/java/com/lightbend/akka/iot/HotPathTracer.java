@@ -0,0 +1,175 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.ActorSystem;
+import akka.event.LoggingAdapter;
+import com.typesafe.config.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Sampled, fixed-size event recorder for the per-message paths of the iot actors.
+// Recording an event only writes into primitive arrays, which start small and double until they
+// reach the buffer size. Not thread safe: each actor owns its own tracer.
+public final class HotPathTracer {
+
+    public enum TraceEvent {
+        TRACK_DEVICE,
+        READ_TEMPERATURE,
+        RECORD_TEMPERATURE,
+        REQUEST_ALL_TEMPERATURES,
+        REQUEST_DEVICE_LIST,
+        REQUEST_GROUP_LIST,
+        REQUEST_DEVICE_GROUP_BY_ID,
+        REQUEST_ALL_GROUP_TEMPERATURES,
+        RECORD_GROUP_TEMPERATURES
+    }
+
+    public static final class DumpTrace {
+        final long requestId;
+
+        public DumpTrace(long requestId) {
+            this.requestId = requestId;
+        }
+    }
+
+    public static final class TraceDump {
+        final long requestId;
+        final String owner;
+        final List<TraceRecord> records;
+
+        TraceDump(long requestId, String owner, List<TraceRecord> records) {
+            this.requestId = requestId;
+            this.owner = owner;
+            this.records = records;
+        }
+    }
+
+    public static final class TraceRecord {
+        final long nanoTime;
+        final TraceEvent event;
+        final String subject;
+        final long requestId;
+        final double value;
+
+        TraceRecord(long nanoTime, TraceEvent event, String subject, long requestId, double value) {
+            this.nanoTime = nanoTime;
+            this.event = event;
+            this.subject = subject;
+            this.requestId = requestId;
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return "TraceRecord{" +
+                    "nanoTime=" + nanoTime +
+                    ", event=" + event +
+                    ", subject='" + subject + '\'' +
+                    ", requestId=" + requestId +
+                    ", value=" + value +
+                    '}';
+        }
+    }
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final int sampleEvery;
+    private final int mask;
+    // Allocated with the first sampled event and grown as records arrive; only wraps once full size.
+    private long[] nanoTimes;
+    private TraceEvent[] events;
+    private String[] subjects;
+    private long[] requestIds;
+    private double[] values;
+
+    private long seen = 0L;
+    private long written = 0L;
+
+    HotPathTracer(int sampleEvery, int bufferSize) {
+        if (sampleEvery < 0) {
+            throw new IllegalArgumentException("sampleEvery must not be negative: " + sampleEvery);
+        }
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+        }
+        int capacity = Integer.highestOneBit(bufferSize);
+        if (capacity < bufferSize) {
+            capacity <<= 1;
+        }
+        this.sampleEvery = sampleEvery;
+        this.mask = capacity - 1;
+    }
+
+    public static HotPathTracer create(ActorSystem system) {
+        Config config = system.settings().config().getConfig("iot.tracing");
+        return new HotPathTracer(config.getInt("sample-every"), config.getInt("buffer-size"));
+    }
+
+    // Devices number in the millions, so each keeps only the last few records.
+    public static HotPathTracer createForDevice(ActorSystem system) {
+        Config config = system.settings().config().getConfig("iot.tracing");
+        return new HotPathTracer(config.getInt("sample-every"), config.getInt("device-buffer-size"));
+    }
+
+    public void trace(TraceEvent event, String subject, long requestId) {
+        trace(event, subject, requestId, Double.NaN);
+    }
+
+    public void trace(TraceEvent event, String subject, long requestId, double value) {
+        if (sampleEvery == 0 || ++seen % sampleEvery != 0) {
+            return;
+        }
+        if (nanoTimes == null) {
+            allocate(Math.min(INITIAL_CAPACITY, capacity()));
+        } else if (written == nanoTimes.length && written < capacity()) {
+            allocate(nanoTimes.length << 1);
+        }
+        int slot = (int) (written++ & (nanoTimes.length - 1));
+        nanoTimes[slot] = System.nanoTime();
+        events[slot] = event;
+        subjects[slot] = subject;
+        requestIds[slot] = requestId;
+        values[slot] = value;
+    }
+
+    private void allocate(int length) {
+        if (nanoTimes == null) {
+            nanoTimes = new long[length];
+            events = new TraceEvent[length];
+            subjects = new String[length];
+            requestIds = new long[length];
+            values = new double[length];
+        } else {
+            nanoTimes = Arrays.copyOf(nanoTimes, length);
+            events = Arrays.copyOf(events, length);
+            subjects = Arrays.copyOf(subjects, length);
+            requestIds = Arrays.copyOf(requestIds, length);
+            values = Arrays.copyOf(values, length);
+        }
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    // Oldest record first.
+    public List<TraceRecord> snapshot() {
+        int size = (int) Math.min(written, capacity());
+        if (size == 0) {
+            return Collections.emptyList();
+        }
+        List<TraceRecord> records = new ArrayList<>(size);
+        for (long i = written - size; i < written; i++) {
+            int slot = (int) (i & mask);
+            records.add(new TraceRecord(nanoTimes[slot], events[slot], subjects[slot], requestIds[slot], values[slot]));
+        }
+        return records;
+    }
+
+    public void dumpTo(LoggingAdapter log, String reason) {
+        List<TraceRecord> records = snapshot();
+        log.warning("Dumping {} sampled trace records ({}): {}", records.size(), reason, records);
+    }
+}
@@ -0,0 +1,63 @@
+package com.lightbend.akka.iot;
+
+import com.lightbend.akka.iot.IotDeviceGroup.DeviceTemperature;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+// Devices of one group ordered hottest first, updated in O(log n) per reading so that the
+// top K can be read off the head without sorting the group. Only devices with a current, finite
+// reading are ranked: the group removes a device whose reading goes stale.
+final class HottestDevices {
+    static final Comparator<DeviceTemperature> HOTTEST_FIRST =
+            Comparator.comparingDouble((DeviceTemperature t) -> t.value).reversed()
+                    .thenComparing(t -> t.groupId)
+                    .thenComparing(t -> t.deviceId);
+
+    private final String groupId;
+    private final TreeSet<DeviceTemperature> ordered = new TreeSet<>(HOTTEST_FIRST);
+    private final Map<String, DeviceTemperature> byDeviceId = new HashMap<>();
+
+    HottestDevices(String groupId) {
+        this.groupId = groupId;
+    }
+
+    void update(String deviceId, double value) {
+        // NaN would sort above every reading, and the previous value is no longer current.
+        if (!Double.isFinite(value)) {
+            remove(deviceId);
+            return;
+        }
+        DeviceTemperature previous = byDeviceId.get(deviceId);
+        if (previous != null) {
+            if (previous.value == value) {
+                return;
+            }
+            ordered.remove(previous);
+        }
+        DeviceTemperature current = new DeviceTemperature(groupId, deviceId, value);
+        ordered.add(current);
+        byDeviceId.put(deviceId, current);
+    }
+
+    void remove(String deviceId) {
+        DeviceTemperature previous = byDeviceId.remove(deviceId);
+        if (previous != null) {
+            ordered.remove(previous);
+        }
+    }
+
+    List<DeviceTemperature> top(int k) {
+        List<DeviceTemperature> top = new ArrayList<>(Math.min(k, ordered.size()));
+        Iterator<DeviceTemperature> it = ordered.iterator();
+        while (top.size() < k && it.hasNext()) {
+            top.add(it.next());
+        }
+        return top;
+    }
+}
@@ -0,0 +1,55 @@
+package com.lightbend.akka.iot;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// Collects decoded readings per group between flushes. The per-group arrays are kept and reused
+// across reads, so a packet only allocates the right-sized copies that go out in the batch.
+final class IngestionBatcher {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MAX_IDLE_GROUPS = 1024;
+
+    private static final class Batch {
+        String[] deviceIds = new String[INITIAL_CAPACITY];
+        double[] values = new double[INITIAL_CAPACITY];
+        int size = 0;
+
+        void add(String deviceId, double value) {
+            if (size == values.length) {
+                deviceIds = Arrays.copyOf(deviceIds, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            deviceIds[size] = deviceId;
+            values[size] = value;
+            size++;
+        }
+    }
+
+    private final Map<String, Batch> batches = new HashMap<>();
+    private long nextRequestId = 0L;
+
+    void add(String groupId, String deviceId, double value) {
+        batches.computeIfAbsent(groupId, id -> new Batch()).add(deviceId, value);
+    }
+
+    // Emits one RecordGroupTemperatures per group with pending readings; returns how many.
+    int flush(Consumer<IotDeviceManager.RecordGroupTemperatures> sink) {
+        int sent = 0;
+        for (Map.Entry<String, Batch> entry : batches.entrySet()) {
+            Batch batch = entry.getValue();
+            if (batch.size > 0) {
+                sink.accept(new IotDeviceManager.RecordGroupTemperatures(nextRequestId++, entry.getKey(),
+                        Arrays.copyOf(batch.deviceIds, batch.size), Arrays.copyOf(batch.values, batch.size)));
+                Arrays.fill(batch.deviceIds, 0, batch.size, null);
+                batch.size = 0;
+                sent++;
+            }
+        }
+        if (batches.size() > MAX_IDLE_GROUPS) {
+            batches.clear();
+        }
+        return sent;
+    }
+}
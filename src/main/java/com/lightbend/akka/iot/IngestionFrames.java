@@ -0,0 +1,101 @@
+package com.lightbend.akka.iot;
+
+import akka.util.ByteIterator;
+import akka.util.ByteString;
+import akka.util.ByteStringBuilder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+// Binary framing of readings sent to the ingestion gateway, all integers big-endian:
+//
+//   frame := u16:bodyLength u8:groupLength group-utf8 u8:deviceLength device-utf8 f64:value
+//
+// A TCP stream is a sequence of frames that may be split anywhere; a UDP datagram carries whole
+// frames only.
+final class IngestionFrames {
+    static final ByteOrder ORDER = ByteOrder.BIG_ENDIAN;
+    static final int MAX_ID_BYTES = 255;
+
+    interface ReadingConsumer {
+        void accept(String groupId, String deviceId, double value);
+    }
+
+    static final class MalformedFrameException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        MalformedFrameException(String message) {
+            super(message);
+        }
+    }
+
+    private IngestionFrames() {
+    }
+
+    // Decodes every complete frame at the start of data and returns the number of bytes consumed;
+    // a trailing partial frame is left for the caller to prepend to the next read.
+    static int decode(ByteString data, ReadingConsumer consumer) {
+        ByteIterator it = data.iterator();
+        int length = data.length();
+        int offset = 0;
+        while (length - offset >= 2) {
+            int bodyLength = ((data.apply(offset) & 0xff) << 8) | (data.apply(offset + 1) & 0xff);
+            if (length - offset - 2 < bodyLength) {
+                break;
+            }
+            it.getShort(ORDER);
+            if (bodyLength < 10) {
+                throw new MalformedFrameException("Frame of " + bodyLength + " bytes is too short");
+            }
+            int groupLength = it.getByte() & 0xff;
+            if (groupLength + 10 > bodyLength) {
+                throw new MalformedFrameException("Group id of " + groupLength + " bytes overruns its frame");
+            }
+            String groupId = new String(it.getBytes(groupLength), StandardCharsets.UTF_8);
+            int deviceLength = it.getByte() & 0xff;
+            if (groupLength + deviceLength + 10 != bodyLength) {
+                throw new MalformedFrameException("Frame length " + bodyLength + " does not match its contents");
+            }
+            if (groupLength == 0 || deviceLength == 0) {
+                throw new MalformedFrameException("Frame with an empty group or device id");
+            }
+            String deviceId = new String(it.getBytes(deviceLength), StandardCharsets.UTF_8);
+            consumer.accept(groupId, deviceId, it.getDouble(ORDER));
+            offset += 2 + bodyLength;
+        }
+        return offset;
+    }
+
+    static ByteString encode(String groupId, String deviceId, double value) {
+        byte[] group = idBytes(groupId);
+        byte[] device = idBytes(deviceId);
+        ByteStringBuilder builder = ByteString.createBuilder();
+        builder.putShort(group.length + device.length + 10, ORDER)
+                .putByte((byte) group.length).putBytes(group)
+                .putByte((byte) device.length).putBytes(device)
+                .putDouble(value, ORDER);
+        return builder.result();
+    }
+
+    // For clients writing straight into NIO buffers; returns false if the frame does not fit.
+    static boolean encode(ByteBuffer target, byte[] group, byte[] device, double value) {
+        if (target.remaining() < group.length + device.length + 12) {
+            return false;
+        }
+        target.order(ORDER)
+                .putShort((short) (group.length + device.length + 10))
+                .put((byte) group.length).put(group)
+                .put((byte) device.length).put(device)
+                .putDouble(value);
+        return true;
+    }
+
+    static byte[] idBytes(String id) {
+        byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_ID_BYTES) {
+            throw new IllegalArgumentException("Id longer than " + MAX_ID_BYTES + " bytes: " + id);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,185 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Props;
+import akka.actor.Terminated;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+import akka.japi.pf.ReceiveBuilder;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+// The alarm of one device group, driven by the group's alerting rules. Like the sample Alarm it
+// switches between an armed and a disarmed behaviour with become. Both keep track of which rules
+// are raised for which device; only an armed alarm tells its subscribers about raised and cleared
+// alerts, and arming it tells them the alerts that are raised at that moment.
+public class IotAlarm extends AbstractActor {
+    private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
+
+    // Messages the group forwards to its alarm.
+    interface Command {
+    }
+
+    public static final class Arm implements Command {
+    }
+
+    public static final class Disarm implements Command {
+    }
+
+    // The subscriber gets AlertRaised and AlertCleared while the alarm is armed, until it stops.
+    public static final class SubscribeAlerts implements Command {
+        final ActorRef subscriber;
+
+        public SubscribeAlerts(ActorRef subscriber) {
+            this.subscriber = subscriber;
+        }
+    }
+
+    public static final class RequestActiveAlerts implements Command {
+        final long requestId;
+
+        public RequestActiveAlerts(long requestId) {
+            this.requestId = requestId;
+        }
+    }
+
+    public static final class ActiveAlerts {
+        final long requestId;
+        final String groupId;
+        final boolean armed;
+        // Rule names by device id.
+        final Map<String, Set<String>> rulesByDevice;
+
+        ActiveAlerts(long requestId, String groupId, boolean armed, Map<String, Set<String>> rulesByDevice) {
+            this.requestId = requestId;
+            this.groupId = groupId;
+            this.armed = armed;
+            this.rulesByDevice = rulesByDevice;
+        }
+    }
+
+    // value and recordedAt are those of the reading that raised or cleared the rule; a rule cleared
+    // because its device stopped or the rules were replaced has NaN and 0.
+    public static final class AlertRaised {
+        final String groupId;
+        final String deviceId;
+        final String rule;
+        final double value;
+        final long recordedAt;
+
+        AlertRaised(String groupId, String deviceId, String rule, double value, long recordedAt) {
+            this.groupId = groupId;
+            this.deviceId = deviceId;
+            this.rule = rule;
+            this.value = value;
+            this.recordedAt = recordedAt;
+        }
+    }
+
+    public static final class AlertCleared {
+        final String groupId;
+        final String deviceId;
+        final String rule;
+        final double value;
+        final long recordedAt;
+
+        AlertCleared(String groupId, String deviceId, String rule, double value, long recordedAt) {
+            this.groupId = groupId;
+            this.deviceId = deviceId;
+            this.rule = rule;
+            this.value = value;
+            this.recordedAt = recordedAt;
+        }
+    }
+
+    private final String groupId;
+    private final Set<ActorRef> subscribers = new HashSet<>();
+    private final Map<String, Map<String, AlertRaised>> raisedByDevice = new HashMap<>();
+
+    private IotAlarm(String groupId) {
+        this.groupId = groupId;
+    }
+
+    public static Props props(String groupId) {
+        return Props.create(IotAlarm.class, () -> new IotAlarm(groupId));
+    }
+
+    @Override
+    public Receive createReceive() {
+        return armedReceive();
+    }
+
+    private Receive armedReceive() {
+        return common(true)
+                .match(Disarm.class, msg -> {
+                    log.info("Disarming alarm of group {}", groupId);
+                    getContext().become(disarmedReceive());
+                })
+                .match(Arm.class, msg -> {
+                })
+                .match(AlertRaised.class, msg -> {
+                    onRaised(msg);
+                    notifySubscribers(msg);
+                })
+                .match(AlertCleared.class, msg -> {
+                    if (onCleared(msg)) {
+                        notifySubscribers(msg);
+                    }
+                })
+                .build();
+    }
+
+    private Receive disarmedReceive() {
+        return common(false)
+                .match(Arm.class, msg -> {
+                    log.info("Arming alarm of group {} with {} devices alerting", groupId, raisedByDevice.size());
+                    raisedByDevice.values().forEach(raised -> raised.values().forEach(this::notifySubscribers));
+                    getContext().become(armedReceive());
+                })
+                .match(Disarm.class, msg -> {
+                })
+                .match(AlertRaised.class, this::onRaised)
+                .match(AlertCleared.class, this::onCleared)
+                .build();
+    }
+
+    private ReceiveBuilder common(boolean armed) {
+        return receiveBuilder()
+                .match(SubscribeAlerts.class, msg -> {
+                    if (subscribers.add(msg.subscriber)) {
+                        getContext().watch(msg.subscriber);
+                    }
+                })
+                .match(Terminated.class, t -> subscribers.remove(t.getActor()))
+                .match(RequestActiveAlerts.class, r -> {
+                    Map<String, Set<String>> rulesByDevice = new HashMap<>();
+                    raisedByDevice.forEach((deviceId, raised) -> rulesByDevice.put(deviceId, new HashSet<>(raised.keySet())));
+                    getSender().tell(new ActiveAlerts(r.requestId, groupId, armed, rulesByDevice), getSelf());
+                });
+    }
+
+    private void onRaised(AlertRaised msg) {
+        log.debug("Rule {} raised for device {} of group {} at {}", msg.rule, msg.deviceId, groupId, msg.value);
+        raisedByDevice.computeIfAbsent(msg.deviceId, deviceId -> new HashMap<>()).put(msg.rule, msg);
+    }
+
+    private boolean onCleared(AlertCleared msg) {
+        Map<String, AlertRaised> raised = raisedByDevice.get(msg.deviceId);
+        if (raised == null || raised.remove(msg.rule) == null) {
+            return false;
+        }
+        log.debug("Rule {} cleared for device {} of group {}", msg.rule, msg.deviceId, groupId);
+        if (raised.isEmpty()) {
+            raisedByDevice.remove(msg.deviceId);
+        }
+        return true;
+    }
+
+    private void notifySubscribers(Object alert) {
+        subscribers.forEach(subscriber -> subscriber.tell(alert, getSelf()));
+    }
+}
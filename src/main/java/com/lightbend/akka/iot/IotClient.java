@@ -0,0 +1,209 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.ActorRef;
+import akka.dispatch.ExecutionContexts;
+import akka.dispatch.OnComplete;
+import akka.pattern.Patterns;
+import akka.util.Timeout;
+import scala.concurrent.ExecutionContext;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Typed, non-blocking access to an IotSupervisor hierarchy. Every call is an ask that completes
+// its stage from the reply, so callers can keep many requests in flight from a single thread.
+// Request ids come from one counter per client. Stages fail with AskTimeoutException when no
+// reply arrives in time and with OverloadedException when a group or manager sheds the query.
+// Non-async continuations run on the thread that delivered the reply, so keep them short or use
+// the *Async variants. Safe to share between threads.
+public final class IotClient {
+
+    public static final class OverloadedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        private final String owner;
+
+        OverloadedException(String owner) {
+            super(owner + " is overloaded");
+            this.owner = owner;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+    }
+
+    private static final ExecutionContext CALLING_THREAD = ExecutionContexts.fromExecutor(Runnable::run);
+
+    private final ActorRef supervisor;
+    private final Timeout timeout;
+    private final AtomicLong requestIds = new AtomicLong();
+
+    public IotClient(ActorRef supervisor, Duration timeout) {
+        this.supervisor = supervisor;
+        this.timeout = Timeout.create(timeout);
+    }
+
+    // Creates the manager if needed and resolves to its actor.
+    public CompletionStage<ActorRef> trackDeviceManager(String managerId) {
+        return ask(supervisor, new IotSupervisor.TrackDeviceManager(nextRequestId(), managerId),
+                IotSupervisor.DeviceManagerRegistered.class)
+                .thenCompose(registered -> deviceManager(managerId));
+    }
+
+    public CompletionStage<Set<String>> deviceManagerIds() {
+        return ask(supervisor, new IotSupervisor.RequestDeviceManagerList(nextRequestId()),
+                IotSupervisor.ReplyDeviceManagerList.class)
+                .thenApply(reply -> reply.ids);
+    }
+
+    public CompletionStage<ActorRef> deviceManager(String managerId) {
+        return ask(supervisor, new IotSupervisor.RequestDeviceManagerById(nextRequestId(), managerId),
+                IotSupervisor.ResponseDeviceManagerById.class)
+                .thenApply(reply -> reply.deviceManager);
+    }
+
+    // Creates the group and device if needed and resolves to the device actor.
+    public CompletionStage<ActorRef> trackDevice(ActorRef deviceManager, String groupId, String deviceId) {
+        return ask(deviceManager, new IotDeviceManager.RequestTrackDevice(groupId, deviceId),
+                IotDeviceManager.DeviceRegistered.class)
+                .thenApply(reply -> reply.device);
+    }
+
+    public CompletionStage<ActorRef> deviceGroup(ActorRef deviceManager, String groupId) {
+        return ask(deviceManager, new IotDeviceManager.RequestDeviceGroupById(nextRequestId(), groupId),
+                IotDeviceManager.RespondDeviceGroupById.class)
+                .thenApply(reply -> reply.deviceGroupActor);
+    }
+
+    public CompletionStage<Void> recordTemperature(ActorRef device, double value) {
+        return ask(device, new IotDevice.RecordTemperature(nextRequestId(), value), IotDevice.TemperatureRecorded.class)
+                .thenApply(reply -> null);
+    }
+
+    // Hands the group's device ids to pageConsumer one page at a time; the next page is only asked
+    // for once the consumer has returned.
+    public CompletionStage<Void> forEachDeviceIdPage(ActorRef deviceGroup, int pageSize,
+                                                     Consumer<List<String>> pageConsumer) {
+        return devicePagesFrom(deviceGroup, null, pageSize, pageConsumer);
+    }
+
+    private CompletionStage<Void> devicePagesFrom(ActorRef deviceGroup, String cursor, int pageSize,
+                                                  Consumer<List<String>> pageConsumer) {
+        return ask(deviceGroup, new IotDeviceGroup.RequestDeviceListPage(nextRequestId(), cursor, pageSize),
+                IotDeviceGroup.DeviceListPage.class)
+                .thenCompose(page -> {
+                    pageConsumer.accept(page.deviceIds);
+                    return page.nextCursor == null
+                            ? CompletableFuture.<Void>completedFuture(null)
+                            : devicePagesFrom(deviceGroup, page.nextCursor, pageSize, pageConsumer);
+                });
+    }
+
+    // The same for the group ids of a device manager.
+    public CompletionStage<Void> forEachGroupIdPage(ActorRef deviceManager, int pageSize,
+                                                    Consumer<List<String>> pageConsumer) {
+        return groupPagesFrom(deviceManager, null, pageSize, pageConsumer);
+    }
+
+    private CompletionStage<Void> groupPagesFrom(ActorRef deviceManager, String cursor, int pageSize,
+                                                 Consumer<List<String>> pageConsumer) {
+        return ask(deviceManager, new IotDeviceManager.RequestGroupListPage(nextRequestId(), cursor, pageSize),
+                IotDeviceManager.GroupListPage.class)
+                .thenCompose(page -> {
+                    pageConsumer.accept(page.groupIds);
+                    return page.nextCursor == null
+                            ? CompletableFuture.<Void>completedFuture(null)
+                            : groupPagesFrom(deviceManager, page.nextCursor, pageSize, pageConsumer);
+                });
+    }
+
+    public CompletionStage<Optional<Double>> readTemperature(ActorRef device) {
+        return ask(device, new IotDevice.ReadTemperature(nextRequestId()), IotDevice.RespondTemperature.class)
+                .thenApply(IotDevice.RespondTemperature::getValue);
+    }
+
+    public CompletionStage<Map<String, IotDeviceGroup.TemperatureReading>> groupTemperatures(ActorRef deviceGroup) {
+        return ask(deviceGroup, new IotDeviceGroup.RequestAllTemperatures(nextRequestId()),
+                IotDeviceGroup.RespondAllTemperatures.class)
+                .thenApply(reply -> reply.temperatures);
+    }
+
+    public CompletionStage<Map<String, IotDeviceGroup.TemperatureReading>> groupTemperatures(
+            ActorRef deviceGroup, TemperaturePredicate predicate) {
+        return ask(deviceGroup, new IotDeviceGroup.RequestAllTemperatures(nextRequestId(), predicate),
+                IotDeviceGroup.RespondAllTemperatures.class)
+                .thenApply(reply -> reply.temperatures);
+    }
+
+    public CompletionStage<Map<String, IotDeviceManager.DeviceGroupTemperatureReading>> managerTemperatures(
+            ActorRef deviceManager) {
+        return managerTemperatures(deviceManager, TemperaturePredicate.all());
+    }
+
+    public CompletionStage<Map<String, IotDeviceManager.DeviceGroupTemperatureReading>> managerTemperatures(
+            ActorRef deviceManager, TemperaturePredicate predicate) {
+        return ask(deviceManager, new IotDeviceManager.RequestAllGroupTemperatures(nextRequestId(), predicate),
+                IotDeviceManager.RespondAllGroupTemperatures.class)
+                .thenApply(reply -> reply.groupTemperatures);
+    }
+
+    // Groups the manager read at most maxStaleness ago are answered from its cache.
+    public CompletionStage<Map<String, IotDeviceManager.DeviceGroupTemperatureReading>> managerTemperatures(
+            ActorRef deviceManager, TemperaturePredicate predicate, Duration maxStaleness) {
+        return ask(deviceManager, new IotDeviceManager.RequestAllGroupTemperatures(nextRequestId(), null, predicate,
+                        FiniteDuration.fromNanos(maxStaleness.toNanos())),
+                IotDeviceManager.RespondAllGroupTemperatures.class)
+                .thenApply(reply -> reply.groupTemperatures);
+    }
+
+    public CompletionStage<IotSupervisor.RespondFleetTemperatures> fleetTemperatures() {
+        return ask(supervisor, new IotSupervisor.RequestFleetTemperatures(nextRequestId()),
+                IotSupervisor.RespondFleetTemperatures.class);
+    }
+
+    // Bootstrapping a large topology takes longer than ordinary requests, so it has its own timeout.
+    public CompletionStage<IotSupervisor.TopologyBootstrapped> bootstrap(IotTopology topology, Duration timeout) {
+        return ask(supervisor, new IotSupervisor.BootstrapTopology(nextRequestId(), topology),
+                IotSupervisor.TopologyBootstrapped.class, Timeout.create(timeout));
+    }
+
+    private long nextRequestId() {
+        return requestIds.incrementAndGet();
+    }
+
+    // Completes a plain CompletableFuture from the ask's Scala future on the replying thread. The
+    // stage from the java.time.Duration overload of Patterns.ask runs every thenApply asynchronously
+    // on the common pool, which costs a thread hop per stage and dominated pipelined throughput.
+    private <R> CompletionStage<R> ask(ActorRef target, Object message, Class<R> replyClass) {
+        return ask(target, message, replyClass, timeout);
+    }
+
+    private <R> CompletionStage<R> ask(ActorRef target, Object message, Class<R> replyClass, Timeout timeout) {
+        CompletableFuture<R> result = new CompletableFuture<>();
+        Patterns.ask(target, message, timeout).onComplete(new OnComplete<Object>() {
+            @Override
+            public void onComplete(Throwable failure, Object reply) {
+                if (failure != null) {
+                    result.completeExceptionally(failure);
+                } else if (reply instanceof QueryAdmission.Overloaded) {
+                    result.completeExceptionally(new OverloadedException(((QueryAdmission.Overloaded) reply).owner));
+                } else if (replyClass.isInstance(reply)) {
+                    result.complete(replyClass.cast(reply));
+                } else {
+                    // Throwing here would leave the future incomplete, as nothing observes this callback.
+                    result.completeExceptionally(new ClassCastException(
+                            "Expected " + replyClass.getName() + " but got " + reply));
+                }
+            }
+        }, CALLING_THREAD);
+        return result;
+    }
+}
@@ -4,11 +4,14 @@ import akka.actor.AbstractActor;
 import akka.actor.Props;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
+import com.lightbend.akka.iot.HotPathTracer.TraceEvent;
+import com.typesafe.config.Config;
 
 import java.util.Optional;
 
 public class IotDevice extends AbstractActor {
     private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
+    private final HotPathTracer tracer = HotPathTracer.createForDevice(getContext().getSystem());
 
     public static Props props(String groupId, String deviceId) {
         return Props.create(IotDevice.class, () -> new IotDevice(groupId, deviceId));
@@ -18,9 +21,18 @@ public class IotDevice extends AbstractActor {
 
     private final String deviceId;
 
+    private final DeviceHistory history;
+
+    private final PendingReadings pending;
+
     private IotDevice(String groupId, String deviceId) {
         this.groupId = groupId;
         this.deviceId = deviceId;
+        Config config = getContext().getSystem().settings().config();
+        this.history = new DeviceHistory(config.getInt("iot.history.block-samples"),
+                config.getInt("iot.history.max-sealed-blocks"));
+        this.pending = new PendingReadings(config.getInt("iot.device.pending-readings"),
+                Math.max(1, config.getInt("iot.history.max-sealed-blocks")));
     }
 
     public static final class RecordTemperature {
@@ -52,10 +64,17 @@ public class IotDevice extends AbstractActor {
     public static final class RespondTemperature {
         public final long requestId;
         private final Double value;
+        // When the value was recorded, 0 without a value.
+        final long recordedAt;
 
         RespondTemperature(long requestId, Double value) {
+            this(requestId, value, 0L);
+        }
+
+        RespondTemperature(long requestId, Double value, long recordedAt) {
             this.requestId = requestId;
             this.value = value;
+            this.recordedAt = recordedAt;
         }
 
         @SuppressWarnings("unused")
@@ -64,16 +83,47 @@ public class IotDevice extends AbstractActor {
         }
     }
 
+    public static final class ReadHistory {
+        final long requestId;
+        final long from;
+        final long to;
+
+        public ReadHistory(long requestId, long from, long to) {
+            this.requestId = requestId;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    public static final class RespondHistory {
+        final long requestId;
+        final long[] timestamps;
+        final double[] values;
+
+        RespondHistory(long requestId, long[] timestamps, double[] values) {
+            this.requestId = requestId;
+            this.timestamps = timestamps;
+            this.values = values;
+        }
+    }
+
     private Double lastTemperatureReading = null;
+    private long lastRecordedAt = 0L;
 
     @Override
     public void preStart() {
-        log.info("IotDevice actor {}-{} started", groupId, deviceId);
+        log.debug("IotDevice actor {}-{} started", groupId, deviceId);
     }
 
     @Override
     public void postStop() {
-        log.info("IotDevice actor {}-{} stopped", groupId, deviceId);
+        log.debug("IotDevice actor {}-{} stopped", groupId, deviceId);
+    }
+
+    @Override
+    public void preRestart(Throwable reason, Optional<Object> message) throws Exception {
+        tracer.dumpTo(log, "IotDevice " + groupId + "-" + deviceId + " failed: " + reason);
+        super.preRestart(reason, message);
     }
 
     @Override
@@ -81,22 +131,46 @@ public class IotDevice extends AbstractActor {
         return receiveBuilder()
                 .match(IotDeviceManager.RequestTrackDevice.class, this::onRequestTrackDevice)
                 .match(ReadTemperature.class, r -> {
-                    log.info("Handling request {} for temperature reading", r.requestId);
+                    log.debug("Handling request {} for temperature reading", r.requestId);
+                    tracer.trace(TraceEvent.READ_TEMPERATURE, deviceId, r.requestId);
                     getSender()
-                            .tell(new RespondTemperature(r.requestId, lastTemperatureReading), getSelf());
+                            .tell(new RespondTemperature(r.requestId, lastTemperatureReading, lastRecordedAt), getSelf());
                 })
                 .match(RecordTemperature.class, r -> {
-                    log.info("Recorded temperature reading {} with {}", r.value, r.requestId);
+                    log.debug("Recorded temperature reading {} with {}", r.value, r.requestId);
+                    tracer.trace(TraceEvent.RECORD_TEMPERATURE, deviceId, r.requestId, r.value);
+                    long recordedAt = System.currentTimeMillis();
                     lastTemperatureReading = r.value;
-                    getSender().tell(new TemperatureRecorded(r.requestId), getSelf());
+                    lastRecordedAt = recordedAt;
+                    GorillaBlock sealed = history.append(recordedAt, r.value);
+                    boolean tellGroup = sealed != null && pending.addBlock(sealed);
+                    tellGroup |= pending.add(r.value, recordedAt);
+                    if (tellGroup) {
+                        getContext().getParent().tell(new IotDeviceGroup.DeviceReadingsPending(deviceId, pending), getSelf());
+                    }
+                    // Gateway batches arrive without a sender and are acknowledged by the group instead.
+                    if (getSender() != getContext().getSystem().deadLetters()) {
+                        getSender().tell(new TemperatureRecorded(r.requestId), getSelf());
+                    }
                 })
+                .match(ReadHistory.class, this::onReadHistory)
+                .match(HotPathTracer.DumpTrace.class, d ->
+                        getSender().tell(new HotPathTracer.TraceDump(d.requestId, groupId + "-" + deviceId, tracer.snapshot()), getSelf()))
                 .build();
     }
 
+    private void onReadHistory(ReadHistory r) {
+        log.debug("Handling request {} for history between {} and {}", r.requestId, r.from, r.to);
+        SampleBuffer samples = new SampleBuffer(64);
+        history.forEachInRange(r.from, r.to, samples);
+        getSender().tell(new RespondHistory(r.requestId, samples.timestamps(), samples.values()), getSelf());
+    }
+
     private void onRequestTrackDevice(IotDeviceManager.RequestTrackDevice r) {
-        log.info("Handling request to track device {} of group {}", r.deviceId, r.groupId);
+        log.debug("Handling request to track device {} of group {}", r.deviceId, r.groupId);
+        tracer.trace(TraceEvent.TRACK_DEVICE, r.deviceId, 0L);
         if (this.groupId.equals(r.groupId) && this.deviceId.equals(r.deviceId)) {
-            getSender().tell(new IotDeviceManager.DeviceRegistered(), getSelf());
+            getSender().tell(new IotDeviceManager.DeviceRegistered(groupId, deviceId, getSelf()), getSelf());
         } else {
             log.warning("Ignoring TrackDevice request for {}-{}.  This actor is responsible for {}-{}",
                     r.groupId, r.deviceId, this.groupId, this.deviceId);
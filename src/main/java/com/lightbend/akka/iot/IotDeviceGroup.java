@@ -2,27 +2,83 @@ package com.lightbend.akka.iot;
 
 import akka.actor.AbstractActor;
 import akka.actor.ActorRef;
+import akka.actor.Cancellable;
 import akka.actor.Props;
+import akka.actor.Status;
 import akka.actor.Terminated;
+import akka.dispatch.ControlMessage;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
+import com.lightbend.akka.iot.HotPathTracer.TraceEvent;
+import com.typesafe.config.Config;
 import scala.concurrent.duration.FiniteDuration;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 public class IotDeviceGroup extends AbstractActor {
 
     private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
+    private final HotPathTracer tracer = HotPathTracer.create(getContext().getSystem());
 
     public static Props props(String groupId) {
-        return Props.create(IotDeviceGroup.class, () -> new IotDeviceGroup(groupId));
+        return Props.create(IotDeviceGroup.class, () -> new IotDeviceGroup(groupId))
+                .withMailbox(IotMailbox.OWNER);
     }
 
     private final String groupId;
+    private final int maxHottestK;
+    private final HottestDevices hottestDevices;
+    private final RollupStore rollups;
+    private final Config historyConfig;
+    private final QueryAdmission queryAdmission;
+    private final Set<ActorRef> subscribers = new HashSet<>();
+    private final StalenessWheel stalenessWheel;
+    private final ListingPages listingPages;
+    private final HedgingPolicy hedging;
+    private final AdaptiveTimeout readTimeout;
+    private GroupSegmentStore segmentStore = null;
+    private Cancellable stalenessTimer = null;
+    private AlertRules alertRules = null;
+    private ActorRef alarm = null;
 
     private IotDeviceGroup(String groupId) {
+        Config config = getContext().getSystem().settings().config();
         this.groupId = groupId;
+        this.maxHottestK = config.getInt("iot.top-k.max-k");
+        this.hottestDevices = new HottestDevices(groupId);
+        this.rollups = new RollupStore(config.getDurationList("iot.rollups.windows"),
+                config.getInt("iot.rollups.buckets-retained"), config.getInt("iot.rollups.initial-slots"));
+        this.historyConfig = config.getConfig("iot.history");
+        this.queryAdmission = QueryAdmission.fromConfig(config.getConfig("iot.admission.group"));
+        this.lastRecordedAt = new long[config.getInt("iot.rollups.initial-slots")];
+        this.slotToDeviceId = new String[lastRecordedAt.length];
+        this.listingPages = ListingPages.fromConfig("device", config.getConfig("iot.listing"));
+        this.tombstoneRetention = config.getLong("iot.delta.tombstone-retention");
+        this.stalenessWheel = new StalenessWheel(config.getDuration("iot.staleness.ttl", TimeUnit.MILLISECONDS),
+                config.getInt("iot.staleness.wheel-buckets"), System.currentTimeMillis());
+        this.hedging = HedgingPolicy.fromConfig(config.getConfig("iot.hedging"));
+        this.readTimeout = AdaptiveTimeout.fromConfig(config.getConfig("iot.adaptive-timeout.group"));
+        List<AlertRule> rules = new ArrayList<>();
+        config.getConfigList("iot.alerting.rules").forEach(rule -> rules.add(AlertRule.fromConfig(rule)));
+        if (!rules.isEmpty()) {
+            this.alertRules = new AlertRules(rules, lastRecordedAt.length);
+        }
+    }
+
+    private static final class StalenessTick {
+        static final StalenessTick INSTANCE = new StalenessTick();
     }
 
     public static final class RequestDeviceList {
@@ -43,11 +99,139 @@ public class IotDeviceGroup extends AbstractActor {
         }
     }
 
+    // Device ids in order, pageSize at a time (0 for iot.listing.default-page-size). Pass the
+    // previous page's nextCursor to continue, null to start. A cursor that was not issued by a
+    // device listing is answered with Status.Failure.
+    public static final class RequestDeviceListPage {
+        final long requestId;
+        final String cursor;
+        final int pageSize;
+
+        public RequestDeviceListPage(long requestId, String cursor, int pageSize) {
+            this.requestId = requestId;
+            this.cursor = cursor;
+            this.pageSize = pageSize;
+        }
+    }
+
+    // nextCursor is null on the last page.
+    public static final class DeviceListPage {
+        final long requestId;
+        final List<String> deviceIds;
+        final String nextCursor;
+
+        DeviceListPage(long requestId, List<String> deviceIds, String nextCursor) {
+            this.requestId = requestId;
+            this.deviceIds = deviceIds;
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    // Replaces the rules evaluated on every accepted reading; alerts raised under the old rules are
+    // cleared. IotAlarm commands sent to the group go to its alarm, which the alerts drive.
+    public static final class SetAlertRules {
+        final List<AlertRule> rules;
+
+        public SetAlertRules(List<AlertRule> rules) {
+            if (rules.size() > AlertRules.MAX_RULES) {
+                throw new IllegalArgumentException(rules.size() + " alert rules, at most " + AlertRules.MAX_RULES + " are supported");
+            }
+            this.rules = List.copyOf(rules);
+        }
+    }
+
+    // Registers an actor for TemperatureUpdate on every accepted reading; it is dropped when it stops.
+    // Sent to a manager, groupId limits the subscription to that group; null means every group.
+    public static final class SubscribeTemperatureUpdates {
+        final ActorRef subscriber;
+        final String groupId;
+
+        public SubscribeTemperatureUpdates(ActorRef subscriber) {
+            this(subscriber, null);
+        }
+
+        public SubscribeTemperatureUpdates(ActorRef subscriber, String groupId) {
+            this.subscriber = subscriber;
+            this.groupId = groupId;
+        }
+    }
+
+    public static final class TemperatureUpdate {
+        final String groupId;
+        final String deviceId;
+        final double value;
+        final long recordedAt;
+
+        TemperatureUpdate(String groupId, String deviceId, double value, long recordedAt) {
+            this.groupId = groupId;
+            this.deviceId = deviceId;
+            this.value = value;
+            this.recordedAt = recordedAt;
+        }
+    }
+
+    public static final class TemperaturesRecorded {
+        final long requestId;
+        final int count;
+
+        TemperaturesRecorded(long requestId, int count) {
+            this.requestId = requestId;
+            this.count = count;
+        }
+    }
+
+    // Creates the devices not tracked yet without acknowledging each; answered with one
+    // DevicesBootstrapped for the whole list.
+    static final class BootstrapDevices implements ControlMessage {
+        final long requestId;
+        final String managerId;
+        final List<String> deviceIds;
+
+        BootstrapDevices(long requestId, String managerId, List<String> deviceIds) {
+            this.requestId = requestId;
+            this.managerId = managerId;
+            this.deviceIds = deviceIds;
+        }
+    }
+
+    static final class DevicesBootstrapped {
+        final long requestId;
+        final String managerId;
+        final String groupId;
+        final int devices;
+
+        DevicesBootstrapped(long requestId, String managerId, String groupId, int devices) {
+            this.requestId = requestId;
+            this.managerId = managerId;
+            this.groupId = groupId;
+            this.devices = devices;
+        }
+    }
+
     public static final class RequestAllTemperatures {
         final long requestId;
+        final TemperaturePredicate predicate;
 
         public RequestAllTemperatures(long requestId) {
+            this(requestId, TemperaturePredicate.all());
+        }
+
+        // Only readings matching the predicate are part of the reply.
+        public RequestAllTemperatures(long requestId, TemperaturePredicate predicate) {
             this.requestId = requestId;
+            this.predicate = predicate;
+        }
+    }
+
+    // Temperatures of just these devices, answered with RespondAllTemperatures. Ids the group does
+    // not know are reported as DeviceNotAvailable.
+    public static final class RequestDeviceTemperatures {
+        final long requestId;
+        final Set<String> deviceIds;
+
+        public RequestDeviceTemperatures(long requestId, Set<String> deviceIds) {
+            this.requestId = requestId;
+            this.deviceIds = Set.copyOf(deviceIds);
         }
     }
 
@@ -61,14 +245,233 @@ public class IotDeviceGroup extends AbstractActor {
         }
     }
 
+    public static final class RequestTemperaturesChangedSince {
+        final long requestId;
+        final long sinceVersion;
+
+        public RequestTemperaturesChangedSince(long requestId, long sinceVersion) {
+            this.requestId = requestId;
+            this.sinceVersion = sinceVersion;
+        }
+    }
+
+    // full is set when the caller is older than a removal the group has since forgotten: temperatures
+    // then holds every device, and devices missing from it have been removed.
+    public static final class RespondTemperaturesChangedSince {
+        final long requestId;
+        final long version;
+        final Map<String, TemperatureReading> temperatures;
+        final boolean full;
+
+        RespondTemperaturesChangedSince(long requestId, long version, Map<String, TemperatureReading> temperatures,
+                                        boolean full) {
+            this.requestId = requestId;
+            this.version = version;
+            this.temperatures = temperatures;
+            this.full = full;
+        }
+    }
+
+    public static final class RequestHottestDevices {
+        final long requestId;
+        final int k;
+
+        public RequestHottestDevices(long requestId, int k) {
+            this.requestId = requestId;
+            this.k = k;
+        }
+    }
+
+    // Hottest first.
+    public static final class RespondHottestDevices {
+        final long requestId;
+        final List<DeviceTemperature> hottest;
+
+        RespondHottestDevices(long requestId, List<DeviceTemperature> hottest) {
+            this.requestId = requestId;
+            this.hottest = hottest;
+        }
+    }
+
+    public static final class DeviceTemperature {
+        final String groupId;
+        final String deviceId;
+        final double value;
+
+        public DeviceTemperature(String groupId, String deviceId, double value) {
+            this.groupId = groupId;
+            this.deviceId = deviceId;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            DeviceTemperature that = (DeviceTemperature) o;
+            return Double.compare(that.value, value) == 0 &&
+                    Objects.equals(groupId, that.groupId) &&
+                    Objects.equals(deviceId, that.deviceId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(groupId, deviceId, value);
+        }
+
+        @Override
+        public String toString() {
+            return "DeviceTemperature{" +
+                    "groupId='" + groupId + '\'' +
+                    ", deviceId='" + deviceId + '\'' +
+                    ", value=" + value +
+                    '}';
+        }
+    }
+
+    // deviceId == null asks for every device of the group.
+    public static final class RequestRollups {
+        final long requestId;
+        final String deviceId;
+        final Duration window;
+
+        public RequestRollups(long requestId, String deviceId, Duration window) {
+            this.requestId = requestId;
+            this.deviceId = deviceId;
+            this.window = window;
+        }
+    }
+
+    // Buckets are oldest first; unknown devices or windows are simply absent.
+    public static final class RespondRollups {
+        final long requestId;
+        final Duration window;
+        final Map<String, List<RollupStore.Rollup>> rollups;
+
+        RespondRollups(long requestId, Duration window, Map<String, List<RollupStore.Rollup>> rollups) {
+            this.requestId = requestId;
+            this.window = window;
+            this.rollups = rollups;
+        }
+    }
+
+    public static final class RequestGroupHistory {
+        final long requestId;
+        final long from;
+        final long to;
+        final int chunkSamples;
+
+        public RequestGroupHistory(long requestId, long from, long to) {
+            this(requestId, from, to, 0);
+        }
+
+        // chunkSamples <= 0 uses iot.history.chunk-samples; sizes above iot.history.max-chunk-samples are clamped.
+        public RequestGroupHistory(long requestId, long from, long to, int chunkSamples) {
+            this.requestId = requestId;
+            this.from = from;
+            this.to = to;
+            this.chunkSamples = chunkSamples;
+        }
+    }
+
+    // One chunk of a history stream, in columns. Reply to the chunk's sender with
+    // RequestNextHistoryChunk to receive the next one; the last chunk has last == true.
+    public static final class GroupHistoryChunk {
+        final long requestId;
+        final long sequenceNr;
+        final String[] deviceIds;
+        final long[] timestamps;
+        final double[] values;
+        final boolean last;
+
+        GroupHistoryChunk(long requestId, long sequenceNr, String[] deviceIds, long[] timestamps,
+                          double[] values, boolean last) {
+            this.requestId = requestId;
+            this.sequenceNr = sequenceNr;
+            this.deviceIds = deviceIds;
+            this.timestamps = timestamps;
+            this.values = values;
+            this.last = last;
+        }
+    }
+
+    public static final class RequestNextHistoryChunk {
+        final long requestId;
+
+        public RequestNextHistoryChunk(long requestId) {
+            this.requestId = requestId;
+        }
+    }
+
+    public static final class RequestExportSnapshot {
+        final long requestId;
+
+        public RequestExportSnapshot(long requestId) {
+            this.requestId = requestId;
+        }
+    }
+
+    // Current reading per device, in columns; devices without a reading have NaN and recordedAt 0.
+    public static final class ExportSnapshot {
+        final long requestId;
+        final String[] deviceIds;
+        final long[] recordedAt;
+        final double[] values;
+
+        ExportSnapshot(long requestId, String[] deviceIds, long[] recordedAt, double[] values) {
+            this.requestId = requestId;
+            this.deviceIds = deviceIds;
+            this.recordedAt = recordedAt;
+            this.values = values;
+        }
+    }
+
+    // Asked by a hedging query for the devices it still waits for; a control message, so the
+    // answer does not queue behind ingestion.
+    static final class RequestLastKnownReadings implements ControlMessage {
+        final Set<String> deviceIds;
+
+        RequestLastKnownReadings(Set<String> deviceIds) {
+            this.deviceIds = deviceIds;
+        }
+    }
+
+    // Devices without a reading yet are absent.
+    static final class LastKnownReadings {
+        final Map<String, TemperatureReading> readings;
+
+        LastKnownReadings(Map<String, TemperatureReading> readings) {
+            this.readings = readings;
+        }
+    }
+
+    // From a device whose PendingReadings went from empty to not empty.
+    static final class DeviceReadingsPending {
+        final String deviceId;
+        final PendingReadings readings;
+
+        DeviceReadingsPending(String deviceId, PendingReadings readings) {
+            this.deviceId = deviceId;
+            this.readings = readings;
+        }
+    }
+
     public interface TemperatureReading {
     }
 
+    // recordedAt is when the device accepted the reading, 0 if unknown. It does not take part in
+    // equality: two readings of the same value are the same temperature.
     public static final class Temperature implements TemperatureReading {
         final double value;
+        final long recordedAt;
 
         public Temperature(double value) {
+            this(value, 0L);
+        }
+
+        public Temperature(double value, long recordedAt) {
             this.value = value;
+            this.recordedAt = recordedAt;
         }
 
         @Override
@@ -88,6 +491,72 @@ public class IotDeviceGroup extends AbstractActor {
         public String toString() {
             return "Temperature{" +
                     "value=" + value +
+                    ", recordedAt=" + recordedAt +
+                    '}';
+        }
+    }
+
+    // The device's last reading is older than iot.staleness.ttl.
+    public static final class StaleTemperature implements TemperatureReading {
+        final double value;
+        final long recordedAt;
+
+        public StaleTemperature(double value, long recordedAt) {
+            this.value = value;
+            this.recordedAt = recordedAt;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            StaleTemperature that = (StaleTemperature) o;
+            return Double.compare(that.value, value) == 0 && recordedAt == that.recordedAt;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(value, recordedAt);
+        }
+
+        @Override
+        public String toString() {
+            return "StaleTemperature{" +
+                    "value=" + value +
+                    ", recordedAt=" + recordedAt +
+                    '}';
+        }
+    }
+
+    // The device did not answer within the hedging delay (see iot.hedging); value is the last
+    // reading the group had seen from it when the query started.
+    public static final class HedgedTemperature implements TemperatureReading {
+        final double value;
+        final long recordedAt;
+
+        public HedgedTemperature(double value, long recordedAt) {
+            this.value = value;
+            this.recordedAt = recordedAt;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            HedgedTemperature that = (HedgedTemperature) o;
+            return Double.compare(that.value, value) == 0 && recordedAt == that.recordedAt;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(value, recordedAt);
+        }
+
+        @Override
+        public String toString() {
+            return "HedgedTemperature{" +
+                    "value=" + value +
+                    ", recordedAt=" + recordedAt +
                     '}';
         }
     }
@@ -106,65 +575,483 @@ public class IotDeviceGroup extends AbstractActor {
 
     private final Map<String, ActorRef> deviceIdToActor = new HashMap<>();
     private final Map<ActorRef, String> actorToDeviceId = new HashMap<>();
+    private final TreeSet<String> sortedDeviceIds = new TreeSet<>();
+
+    // Every tracked, changed or terminated device bumps the version. The change log holds only the
+    // latest version per device, so a delta query walks the devices changed since then and nothing else.
+    // Versions start from the wall clock in nanoseconds, and a group makes far fewer than one change
+    // per nanosecond, so versions from an earlier instance of this group id (before a restart, or
+    // before the group was recreated) are below this instance's first version.
+    private final long firstVersion = epochNanos();
+    private long version = firstVersion;
+    private final Map<String, Long> deviceIdToVersion = new HashMap<>();
+    private final TreeMap<Long, String> changeLog = new TreeMap<>();
+    private final Map<String, TemperatureReading> latestReadings = new HashMap<>();
+
+    // A stopped device stays in the change log for tombstoneRetention versions so delta queries
+    // report its removal; then it is forgotten, and callers older than that get a full reply.
+    private final long tombstoneRetention;
+    private final Deque<Long> tombstones = new ArrayDeque<>();
+    private long forgottenThrough = firstVersion;
+
+    // Scratch space for draining a device's PendingReadings.
+    private double[] pendingValues = new double[0];
+    private long[] pendingRecordedAt = new long[0];
+    private final List<GorillaBlock> pendingBlocks = new ArrayList<>();
+
+    // Compact per-device slots for the primitive stores; freed slots are reused.
+    private final Map<String, Integer> deviceIdToSlot = new HashMap<>();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private long[] lastRecordedAt;
+    private String[] slotToDeviceId;
 
     @Override
     public void preStart() {
         log.info("IotDeviceGroup-{} started", groupId);
+        FiniteDuration tick = FiniteDuration.create(stalenessWheel.tickMillis(), TimeUnit.MILLISECONDS);
+        stalenessTimer = getContext().getSystem().scheduler().schedule(tick, tick, getSelf(), StalenessTick.INSTANCE,
+                getContext().getDispatcher(), getSelf());
     }
 
     @Override
     public void postStop() {
+        if (stalenessTimer != null) {
+            stalenessTimer.cancel();
+        }
+        if (segmentStore != null) {
+            deleteSegments();
+        }
         log.info("IotDeviceGroup-{} stopped", groupId);
     }
 
+    @Override
+    public void preRestart(Throwable reason, Optional<Object> message) throws Exception {
+        tracer.dumpTo(log, "IotDeviceGroup-" + groupId + " failed: " + reason);
+        super.preRestart(reason, message);
+    }
+
     @Override
     public Receive createReceive() {
         return receiveBuilder()
                 .match(IotDeviceManager.RequestTrackDevice.class, this::onTrackDevice)
                 .match(RequestDeviceList.class, this::onDeviceList)
+                .match(RequestDeviceListPage.class, this::onDeviceListPage)
+                .match(IotDeviceManager.RecordGroupTemperatures.class, this::onRecordGroupTemperatures)
+                .match(BootstrapDevices.class, this::onBootstrapDevices)
+                .match(SubscribeTemperatureUpdates.class, msg -> {
+                    if (subscribers.add(msg.subscriber)) {
+                        getContext().watch(msg.subscriber);
+                    }
+                })
                 .match(Terminated.class, this::onTerminated)
                 .match(RequestAllTemperatures.class, this::onRequestAllTemperatures)
+                .match(RequestDeviceTemperatures.class, this::onRequestDeviceTemperatures)
+                .match(DeviceReadingsPending.class, this::onDeviceReadingsPending)
+                .match(SetAlertRules.class, this::onSetAlertRules)
+                .match(IotAlarm.Command.class, command -> alarm().forward(command, getContext()))
+                .match(StalenessTick.class, t -> onStalenessTick())
+                .match(AdaptiveTimeout.RepliesObserved.class, msg -> {
+                    hedging.observe(msg.answeredNanos, msg.unanswered, msg.waitedNanos);
+                    readTimeout.observe(msg.answeredNanos, msg.unanswered, msg.waitedNanos);
+                })
+                .match(RequestTemperaturesChangedSince.class, this::onRequestTemperaturesChangedSince)
+                .match(RequestHottestDevices.class, this::onRequestHottestDevices)
+                .match(RequestRollups.class, this::onRequestRollups)
+                .match(RequestLastKnownReadings.class, r -> {
+                    Map<String, TemperatureReading> readings = new HashMap<>();
+                    r.deviceIds.forEach(deviceId -> Optional.ofNullable(latestReadings.get(deviceId))
+                            .ifPresent(reading -> readings.put(deviceId, reading)));
+                    getSender().tell(new LastKnownReadings(readings), getSelf());
+                })
+                .match(RequestGroupHistory.class, this::onRequestGroupHistory)
+                .match(RequestExportSnapshot.class, this::onRequestExportSnapshot)
+                .match(QueryAdmission.RequestAdmissionMetrics.class, r ->
+                        getSender().tell(queryAdmission.metrics(r.requestId, groupId), getSelf()))
+                .match(AdaptiveTimeout.RequestTimeoutMetrics.class, r ->
+                        getSender().tell(readTimeout.metrics(r.requestId, groupId), getSelf()))
+                .match(HotPathTracer.DumpTrace.class, d ->
+                        getSender().tell(new HotPathTracer.TraceDump(d.requestId, groupId, tracer.snapshot()), getSelf()))
                 .build();
     }
 
     private void onRequestAllTemperatures(RequestAllTemperatures r) {
-        log.info("Handling request for all temperatures for request {}", r.requestId);
-        Map<ActorRef, String> actorToDeviceIdCopy = new HashMap<>(actorToDeviceId);
-        getContext().actorOf(IotDeviceGroupQuery.props(
-                actorToDeviceIdCopy, r.requestId, getSender(), new FiniteDuration(3, TimeUnit.SECONDS)
-        ));
+        log.debug("Handling request for all temperatures for request {}", r.requestId);
+        tracer.trace(TraceEvent.REQUEST_ALL_TEMPERATURES, groupId, r.requestId);
+        admitTemperatureQuery(r.requestId, () -> new HashMap<>(actorToDeviceId), Map.of(), r.predicate);
+    }
+
+    private void onRequestDeviceTemperatures(RequestDeviceTemperatures r) {
+        log.debug("Handling request {} for the temperatures of {} devices", r.requestId, r.deviceIds.size());
+        Map<String, TemperatureReading> unknown = new HashMap<>();
+        r.deviceIds.stream()
+                .filter(deviceId -> !deviceIdToActor.containsKey(deviceId))
+                .forEach(deviceId -> unknown.put(deviceId, DeviceNotAvailable.INSTANCE));
+        admitTemperatureQuery(r.requestId, () -> {
+            Map<ActorRef, String> selected = new HashMap<>();
+            r.deviceIds.forEach(deviceId -> Optional.ofNullable(deviceIdToActor.get(deviceId))
+                    .ifPresent(deviceActor -> selected.put(deviceActor, deviceId)));
+            return selected;
+        }, unknown, TemperaturePredicate.all());
+    }
+
+    // The device map, timeout and hedging delay are taken when the query starts, which for a queued request is when an earlier query finishes.
+    private void admitTemperatureQuery(long requestId, Supplier<Map<ActorRef, String>> devices,
+                                       Map<String, TemperatureReading> preset, TemperaturePredicate predicate) {
+        ActorRef requester = getSender();
+        QueryAdmission.Decision decision = queryAdmission.offer(() ->
+                getContext().watch(getContext().actorOf(IotDeviceGroupQuery.props(
+                        devices.get(), requestId, requester, readTimeout.timeout(),
+                        stalenessWheel.ttlMillis(), preset, predicate, hedging.delayNanos()))));
+        if (decision == QueryAdmission.Decision.REJECTED) {
+            log.warning("Rejecting temperature query {} for group {}: too many queries in flight", requestId, groupId);
+            requester.tell(new QueryAdmission.Overloaded(requestId, groupId), getSelf());
+        }
+    }
+
+    // Sealed blocks are spilled whoever sent them; readings count only from the device's current actor.
+    private void onDeviceReadingsPending(DeviceReadingsPending msg) {
+        if (pendingValues.length < msg.readings.capacity()) {
+            pendingValues = new double[msg.readings.capacity()];
+            pendingRecordedAt = new long[msg.readings.capacity()];
+        }
+        int readings = msg.readings.drainTo(pendingValues, pendingRecordedAt, pendingBlocks);
+        long dropped = msg.readings.takeDropped();
+        if (dropped > 0L) {
+            log.warning("Group {} fell behind device {} and dropped {} of its readings and blocks",
+                    groupId, msg.deviceId, dropped);
+        }
+        try {
+            pendingBlocks.forEach(block -> segmentStore().append(msg.deviceId, block));
+        } finally {
+            pendingBlocks.clear();
+        }
+        if (deviceIdToActor.get(msg.deviceId) == getSender()) {
+            for (int i = 0; i < readings; i++) {
+                onDeviceTemperatureChanged(msg.deviceId, pendingValues[i], pendingRecordedAt[i]);
+            }
+        }
+    }
+
+    private void onDeviceTemperatureChanged(String deviceId, double value, long recordedAt) {
+        recordChange(deviceId, new Temperature(value, recordedAt));
+        hottestDevices.update(deviceId, value);
+        int slot = deviceIdToSlot.get(deviceId);
+        rollups.record(slot, recordedAt, value);
+        lastRecordedAt[slot] = recordedAt;
+        if (alertRules != null) {
+            long changed = alertRules.evaluate(slot, value, recordedAt);
+            if (changed != 0L) {
+                signalAlerts(deviceId, changed, alertRules.active(slot), value, recordedAt);
+            }
+        }
+        if (!stalenessWheel.isScheduled(slot)) {
+            stalenessWheel.schedule(slot, recordedAt);
+        }
+        if (!subscribers.isEmpty()) {
+            TemperatureUpdate update = new TemperatureUpdate(groupId, deviceId, value, recordedAt);
+            subscribers.forEach(subscriber -> subscriber.tell(update, getSelf()));
+        }
+    }
+
+    private void onSetAlertRules(SetAlertRules msg) {
+        log.info("Group {} now evaluates {} alert rules", groupId, msg.rules.size());
+        if (alertRules != null) {
+            deviceIdToSlot.forEach((deviceId, slot) ->
+                    signalAlerts(deviceId, alertRules.clear(slot), 0L, Double.NaN, 0L));
+        }
+        alertRules = msg.rules.isEmpty() ? null : new AlertRules(msg.rules, lastRecordedAt.length);
+    }
+
+    // Tells the alarm about every rule in changed: raised if it is in active, else cleared.
+    private void signalAlerts(String deviceId, long changed, long active, double value, long recordedAt) {
+        for (long rules = changed; rules != 0L; rules &= rules - 1) {
+            int index = Long.numberOfTrailingZeros(rules);
+            String rule = alertRules.rule(index).name();
+            alarm().tell((active & (1L << index)) != 0L
+                    ? new IotAlarm.AlertRaised(groupId, deviceId, rule, value, recordedAt)
+                    : new IotAlarm.AlertCleared(groupId, deviceId, rule, value, recordedAt), getSelf());
+        }
+    }
+
+    private ActorRef alarm() {
+        if (alarm == null) {
+            alarm = getContext().actorOf(IotAlarm.props(groupId), "alarm");
+        }
+        return alarm;
+    }
+
+    // Devices that stopped reporting show up as a change, so delta queries and their caches see it.
+    private void onStalenessTick() {
+        stalenessWheel.advance(System.currentTimeMillis(), lastRecordedAt, slot -> {
+            String deviceId = slotToDeviceId[slot];
+            TemperatureReading reading = latestReadings.get(deviceId);
+            if (reading instanceof Temperature) {
+                log.debug("Reading of device {} in group {} went stale", deviceId, groupId);
+                Temperature temperature = (Temperature) reading;
+                recordChange(deviceId, new StaleTemperature(temperature.value, temperature.recordedAt));
+                hottestDevices.remove(deviceId);
+            }
+        });
+    }
+
+    private void onRequestRollups(RequestRollups r) {
+        log.debug("Handling request {} for {} rollups of {}", r.requestId, r.window, r.deviceId == null ? "all devices" : r.deviceId);
+        Map<String, List<RollupStore.Rollup>> result = new HashMap<>();
+        if (rollups.hasWindow(r.window)) {
+            long now = System.currentTimeMillis();
+            if (r.deviceId == null) {
+                deviceIdToSlot.forEach((deviceId, slot) -> result.put(deviceId, rollups.rollups(slot, r.window, now)));
+            } else {
+                Optional.ofNullable(deviceIdToSlot.get(r.deviceId))
+                        .ifPresent(slot -> result.put(r.deviceId, rollups.rollups(slot, r.window, now)));
+            }
+        } else {
+            log.warning("Rollup window {} is not maintained by group {}", r.window, groupId);
+        }
+        getSender().tell(new RespondRollups(r.requestId, r.window, result), getSelf());
+    }
+
+    private void onRequestGroupHistory(RequestGroupHistory r) {
+        log.debug("Handling request {} for group history between {} and {}", r.requestId, r.from, r.to);
+        List<GroupSegmentStore.StoredBlock> blocks = segmentStore == null
+                ? Collections.emptyList()
+                : segmentStore.blocksInRange(r.from, r.to);
+        int chunkSamples = Math.min(r.chunkSamples > 0 ? r.chunkSamples : historyConfig.getInt("chunk-samples"),
+                historyConfig.getInt("max-chunk-samples"));
+        getContext().actorOf(IotGroupHistoryStream.props(blocks, r.requestId, r.from, r.to, chunkSamples,
+                getSender(), historyConfig.getDuration("stream-idle-timeout")));
+    }
+
+    private void onRequestExportSnapshot(RequestExportSnapshot r) {
+        log.debug("Handling request {} for an export snapshot", r.requestId);
+        int size = deviceIdToSlot.size();
+        String[] deviceIds = new String[size];
+        long[] recordedAt = new long[size];
+        double[] values = new double[size];
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : deviceIdToSlot.entrySet()) {
+            TemperatureReading reading = latestReadings.get(entry.getKey());
+            deviceIds[i] = entry.getKey();
+            if (reading instanceof Temperature) {
+                recordedAt[i] = lastRecordedAt[entry.getValue()];
+                values[i] = ((Temperature) reading).value;
+            } else if (reading instanceof StaleTemperature) {
+                recordedAt[i] = lastRecordedAt[entry.getValue()];
+                values[i] = ((StaleTemperature) reading).value;
+            } else {
+                values[i] = Double.NaN;
+            }
+            i++;
+        }
+        getSender().tell(new ExportSnapshot(r.requestId, deviceIds, recordedAt, values), getSelf());
+    }
+
+    // Segment files are only created once the first block is sealed, under a directory of their
+    // own for every instance of the group actor: the actor path uid survives a restart, so it
+    // would have the restarted group create segments that already exist.
+    private GroupSegmentStore segmentStore() {
+        if (segmentStore == null) {
+            Path directory = Paths.get(historyConfig.getString("segment-directory"))
+                    .resolve(URLEncoder.encode(groupId, StandardCharsets.UTF_8))
+                    .resolve(UUID.randomUUID().toString());
+            segmentStore = new GroupSegmentStore(directory,
+                    (int) Math.min(Integer.MAX_VALUE, historyConfig.getBytes("segment-size")),
+                    historyConfig.getInt("max-segments"));
+        }
+        return segmentStore;
+    }
+
+    // The history on disk goes with the group, like its devices do on a restart; the group's
+    // directory is removed too once no other instance uses it.
+    private void deleteSegments() {
+        try {
+            segmentStore.delete();
+            Files.deleteIfExists(Paths.get(historyConfig.getString("segment-directory"))
+                    .resolve(URLEncoder.encode(groupId, StandardCharsets.UTF_8)));
+        } catch (DirectoryNotEmptyException e) {
+            // Another instance of the group still has segments.
+        } catch (IOException | UncheckedIOException e) {
+            log.warning("Cannot delete history segments of group {}: {}", groupId, e.getMessage());
+        }
+        segmentStore = null;
+    }
+
+    private int allocateSlot(String deviceId) {
+        int slot = freeSlots.isEmpty() ? deviceIdToSlot.size() : freeSlots.pop();
+        deviceIdToSlot.put(deviceId, slot);
+        rollups.ensureSlot(slot);
+        if (slot >= lastRecordedAt.length) {
+            lastRecordedAt = Arrays.copyOf(lastRecordedAt, Math.max(slot + 1, lastRecordedAt.length << 1));
+            slotToDeviceId = Arrays.copyOf(slotToDeviceId, lastRecordedAt.length);
+        }
+        lastRecordedAt[slot] = 0L;
+        slotToDeviceId[slot] = deviceId;
+        return slot;
+    }
+
+    // Sizes the slot arrays once for a known number of devices instead of doubling them one by one.
+    private void reserveSlots(int slots) {
+        rollups.reserve(slots);
+        if (alertRules != null && slots > 0) {
+            alertRules.ensureSlot(slots - 1);
+        }
+        if (slots > lastRecordedAt.length) {
+            lastRecordedAt = Arrays.copyOf(lastRecordedAt, slots);
+            slotToDeviceId = Arrays.copyOf(slotToDeviceId, slots);
+        }
+    }
+
+    private void releaseSlot(String deviceId) {
+        Integer slot = deviceIdToSlot.remove(deviceId);
+        if (slot != null) {
+            if (alertRules != null) {
+                signalAlerts(deviceId, alertRules.clear(slot), 0L, Double.NaN, 0L);
+            }
+            rollups.clear(slot);
+            stalenessWheel.cancel(slot);
+            slotToDeviceId[slot] = null;
+            freeSlots.push(slot);
+        }
+    }
+
+    private void onRequestHottestDevices(RequestHottestDevices r) {
+        log.debug("Handling request {} for the {} hottest devices", r.requestId, r.k);
+        int k = Math.max(0, Math.min(r.k, maxHottestK));
+        getSender().tell(new RespondHottestDevices(r.requestId, hottestDevices.top(k)), getSelf());
+    }
+
+    private void onRequestTemperaturesChangedSince(RequestTemperaturesChangedSince r) {
+        log.debug("Handling request {} for temperatures changed since version {}", r.requestId, r.sinceVersion);
+        // A version above ours comes from another instance, whose clock ran ahead of this one's.
+        boolean full = r.sinceVersion < forgottenThrough || r.sinceVersion > version;
+        Map<String, TemperatureReading> changed = new HashMap<>();
+        changeLog.tailMap(full ? 0L : r.sinceVersion, false)
+                .values()
+                .forEach(deviceId -> changed.put(deviceId, latestReadings.get(deviceId)));
+        getSender().tell(new RespondTemperaturesChangedSince(r.requestId, version, changed, full), getSelf());
+    }
+
+    private void recordChange(String deviceId, TemperatureReading reading) {
+        long deviceVersion = ++version;
+        Long previous = deviceIdToVersion.put(deviceId, deviceVersion);
+        if (previous != null) {
+            changeLog.remove(previous);
+        }
+        changeLog.put(deviceVersion, deviceId);
+        latestReadings.put(deviceId, reading);
+        expireTombstones();
+    }
+
+    private static long epochNanos() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+
+    private void expireTombstones() {
+        while (!tombstones.isEmpty() && version - tombstones.peekFirst() >= tombstoneRetention) {
+            long tombstone = tombstones.pollFirst();
+            String deviceId = changeLog.remove(tombstone);
+            // Null when the device was tracked again, which superseded its removal.
+            if (deviceId != null) {
+                deviceIdToVersion.remove(deviceId);
+                latestReadings.remove(deviceId);
+                forgottenThrough = tombstone;
+            }
+        }
     }
 
     private void onTrackDevice(IotDeviceManager.RequestTrackDevice trackMsg) {
-        log.info("Handling request to track device {} of group {}", trackMsg.deviceId, trackMsg.groupId);
+        log.debug("Handling request to track device {} of group {}", trackMsg.deviceId, trackMsg.groupId);
+        tracer.trace(TraceEvent.TRACK_DEVICE, trackMsg.deviceId, 0L);
         if (groupId.equals(trackMsg.groupId)) {
             Optional.ofNullable(deviceIdToActor.getOrDefault(trackMsg.deviceId, null))
-                    .ifPresentOrElse(deviceActor -> deviceActor.forward(trackMsg, getContext()), () -> {
-                        log.info("Creating IotDevice actor for {}", trackMsg.deviceId);
-                        ActorRef deviceActor = getContext().actorOf(IotDevice.props(groupId, trackMsg.deviceId), "iotDevice-" + trackMsg.deviceId);
-                        getContext().watch(deviceActor);
-                        actorToDeviceId.put(deviceActor, trackMsg.deviceId);
-                        deviceIdToActor.put(trackMsg.deviceId, deviceActor);
-                        deviceActor.forward(trackMsg, getContext());
-                    });
+                    .ifPresentOrElse(deviceActor -> deviceActor.forward(trackMsg, getContext()),
+                            () -> createDevice(trackMsg.deviceId).forward(trackMsg, getContext()));
         } else {
             log.warning("Ignoring TrackDevice request for {}.  This actor is responsible for {}.",
                     groupId, this.groupId);
         }
     }
 
+    // Ids come from clients and the network; encoded, any id gives a valid and distinct actor name.
+    static String actorName(String prefix, String id) {
+        return prefix + URLEncoder.encode(id, StandardCharsets.UTF_8);
+    }
+
+    private ActorRef createDevice(String deviceId) {
+        log.debug("Creating IotDevice actor for {}", deviceId);
+        ActorRef deviceActor = getContext().actorOf(IotDevice.props(groupId, deviceId),
+                actorName("iotDevice-", deviceId));
+        getContext().watch(deviceActor);
+        actorToDeviceId.put(deviceActor, deviceId);
+        deviceIdToActor.put(deviceId, deviceActor);
+        sortedDeviceIds.add(deviceId);
+        allocateSlot(deviceId);
+        recordChange(deviceId, TemperatureNotAvailable.INSTANCE);
+        return deviceActor;
+    }
+
+    // Readings from the ingestion gateway: unknown devices are tracked on the fly and each device is
+    // told without a sender, so the batch costs one acknowledgement instead of one per reading.
+    private void onRecordGroupTemperatures(IotDeviceManager.RecordGroupTemperatures batch) {
+        tracer.trace(TraceEvent.RECORD_GROUP_TEMPERATURES, groupId, batch.requestId);
+        for (int i = 0; i < batch.deviceIds.length; i++) {
+            ActorRef deviceActor = deviceIdToActor.get(batch.deviceIds[i]);
+            if (deviceActor == null) {
+                deviceActor = createDevice(batch.deviceIds[i]);
+            }
+            deviceActor.tell(new IotDevice.RecordTemperature(batch.requestId, batch.values[i]), ActorRef.noSender());
+        }
+        getSender().tell(new TemperaturesRecorded(batch.requestId, batch.deviceIds.length), getSelf());
+    }
+
+    private void onBootstrapDevices(BootstrapDevices msg) {
+        log.debug("Bootstrapping {} devices of group {} for request {}", msg.deviceIds.size(), groupId, msg.requestId);
+        reserveSlots(deviceIdToSlot.size() + msg.deviceIds.size() - freeSlots.size());
+        int created = 0;
+        for (String deviceId : msg.deviceIds) {
+            if (!deviceIdToActor.containsKey(deviceId)) {
+                createDevice(deviceId);
+                created++;
+            }
+        }
+        // One line per group, not one per device, so bulk bootstrap is not bound by logging.
+        log.info("Bootstrapped group {} with {} new devices", groupId, created);
+        getSender().tell(new DevicesBootstrapped(msg.requestId, msg.managerId, groupId, msg.deviceIds.size()), getSelf());
+    }
+
     private void onDeviceList(RequestDeviceList r) {
-        log.info("Handling request {} for device list", r.requestId);
-        getSender().tell(new ReplyDeviceList(r.requestId, deviceIdToActor.keySet()), getSelf());
+        log.debug("Handling request {} for device list", r.requestId);
+        tracer.trace(TraceEvent.REQUEST_DEVICE_LIST, groupId, r.requestId);
+        getSender().tell(new ReplyDeviceList(r.requestId, Set.copyOf(deviceIdToActor.keySet())), getSelf());
+    }
+
+    private void onDeviceListPage(RequestDeviceListPage r) {
+        log.debug("Handling request {} for a device list page after cursor {}", r.requestId, r.cursor);
+        try {
+            ListingPages.Page page = listingPages.page(sortedDeviceIds, r.cursor, r.pageSize);
+            getSender().tell(new DeviceListPage(r.requestId, page.ids, page.nextCursor), getSelf());
+        } catch (IllegalArgumentException e) {
+            getSender().tell(new Status.Failure(e), getSelf());
+        }
     }
 
     private void onTerminated(Terminated t) {
         ActorRef ref = t.getActor();
+        if (queryAdmission.release(ref) || subscribers.remove(ref)) {
+            return;
+        }
         Optional.ofNullable(actorToDeviceId.get(ref))
                 .ifPresent(deviceId -> {
-                    log.info("Iot Device actor for {} has been terminated", deviceId);
+                    log.debug("Iot Device actor for {} has been terminated", deviceId);
                     actorToDeviceId.remove(ref);
                     deviceIdToActor.remove(deviceId);
+                    sortedDeviceIds.remove(deviceId);
+                    getContext().getParent().tell(new IotDeviceManager.DeviceStopped(groupId, deviceId), getSelf());
+                    recordChange(deviceId, DeviceNotAvailable.INSTANCE);
+                    tombstones.addLast(version);
+                    hottestDevices.remove(deviceId);
+                    releaseSlot(deviceId);
                     getContext().unwatch(ref);
                 });
     }
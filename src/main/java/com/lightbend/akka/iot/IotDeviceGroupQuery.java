@@ -1,60 +1,152 @@
 package com.lightbend.akka.iot;
 
 import akka.actor.*;
+import akka.dispatch.ControlMessage;
 import scala.concurrent.duration.FiniteDuration;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
 public class IotDeviceGroupQuery extends AbstractActor {
-    private static final class CollectionTimeout {
+    private static final class CollectionTimeout implements ControlMessage {
+    }
+
+    private static final class HedgeTimeout implements ControlMessage {
     }
 
     private final Map<ActorRef, String> actorToDeviceId;
     private final long requestId;
     private final ActorRef requester;
+    private final long staleAfterMillis;
+    private final Map<String, IotDeviceGroup.TemperatureReading> preset;
+    private final TemperaturePredicate predicate;
+    private final long hedgeAfterNanos;
+    private final long timeoutNanos;
     private final Cancellable queryTimeoutTimer;
+    private final Cancellable hedgeTimer;
+    // Each device is read under its own request id, so a reply is matched to the read it answers
+    // and a second or late reply for a device that is no longer awaited is dropped.
+    private final Map<Long, ActorRef> readIdToDevice = new HashMap<>();
+    private final long[] answeredNanos;
+    private int answered = 0;
+    private long startNanos;
 
     private IotDeviceGroupQuery(Map<ActorRef, String> actorToDeviceId,
                                 long requestId,
                                 ActorRef requester,
-                                FiniteDuration timout) {
+                                FiniteDuration timout,
+                                long staleAfterMillis,
+                                Map<String, IotDeviceGroup.TemperatureReading> preset,
+                                TemperaturePredicate predicate,
+                                long hedgeAfterNanos) {
         this.actorToDeviceId = actorToDeviceId;
         this.requestId = requestId;
         this.requester = requester;
+        this.staleAfterMillis = staleAfterMillis;
+        this.preset = preset;
+        this.predicate = predicate;
+        this.hedgeAfterNanos = hedgeAfterNanos;
+        this.timeoutNanos = timout.toNanos();
+        this.answeredNanos = new long[actorToDeviceId.size()];
         queryTimeoutTimer = getContext()
                 .getSystem()
                 .scheduler()
                 .scheduleOnce(timout, getSelf(), new CollectionTimeout(),
                         getContext().getDispatcher(),
                         getSelf());
+        hedgeTimer = hedgeAfterNanos < timeoutNanos && !actorToDeviceId.isEmpty()
+                ? getContext().getSystem().scheduler().scheduleOnce(
+                        FiniteDuration.fromNanos(hedgeAfterNanos), getSelf(), new HedgeTimeout(),
+                        getContext().getDispatcher(), getSelf())
+                : null;
     }
 
     public static Props props(Map<ActorRef, String> actorToDeviceId,
                               long requestId,
                               ActorRef requester,
                               FiniteDuration timeout) {
-        return Props.create(IotDeviceGroupQuery.class, () -> new IotDeviceGroupQuery(actorToDeviceId, requestId, requester, timeout));
+        return props(actorToDeviceId, requestId, requester, timeout, Long.MAX_VALUE);
+    }
+
+    // Readings recorded staleAfterMillis or longer ago are reported as StaleTemperature.
+    public static Props props(Map<ActorRef, String> actorToDeviceId,
+                              long requestId,
+                              ActorRef requester,
+                              FiniteDuration timeout,
+                              long staleAfterMillis) {
+        return props(actorToDeviceId, requestId, requester, timeout, staleAfterMillis, Map.of(),
+                TemperaturePredicate.all());
+    }
+
+    // preset readings are part of the reply without asking any device. Readings, preset or
+    // collected, that do not match the predicate are left out of the reply.
+    public static Props props(Map<ActorRef, String> actorToDeviceId,
+                              long requestId,
+                              ActorRef requester,
+                              FiniteDuration timeout,
+                              long staleAfterMillis,
+                              Map<String, IotDeviceGroup.TemperatureReading> preset,
+                              TemperaturePredicate predicate) {
+        return props(actorToDeviceId, requestId, requester, timeout, staleAfterMillis, preset, predicate,
+                Long.MAX_VALUE);
+    }
+
+    // Devices still silent hedgeAfterNanos into the query are answered from their last known
+    // reading, which the query asks its parent group for at that point, a Temperature as
+    // HedgedTemperature, and no longer waited for; devices without one are waited for until the
+    // timeout.
+    public static Props props(Map<ActorRef, String> actorToDeviceId,
+                              long requestId,
+                              ActorRef requester,
+                              FiniteDuration timeout,
+                              long staleAfterMillis,
+                              Map<String, IotDeviceGroup.TemperatureReading> preset,
+                              TemperaturePredicate predicate,
+                              long hedgeAfterNanos) {
+        return Props.create(IotDeviceGroupQuery.class, () -> new IotDeviceGroupQuery(actorToDeviceId, requestId,
+                requester, timeout, staleAfterMillis, preset, predicate, hedgeAfterNanos))
+                .withMailbox(IotMailbox.QUERY);
     }
 
     @Override
     public void preStart() {
-        actorToDeviceId.keySet().forEach(deviceActor -> {
+        startNanos = System.nanoTime();
+        long readId = 0L;
+        for (ActorRef deviceActor : actorToDeviceId.keySet()) {
+            readIdToDevice.put(++readId, deviceActor);
             getContext().watch(deviceActor);
-            deviceActor.tell(new IotDevice.ReadTemperature(0L), getSelf());
-        });
+            deviceActor.tell(new IotDevice.ReadTemperature(readId), getSelf());
+        }
+        if (actorToDeviceId.isEmpty()) {
+            requester.tell(new IotDeviceGroup.RespondAllTemperatures(requestId, matchingPreset()), getContext().getParent());
+            getContext().stop(getSelf());
+        }
     }
 
     @Override
     public void postStop() {
         queryTimeoutTimer.cancel();
+        if (hedgeTimer != null) {
+            hedgeTimer.cancel();
+        }
     }
 
     @Override
     public Receive createReceive() {
-        return waitingForReplies(new HashMap<>(), actorToDeviceId.keySet());
+        return waitingForReplies(matchingPreset(), actorToDeviceId.keySet());
+    }
+
+    private Map<String, IotDeviceGroup.TemperatureReading> matchingPreset() {
+        Map<String, IotDeviceGroup.TemperatureReading> matching = new HashMap<>();
+        preset.forEach((deviceId, reading) -> {
+            if (predicate.test(reading)) {
+                matching.put(deviceId, reading);
+            }
+        });
+        return matching;
     }
 
     private Receive waitingForReplies(
@@ -64,6 +156,8 @@ public class IotDeviceGroupQuery extends AbstractActor {
                 .match(IotDevice.RespondTemperature.class, rt -> onRespondTemperature(rt, repliesSoFar, stillWaiting))
                 .match(Terminated.class, t -> onTerminated(t, repliesSoFar, stillWaiting))
                 .match(CollectionTimeout.class, ignored -> this.onCollectionTimeout(repliesSoFar, stillWaiting))
+                .match(HedgeTimeout.class, ignored -> this.onHedgeTimeout(stillWaiting))
+                .match(IotDeviceGroup.LastKnownReadings.class, k -> this.onLastKnownReadings(k, repliesSoFar, stillWaiting))
                 .build();
     }
 
@@ -79,18 +173,82 @@ public class IotDeviceGroupQuery extends AbstractActor {
             Set<ActorRef> stillWaiting) {
         Map<String, IotDeviceGroup.TemperatureReading> replies = new HashMap<>(repliesSoFar);
         stillWaiting.forEach(deviceActor -> {
-            String deviceId = actorToDeviceId.get(deviceActor);
-            replies.put(deviceId, IotDeviceGroup.DeviceTimedOut.INSTANCE);
+            if (predicate.test(IotDeviceGroup.DeviceTimedOut.INSTANCE)) {
+                replies.put(actorToDeviceId.get(deviceActor), IotDeviceGroup.DeviceTimedOut.INSTANCE);
+            }
         });
         requester.tell(new IotDeviceGroup.RespondAllTemperatures(requestId, replies), getSelf());
+        finish(stillWaiting.size(), timeoutNanos);
+    }
+
+    // Only the devices still silent are looked up, so a query over a large group copies no more
+    // readings than it hedges.
+    private void onHedgeTimeout(Set<ActorRef> stillWaiting) {
+        Set<String> deviceIds = new HashSet<>();
+        stillWaiting.forEach(deviceActor -> deviceIds.add(actorToDeviceId.get(deviceActor)));
+        getContext().getParent().tell(new IotDeviceGroup.RequestLastKnownReadings(deviceIds), getSelf());
+    }
+
+    private void onLastKnownReadings(
+            IotDeviceGroup.LastKnownReadings lastKnown,
+            Map<String, IotDeviceGroup.TemperatureReading> repliesSoFar,
+            Set<ActorRef> stillWaiting) {
+        Map<String, IotDeviceGroup.TemperatureReading> replies = new HashMap<>(repliesSoFar);
+        Set<ActorRef> unknown = new HashSet<>();
+        stillWaiting.forEach(deviceActor -> {
+            String deviceId = actorToDeviceId.get(deviceActor);
+            IotDeviceGroup.TemperatureReading known = lastKnown.readings.get(deviceId);
+            if (known == null) {
+                unknown.add(deviceActor);
+                return;
+            }
+            getContext().unwatch(deviceActor);
+            IotDeviceGroup.TemperatureReading reading = hedged(known);
+            if (predicate.test(reading)) {
+                replies.put(deviceId, reading);
+            }
+        });
+        // Hedged reads are given up on now, whether or not the query goes on for unknown devices;
+        // leaving them out would hide the slowest reads from the hedging delay.
+        if (unknown.isEmpty()) {
+            requester.tell(new IotDeviceGroup.RespondAllTemperatures(requestId, replies), getContext().getParent());
+            finish(stillWaiting.size(), hedgeAfterNanos);
+        } else {
+            getContext().getParent().tell(new AdaptiveTimeout.RepliesObserved(
+                    new long[0], stillWaiting.size() - unknown.size(), hedgeAfterNanos), getSelf());
+            getContext().become(waitingForReplies(replies, unknown));
+        }
+    }
+
+    private IotDeviceGroup.TemperatureReading hedged(IotDeviceGroup.TemperatureReading known) {
+        if (known instanceof IotDeviceGroup.Temperature) {
+            IotDeviceGroup.Temperature temperature = (IotDeviceGroup.Temperature) known;
+            return System.currentTimeMillis() - temperature.recordedAt >= staleAfterMillis
+                    ? new IotDeviceGroup.StaleTemperature(temperature.value, temperature.recordedAt)
+                    : new IotDeviceGroup.HedgedTemperature(temperature.value, temperature.recordedAt);
+        }
+        return known;
+    }
+
+    // The group that started the query learns how long its devices took, for its hedging delay and
+    // query timeout; reads given up on count as unanswered after waitedNanos.
+    private void finish(int unanswered, long waitedNanos) {
+        getContext().getParent().tell(new AdaptiveTimeout.RepliesObserved(
+                Arrays.copyOf(answeredNanos, answered), unanswered, waitedNanos), getSelf());
         getContext().stop(getSelf());
     }
 
     private void onRespondTemperature(IotDevice.RespondTemperature r,
                                       Map<String, IotDeviceGroup.TemperatureReading> repliesSoFar,
                                       Set<ActorRef> stillWaiting) {
-        ActorRef deviceActor = getSender();
-        IotDeviceGroup.TemperatureReading reading = r.getValue().map(v -> (IotDeviceGroup.TemperatureReading) new IotDeviceGroup.Temperature(v))
+        ActorRef deviceActor = readIdToDevice.get(r.requestId);
+        if (deviceActor == null || !stillWaiting.contains(deviceActor)) {
+            return;
+        }
+        answeredNanos[answered++] = System.nanoTime() - startNanos;
+        IotDeviceGroup.TemperatureReading reading = r.getValue().map(v -> System.currentTimeMillis() - r.recordedAt >= staleAfterMillis
+                        ? new IotDeviceGroup.StaleTemperature(v, r.recordedAt)
+                        : (IotDeviceGroup.TemperatureReading) new IotDeviceGroup.Temperature(v, r.recordedAt))
                 .orElse(IotDeviceGroup.TemperatureNotAvailable.INSTANCE);
         receivedResponse(deviceActor, reading, stillWaiting, repliesSoFar);
     }
@@ -106,10 +264,12 @@ public class IotDeviceGroupQuery extends AbstractActor {
         newStillWaiting.remove(deviceActor);
 
         Map<String, IotDeviceGroup.TemperatureReading> newRepliesSoFar = new HashMap<>(repliesSoFar);
-        newRepliesSoFar.put(deviceId, reading);
+        if (predicate.test(reading)) {
+            newRepliesSoFar.put(deviceId, reading);
+        }
         if (newStillWaiting.isEmpty()) {
             requester.tell(new IotDeviceGroup.RespondAllTemperatures(requestId, newRepliesSoFar), getContext().getParent());
-            getContext().stop(getSelf());
+            finish(0, 0L);
         } else {
             getContext().become(waitingForReplies(newRepliesSoFar, newStillWaiting));
         }
@@ -3,26 +3,48 @@ package com.lightbend.akka.iot;
 import akka.actor.AbstractActor;
 import akka.actor.ActorRef;
 import akka.actor.Props;
+import akka.actor.Status;
 import akka.actor.Terminated;
+import akka.dispatch.ControlMessage;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
+import com.lightbend.akka.iot.HotPathTracer.TraceEvent;
 import scala.concurrent.duration.FiniteDuration;
 
+import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 public class IotDeviceManager extends AbstractActor {
     private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
+    private final HotPathTracer tracer = HotPathTracer.create(getContext().getSystem());
     private final String managerId;
     private final Map<String, ActorRef> groupIdToActor = new HashMap<>();
     private final Map<ActorRef, String> actorToGroupId = new HashMap<>();
+    private final TreeSet<String> sortedGroupIds = new TreeSet<>();
+    private final TagIndex tagIndex = new TagIndex();
+    private final int maxHottestK;
+    private final QueryAdmission queryAdmission;
+    private final ListingPages listingPages;
+    private final AdaptiveTimeout groupTimeout;
+    private final GroupTemperatureCache temperatureCache = new GroupTemperatureCache();
+    // Each subscriber with the group it follows, or null for every group.
+    private final Map<ActorRef, String> subscribers = new HashMap<>();
 
     private IotDeviceManager(String managerId) {
         this.managerId = managerId;
+        this.maxHottestK = getContext().getSystem().settings().config().getInt("iot.top-k.max-k");
+        this.queryAdmission = QueryAdmission.fromConfig(
+                getContext().getSystem().settings().config().getConfig("iot.admission.manager"));
+        this.listingPages = ListingPages.fromConfig("group",
+                getContext().getSystem().settings().config().getConfig("iot.listing"));
+        this.groupTimeout = AdaptiveTimeout.fromConfig(
+                getContext().getSystem().settings().config().getConfig("iot.adaptive-timeout.manager"));
     }
 
     public static Props props(String managerId) {
-        return Props.create(IotDeviceManager.class, () -> new IotDeviceManager(managerId));
+        return Props.create(IotDeviceManager.class, () -> new IotDeviceManager(managerId))
+                .withMailbox(IotMailbox.OWNER);
     }
 
     public static final class RequestGroupList {
@@ -45,13 +67,180 @@ public class IotDeviceManager extends AbstractActor {
         }
     }
 
-    public static final class RequestTrackDevice {
+    // Group ids in order, paged like IotDeviceGroup.RequestDeviceListPage.
+    public static final class RequestGroupListPage {
+        final long requestId;
+        final String cursor;
+        final int pageSize;
+
+        public RequestGroupListPage(long requestId, String cursor, int pageSize) {
+            this.requestId = requestId;
+            this.cursor = cursor;
+            this.pageSize = pageSize;
+        }
+    }
+
+    // nextCursor is null on the last page.
+    public static final class GroupListPage {
+        final long requestId;
+        final List<String> groupIds;
+        final String nextCursor;
+
+        GroupListPage(long requestId, List<String> groupIds, String nextCursor) {
+            this.requestId = requestId;
+            this.groupIds = groupIds;
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    public static final class RequestTrackDevice implements ControlMessage {
         final String groupId;
         final String deviceId;
+        // null when the request says nothing about tags.
+        final Map<String, String> tags;
 
+        // Leaves the tags the device was tracked with before as they are.
         public RequestTrackDevice(String groupId, String deviceId) {
             this.groupId = groupId;
             this.deviceId = deviceId;
+            this.tags = null;
+        }
+
+        // The tags replace the ones the device was tracked with before, an empty map removing them,
+        // and make it findable through RequestDevicesByTags and RequestTemperaturesByTags.
+        public RequestTrackDevice(String groupId, String deviceId, Map<String, String> tags) {
+            this.groupId = groupId;
+            this.deviceId = deviceId;
+            this.tags = Map.copyOf(tags);
+        }
+    }
+
+    // Devices carrying all of the given tags.
+    public static final class RequestDevicesByTags {
+        final long requestId;
+        final Map<String, String> tags;
+
+        public RequestDevicesByTags(long requestId, Map<String, String> tags) {
+            this.requestId = requestId;
+            this.tags = Map.copyOf(tags);
+        }
+    }
+
+    public static final class RespondDevicesByTags {
+        final long requestId;
+        final Map<String, Set<String>> deviceIdsByGroup;
+
+        RespondDevicesByTags(long requestId, Map<String, Set<String>> deviceIdsByGroup) {
+            this.requestId = requestId;
+            this.deviceIdsByGroup = deviceIdsByGroup;
+        }
+    }
+
+    // Temperatures of the devices carrying all of the given tags; only their groups are asked.
+    public static final class RequestTemperaturesByTags {
+        final long requestId;
+        final Map<String, String> tags;
+
+        public RequestTemperaturesByTags(long requestId, Map<String, String> tags) {
+            this.requestId = requestId;
+            this.tags = Map.copyOf(tags);
+        }
+    }
+
+    public static final class RespondTemperaturesByTags {
+        final long requestId;
+        final Map<String, Map<String, IotDeviceGroup.TemperatureReading>> temperatures;
+        final Set<String> groupsNotAvailable;
+        final Set<String> groupsOverloaded;
+        final Set<String> groupsTimedOut;
+
+        RespondTemperaturesByTags(long requestId, Map<String, Map<String, IotDeviceGroup.TemperatureReading>> temperatures,
+                                  Set<String> groupsNotAvailable, Set<String> groupsOverloaded, Set<String> groupsTimedOut) {
+            this.requestId = requestId;
+            this.temperatures = temperatures;
+            this.groupsNotAvailable = groupsNotAvailable;
+            this.groupsOverloaded = groupsOverloaded;
+            this.groupsTimedOut = groupsTimedOut;
+        }
+    }
+
+    static final class BootstrapGroups implements ControlMessage {
+        final long requestId;
+        final Map<String, IotTopology.Group> groups;
+
+        BootstrapGroups(long requestId, Map<String, IotTopology.Group> groups) {
+            this.requestId = requestId;
+            this.groups = groups;
+        }
+    }
+
+    // From a group to its manager when one of its devices stopped.
+    static final class DeviceStopped implements ControlMessage {
+        final String groupId;
+        final String deviceId;
+
+        DeviceStopped(String groupId, String deviceId) {
+            this.groupId = groupId;
+            this.deviceId = deviceId;
+        }
+    }
+
+    // A batch of readings for one group, acknowledged by the group with TemperaturesRecorded once
+    // every reading has been handed to its device. Unknown devices are tracked on the fly.
+    public static final class RecordGroupTemperatures implements IotMailbox.Sheddable {
+        final long requestId;
+        final String groupId;
+        final String[] deviceIds;
+        final double[] values;
+
+        public RecordGroupTemperatures(long requestId, String groupId, String[] deviceIds, double[] values) {
+            this.requestId = requestId;
+            this.groupId = groupId;
+            this.deviceIds = deviceIds;
+            this.values = values;
+        }
+
+        @Override
+        public Object shedReply(ActorRef receiver) {
+            return new QueryAdmission.Overloaded(requestId, receiver.path().name());
+        }
+    }
+
+    public static final class StreamGroupTemperatures {
+        final long requestId;
+
+        public StreamGroupTemperatures(long requestId) {
+            this.requestId = requestId;
+        }
+    }
+
+    // One per group that answered a StreamGroupTemperatures, sent as it arrives.
+    public static final class GroupTemperaturesChunk {
+        final long requestId;
+        final String groupId;
+        final Map<String, IotDeviceGroup.TemperatureReading> temperatures;
+
+        GroupTemperaturesChunk(long requestId, String groupId, Map<String, IotDeviceGroup.TemperatureReading> temperatures) {
+            this.requestId = requestId;
+            this.groupId = groupId;
+            this.temperatures = temperatures;
+        }
+    }
+
+    public static final class GroupTemperaturesComplete {
+        final long requestId;
+        final int groups;
+        final Set<String> notAvailable;
+        final Set<String> overloaded;
+        final Set<String> timedOut;
+
+        GroupTemperaturesComplete(long requestId, int groups, Set<String> notAvailable, Set<String> overloaded,
+                                  Set<String> timedOut) {
+            this.requestId = requestId;
+            this.groups = groups;
+            this.notAvailable = notAvailable;
+            this.overloaded = overloaded;
+            this.timedOut = timedOut;
         }
     }
 
@@ -76,6 +265,15 @@ public class IotDeviceManager extends AbstractActor {
     }
 
     public static final class DeviceRegistered {
+        final String groupId;
+        final String deviceId;
+        final ActorRef device;
+
+        DeviceRegistered(String groupId, String deviceId, ActorRef device) {
+            this.groupId = groupId;
+            this.deviceId = deviceId;
+            this.device = device;
+        }
     }
 
     interface DeviceGroupTemperatureReading{}
@@ -88,6 +286,10 @@ public class IotDeviceManager extends AbstractActor {
         INSTANCE
     }
 
+    public enum DeviceGroupOverloaded implements DeviceGroupTemperatureReading{
+        INSTANCE
+    }
+
     public static final class DeviceGroupTemperatures implements DeviceGroupTemperatureReading{
         final long requestId;
         final Map<String, IotDeviceGroup.TemperatureReading> groupTemperatureReading;
@@ -120,11 +322,206 @@ public class IotDeviceManager extends AbstractActor {
         }
     }
 
+    // full: the group had forgotten removals newer than the caller's version, so changedTemperatures
+    // holds every device of the group and those missing from it have been removed.
+    public static final class DeviceGroupTemperatureChanges implements DeviceGroupTemperatureReading{
+        final long version;
+        final Map<String, IotDeviceGroup.TemperatureReading> changedTemperatures;
+        final boolean full;
+
+        DeviceGroupTemperatureChanges(long version, Map<String, IotDeviceGroup.TemperatureReading> changedTemperatures) {
+            this(version, changedTemperatures, false);
+        }
+
+        DeviceGroupTemperatureChanges(long version, Map<String, IotDeviceGroup.TemperatureReading> changedTemperatures,
+                                      boolean full) {
+            this.version = version;
+            this.changedTemperatures = changedTemperatures;
+            this.full = full;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            DeviceGroupTemperatureChanges that = (DeviceGroupTemperatureChanges) o;
+            return version == that.version && full == that.full &&
+                    Objects.equals(changedTemperatures, that.changedTemperatures);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(version, changedTemperatures, full);
+        }
+
+        @Override
+        public String toString() {
+            return "DeviceGroupTemperatureChanges{" +
+                    "version=" + version +
+                    ", changedTemperatures=" + changedTemperatures +
+                    ", full=" + full +
+                    '}';
+        }
+    }
+
+    // Versions are tracked per group; groups missing from sinceVersions are reported in full.
+    public static final class RequestGroupTemperaturesChangedSince{
+        final long requestId;
+        final Map<String, Long> sinceVersions;
+
+        public RequestGroupTemperaturesChangedSince(long requestId, Map<String, Long> sinceVersions) {
+            this.requestId = requestId;
+            this.sinceVersions = sinceVersions;
+        }
+    }
+
+    // Only groups with changes (or that failed to answer) are present.
+    public static final class RespondGroupTemperaturesChangedSince{
+        final long requestId;
+        final Map<String, DeviceGroupTemperatureReading> groupChanges;
+
+        RespondGroupTemperaturesChangedSince(long requestId, Map<String, DeviceGroupTemperatureReading> groupChanges) {
+            this.requestId = requestId;
+            this.groupChanges = groupChanges;
+        }
+    }
+
+    public static final class RequestHottestDevicesAcrossGroups{
+        final long requestId;
+        final int k;
+
+        public RequestHottestDevicesAcrossGroups(long requestId, int k) {
+            this.requestId = requestId;
+            this.k = k;
+        }
+    }
+
+    public static final class RespondHottestDevicesAcrossGroups{
+        final long requestId;
+        final List<IotDeviceGroup.DeviceTemperature> hottest;
+        final Set<String> missingGroups;
+
+        RespondHottestDevicesAcrossGroups(long requestId, List<IotDeviceGroup.DeviceTemperature> hottest, Set<String> missingGroups) {
+            this.requestId = requestId;
+            this.hottest = hottest;
+            this.missingGroups = missingGroups;
+        }
+    }
+
+    public static final class ExportFleet{
+        final long requestId;
+        final Path file;
+
+        public ExportFleet(long requestId, Path file) {
+            this.requestId = requestId;
+            this.file = file;
+        }
+    }
+
+    // From a fleet exporter to each partition of a partitioned manager, and back.
+    static final class RequestGroupActors{
+        final long requestId;
+
+        RequestGroupActors(long requestId) {
+            this.requestId = requestId;
+        }
+    }
+
+    static final class GroupActors{
+        final long requestId;
+        final Map<ActorRef, String> actorToGroupId;
+
+        GroupActors(long requestId, Map<ActorRef, String> actorToGroupId) {
+            this.requestId = requestId;
+            this.actorToGroupId = actorToGroupId;
+        }
+    }
+
+    public static final class FleetExported{
+        final long requestId;
+        final Path file;
+        final int groups;
+        final long devices;
+        final long historySamples;
+        final long bytes;
+        final long elapsedNanos;
+        // Groups that timed out or stopped mid-export; the file may hold part of their data.
+        final Set<String> skippedGroups;
+
+        FleetExported(long requestId, Path file, int groups, long devices, long historySamples, long bytes, long elapsedNanos,
+                      Set<String> skippedGroups) {
+            this.requestId = requestId;
+            this.file = file;
+            this.groups = groups;
+            this.devices = devices;
+            this.historySamples = historySamples;
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+            this.skippedGroups = skippedGroups;
+        }
+    }
+
+    public static final class FleetExportFailed{
+        final long requestId;
+        final Path file;
+        final String reason;
+
+        FleetExportFailed(long requestId, Path file, String reason) {
+            this.requestId = requestId;
+            this.file = file;
+            this.reason = reason;
+        }
+    }
+
     static final class RequestAllGroupTemperatures{
         final long requestId;
+        final FiniteDuration timeout;
+        final TemperaturePredicate predicate;
+        final FiniteDuration maxStaleness;
 
         RequestAllGroupTemperatures(long requestId) {
+            this(requestId, TemperaturePredicate.all());
+        }
+
+        // The manager's adaptive timeout (iot.adaptive-timeout.manager) applies.
+        RequestAllGroupTemperatures(long requestId, TemperaturePredicate predicate) {
+            this(requestId, null, predicate);
+        }
+
+        // Callers with their own deadline pass it as timeout so groups that are slow to answer show
+        // up as timed out in the reply instead of delaying it; the manager's adaptive timeout still
+        // applies when it is shorter.
+        RequestAllGroupTemperatures(long requestId, FiniteDuration timeout) {
+            this(requestId, timeout, TemperaturePredicate.all());
+        }
+
+        // Groups apply the predicate to their readings; with a filtering predicate, groups without
+        // a matching reading are left out of the reply.
+        RequestAllGroupTemperatures(long requestId, FiniteDuration timeout, TemperaturePredicate predicate) {
+            this(requestId, timeout, predicate, FiniteDuration.Zero());
+        }
+
+        // Groups whose last full reading was fetched at most maxStaleness ago are answered from the
+        // manager's cache and only the others are asked; zero asks every group.
+        RequestAllGroupTemperatures(long requestId, FiniteDuration timeout, TemperaturePredicate predicate,
+                                    FiniteDuration maxStaleness) {
             this.requestId = requestId;
+            this.timeout = timeout;
+            this.predicate = predicate;
+            this.maxStaleness = maxStaleness;
+        }
+    }
+
+    // Sent by an IotDeviceManagerQuery that refreshes the cache: the unfiltered readings of the
+    // groups that answered, fetched by a query started at startedAtNanos.
+    static final class GroupTemperaturesFetched {
+        final long startedAtNanos;
+        final Map<String, Map<String, IotDeviceGroup.TemperatureReading>> temperaturesByGroup;
+
+        GroupTemperaturesFetched(long startedAtNanos,
+                                 Map<String, Map<String, IotDeviceGroup.TemperatureReading>> temperaturesByGroup) {
+            this.startedAtNanos = startedAtNanos;
+            this.temperaturesByGroup = temperaturesByGroup;
         }
     }
 
@@ -148,38 +545,162 @@ public class IotDeviceManager extends AbstractActor {
         log.info("IotDeviceManager stopped.");
     }
 
+    @Override
+    public void preRestart(Throwable reason, Optional<Object> message) throws Exception {
+        tracer.dumpTo(log, "IotDeviceManager " + managerId + " failed: " + reason);
+        super.preRestart(reason, message);
+    }
+
     @Override
     public Receive createReceive() {
         return receiveBuilder()
                 .match(RequestTrackDevice.class, this::onTrackDevice)
+                .match(DeviceStopped.class, msg -> tagIndex.remove(msg.groupId, msg.deviceId))
+                .match(BootstrapGroups.class, this::onBootstrapGroups)
+                .match(RequestDevicesByTags.class, msg ->
+                        getSender().tell(new RespondDevicesByTags(msg.requestId, tagIndex.match(msg.tags)), getSelf()))
+                .match(RequestTemperaturesByTags.class, this::onRequestTemperaturesByTags)
+                .match(RecordGroupTemperatures.class, r -> groupActorFor(r.groupId).forward(r, getContext()))
                 .match(IotSupervisor.TrackDeviceManager.class, this::onTrackDeviceManager)
                 .match(RequestDeviceGroupById.class, this::onRequestDeviceGroupById)
                 .match(Terminated.class, this::onTerminated)
                 .match(RequestGroupList.class, this::onRequestGroupList)
+                .match(RequestGroupListPage.class, this::onRequestGroupListPage)
                 .match(RequestAllGroupTemperatures.class, this::onRequestAllGroupTemperatures)
+                .match(StreamGroupTemperatures.class, this::onStreamGroupTemperatures)
+                .match(IotDeviceGroup.SubscribeTemperatureUpdates.class, this::onSubscribeTemperatureUpdates)
+                .match(RequestGroupTemperaturesChangedSince.class, this::onRequestGroupTemperaturesChangedSince)
+                .match(RequestHottestDevicesAcrossGroups.class, this::onRequestHottestDevicesAcrossGroups)
+                .match(ExportFleet.class, this::onExportFleet)
+                .match(RequestGroupActors.class, r ->
+                        getSender().tell(new GroupActors(r.requestId, new HashMap<>(actorToGroupId)), getSelf()))
+                .match(QueryAdmission.RequestAdmissionMetrics.class, r ->
+                        getSender().tell(queryAdmission.metrics(r.requestId, managerId), getSelf()))
+                .match(AdaptiveTimeout.RequestTimeoutMetrics.class, r ->
+                        getSender().tell(groupTimeout.metrics(r.requestId, managerId), getSelf()))
+                .match(AdaptiveTimeout.RepliesObserved.class, msg ->
+                        groupTimeout.observe(msg.answeredNanos, msg.unanswered, msg.waitedNanos))
+                .match(GroupTemperaturesFetched.class, this::onGroupTemperaturesFetched)
+                .match(HotPathTracer.DumpTrace.class, d ->
+                        getSender().tell(new HotPathTracer.TraceDump(d.requestId, managerId, tracer.snapshot()), getSelf()))
                 .build();
     }
 
+    // Unfiltered reads always refresh the cache. A filtered read only goes through the cache when
+    // the caller accepts stale results, since refreshing it means fetching the groups unfiltered.
     private void onRequestAllGroupTemperatures(RequestAllGroupTemperatures msg) {
-        log.info("Requesting all group temperatures for request {}", msg.requestId);
-        Map<ActorRef, String> newActorToGroupId = new HashMap<>(actorToGroupId);
-        getContext().actorOf(IotDeviceManagerQuery.props(newActorToGroupId, msg.requestId,
-                getSender(), new FiniteDuration(30, TimeUnit.SECONDS)));
+        log.debug("Requesting all group temperatures for request {}", msg.requestId);
+        tracer.trace(TraceEvent.REQUEST_ALL_GROUP_TEMPERATURES, managerId, msg.requestId);
+        long maxStalenessNanos = msg.maxStaleness.toNanos();
+        if (maxStalenessNanos <= 0L) {
+            admit(msg.requestId, requester -> IotDeviceManagerQuery.props(new HashMap<>(actorToGroupId),
+                    msg.requestId, requester, queryTimeout(msg.timeout), msg.predicate, Map.of(),
+                    msg.predicate.acceptsAll()));
+            return;
+        }
+        long now = System.nanoTime();
+        Map<String, DeviceGroupTemperatureReading> cached = new HashMap<>();
+        Map<ActorRef, String> stale = new HashMap<>();
+        actorToGroupId.forEach((groupActor, groupId) -> {
+            Map<String, IotDeviceGroup.TemperatureReading> temperatures =
+                    temperatureCache.fresh(groupId, now, maxStalenessNanos);
+            if (temperatures == null) {
+                stale.put(groupActor, groupId);
+            } else {
+                Optional.ofNullable(IotDeviceManagerQuery.groupReading(
+                        IotDeviceManagerQuery.GROUP_REQUEST_ID, temperatures, msg.predicate))
+                        .ifPresent(reading -> cached.put(groupId, reading));
+            }
+        });
+        log.debug("Request {} answers {} groups from the cache and refreshes {}", msg.requestId, cached.size(),
+                stale.size());
+        if (stale.isEmpty()) {
+            getSender().tell(new RespondAllGroupTemperatures(msg.requestId, cached), getSelf());
+        } else {
+            admit(msg.requestId, requester -> IotDeviceManagerQuery.props(stale, msg.requestId, requester,
+                    queryTimeout(msg.timeout), msg.predicate, cached, true));
+        }
+    }
+
+    private void onGroupTemperaturesFetched(GroupTemperaturesFetched msg) {
+        msg.temperaturesByGroup.forEach((groupId, temperatures) -> {
+            if (groupIdToActor.containsKey(groupId)) {
+                temperatureCache.put(groupId, msg.startedAtNanos, temperatures);
+            }
+        });
+    }
+
+    private FiniteDuration queryTimeout(FiniteDuration requested) {
+        FiniteDuration adaptive = groupTimeout.timeout();
+        return requested == null || requested.gt(adaptive) ? adaptive : requested;
+    }
+
+    private void onStreamGroupTemperatures(StreamGroupTemperatures msg) {
+        log.debug("Streaming all group temperatures for request {}", msg.requestId);
+        admit(msg.requestId, requester -> IotDeviceManagerStreamQuery.props(new HashMap<>(actorToGroupId),
+                msg.requestId, requester, groupTimeout.timeout()));
+    }
+
+    // Subscribers get TemperatureUpdate from every current and future group until they stop.
+    private void onSubscribeTemperatureUpdates(IotDeviceGroup.SubscribeTemperatureUpdates msg) {
+        if (subscribers.containsKey(msg.subscriber)) {
+            return;
+        }
+        subscribers.put(msg.subscriber, msg.groupId);
+        getContext().watch(msg.subscriber);
+        if (msg.groupId == null) {
+            groupIdToActor.values().forEach(groupActor -> groupActor.tell(msg, getSelf()));
+        } else {
+            Optional.ofNullable(groupIdToActor.get(msg.groupId)).ifPresent(groupActor -> groupActor.tell(msg, getSelf()));
+        }
+    }
+
+    private void onRequestGroupTemperaturesChangedSince(RequestGroupTemperaturesChangedSince msg) {
+        log.debug("Requesting group temperatures changed since {} for request {}", msg.sinceVersions, msg.requestId);
+        admit(msg.requestId, requester -> IotDeviceManagerDeltaQuery.props(new HashMap<>(actorToGroupId),
+                new HashMap<>(msg.sinceVersions), msg.requestId, requester, groupTimeout.timeout()));
+    }
+
+    private void onRequestHottestDevicesAcrossGroups(RequestHottestDevicesAcrossGroups msg) {
+        log.debug("Requesting the {} hottest devices across groups for request {}", msg.k, msg.requestId);
+        int k = Math.max(0, Math.min(msg.k, maxHottestK));
+        admit(msg.requestId, requester -> IotDeviceManagerHottestQuery.props(new HashMap<>(actorToGroupId), k,
+                msg.requestId, requester, groupTimeout.timeout()));
+    }
+
+    // Fan-out queries go through admission control; the group map and timeout are taken when the
+    // query starts, which for a queued request is when an earlier query finishes.
+    private void admit(long requestId, Function<ActorRef, Props> queryProps) {
+        ActorRef requester = getSender();
+        QueryAdmission.Decision decision = queryAdmission.offer(() ->
+                getContext().watch(getContext().actorOf(queryProps.apply(requester))));
+        if (decision == QueryAdmission.Decision.REJECTED) {
+            log.warning("Rejecting query {} for device manager {}: too many queries in flight", requestId, managerId);
+            requester.tell(new QueryAdmission.Overloaded(requestId, managerId), getSelf());
+        }
+    }
+
+    private void onExportFleet(ExportFleet msg) {
+        log.info("Exporting fleet of device manager {} to {} for request {}", managerId, msg.file, msg.requestId);
+        getContext().actorOf(IotFleetExporter.props(getContext().getSystem().settings().config().getConfig("iot.export"),
+                List.of(), actorToGroupId, msg.requestId, msg.file, getSender()));
     }
 
     private void onRequestDeviceGroupById(RequestDeviceGroupById msg) {
-        log.info("Requestiong device group by id for device {} on request {}", msg.deviceGroupId, msg.requestId);
+        log.debug("Requestiong device group by id for device {} on request {}", msg.deviceGroupId, msg.requestId);
+        tracer.trace(TraceEvent.REQUEST_DEVICE_GROUP_BY_ID, msg.deviceGroupId, msg.requestId);
         Optional.ofNullable(groupIdToActor.get(msg.deviceGroupId))
                 .ifPresentOrElse(actor -> {
-                    log.info("Getting device group {} for sender with request", msg.deviceGroupId, msg.requestId);
+                    log.debug("Getting device group {} for sender with request", msg.deviceGroupId, msg.requestId);
                     getSender().tell(new RespondDeviceGroupById(msg.requestId, actor), getSelf());
                 }, () -> log.warning("Device group {} not managed by this actor", msg.deviceGroupId));
     }
 
     private void onRequestGroupList(RequestGroupList requestGroupList) {
-        log.info("Requesting group list for device manager {} on request id {}", requestGroupList.deviceManagerId, requestGroupList.requestId);
+        log.debug("Requesting group list for device manager {} on request id {}", requestGroupList.deviceManagerId, requestGroupList.requestId);
+        tracer.trace(TraceEvent.REQUEST_GROUP_LIST, requestGroupList.deviceManagerId, requestGroupList.requestId);
         if(managerId.equals(requestGroupList.deviceManagerId)){
-            getSender().tell(new ReplyGroupList(requestGroupList.requestId, groupIdToActor.keySet()), getSelf());
+            getSender().tell(new ReplyGroupList(requestGroupList.requestId, Set.copyOf(groupIdToActor.keySet())), getSelf());
         }else{
             log.warning("Ignoring RequestGroupList call for {}.  This device manager handles calls for {}",
                     requestGroupList.deviceManagerId, managerId);
@@ -196,27 +717,82 @@ public class IotDeviceManager extends AbstractActor {
         }
     }
 
+    private void onRequestGroupListPage(RequestGroupListPage r) {
+        log.debug("Handling request {} for a group list page after cursor {}", r.requestId, r.cursor);
+        try {
+            ListingPages.Page page = listingPages.page(sortedGroupIds, r.cursor, r.pageSize);
+            getSender().tell(new GroupListPage(r.requestId, page.ids, page.nextCursor), getSelf());
+        } catch (IllegalArgumentException e) {
+            getSender().tell(new Status.Failure(e), getSelf());
+        }
+    }
+
     private void onTrackDevice(RequestTrackDevice trackMsg) {
-        log.info("Requesting to track device {} of group {} from device manager", trackMsg.deviceId, trackMsg.groupId);
-        String groupId = trackMsg.groupId;
-        Optional.ofNullable(groupIdToActor.get(groupId))
-                .ifPresentOrElse(ref -> ref.forward(trackMsg, getContext()), () -> {
-                    log.info("Creating device group actor for {}", groupId);
-                    ActorRef groupActor = getContext().actorOf(IotDeviceGroup.props(groupId), "iotGroup-" + groupId);
-                    getContext().watch(groupActor);
-                    groupActor.forward(trackMsg, getContext());
-                    groupIdToActor.put(groupId, groupActor);
-                    actorToGroupId.put(groupActor, groupId);
-                });
+        log.debug("Requesting to track device {} of group {} from device manager", trackMsg.deviceId, trackMsg.groupId);
+        tracer.trace(TraceEvent.TRACK_DEVICE, trackMsg.groupId, 0L);
+        if (trackMsg.tags != null) {
+            tagIndex.put(trackMsg.groupId, trackMsg.deviceId, trackMsg.tags);
+        }
+        groupActorFor(trackMsg.groupId).forward(trackMsg, getContext());
+    }
+
+    // Groups confirm straight to the sender, which is the supervisor's IotTopologyBootstrap.
+    private void onBootstrapGroups(BootstrapGroups msg) {
+        log.debug("Bootstrapping {} groups for request {}", msg.groups.size(), msg.requestId);
+        msg.groups.forEach((groupId, group) -> {
+            group.tags.forEach((deviceId, tags) -> tagIndex.put(groupId, deviceId, tags));
+            groupActorFor(groupId).tell(new IotDeviceGroup.BootstrapDevices(msg.requestId, managerId, group.deviceIds),
+                    getSender());
+        });
+    }
+
+    private void onRequestTemperaturesByTags(RequestTemperaturesByTags msg) {
+        log.debug("Requesting temperatures of devices tagged {} for request {}", msg.tags, msg.requestId);
+        Map<String, Set<String>> matches = tagIndex.match(msg.tags);
+        admit(msg.requestId, requester -> {
+            Map<ActorRef, String> groups = new HashMap<>();
+            matches.keySet().forEach(groupId ->
+                    Optional.ofNullable(groupIdToActor.get(groupId)).ifPresent(group -> groups.put(group, groupId)));
+            return IotDeviceManagerTagQuery.props(groups, matches, msg.requestId, requester,
+                    groupTimeout.timeout());
+        });
+    }
+
+    private ActorRef groupActorFor(String groupId) {
+        return Optional.ofNullable(groupIdToActor.get(groupId)).orElseGet(() -> {
+            log.info("Creating device group actor for {}", groupId);
+            ActorRef groupActor = getContext().actorOf(IotDeviceGroup.props(groupId),
+                    IotDeviceGroup.actorName("iotGroup-", groupId));
+            getContext().watch(groupActor);
+            subscribers.forEach((subscriber, followed) -> {
+                if (followed == null || followed.equals(groupId)) {
+                    groupActor.tell(new IotDeviceGroup.SubscribeTemperatureUpdates(subscriber), getSelf());
+                }
+            });
+            groupIdToActor.put(groupId, groupActor);
+            actorToGroupId.put(groupActor, groupId);
+            sortedGroupIds.add(groupId);
+            return groupActor;
+        });
     }
 
     private void onTerminated(Terminated t) {
         ActorRef groupActor = t.getActor();
+        if (queryAdmission.release(groupActor)) {
+            return;
+        }
+        if (subscribers.containsKey(groupActor)) {
+            subscribers.remove(groupActor);
+            return;
+        }
         Optional.ofNullable(actorToGroupId.getOrDefault(groupActor, null))
                 .ifPresent(groupId -> {
                     log.info("Device group actor for {} has been terminated", groupId);
                     actorToGroupId.remove(groupActor);
                     groupIdToActor.remove(groupId);
+                    sortedGroupIds.remove(groupId);
+                    tagIndex.removeGroup(groupId);
+                    temperatureCache.remove(groupId);
                     getContext().unwatch(groupActor);
                 });
     }
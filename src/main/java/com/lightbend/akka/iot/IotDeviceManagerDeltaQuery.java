@@ -0,0 +1,47 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.ActorRef;
+import akka.actor.Props;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+public class IotDeviceManagerDeltaQuery extends IotDeviceManagerFanOutQuery<IotDeviceGroup.RespondTemperaturesChangedSince> {
+    private final Map<String, Long> sinceVersions;
+
+    private IotDeviceManagerDeltaQuery(Map<ActorRef, String> actorToDeviceGroupId, Map<String, Long> sinceVersions,
+                                       long requestId, ActorRef requester, FiniteDuration timeout) {
+        super(actorToDeviceGroupId, requestId, requester, timeout, IotDeviceGroup.RespondTemperaturesChangedSince.class);
+        this.sinceVersions = sinceVersions;
+    }
+
+    public static Props props(Map<ActorRef, String> actorToDeviceGroupId, Map<String, Long> sinceVersions,
+                              long requestId, ActorRef requester, FiniteDuration timeout) {
+        return Props.create(IotDeviceManagerDeltaQuery.class, () ->
+                new IotDeviceManagerDeltaQuery(actorToDeviceGroupId, sinceVersions, requestId, requester, timeout))
+                .withMailbox(IotMailbox.QUERY);
+    }
+
+    @Override
+    protected Object requestFor(String groupId) {
+        return new IotDeviceGroup.RequestTemperaturesChangedSince(requestId, sinceVersions.getOrDefault(groupId, 0L));
+    }
+
+    @Override
+    protected Object respond(Map<String, IotDeviceGroup.RespondTemperaturesChangedSince> replies,
+                             Set<String> notAvailable, Set<String> overloaded, Set<String> timedOut) {
+        Map<String, IotDeviceManager.DeviceGroupTemperatureReading> changes = new HashMap<>();
+        replies.forEach((groupId, reply) -> {
+            if (reply.full || !reply.temperatures.isEmpty()) {
+                changes.put(groupId, new IotDeviceManager.DeviceGroupTemperatureChanges(reply.version, reply.temperatures,
+                        reply.full));
+            }
+        });
+        notAvailable.forEach(groupId -> changes.put(groupId, IotDeviceManager.DeviceGroupNotAvailable.INSTANCE));
+        overloaded.forEach(groupId -> changes.put(groupId, IotDeviceManager.DeviceGroupOverloaded.INSTANCE));
+        timedOut.forEach(groupId -> changes.put(groupId, IotDeviceManager.DeviceGroupTimedOut.INSTANCE));
+        return new IotDeviceManager.RespondGroupTemperaturesChangedSince(requestId, changes);
+    }
+}
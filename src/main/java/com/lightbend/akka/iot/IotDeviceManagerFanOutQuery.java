@@ -0,0 +1,140 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+import akka.actor.Terminated;
+import akka.dispatch.ControlMessage;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+// Scatter-gather over the device groups of a manager: sends one request per group, collects the
+// replies of type R and answers the requester once every group replied, shed the request with
+// QueryAdmission.Overloaded, stopped or timed out.
+// The manager that started it is then sent how long the groups took, for its query timeout.
+abstract class IotDeviceManagerFanOutQuery<R> extends AbstractActor {
+    private static final class CollectionTimeout implements ControlMessage {
+    }
+
+    protected final Map<ActorRef, String> actorToDeviceGroupId;
+    protected final long requestId;
+    protected final ActorRef requester;
+    private final Class<R> replyClass;
+    private final long timeoutNanos;
+    private final Cancellable queryTimeoutTimer;
+    private final long[] answeredNanos;
+    private int answered = 0;
+    private long startNanos;
+
+    private final Set<ActorRef> stillWaiting;
+    private final Map<String, R> replies = new HashMap<>();
+    private final Set<String> notAvailable = new HashSet<>();
+    private final Set<String> overloaded = new HashSet<>();
+
+    IotDeviceManagerFanOutQuery(Map<ActorRef, String> actorToDeviceGroupId, long requestId,
+                                ActorRef requester, FiniteDuration timeout, Class<R> replyClass) {
+        this.actorToDeviceGroupId = actorToDeviceGroupId;
+        this.requestId = requestId;
+        this.requester = requester;
+        this.replyClass = replyClass;
+        this.stillWaiting = new HashSet<>(actorToDeviceGroupId.keySet());
+        this.timeoutNanos = timeout.toNanos();
+        this.answeredNanos = new long[actorToDeviceGroupId.size()];
+
+        queryTimeoutTimer = getContext()
+                .getSystem()
+                .scheduler()
+                .scheduleOnce(timeout, getSelf(), new CollectionTimeout(), getContext().getDispatcher(), getSelf());
+    }
+
+    protected abstract Object requestFor(String groupId);
+
+    protected abstract Object respond(Map<String, R> replies, Set<String> notAvailable, Set<String> overloaded,
+                                      Set<String> timedOut);
+
+    // Called for every reply as it arrives; streaming queries forward here and return false so the
+    // reply is not kept for the final respond.
+    protected boolean replied(String groupId, R reply) {
+        return true;
+    }
+
+    @Override
+    public void preStart() {
+        startNanos = System.nanoTime();
+        actorToDeviceGroupId.forEach((actorRef, groupId) -> {
+            getContext().watch(actorRef);
+            actorRef.tell(requestFor(groupId), getSelf());
+        });
+        if (stillWaiting.isEmpty()) {
+            finish(Set.of());
+        }
+    }
+
+    @Override
+    public void postStop() {
+        queryTimeoutTimer.cancel();
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(replyClass, reply -> onReply(getSender(), reply))
+                .match(QueryAdmission.Overloaded.class, o -> onOverloaded(getSender()))
+                .match(Terminated.class, t -> onTerminated(t.getActor()))
+                .match(CollectionTimeout.class, ignored -> finish(new HashSet<>(groupIds(stillWaiting))))
+                .build();
+    }
+
+    private void onReply(ActorRef groupActor, R reply) {
+        if (stillWaiting.remove(groupActor)) {
+            answeredNanos[answered++] = System.nanoTime() - startNanos;
+            getContext().unwatch(groupActor);
+            String groupId = actorToDeviceGroupId.get(groupActor);
+            if (replied(groupId, reply)) {
+                replies.put(groupId, reply);
+            }
+            finishIfDone();
+        }
+    }
+
+    // A quick answer all the same, so it counts towards the timeout like a reply.
+    private void onOverloaded(ActorRef groupActor) {
+        if (stillWaiting.remove(groupActor)) {
+            answeredNanos[answered++] = System.nanoTime() - startNanos;
+            getContext().unwatch(groupActor);
+            overloaded.add(actorToDeviceGroupId.get(groupActor));
+            finishIfDone();
+        }
+    }
+
+    private void onTerminated(ActorRef groupActor) {
+        if (stillWaiting.remove(groupActor)) {
+            notAvailable.add(actorToDeviceGroupId.get(groupActor));
+            finishIfDone();
+        }
+    }
+
+    private void finishIfDone() {
+        if (stillWaiting.isEmpty()) {
+            finish(Set.of());
+        }
+    }
+
+    private void finish(Set<String> timedOut) {
+        requester.tell(respond(replies, notAvailable, overloaded, timedOut), getContext().getParent());
+        getContext().getParent().tell(new AdaptiveTimeout.RepliesObserved(Arrays.copyOf(answeredNanos, answered),
+                timedOut.size(), timedOut.isEmpty() ? 0L : timeoutNanos), getSelf());
+        getContext().stop(getSelf());
+    }
+
+    private Set<String> groupIds(Set<ActorRef> groupActors) {
+        Set<String> ids = new HashSet<>();
+        groupActors.forEach(actorRef -> ids.add(actorToDeviceGroupId.get(actorRef)));
+        return ids;
+    }
+}
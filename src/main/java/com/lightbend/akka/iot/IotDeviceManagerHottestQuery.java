@@ -0,0 +1,76 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.ActorRef;
+import akka.actor.Props;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+public class IotDeviceManagerHottestQuery extends IotDeviceManagerFanOutQuery<IotDeviceGroup.RespondHottestDevices> {
+    private final int k;
+
+    private IotDeviceManagerHottestQuery(Map<ActorRef, String> actorToDeviceGroupId, int k, long requestId,
+                                         ActorRef requester, FiniteDuration timeout) {
+        super(actorToDeviceGroupId, requestId, requester, timeout, IotDeviceGroup.RespondHottestDevices.class);
+        this.k = k;
+    }
+
+    public static Props props(Map<ActorRef, String> actorToDeviceGroupId, int k, long requestId,
+                              ActorRef requester, FiniteDuration timeout) {
+        return Props.create(IotDeviceManagerHottestQuery.class, () ->
+                new IotDeviceManagerHottestQuery(actorToDeviceGroupId, k, requestId, requester, timeout))
+                .withMailbox(IotMailbox.QUERY);
+    }
+
+    @Override
+    protected Object requestFor(String groupId) {
+        return new IotDeviceGroup.RequestHottestDevices(requestId, k);
+    }
+
+    @Override
+    protected Object respond(Map<String, IotDeviceGroup.RespondHottestDevices> replies,
+                             Set<String> notAvailable, Set<String> overloaded, Set<String> timedOut) {
+        Set<String> missingGroups = new HashSet<>(notAvailable);
+        missingGroups.addAll(overloaded);
+        missingGroups.addAll(timedOut);
+        return new IotDeviceManager.RespondHottestDevicesAcrossGroups(requestId, merge(replies), missingGroups);
+    }
+
+    // k-way merge of the per-group lists, each already hottest first: O(K log groups).
+    private List<IotDeviceGroup.DeviceTemperature> merge(Map<String, IotDeviceGroup.RespondHottestDevices> replies) {
+        PriorityQueue<Cursor> heads = new PriorityQueue<>(Math.max(1, replies.size()),
+                (a, b) -> HottestDevices.HOTTEST_FIRST.compare(a.head(), b.head()));
+        replies.values().forEach(reply -> {
+            if (!reply.hottest.isEmpty()) {
+                heads.add(new Cursor(reply.hottest));
+            }
+        });
+        List<IotDeviceGroup.DeviceTemperature> merged = new ArrayList<>(k);
+        while (merged.size() < k && !heads.isEmpty()) {
+            Cursor cursor = heads.poll();
+            merged.add(cursor.head());
+            if (++cursor.position < cursor.temperatures.size()) {
+                heads.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    private static final class Cursor {
+        final List<IotDeviceGroup.DeviceTemperature> temperatures;
+        int position = 0;
+
+        Cursor(List<IotDeviceGroup.DeviceTemperature> temperatures) {
+            this.temperatures = temperatures;
+        }
+
+        IotDeviceGroup.DeviceTemperature head() {
+            return temperatures.get(position);
+        }
+    }
+}
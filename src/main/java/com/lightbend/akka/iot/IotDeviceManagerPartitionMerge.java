@@ -0,0 +1,88 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+import akka.actor.Props;
+import akka.actor.Status;
+import akka.dispatch.ControlMessage;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+// Sends one request to every partition of a partitioned device manager and answers the requester,
+// on behalf of the manager, with the partitions' replies combined. An Overloaded or Status.Failure
+// from any partition is the answer instead, and so is a Status.Failure if the partitions have not
+// all replied within the timeout. Chunks of a streamed request are relayed as they arrive.
+public class IotDeviceManagerPartitionMerge<R> extends AbstractActor {
+    private static final class CollectionTimeout implements ControlMessage {
+    }
+
+    private final List<ActorRef> partitions;
+    private final Object request;
+    private final Class<R> replyClass;
+    private final Function<List<R>, Object> merge;
+    private final ActorRef requester;
+    private final ActorRef manager;
+    private final Cancellable timeoutTimer;
+    private final List<R> replies;
+
+    private IotDeviceManagerPartitionMerge(List<ActorRef> partitions, Object request, Class<R> replyClass,
+                                           Function<List<R>, Object> merge, ActorRef requester, ActorRef manager,
+                                           FiniteDuration timeout) {
+        this.partitions = partitions;
+        this.request = request;
+        this.replyClass = replyClass;
+        this.merge = merge;
+        this.requester = requester;
+        this.manager = manager;
+        this.replies = new ArrayList<>(partitions.size());
+        this.timeoutTimer = getContext().getSystem().scheduler().scheduleOnce(timeout, getSelf(),
+                new CollectionTimeout(), getContext().getDispatcher(), getSelf());
+    }
+
+    static <R> Props props(List<ActorRef> partitions, Object request, Class<R> replyClass,
+                           Function<List<R>, Object> merge, ActorRef requester, ActorRef manager,
+                           FiniteDuration timeout) {
+        return Props.create(IotDeviceManagerPartitionMerge.class, () -> new IotDeviceManagerPartitionMerge<>(
+                partitions, request, replyClass, merge, requester, manager, timeout))
+                .withMailbox(IotMailbox.QUERY);
+    }
+
+    @Override
+    public void preStart() {
+        partitions.forEach(partition -> partition.tell(request, getSelf()));
+    }
+
+    @Override
+    public void postStop() {
+        timeoutTimer.cancel();
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(replyClass, this::onReply)
+                .match(IotDeviceManager.GroupTemperaturesChunk.class, chunk -> requester.tell(chunk, manager))
+                .match(QueryAdmission.Overloaded.class, this::finish)
+                .match(Status.Failure.class, this::finish)
+                .match(CollectionTimeout.class, t -> finish(new Status.Failure(new TimeoutException(
+                        replies.size() + " of " + partitions.size() + " partitions answered " + request))))
+                .build();
+    }
+
+    private void onReply(R reply) {
+        replies.add(reply);
+        if (replies.size() == partitions.size()) {
+            finish(merge.apply(replies));
+        }
+    }
+
+    private void finish(Object answer) {
+        requester.tell(answer, manager);
+        getContext().stop(getSelf());
+    }
+}
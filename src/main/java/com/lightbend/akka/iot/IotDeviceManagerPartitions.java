@@ -0,0 +1,353 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.AbstractActorWithStash;
+import akka.actor.ActorContext;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.actor.SupervisorStrategy;
+import akka.actor.Terminated;
+import akka.dispatch.Dispatchers;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+import akka.routing.ActorRefRoutee;
+import akka.routing.GetRoutees;
+import akka.routing.PoolBase;
+import akka.routing.Resizer;
+import akka.routing.Routee;
+import akka.routing.Router;
+import akka.routing.Routees;
+import akka.routing.RoutingLogic;
+import scala.Option;
+import scala.collection.immutable.IndexedSeq;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// A device manager split into partitions, each an IotDeviceManager owning the groups whose id
+// hashes to it. Callers get a pool router in place of the manager. Messages naming a group are
+// routed in the caller's thread straight to that group's partition, so tracking and ingestion no
+// longer queue behind one actor. Everything else goes to this coordinator, which fans it out to
+// the partitions and merges the replies with IotDeviceManagerPartitionMerge.
+public class IotDeviceManagerPartitions extends AbstractActorWithStash {
+    private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
+
+    // From start to the coordinator: the router, whose routees are the partitions.
+    private static final class Partitions {
+        final ActorRef router;
+
+        Partitions(ActorRef router) {
+            this.router = router;
+        }
+    }
+
+    // Partitions answer within their own query timeouts; this covers the trip to them and back.
+    private static final FiniteDuration REPLY_MARGIN = new FiniteDuration(5, TimeUnit.SECONDS);
+
+    private final String managerId;
+    private final int maxHottestK;
+    private final ListingPages listingPages;
+    private final FiniteDuration queryTimeout;
+    private ActorRef router = null;
+    private List<ActorRef> partitions = List.of();
+
+    private IotDeviceManagerPartitions(String managerId) {
+        this.managerId = managerId;
+        this.maxHottestK = getContext().getSystem().settings().config().getInt("iot.top-k.max-k");
+        this.listingPages = ListingPages.fromConfig("group",
+                getContext().getSystem().settings().config().getConfig("iot.listing"));
+        this.queryTimeout = FiniteDuration.fromNanos(getContext().getSystem().settings().config()
+                .getDuration("iot.adaptive-timeout.manager.max", TimeUnit.NANOSECONDS)).plus(REPLY_MARGIN);
+    }
+
+    // Creates the coordinator and the router with the given number of partitions under context,
+    // and returns the router, which stands in for the manager.
+    static ActorRef start(ActorContext context, String managerId, int partitionCount) {
+        ActorRef coordinator = context.actorOf(Props.create(IotDeviceManagerPartitions.class,
+                () -> new IotDeviceManagerPartitions(managerId)), "iotDeviceManager-" + managerId + "-coordinator");
+        ActorRef router = context.actorOf(new PartitionPool(partitionCount, coordinator)
+                .props(IotDeviceManager.props(managerId)), "iotDeviceManager-" + managerId);
+        coordinator.tell(new Partitions(router), ActorRef.noSender());
+        return router;
+    }
+
+    static int partitionOf(String groupId, int partitionCount) {
+        return Math.floorMod(groupId.hashCode(), partitionCount);
+    }
+
+    static final class PartitionRoutingLogic implements RoutingLogic {
+        private final Routee coordinator;
+
+        PartitionRoutingLogic(ActorRef coordinator) {
+            this.coordinator = new ActorRefRoutee(coordinator);
+        }
+
+        @Override
+        public Routee select(Object message, IndexedSeq<Routee> routees) {
+            String groupId = groupIdOf(message);
+            if (groupId == null || routees.isEmpty()) {
+                return coordinator;
+            }
+            return routees.apply(partitionOf(groupId, routees.size()));
+        }
+
+        private static String groupIdOf(Object message) {
+            if (message instanceof IotDeviceManager.RecordGroupTemperatures) {
+                return ((IotDeviceManager.RecordGroupTemperatures) message).groupId;
+            } else if (message instanceof IotDeviceManager.RequestTrackDevice) {
+                return ((IotDeviceManager.RequestTrackDevice) message).groupId;
+            } else if (message instanceof IotDeviceManager.RequestDeviceGroupById) {
+                return ((IotDeviceManager.RequestDeviceGroupById) message).deviceGroupId;
+            } else if (message instanceof IotDeviceGroup.SubscribeTemperatureUpdates) {
+                // Null, so the coordinator subscribes to every partition, unless one group is followed.
+                return ((IotDeviceGroup.SubscribeTemperatureUpdates) message).groupId;
+            }
+            return null;
+        }
+    }
+
+    // A partition that fails is restarted on its own, as a standalone manager would be.
+    static final class PartitionPool extends PoolBase {
+        private static final long serialVersionUID = 1L;
+        private final int partitionCount;
+        private final ActorRef coordinator;
+
+        PartitionPool(int partitionCount, ActorRef coordinator) {
+            this.partitionCount = partitionCount;
+            this.coordinator = coordinator;
+        }
+
+        @Override
+        public int nrOfInstances(ActorSystem system) {
+            return partitionCount;
+        }
+
+        @Override
+        public Option<Resizer> resizer() {
+            return Option.empty();
+        }
+
+        @Override
+        public SupervisorStrategy supervisorStrategy() {
+            return SupervisorStrategy.defaultStrategy();
+        }
+
+        @Override
+        public Router createRouter(ActorSystem system) {
+            return new Router(new PartitionRoutingLogic(coordinator));
+        }
+
+        @Override
+        public String routerDispatcher() {
+            return Dispatchers.DefaultDispatcherId();
+        }
+    }
+
+    // The replacement instance would otherwise never learn its router again.
+    @Override
+    public void preRestart(Throwable reason, Optional<Object> message) throws Exception {
+        if (router != null) {
+            getSelf().tell(new Partitions(router), ActorRef.noSender());
+        }
+        super.preRestart(reason, message);
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(Partitions.class, p -> {
+                    router = p.router;
+                    getContext().watch(router);
+                    router.tell(GetRoutees.getInstance(), getSelf());
+                })
+                .match(Routees.class, r -> {
+                    List<ActorRef> refs = new ArrayList<>();
+                    r.getRoutees().forEach(routee -> refs.add(((ActorRefRoutee) routee).ref()));
+                    partitions = List.copyOf(refs);
+                    log.info("Device manager {} runs {} partitions", managerId, partitions.size());
+                    getContext().become(ready());
+                    unstashAll();
+                })
+                .match(Terminated.class, t -> getContext().stop(getSelf()))
+                .matchAny(m -> stash())
+                .build();
+    }
+
+    private Receive ready() {
+        return receiveBuilder()
+                .match(IotSupervisor.TrackDeviceManager.class, this::onTrackDeviceManager)
+                .match(IotDeviceManager.BootstrapGroups.class, this::onBootstrapGroups)
+                .match(IotDeviceGroup.SubscribeTemperatureUpdates.class, msg ->
+                        partitions.forEach(partition -> partition.forward(msg, getContext())))
+                .match(IotDeviceManager.RequestGroupList.class, this::onRequestGroupList)
+                .match(IotDeviceManager.RequestGroupListPage.class, msg ->
+                        merge(msg, IotDeviceManager.GroupListPage.class, replies -> {
+                            List<ListingPages.Page> pages = new ArrayList<>();
+                            replies.forEach(reply -> pages.add(new ListingPages.Page(reply.groupIds, reply.nextCursor)));
+                            ListingPages.Page page = listingPages.merge(pages, msg.pageSize);
+                            return new IotDeviceManager.GroupListPage(msg.requestId, page.ids, page.nextCursor);
+                        }))
+                .match(IotDeviceManager.RequestAllGroupTemperatures.class, msg ->
+                        merge(msg, IotDeviceManager.RespondAllGroupTemperatures.class, msg.timeout == null ? queryTimeout : msg.timeout.plus(REPLY_MARGIN),
+                                replies -> {
+                                    Map<String, IotDeviceManager.DeviceGroupTemperatureReading> merged = new HashMap<>();
+                                    replies.forEach(reply -> merged.putAll(reply.groupTemperatures));
+                                    return new IotDeviceManager.RespondAllGroupTemperatures(msg.requestId, merged);
+                                }))
+                .match(IotDeviceManager.StreamGroupTemperatures.class, msg ->
+                        merge(msg, IotDeviceManager.GroupTemperaturesComplete.class, replies -> {
+                            int groups = 0;
+                            Set<String> notAvailable = new HashSet<>();
+                            Set<String> overloaded = new HashSet<>();
+                            Set<String> timedOut = new HashSet<>();
+                            for (IotDeviceManager.GroupTemperaturesComplete reply : replies) {
+                                groups += reply.groups;
+                                notAvailable.addAll(reply.notAvailable);
+                                overloaded.addAll(reply.overloaded);
+                                timedOut.addAll(reply.timedOut);
+                            }
+                            return new IotDeviceManager.GroupTemperaturesComplete(msg.requestId, groups, notAvailable,
+                                    overloaded, timedOut);
+                        }))
+                .match(IotDeviceManager.RequestGroupTemperaturesChangedSince.class, msg ->
+                        merge(msg, IotDeviceManager.RespondGroupTemperaturesChangedSince.class, replies -> {
+                            Map<String, IotDeviceManager.DeviceGroupTemperatureReading> merged = new HashMap<>();
+                            replies.forEach(reply -> merged.putAll(reply.groupChanges));
+                            return new IotDeviceManager.RespondGroupTemperaturesChangedSince(msg.requestId, merged);
+                        }))
+                .match(IotDeviceManager.RequestHottestDevicesAcrossGroups.class, msg ->
+                        merge(msg, IotDeviceManager.RespondHottestDevicesAcrossGroups.class, replies -> {
+                            List<IotDeviceGroup.DeviceTemperature> hottest = new ArrayList<>();
+                            Set<String> missingGroups = new HashSet<>();
+                            replies.forEach(reply -> {
+                                hottest.addAll(reply.hottest);
+                                missingGroups.addAll(reply.missingGroups);
+                            });
+                            hottest.sort(HottestDevices.HOTTEST_FIRST);
+                            int k = Math.max(0, Math.min(msg.k, maxHottestK));
+                            return new IotDeviceManager.RespondHottestDevicesAcrossGroups(msg.requestId,
+                                    new ArrayList<>(hottest.subList(0, Math.min(k, hottest.size()))), missingGroups);
+                        }))
+                .match(IotDeviceManager.RequestDevicesByTags.class, msg ->
+                        merge(msg, IotDeviceManager.RespondDevicesByTags.class, replies -> {
+                            Map<String, Set<String>> merged = new HashMap<>();
+                            replies.forEach(reply -> merged.putAll(reply.deviceIdsByGroup));
+                            return new IotDeviceManager.RespondDevicesByTags(msg.requestId, merged);
+                        }))
+                .match(IotDeviceManager.RequestTemperaturesByTags.class, msg ->
+                        merge(msg, IotDeviceManager.RespondTemperaturesByTags.class, replies -> {
+                            Map<String, Map<String, IotDeviceGroup.TemperatureReading>> merged = new HashMap<>();
+                            Set<String> notAvailable = new HashSet<>();
+                            Set<String> overloaded = new HashSet<>();
+                            Set<String> timedOut = new HashSet<>();
+                            replies.forEach(reply -> {
+                                merged.putAll(reply.temperatures);
+                                notAvailable.addAll(reply.groupsNotAvailable);
+                                overloaded.addAll(reply.groupsOverloaded);
+                                timedOut.addAll(reply.groupsTimedOut);
+                            });
+                            return new IotDeviceManager.RespondTemperaturesByTags(msg.requestId, merged,
+                                    notAvailable, overloaded, timedOut);
+                        }))
+                .match(QueryAdmission.RequestAdmissionMetrics.class, msg ->
+                        merge(msg, QueryAdmission.AdmissionMetrics.class, replies -> {
+                            int inFlight = 0;
+                            int queued = 0;
+                            int maxInFlight = 0;
+                            int maxQueued = 0;
+                            long started = 0L;
+                            long queuedTotal = 0L;
+                            long rejected = 0L;
+                            for (QueryAdmission.AdmissionMetrics reply : replies) {
+                                inFlight += reply.inFlight;
+                                queued += reply.queued;
+                                maxInFlight += reply.maxInFlight;
+                                maxQueued += reply.maxQueued;
+                                started += reply.started;
+                                queuedTotal += reply.queuedTotal;
+                                rejected += reply.rejected;
+                            }
+                            return new QueryAdmission.AdmissionMetrics(msg.requestId, managerId, inFlight, queued,
+                                    maxInFlight, maxQueued, started, queuedTotal, rejected);
+                        }))
+                // The slowest partition speaks for the manager.
+                .match(AdaptiveTimeout.RequestTimeoutMetrics.class, msg ->
+                        merge(msg, AdaptiveTimeout.TimeoutMetrics.class, replies -> {
+                            AdaptiveTimeout.TimeoutMetrics slowest = replies.get(0);
+                            long samples = 0L;
+                            for (AdaptiveTimeout.TimeoutMetrics reply : replies) {
+                                samples += reply.samples;
+                                if (reply.timeoutNanos > slowest.timeoutNanos) {
+                                    slowest = reply;
+                                }
+                            }
+                            return new AdaptiveTimeout.TimeoutMetrics(msg.requestId, managerId, slowest.timeoutNanos,
+                                    samples, slowest.p50Nanos, slowest.p90Nanos, slowest.p99Nanos, slowest.maxNanos);
+                        }))
+                .match(HotPathTracer.DumpTrace.class, msg ->
+                        merge(msg, HotPathTracer.TraceDump.class, replies -> {
+                            List<HotPathTracer.TraceRecord> records = new ArrayList<>();
+                            replies.forEach(reply -> records.addAll(reply.records));
+                            records.sort(Comparator.comparingLong(record -> record.nanoTime));
+                            return new HotPathTracer.TraceDump(msg.requestId, managerId, records);
+                        }))
+                .match(IotDeviceManager.ExportFleet.class, msg -> getContext().actorOf(IotFleetExporter.props(
+                        getContext().getSystem().settings().config().getConfig("iot.export"), partitions, Map.of(),
+                        msg.requestId, msg.file, getSender())))
+                .match(Terminated.class, t -> getContext().stop(getSelf()))
+                .build();
+    }
+
+    private <R> void merge(Object request, Class<R> replyClass, Function<List<R>, Object> merge) {
+        merge(request, replyClass, queryTimeout, merge);
+    }
+
+    private <R> void merge(Object request, Class<R> replyClass, FiniteDuration timeout, Function<List<R>, Object> merge) {
+        getContext().actorOf(IotDeviceManagerPartitionMerge.props(partitions, request, replyClass, merge, getSender(),
+                router, timeout));
+    }
+
+    private void onTrackDeviceManager(IotSupervisor.TrackDeviceManager msg) {
+        if (managerId.equals(msg.deviceManagerId)) {
+            getSender().tell(new IotSupervisor.DeviceManagerRegistered(msg.requestId), router);
+        } else {
+            log.warning("Ignoring TrackDeviceManager call for {}.  This DeviceManager handles calls for {}",
+                    msg.deviceManagerId, managerId);
+        }
+    }
+
+    private void onRequestGroupList(IotDeviceManager.RequestGroupList msg) {
+        if (managerId.equals(msg.deviceManagerId)) {
+            merge(msg, IotDeviceManager.ReplyGroupList.class, replies -> {
+                Set<String> groupIds = new HashSet<>();
+                replies.forEach(reply -> groupIds.addAll(reply.groupList));
+                return new IotDeviceManager.ReplyGroupList(msg.requestId, Set.copyOf(groupIds));
+            });
+        } else {
+            log.warning("Ignoring RequestGroupList call for {}.  This device manager handles calls for {}",
+                    msg.deviceManagerId, managerId);
+        }
+    }
+
+    // Each partition gets the groups it owns, with the original sender kept so the groups confirm
+    // to the bootstrap collector directly.
+    private void onBootstrapGroups(IotDeviceManager.BootstrapGroups msg) {
+        List<Map<String, IotTopology.Group>> split = new ArrayList<>();
+        partitions.forEach(partition -> split.add(new HashMap<>()));
+        msg.groups.forEach((groupId, group) -> split.get(partitionOf(groupId, partitions.size())).put(groupId, group));
+        for (int i = 0; i < partitions.size(); i++) {
+            if (!split.get(i).isEmpty()) {
+                partitions.get(i).tell(new IotDeviceManager.BootstrapGroups(msg.requestId, split.get(i)), getSender());
+            }
+        }
+    }
+}
@@ -1,30 +1,51 @@
 package com.lightbend.akka.iot;
 
 import akka.actor.*;
+import akka.dispatch.ControlMessage;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
 import scala.concurrent.duration.FiniteDuration;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 
 public class IotDeviceManagerQuery extends AbstractActor {
     private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
-    private static final class CollectionTimeout {
+    private static final class CollectionTimeout implements ControlMessage {
     }
 
+    // The request id the groups are asked under.
+    static final long GROUP_REQUEST_ID = 1L;
+
     private final Map<ActorRef, String> actorToDeviceGroupId;
     private final long requestId;
     private final ActorRef requester;
+    private final TemperaturePredicate predicate;
+    private final Map<String, IotDeviceManager.DeviceGroupTemperatureReading> preset;
+    private final boolean refreshCache;
+    private final Map<String, Map<String, IotDeviceGroup.TemperatureReading>> fetched = new HashMap<>();
+    private final long timeoutNanos;
     private final Cancellable queryTimeoutTimer;
+    private final long[] answeredNanos;
+    private int answered = 0;
+    private long startNanos;
 
     private IotDeviceManagerQuery(Map<ActorRef, String> actorToDeviceGroupId, long requestId,
-                                  ActorRef requester, FiniteDuration timeout) {
+                                  ActorRef requester, FiniteDuration timeout, TemperaturePredicate predicate,
+                                  Map<String, IotDeviceManager.DeviceGroupTemperatureReading> preset,
+                                  boolean refreshCache) {
         this.actorToDeviceGroupId = actorToDeviceGroupId;
         this.requestId = requestId;
         this.requester = requester;
+        this.predicate = predicate;
+        this.preset = preset;
+        this.refreshCache = refreshCache;
+        this.timeoutNanos = timeout.toNanos();
+        this.answeredNanos = new long[actorToDeviceGroupId.size()];
 
         queryTimeoutTimer = getContext()
                 .getSystem()
@@ -34,16 +55,54 @@ public class IotDeviceManagerQuery extends AbstractActor {
 
     public static Props props(Map<ActorRef, String> actorToDeviceGroupId, long requestId,
                               ActorRef requester, FiniteDuration timeout) {
-        return Props.create(IotDeviceManagerQuery.class, () ->
-                new IotDeviceManagerQuery(actorToDeviceGroupId, requestId, requester, timeout));
+        return props(actorToDeviceGroupId, requestId, requester, timeout, TemperaturePredicate.all());
+    }
+
+    public static Props props(Map<ActorRef, String> actorToDeviceGroupId, long requestId,
+                              ActorRef requester, FiniteDuration timeout, TemperaturePredicate predicate) {
+        return props(actorToDeviceGroupId, requestId, requester, timeout, predicate, Map.of(), false);
+    }
+
+    // preset group readings are part of the reply without asking the group. With refreshCache the
+    // groups are asked for all their readings, which the query filters itself and sends the manager
+    // as GroupTemperaturesFetched when it ends.
+    public static Props props(Map<ActorRef, String> actorToDeviceGroupId, long requestId,
+                              ActorRef requester, FiniteDuration timeout, TemperaturePredicate predicate,
+                              Map<String, IotDeviceManager.DeviceGroupTemperatureReading> preset,
+                              boolean refreshCache) {
+        return Props.create(IotDeviceManagerQuery.class, () -> new IotDeviceManagerQuery(actorToDeviceGroupId,
+                requestId, requester, timeout, predicate, preset, refreshCache))
+                .withMailbox(IotMailbox.QUERY);
+    }
+
+    // null leaves a group without matches out of a filtered reply.
+    static IotDeviceManager.DeviceGroupTemperatureReading groupReading(
+            long groupRequestId, Map<String, IotDeviceGroup.TemperatureReading> temperatures,
+            TemperaturePredicate predicate) {
+        if (predicate.acceptsAll()) {
+            return new IotDeviceManager.DeviceGroupTemperatures(groupRequestId, temperatures);
+        }
+        Map<String, IotDeviceGroup.TemperatureReading> matching = new HashMap<>();
+        temperatures.forEach((deviceId, reading) -> {
+            if (predicate.test(reading)) {
+                matching.put(deviceId, reading);
+            }
+        });
+        return matching.isEmpty() ? null : new IotDeviceManager.DeviceGroupTemperatures(groupRequestId, matching);
     }
 
     @Override
     public void preStart() {
+        startNanos = System.nanoTime();
         actorToDeviceGroupId.keySet().forEach(actorRef -> {
             getContext().watch(actorRef);
-            actorRef.tell(new IotDeviceGroup.RequestAllTemperatures(1L), getSelf());
+            actorRef.tell(new IotDeviceGroup.RequestAllTemperatures(GROUP_REQUEST_ID,
+                    refreshCache ? TemperaturePredicate.all() : predicate), getSelf());
         });
+        if (actorToDeviceGroupId.isEmpty()) {
+            requester.tell(new IotDeviceManager.RespondAllGroupTemperatures(requestId, new HashMap<>(preset)), getContext().getParent());
+            getContext().stop(getSelf());
+        }
     }
 
     @Override
@@ -53,13 +112,17 @@ public class IotDeviceManagerQuery extends AbstractActor {
 
     @Override
     public Receive createReceive() {
-        return waitingForReplies(new HashMap<>(), actorToDeviceGroupId.keySet());
+        return waitingForReplies(new HashMap<>(preset), actorToDeviceGroupId.keySet());
     }
 
     private Receive waitingForReplies(Map<String, IotDeviceManager.DeviceGroupTemperatureReading> repliesSoFar,
                                       Set<ActorRef> stillWaiting) {
         return receiveBuilder()
                 .match(IotDeviceGroup.RespondAllTemperatures.class, msg -> this.onRespondAllTemperatures(msg, repliesSoFar, stillWaiting))
+                .match(QueryAdmission.Overloaded.class, msg -> {
+                    answeredNanos[answered++] = System.nanoTime() - startNanos;
+                    receivedResponse(getSender(), IotDeviceManager.DeviceGroupOverloaded.INSTANCE, repliesSoFar, stillWaiting);
+                })
                 .match(CollectionTimeout.class, ignored -> this.onCollectionTimeout(repliesSoFar, stillWaiting))
                 .match(Terminated.class, msg -> this.onTerminated(msg, repliesSoFar, stillWaiting))
                 .build();
@@ -76,14 +139,26 @@ public class IotDeviceManagerQuery extends AbstractActor {
             replies.put(id, IotDeviceManager.DeviceGroupTimedOut.INSTANCE);
         });
         // get sender and tell
-        requester.tell(new IotDeviceManager.RespondAllGroupTemperatures(requestId, replies), getSelf());
-        getContext().stop(getSelf());
+        finish(new IotDeviceManager.RespondAllGroupTemperatures(requestId, replies), getSelf(), stillWaiting.size(),
+                timeoutNanos);
 
     }
 
     private void onRespondAllTemperatures(IotDeviceGroup.RespondAllTemperatures msg, Map<String, IotDeviceManager.DeviceGroupTemperatureReading> repliesSoFar, Set<ActorRef> stillWaiting) {
-        log.info("Responding to IotDeviceGroup.RespondAllTemperatures");
-        receivedResponse(getSender(), new IotDeviceManager.DeviceGroupTemperatures(msg.requestId, msg.temperatures), repliesSoFar, stillWaiting);
+        log.debug("Responding to IotDeviceGroup.RespondAllTemperatures");
+        answeredNanos[answered++] = System.nanoTime() - startNanos;
+        IotDeviceManager.DeviceGroupTemperatureReading reading;
+        if (refreshCache) {
+            Optional.ofNullable(actorToDeviceGroupId.get(getSender()))
+                    .ifPresent(groupId -> fetched.put(groupId, msg.temperatures));
+            reading = groupReading(msg.requestId, msg.temperatures, predicate);
+        } else {
+            // null leaves a group without matches out of a filtered reply.
+            reading = msg.temperatures.isEmpty() && !predicate.acceptsAll()
+                    ? null
+                    : new IotDeviceManager.DeviceGroupTemperatures(msg.requestId, msg.temperatures);
+        }
+        receivedResponse(getSender(), reading, repliesSoFar, stillWaiting);
     }
 
     private void receivedResponse(ActorRef actorRef, IotDeviceManager.DeviceGroupTemperatureReading reading,
@@ -94,14 +169,29 @@ public class IotDeviceManagerQuery extends AbstractActor {
         Set<ActorRef> newStillWaiting = new HashSet<>(stillWating);
         newStillWaiting.remove(actorRef);
         Map<String, IotDeviceManager.DeviceGroupTemperatureReading> newRepliesSoFar = new HashMap<>(repliesSoFar);
-        newRepliesSoFar.put(groupId, reading);
+        if (reading != null) {
+            newRepliesSoFar.put(groupId, reading);
+        }
         if (newStillWaiting.isEmpty()) {
             log.info("Sending IotDeviceManager.RespondAllGroupTemperatures response to sender with path {}", requester.path());
-            requester.tell(new IotDeviceManager.RespondAllGroupTemperatures(requestId, newRepliesSoFar), getContext().getParent());
-            getContext().stop(getSelf());
+            finish(new IotDeviceManager.RespondAllGroupTemperatures(requestId, newRepliesSoFar), getContext().getParent(),
+                    0, 0L);
         } else {
             getContext().become(waitingForReplies(newRepliesSoFar, newStillWaiting));
         }
 
     }
+
+    // The manager that started the query learns how long its groups took, for its query timeout,
+    // and gets the fetched readings for its cache before the requester can ask again.
+    private void finish(IotDeviceManager.RespondAllGroupTemperatures reply, ActorRef replySender, int unanswered,
+                        long waitedNanos) {
+        if (!fetched.isEmpty()) {
+            getContext().getParent().tell(new IotDeviceManager.GroupTemperaturesFetched(startNanos, fetched), getSelf());
+        }
+        getContext().getParent().tell(new AdaptiveTimeout.RepliesObserved(
+                Arrays.copyOf(answeredNanos, answered), unanswered, waitedNanos), getSelf());
+        requester.tell(reply, replySender);
+        getContext().stop(getSelf());
+    }
 }
@@ -0,0 +1,47 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.ActorRef;
+import akka.actor.Props;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.util.Map;
+import java.util.Set;
+
+// Like IotDeviceManagerQuery, but hands every group's temperatures to the requester as soon as
+// they arrive and ends with a completion listing the groups that stopped, were overloaded or
+// timed out, so nothing has to hold the whole fleet's readings at once.
+public class IotDeviceManagerStreamQuery extends IotDeviceManagerFanOutQuery<IotDeviceGroup.RespondAllTemperatures> {
+    private int groupsStreamed = 0;
+
+    private IotDeviceManagerStreamQuery(Map<ActorRef, String> actorToDeviceGroupId, long requestId,
+                                        ActorRef requester, FiniteDuration timeout) {
+        super(actorToDeviceGroupId, requestId, requester, timeout, IotDeviceGroup.RespondAllTemperatures.class);
+    }
+
+    public static Props props(Map<ActorRef, String> actorToDeviceGroupId, long requestId,
+                              ActorRef requester, FiniteDuration timeout) {
+        return Props.create(IotDeviceManagerStreamQuery.class, () ->
+                new IotDeviceManagerStreamQuery(actorToDeviceGroupId, requestId, requester, timeout))
+                .withMailbox(IotMailbox.QUERY);
+    }
+
+    @Override
+    protected Object requestFor(String groupId) {
+        return new IotDeviceGroup.RequestAllTemperatures(requestId);
+    }
+
+    @Override
+    protected boolean replied(String groupId, IotDeviceGroup.RespondAllTemperatures reply) {
+        requester.tell(new IotDeviceManager.GroupTemperaturesChunk(requestId, groupId, reply.temperatures),
+                getContext().getParent());
+        groupsStreamed++;
+        return false;
+    }
+
+    @Override
+    protected Object respond(Map<String, IotDeviceGroup.RespondAllTemperatures> replies,
+                             Set<String> notAvailable, Set<String> overloaded, Set<String> timedOut) {
+        return new IotDeviceManager.GroupTemperaturesComplete(requestId, groupsStreamed, notAvailable, overloaded,
+                timedOut);
+    }
+}
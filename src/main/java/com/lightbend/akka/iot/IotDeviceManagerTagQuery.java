@@ -0,0 +1,42 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.ActorRef;
+import akka.actor.Props;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Asks only the groups holding devices that matched a tag query, and each of them only for its
+// matching devices.
+public class IotDeviceManagerTagQuery extends IotDeviceManagerFanOutQuery<IotDeviceGroup.RespondAllTemperatures> {
+    private final Map<String, Set<String>> deviceIdsByGroup;
+
+    private IotDeviceManagerTagQuery(Map<ActorRef, String> actorToDeviceGroupId, Map<String, Set<String>> deviceIdsByGroup,
+                                     long requestId, ActorRef requester, FiniteDuration timeout) {
+        super(actorToDeviceGroupId, requestId, requester, timeout, IotDeviceGroup.RespondAllTemperatures.class);
+        this.deviceIdsByGroup = deviceIdsByGroup;
+    }
+
+    public static Props props(Map<ActorRef, String> actorToDeviceGroupId, Map<String, Set<String>> deviceIdsByGroup,
+                              long requestId, ActorRef requester, FiniteDuration timeout) {
+        return Props.create(IotDeviceManagerTagQuery.class, () ->
+                new IotDeviceManagerTagQuery(actorToDeviceGroupId, deviceIdsByGroup, requestId, requester, timeout))
+                .withMailbox(IotMailbox.QUERY);
+    }
+
+    @Override
+    protected Object requestFor(String groupId) {
+        return new IotDeviceGroup.RequestDeviceTemperatures(requestId, deviceIdsByGroup.get(groupId));
+    }
+
+    @Override
+    protected Object respond(Map<String, IotDeviceGroup.RespondAllTemperatures> replies,
+                             Set<String> notAvailable, Set<String> overloaded, Set<String> timedOut) {
+        Map<String, Map<String, IotDeviceGroup.TemperatureReading>> temperatures = new HashMap<>();
+        replies.forEach((groupId, reply) -> temperatures.put(groupId, reply.temperatures));
+        return new IotDeviceManager.RespondTemperaturesByTags(requestId, temperatures, notAvailable, overloaded,
+                timedOut);
+    }
+}
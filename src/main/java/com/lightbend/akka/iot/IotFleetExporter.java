@@ -0,0 +1,242 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+import akka.actor.Props;
+import akka.actor.Terminated;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+import com.typesafe.config.Config;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Exports a manager's groups one at a time: the current readings, then the full history pulled
+// chunk by chunk. Only one request is ever outstanding, so groups keep serving ingestion while
+// the exporter (on its own dispatcher) does the blocking file writes. Each group is asked under a
+// request id of its own, so a snapshot or chunk from a group that was skipped after
+// iot.export.group-timeout is never written under the next group. For a partitioned manager the
+// exporter first asks every partition for its groups, then exports them all into the one file.
+public class IotFleetExporter extends AbstractActor {
+    private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
+
+    private static final class GroupTimeout {
+        final long groupRequestId;
+
+        GroupTimeout(long groupRequestId) {
+            this.groupRequestId = groupRequestId;
+        }
+    }
+
+    private final List<ActorRef> partitions;
+    private final Map<ActorRef, String> actorToDeviceGroupId;
+    private final Deque<ActorRef> remainingGroups;
+    private final long requestId;
+    private final Path file;
+    private final int bufferSize;
+    private final ActorRef requester;
+    private final FiniteDuration groupTimeout;
+
+    private ColumnarExportWriter writer;
+    private boolean exported = false;
+    private final Set<String> skippedGroups = new HashSet<>();
+    private ActorRef currentGroup = null;
+    private long groupRequestId = 0L;
+    private int partitionsToList;
+    private Cancellable groupTimer = null;
+    private long startNanos;
+    private int groups = 0;
+    private long devices = 0L;
+    private long samples = 0L;
+
+    private IotFleetExporter(List<ActorRef> partitions, Map<ActorRef, String> actorToDeviceGroupId, long requestId,
+                             Path file, int bufferSize, FiniteDuration groupTimeout, ActorRef requester) {
+        this.partitions = partitions;
+        this.partitionsToList = partitions.size();
+        this.actorToDeviceGroupId = new HashMap<>(actorToDeviceGroupId);
+        this.remainingGroups = new ArrayDeque<>(actorToDeviceGroupId.keySet());
+        this.requestId = requestId;
+        this.file = file;
+        this.bufferSize = bufferSize;
+        this.requester = requester;
+        this.groupTimeout = groupTimeout;
+    }
+
+    public static Props props(Map<ActorRef, String> actorToDeviceGroupId, long requestId, Path file,
+                              int bufferSize, FiniteDuration groupTimeout, ActorRef requester) {
+        return Props.create(IotFleetExporter.class, () ->
+                new IotFleetExporter(List.of(), actorToDeviceGroupId, requestId, file, bufferSize, groupTimeout, requester));
+    }
+
+    // Settings come from iot.export. Groups are those given plus those the partitions list, if any.
+    static Props props(Config export, List<ActorRef> partitions, Map<ActorRef, String> actorToDeviceGroupId,
+                       long requestId, Path file, ActorRef requester) {
+        int bufferSize = (int) Math.min(Integer.MAX_VALUE, export.getBytes("buffer-size"));
+        FiniteDuration groupTimeout = FiniteDuration.create(export.getDuration("group-timeout", TimeUnit.MILLISECONDS),
+                TimeUnit.MILLISECONDS);
+        Map<ActorRef, String> groups = new HashMap<>(actorToDeviceGroupId);
+        return Props.create(IotFleetExporter.class, () -> new IotFleetExporter(partitions, groups,
+                requestId, file, bufferSize, groupTimeout, requester)).withDispatcher("iot.export.dispatcher");
+    }
+
+    private interface ExportStep {
+        void run() throws IOException;
+    }
+
+    @Override
+    public void preStart() {
+        startNanos = System.nanoTime();
+        guarded(() -> {
+            writer = new ColumnarExportWriter(file, bufferSize);
+            if (partitions.isEmpty()) {
+                nextGroup();
+            } else {
+                getContext().become(listingGroups());
+                partitions.forEach(partition -> askGroup(partition, new IotDeviceManager.RequestGroupActors(requestId)));
+            }
+        });
+    }
+
+    // An export that did not finish is aborted without its END marker and deleted, so a partial file
+    // never passes for a complete one. Failing again here must not hide why the export failed.
+    @Override
+    public void postStop() {
+        if (groupTimer != null) {
+            groupTimer.cancel();
+        }
+        if (exported) {
+            return;
+        }
+        try {
+            if (writer != null) {
+                writer.abort();
+            }
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warning("Cannot remove unfinished export {} at {}: {}", requestId, file, e.getMessage());
+        }
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(IotDeviceGroup.ExportSnapshot.class, s -> s.requestId == groupRequestId,
+                        s -> guarded(() -> onExportSnapshot(s)))
+                .match(IotDeviceGroup.GroupHistoryChunk.class, c -> c.requestId == groupRequestId,
+                        c -> guarded(() -> onHistoryChunk(c)))
+                .match(GroupTimeout.class, t -> t.groupRequestId == groupRequestId, t -> {
+                    log.warning("Device group {} did not answer export {} within {}",
+                            actorToDeviceGroupId.get(currentGroup), requestId, groupTimeout);
+                    skippedGroups.add(actorToDeviceGroupId.get(currentGroup));
+                    guarded(this::nextGroup);
+                })
+                .match(Terminated.class, t -> t.getActor().equals(currentGroup), t -> {
+                    log.warning("Device group {} stopped during export {}", actorToDeviceGroupId.get(currentGroup), requestId);
+                    skippedGroups.add(actorToDeviceGroupId.get(currentGroup));
+                    guarded(this::nextGroup);
+                })
+                .build();
+    }
+
+    private Receive listingGroups() {
+        return receiveBuilder()
+                .match(IotDeviceManager.GroupActors.class, g -> g.requestId == requestId, g -> {
+                    actorToDeviceGroupId.putAll(g.actorToGroupId);
+                    remainingGroups.addAll(g.actorToGroupId.keySet());
+                    if (--partitionsToList == 0) {
+                        getContext().become(createReceive());
+                        guarded(this::nextGroup);
+                    }
+                })
+                .match(GroupTimeout.class, t -> t.groupRequestId == groupRequestId, t -> {
+                    log.error("Partitions did not list their groups for export {} within {}", requestId, groupTimeout);
+                    requester.tell(new IotDeviceManager.FleetExportFailed(requestId, file,
+                            "partitions did not list their groups within " + groupTimeout), getContext().getParent());
+                    getContext().stop(getSelf());
+                })
+                .build();
+    }
+
+    // I/O failures end the export with a reply instead of a restart that would rewrite the file.
+    private void guarded(ExportStep step) {
+        try {
+            step.run();
+        } catch (IOException e) {
+            log.error(e, "Export {} to {} failed", requestId, file);
+            requester.tell(new IotDeviceManager.FleetExportFailed(requestId, file, e.getMessage()), getContext().getParent());
+            getContext().stop(getSelf());
+        }
+    }
+
+    private void onExportSnapshot(IotDeviceGroup.ExportSnapshot snapshot) throws IOException {
+        String groupId = actorToDeviceGroupId.get(currentGroup);
+        writer.writeSection(ColumnarExportWriter.CURRENT, groupId, snapshot.deviceIds, snapshot.recordedAt,
+                snapshot.values, snapshot.deviceIds.length);
+        devices += snapshot.deviceIds.length;
+        askGroup(currentGroup, new IotDeviceGroup.RequestGroupHistory(groupRequestId, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    private void onHistoryChunk(IotDeviceGroup.GroupHistoryChunk chunk) throws IOException {
+        if (chunk.values.length > 0) {
+            writer.writeSection(ColumnarExportWriter.HISTORY, actorToDeviceGroupId.get(currentGroup),
+                    chunk.deviceIds, chunk.timestamps, chunk.values, chunk.values.length);
+            samples += chunk.values.length;
+        }
+        if (chunk.last) {
+            groups++;
+            nextGroup();
+        } else {
+            askGroup(getSender(), new IotDeviceGroup.RequestNextHistoryChunk(groupRequestId));
+        }
+    }
+
+    private void nextGroup() throws IOException {
+        if (currentGroup != null) {
+            getContext().unwatch(currentGroup);
+        }
+        currentGroup = remainingGroups.poll();
+        if (currentGroup == null) {
+            finish();
+        } else {
+            getContext().watch(currentGroup);
+            groupRequestId++;
+            askGroup(currentGroup, new IotDeviceGroup.RequestExportSnapshot(groupRequestId));
+        }
+    }
+
+    private void askGroup(ActorRef target, Object request) {
+        if (groupTimer != null) {
+            groupTimer.cancel();
+        }
+        groupTimer = getContext().getSystem().scheduler().scheduleOnce(groupTimeout, getSelf(),
+                new GroupTimeout(groupRequestId), getContext().getDispatcher(), getSelf());
+        target.tell(request, getSelf());
+    }
+
+    private void finish() throws IOException {
+        ColumnarExportWriter finished = writer;
+        writer = null;
+        finished.close();
+        exported = true;
+        long bytes = finished.bytesWritten();
+        long elapsedNanos = System.nanoTime() - startNanos;
+        log.info("Exported {} groups, {} devices and {} history samples to {}", groups, devices, samples, file);
+        if (!skippedGroups.isEmpty()) {
+            log.warning("Export {} to {} skipped groups {}", requestId, file, skippedGroups);
+        }
+        requester.tell(new IotDeviceManager.FleetExported(requestId, file, groups, devices, samples, bytes, elapsedNanos,
+                Set.copyOf(skippedGroups)), getContext().getParent());
+        getContext().stop(getSelf());
+    }
+}
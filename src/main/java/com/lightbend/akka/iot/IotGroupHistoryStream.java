@@ -0,0 +1,104 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Props;
+import akka.actor.ReceiveTimeout;
+import akka.actor.Terminated;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+// Streams the samples of a group history range to the requester in chunks. Chunks are pulled:
+// the first one is sent right away and every following one only after the requester answered the
+// previous chunk's sender with RequestNextHistoryChunk, so at most one chunk is ever in flight.
+public class IotGroupHistoryStream extends AbstractActor {
+    private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
+
+    private final List<GroupSegmentStore.StoredBlock> blocks;
+    private final long requestId;
+    private final long from;
+    private final long to;
+    private final int chunkSamples;
+    private final ActorRef requester;
+
+    private final String[] deviceIds;
+    private final long[] timestamps;
+    private final double[] values;
+
+    private int blockIndex = 0;
+    private GorillaBlock.Decoder decoder = null;
+    private long sequenceNr = 0L;
+
+    private IotGroupHistoryStream(List<GroupSegmentStore.StoredBlock> blocks, long requestId, long from, long to,
+                                  int chunkSamples, ActorRef requester, Duration idleTimeout) {
+        this.blocks = blocks;
+        this.requestId = requestId;
+        this.from = from;
+        this.to = to;
+        this.chunkSamples = chunkSamples;
+        this.requester = requester;
+        this.deviceIds = new String[chunkSamples];
+        this.timestamps = new long[chunkSamples];
+        this.values = new double[chunkSamples];
+        getContext().setReceiveTimeout(idleTimeout);
+    }
+
+    public static Props props(List<GroupSegmentStore.StoredBlock> blocks, long requestId, long from, long to,
+                              int chunkSamples, ActorRef requester, Duration idleTimeout) {
+        return Props.create(IotGroupHistoryStream.class, () ->
+                new IotGroupHistoryStream(blocks, requestId, from, to, chunkSamples, requester, idleTimeout));
+    }
+
+    @Override
+    public void preStart() {
+        getContext().watch(requester);
+        sendNextChunk();
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(IotDeviceGroup.RequestNextHistoryChunk.class, r -> r.requestId == requestId, r -> sendNextChunk())
+                .match(Terminated.class, t -> getContext().stop(getSelf()))
+                .match(ReceiveTimeout.class, t -> {
+                    log.warning("History stream {} idle for too long, stopping after {} chunks", requestId, sequenceNr);
+                    getContext().stop(getSelf());
+                })
+                .build();
+    }
+
+    private void sendNextChunk() {
+        int size = 0;
+        while (size < chunkSamples) {
+            if (decoder == null) {
+                if (blockIndex == blocks.size()) {
+                    break;
+                }
+                decoder = blocks.get(blockIndex).block.decoder();
+            }
+            if (!decoder.next()) {
+                decoder = null;
+                blockIndex++;
+                continue;
+            }
+            long timestamp = decoder.timestamp();
+            if (timestamp >= from && timestamp <= to) {
+                deviceIds[size] = blocks.get(blockIndex).deviceId;
+                timestamps[size] = timestamp;
+                values[size] = decoder.value();
+                size++;
+            }
+        }
+        boolean last = decoder == null && blockIndex == blocks.size();
+        requester.tell(new IotDeviceGroup.GroupHistoryChunk(requestId, sequenceNr++,
+                Arrays.copyOf(deviceIds, size), Arrays.copyOf(timestamps, size), Arrays.copyOf(values, size), last),
+                getSelf());
+        if (last) {
+            getContext().stop(getSelf());
+        }
+    }
+}
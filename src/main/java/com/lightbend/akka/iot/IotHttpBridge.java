@@ -0,0 +1,34 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.AbstractActor;
+import akka.actor.Props;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+// Hands every message it receives to a queue drained by an HTTP handler thread, so actors never
+// block on a client's socket. Messages that do not fit a bounded queue are counted and dropped.
+public class IotHttpBridge extends AbstractActor {
+    private final BlockingQueue<Object> queue;
+    private final LongAdder dropped;
+
+    private IotHttpBridge(BlockingQueue<Object> queue, LongAdder dropped) {
+        this.queue = queue;
+        this.dropped = dropped;
+    }
+
+    static Props props(BlockingQueue<Object> queue, LongAdder dropped) {
+        return Props.create(IotHttpBridge.class, () -> new IotHttpBridge(queue, dropped));
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .matchAny(msg -> {
+                    if (!queue.offer(msg)) {
+                        dropped.increment();
+                    }
+                })
+                .build();
+    }
+}
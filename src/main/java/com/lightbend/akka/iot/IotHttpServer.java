@@ -0,0 +1,264 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.typesafe.config.Config;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// HTTP front end for one device manager on the JDK's built-in server:
+//
+//   GET /groups/temperatures  chunked JSON, one group written as each group answers:
+//                             {"groups":{"<group>":{"<device>":21.5|null|{"stale":21.5,"recordedAt":...}
+//                                                   |{"hedged":21.5,"recordedAt":...}
+//                                                   |"not-available"|"timed-out",...},...},
+//                              "notAvailable":[...],"timedOut":[...]}
+//   GET /events[?group=<id>]  server-sent events, one "temperature" event per accepted reading
+//
+// Each exchange runs on a server thread that drains a queue filled by an IotHttpBridge actor, so
+// slow clients block only their own thread. Answers 503 when the manager sheds the query.
+public final class IotHttpServer {
+    private final ActorSystem system;
+    private final ActorRef deviceManager;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long queryTimeoutMillis;
+    private final int eventBuffer;
+    private final long heartbeatMillis;
+    private final AtomicLong requestIds = new AtomicLong();
+
+    private IotHttpServer(ActorSystem system, ActorRef deviceManager, InetSocketAddress address) throws IOException {
+        Config config = system.settings().config().getConfig("iot.http");
+        this.system = system;
+        this.deviceManager = deviceManager;
+        this.queryTimeoutMillis = config.getDuration("query-timeout", TimeUnit.MILLISECONDS);
+        this.eventBuffer = config.getInt("event-buffer");
+        this.heartbeatMillis = config.getDuration("event-heartbeat", TimeUnit.MILLISECONDS);
+        this.executor = Executors.newFixedThreadPool(config.getInt("threads"));
+        this.server = HttpServer.create(address, 0);
+        server.createContext("/groups/temperatures", exchange -> handle(exchange, this::streamGroupTemperatures));
+        server.createContext("/events", exchange -> handle(exchange, this::streamEvents));
+        server.setExecutor(executor);
+    }
+
+    public static IotHttpServer start(ActorSystem system, ActorRef deviceManager, InetSocketAddress address)
+            throws IOException {
+        IotHttpServer httpServer = new IotHttpServer(system, deviceManager, address);
+        httpServer.server.start();
+        return httpServer;
+    }
+
+    public InetSocketAddress address() {
+        return server.getAddress();
+    }
+
+    public void stop() {
+        server.stop(0);
+        // Event streams sit in queue polls; interrupting them ends their exchanges.
+        executor.shutdownNow();
+    }
+
+    private interface Route {
+        void serve(HttpExchange exchange) throws IOException, InterruptedException;
+    }
+
+    private void handle(HttpExchange exchange, Route route) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+            } else if (!exchange.getRequestURI().getPath().equals(exchange.getHttpContext().getPath())) {
+                exchange.sendResponseHeaders(404, -1);
+            } else {
+                route.serve(exchange);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void streamGroupTemperatures(HttpExchange exchange) throws IOException, InterruptedException {
+        BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+        ActorRef bridge = system.actorOf(IotHttpBridge.props(queue, new LongAdder()));
+        try {
+            long requestId = requestIds.incrementAndGet();
+            deviceManager.tell(new IotDeviceManager.StreamGroupTemperatures(requestId), bridge);
+            Object first = queue.poll(queryTimeoutMillis, TimeUnit.MILLISECONDS);
+            if (first == null || first instanceof QueryAdmission.Overloaded) {
+                exchange.sendResponseHeaders(first == null ? 504 : 503, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(200, 0);
+            Writer out = new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8);
+            out.write("{\"groups\":{");
+            boolean firstGroup = true;
+            Object msg = first;
+            while (msg instanceof IotDeviceManager.GroupTemperaturesChunk) {
+                IotDeviceManager.GroupTemperaturesChunk chunk = (IotDeviceManager.GroupTemperaturesChunk) msg;
+                if (!firstGroup) {
+                    out.write(',');
+                }
+                firstGroup = false;
+                writeGroup(out, chunk.groupId, chunk.temperatures);
+                out.flush();
+                msg = queue.poll(queryTimeoutMillis, TimeUnit.MILLISECONDS);
+            }
+            out.write('}');
+            if (msg instanceof IotDeviceManager.GroupTemperaturesComplete) {
+                IotDeviceManager.GroupTemperaturesComplete complete = (IotDeviceManager.GroupTemperaturesComplete) msg;
+                out.write(",\"notAvailable\":");
+                writeStrings(out, complete.notAvailable);
+                out.write(",\"overloaded\":");
+                writeStrings(out, complete.overloaded);
+                out.write(",\"timedOut\":");
+                writeStrings(out, complete.timedOut);
+            } else {
+                out.write(",\"error\":\"incomplete\"");
+            }
+            out.write('}');
+            out.flush();
+        } finally {
+            system.stop(bridge);
+        }
+    }
+
+    private void streamEvents(HttpExchange exchange) throws IOException, InterruptedException {
+        String group = queryParameter(exchange, "group");
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<>(eventBuffer);
+        LongAdder dropped = new LongAdder();
+        ActorRef bridge = system.actorOf(IotHttpBridge.props(queue, dropped));
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, 0);
+            Writer out = new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8);
+            deviceManager.tell(new IotDeviceGroup.SubscribeTemperatureUpdates(bridge, group), ActorRef.noSender());
+            out.write(": subscribed\n\n");
+            out.flush();
+            long reportedDrops = 0L;
+            while (!Thread.currentThread().isInterrupted()) {
+                Object msg = queue.poll(heartbeatMillis, TimeUnit.MILLISECONDS);
+                long drops = dropped.sum();
+                if (drops != reportedDrops) {
+                    out.write("event: dropped\ndata: {\"count\":" + (drops - reportedDrops) + "}\n\n");
+                    reportedDrops = drops;
+                }
+                if (msg instanceof IotDeviceGroup.TemperatureUpdate) {
+                    IotDeviceGroup.TemperatureUpdate update = (IotDeviceGroup.TemperatureUpdate) msg;
+                    out.write("event: temperature\ndata: {\"group\":");
+                    writeString(out, update.groupId);
+                    out.write(",\"device\":");
+                    writeString(out, update.deviceId);
+                    out.write(",\"value\":" + number(update.value) + ",\"recordedAt\":" + update.recordedAt + "}\n\n");
+                } else {
+                    // Heartbeat: also how a client that went away is noticed.
+                    out.write(": keep-alive\n\n");
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            // The client closed the stream.
+        } finally {
+            system.stop(bridge);
+        }
+    }
+
+    private static String queryParameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String parameter : query.split("&")) {
+            int eq = parameter.indexOf('=');
+            if (eq > 0 && parameter.substring(0, eq).equals(name)) {
+                return java.net.URLDecoder.decode(parameter.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private static void writeGroup(Writer out, String groupId, Map<String, IotDeviceGroup.TemperatureReading> temperatures)
+            throws IOException {
+        writeString(out, groupId);
+        out.write(":{");
+        boolean first = true;
+        for (Map.Entry<String, IotDeviceGroup.TemperatureReading> entry : temperatures.entrySet()) {
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+            writeString(out, entry.getKey());
+            out.write(':');
+            out.write(reading(entry.getValue()));
+        }
+        out.write('}');
+    }
+
+    private static String reading(IotDeviceGroup.TemperatureReading reading) {
+        if (reading instanceof IotDeviceGroup.Temperature) {
+            return number(((IotDeviceGroup.Temperature) reading).value);
+        } else if (reading instanceof IotDeviceGroup.StaleTemperature) {
+            IotDeviceGroup.StaleTemperature stale = (IotDeviceGroup.StaleTemperature) reading;
+            return "{\"stale\":" + number(stale.value) + ",\"recordedAt\":" + stale.recordedAt + "}";
+        } else if (reading instanceof IotDeviceGroup.HedgedTemperature) {
+            IotDeviceGroup.HedgedTemperature hedged = (IotDeviceGroup.HedgedTemperature) reading;
+            return "{\"hedged\":" + number(hedged.value) + ",\"recordedAt\":" + hedged.recordedAt + "}";
+        } else if (reading instanceof IotDeviceGroup.DeviceNotAvailable) {
+            return "\"not-available\"";
+        } else if (reading instanceof IotDeviceGroup.DeviceTimedOut) {
+            return "\"timed-out\"";
+        }
+        return "null";
+    }
+
+    private static String number(double value) {
+        return Double.isFinite(value) ? Double.toString(value) : "null";
+    }
+
+    private static void writeStrings(Writer out, Collection<String> values) throws IOException {
+        out.write('[');
+        boolean first = true;
+        for (String value : values) {
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+            writeString(out, value);
+        }
+        out.write(']');
+    }
+
+    private static void writeString(Writer out, String value) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.write('\\');
+                out.write(c);
+            } else if (c < 0x20) {
+                out.write(String.format("\\u%04x", (int) c));
+            } else {
+                out.write(c);
+            }
+        }
+        out.write('"');
+    }
+}
@@ -0,0 +1,178 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Props;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+import akka.io.Tcp;
+import akka.io.TcpMessage;
+import akka.io.Udp;
+import com.typesafe.config.Config;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Network entry point for device readings. Binds a TCP listener and a UDP socket (port 0 picks a
+// free port) and feeds both into one device manager through IotIngestionHandler children: one per
+// TCP connection and one for the UDP socket. See IngestionFrames for the wire format.
+public class IotIngestionGateway extends AbstractActor {
+    private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
+
+    // Shared with the handlers so stats cost no messages on the ingestion path.
+    static final class Counters {
+        final LongAdder connections = new LongAdder();
+        final LongAdder frames = new LongAdder();
+        final LongAdder batches = new LongAdder();
+        final LongAdder suspensions = new LongAdder();
+        final LongAdder malformedFrames = new LongAdder();
+        final LongAdder shedBatches = new LongAdder();
+        final LongAdder expiredBatches = new LongAdder();
+    }
+
+    public static final class RequestBoundAddresses {
+        final long requestId;
+
+        public RequestBoundAddresses(long requestId) {
+            this.requestId = requestId;
+        }
+    }
+
+    public static final class BoundAddresses {
+        final long requestId;
+        final InetSocketAddress tcp;
+        final InetSocketAddress udp;
+
+        BoundAddresses(long requestId, InetSocketAddress tcp, InetSocketAddress udp) {
+            this.requestId = requestId;
+            this.tcp = tcp;
+            this.udp = udp;
+        }
+    }
+
+    public static final class RequestGatewayStats {
+        final long requestId;
+
+        public RequestGatewayStats(long requestId) {
+            this.requestId = requestId;
+        }
+    }
+
+    public static final class GatewayStats {
+        final long requestId;
+        final long connections;
+        final long frames;
+        final long batches;
+        final long suspensions;
+        final long malformedFrames;
+        // Batches a full group or manager mailbox answered with QueryAdmission.Overloaded.
+        final long shedBatches;
+        // Batches never acknowledged within iot.gateway.batch-timeout.
+        final long expiredBatches;
+
+        GatewayStats(long requestId, long connections, long frames, long batches, long suspensions,
+                     long malformedFrames, long shedBatches, long expiredBatches) {
+            this.requestId = requestId;
+            this.connections = connections;
+            this.frames = frames;
+            this.batches = batches;
+            this.suspensions = suspensions;
+            this.malformedFrames = malformedFrames;
+            this.shedBatches = shedBatches;
+            this.expiredBatches = expiredBatches;
+        }
+    }
+
+    private final ActorRef deviceManager;
+    private final InetSocketAddress tcpAddress;
+    private final InetSocketAddress udpAddress;
+    private final int maxPendingBatches;
+    private final int resumeBelowBatches;
+    private final FiniteDuration batchTimeout;
+    private final Counters counters = new Counters();
+    private final List<ActorRef> awaitingBound = new ArrayList<>();
+    private final List<Long> awaitingBoundRequestIds = new ArrayList<>();
+
+    private InetSocketAddress boundTcp = null;
+    private InetSocketAddress boundUdp = null;
+
+    private IotIngestionGateway(ActorRef deviceManager, InetSocketAddress tcpAddress, InetSocketAddress udpAddress) {
+        Config config = getContext().getSystem().settings().config().getConfig("iot.gateway");
+        this.deviceManager = deviceManager;
+        this.tcpAddress = tcpAddress;
+        this.udpAddress = udpAddress;
+        this.maxPendingBatches = config.getInt("max-pending-batches");
+        this.resumeBelowBatches = config.getInt("resume-below-batches");
+        this.batchTimeout = FiniteDuration.create(config.getDuration("batch-timeout", TimeUnit.MILLISECONDS),
+                TimeUnit.MILLISECONDS);
+    }
+
+    public static Props props(ActorRef deviceManager, InetSocketAddress tcpAddress, InetSocketAddress udpAddress) {
+        return Props.create(IotIngestionGateway.class, () -> new IotIngestionGateway(deviceManager, tcpAddress, udpAddress));
+    }
+
+    // Binds to iot.gateway.host, tcp-port and udp-port.
+    public static Props props(ActorRef deviceManager, Config config) {
+        Config gateway = config.getConfig("iot.gateway");
+        String host = gateway.getString("host");
+        return props(deviceManager, new InetSocketAddress(host, gateway.getInt("tcp-port")),
+                new InetSocketAddress(host, gateway.getInt("udp-port")));
+    }
+
+    @Override
+    public void preStart() {
+        Tcp.get(getContext().getSystem()).manager().tell(TcpMessage.bind(getSelf(), tcpAddress, 100), getSelf());
+        getContext().actorOf(IotIngestionHandler.udp(udpAddress, deviceManager, maxPendingBatches, resumeBelowBatches,
+                batchTimeout, counters), "udp");
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(Tcp.Bound.class, b -> {
+                    log.info("Ingestion gateway listening on TCP {}", b.localAddress());
+                    boundTcp = b.localAddress();
+                    replyBoundIfReady();
+                })
+                .match(Udp.Bound.class, b -> {
+                    log.info("Ingestion gateway listening on UDP {}", b.localAddress());
+                    boundUdp = b.localAddress();
+                    replyBoundIfReady();
+                })
+                .match(Tcp.CommandFailed.class, f -> {
+                    log.error("Cannot bind ingestion gateway to TCP {}", tcpAddress);
+                    getContext().stop(getSelf());
+                })
+                .match(Tcp.Connected.class, c -> {
+                    log.debug("Ingestion connection from {}", c.remoteAddress());
+                    ActorRef handler = getContext().actorOf(IotIngestionHandler.tcp(getSender(), deviceManager,
+                            maxPendingBatches, resumeBelowBatches, batchTimeout, counters));
+                    getSender().tell(TcpMessage.register(handler), getSelf());
+                })
+                .match(RequestBoundAddresses.class, r -> {
+                    awaitingBound.add(getSender());
+                    awaitingBoundRequestIds.add(r.requestId);
+                    replyBoundIfReady();
+                })
+                .match(RequestGatewayStats.class, r -> getSender().tell(new GatewayStats(r.requestId,
+                        counters.connections.sum(), counters.frames.sum(), counters.batches.sum(),
+                        counters.suspensions.sum(), counters.malformedFrames.sum(), counters.shedBatches.sum(),
+                        counters.expiredBatches.sum()), getSelf()))
+                .build();
+    }
+
+    private void replyBoundIfReady() {
+        if (boundTcp == null || boundUdp == null) {
+            return;
+        }
+        for (int i = 0; i < awaitingBound.size(); i++) {
+            awaitingBound.get(i).tell(new BoundAddresses(awaitingBoundRequestIds.get(i), boundTcp, boundUdp), getSelf());
+        }
+        awaitingBound.clear();
+        awaitingBoundRequestIds.clear();
+    }
+}
@@ -0,0 +1,185 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+import akka.actor.Props;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+import akka.io.Tcp;
+import akka.io.TcpMessage;
+import akka.io.Udp;
+import akka.io.UdpMessage;
+import akka.util.ByteString;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+// Turns the bytes of one TCP connection, or of the gateway's UDP socket, into per-group
+// RecordGroupTemperatures sent to the device manager. Every read is decoded and flushed as one
+// batch per group; once maxPendingBatches are unacknowledged the socket stops reading until the
+// groups have caught up to resumeBelowBatches. A batch that is not acknowledged within batchTimeout,
+// e.g. because its group restarted, stops counting as pending.
+public class IotIngestionHandler extends AbstractActor {
+    private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
+
+    private final ActorRef deviceManager;
+    private final InetSocketAddress udpBindAddress;
+    private final int maxPendingBatches;
+    private final int resumeBelowBatches;
+    private final FiniteDuration batchTimeout;
+    private final IotIngestionGateway.Counters counters;
+    private final IngestionBatcher batcher = new IngestionBatcher();
+
+    private ActorRef socket;
+    private ByteString buffer = ByteString.emptyByteString();
+    // System.nanoTime at which each pending batch was sent, oldest first. Acknowledgements are not
+    // matched to batches: each one retires the oldest, so a late one for an expired batch only
+    // makes the window a little more generous.
+    private final Deque<Long> pendingSince = new ArrayDeque<>();
+    private Cancellable expiryTimer;
+    private boolean suspended = false;
+
+    private static final class ExpirePendingBatches {
+        static final ExpirePendingBatches INSTANCE = new ExpirePendingBatches();
+    }
+
+    private IotIngestionHandler(ActorRef socket, ActorRef deviceManager, InetSocketAddress udpBindAddress,
+                                int maxPendingBatches, int resumeBelowBatches, FiniteDuration batchTimeout,
+                                IotIngestionGateway.Counters counters) {
+        this.socket = socket;
+        this.deviceManager = deviceManager;
+        this.udpBindAddress = udpBindAddress;
+        this.maxPendingBatches = maxPendingBatches;
+        this.resumeBelowBatches = resumeBelowBatches;
+        this.batchTimeout = batchTimeout;
+        this.counters = counters;
+    }
+
+    static Props tcp(ActorRef connection, ActorRef deviceManager, int maxPendingBatches, int resumeBelowBatches,
+                     FiniteDuration batchTimeout, IotIngestionGateway.Counters counters) {
+        return Props.create(IotIngestionHandler.class, () -> new IotIngestionHandler(connection, deviceManager, null,
+                maxPendingBatches, resumeBelowBatches, batchTimeout, counters));
+    }
+
+    // Binds the UDP socket itself and forwards Udp.Bound to the gateway.
+    static Props udp(InetSocketAddress bindAddress, ActorRef deviceManager, int maxPendingBatches,
+                     int resumeBelowBatches, FiniteDuration batchTimeout, IotIngestionGateway.Counters counters) {
+        return Props.create(IotIngestionHandler.class, () -> new IotIngestionHandler(null, deviceManager, bindAddress,
+                maxPendingBatches, resumeBelowBatches, batchTimeout, counters));
+    }
+
+    @Override
+    public void preStart() {
+        if (udpBindAddress != null) {
+            Udp.get(getContext().getSystem()).getManager().tell(UdpMessage.bind(getSelf(), udpBindAddress), getSelf());
+        } else {
+            counters.connections.increment();
+        }
+        FiniteDuration tick = batchTimeout.div(2);
+        expiryTimer = getContext().getSystem().scheduler().schedule(tick, tick, getSelf(),
+                ExpirePendingBatches.INSTANCE, getContext().getDispatcher(), getSelf());
+    }
+
+    @Override
+    public void postStop() {
+        expiryTimer.cancel();
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(Tcp.Received.class, r -> onTcpReceived(r.data()))
+                .match(Udp.Received.class, r -> onUdpReceived(r.data()))
+                .match(IotDeviceGroup.TemperaturesRecorded.class, r -> onBatchDone())
+                .match(QueryAdmission.Overloaded.class, o -> {
+                    counters.shedBatches.increment();
+                    onBatchDone();
+                })
+                .match(ExpirePendingBatches.class, e -> expirePendingBatches())
+                .match(Udp.Bound.class, b -> {
+                    socket = getSender();
+                    getContext().getParent().tell(b, getSelf());
+                })
+                .match(Udp.CommandFailed.class, f -> {
+                    log.error("Cannot bind ingestion UDP socket to {}", udpBindAddress);
+                    getContext().stop(getSelf());
+                })
+                .match(Tcp.ConnectionClosed.class, c -> getContext().stop(getSelf()))
+                .build();
+    }
+
+    private void onTcpReceived(ByteString data) {
+        buffer = buffer.concat(data);
+        try {
+            int consumed = IngestionFrames.decode(buffer, this::add);
+            buffer = buffer.drop(consumed);
+        } catch (IngestionFrames.MalformedFrameException e) {
+            log.warning("Closing ingestion connection: {}", e.getMessage());
+            counters.malformedFrames.increment();
+            socket.tell(TcpMessage.abort(), getSelf());
+            getContext().stop(getSelf());
+            return;
+        }
+        flush();
+    }
+
+    private void onUdpReceived(ByteString datagram) {
+        try {
+            if (IngestionFrames.decode(datagram, this::add) != datagram.length()) {
+                counters.malformedFrames.increment();
+            }
+        } catch (IngestionFrames.MalformedFrameException e) {
+            counters.malformedFrames.increment();
+        }
+        flush();
+    }
+
+    private void add(String groupId, String deviceId, double value) {
+        batcher.add(groupId, deviceId, value);
+        counters.frames.increment();
+    }
+
+    private void flush() {
+        long now = System.nanoTime();
+        int sent = batcher.flush(batch -> {
+            deviceManager.tell(batch, getSelf());
+            pendingSince.addLast(now);
+        });
+        counters.batches.add(sent);
+        if (!suspended && pendingSince.size() >= maxPendingBatches) {
+            suspended = true;
+            counters.suspensions.increment();
+            socket.tell(udpBindAddress != null ? UdpMessage.suspendReading() : TcpMessage.suspendReading(), getSelf());
+        }
+    }
+
+    // A batch is done once recorded or shed by a full mailbox; either way it no longer counts as pending.
+    private void onBatchDone() {
+        pendingSince.pollFirst();
+        resumeIfCaughtUp();
+    }
+
+    private void expirePendingBatches() {
+        long expiredBefore = System.nanoTime() - batchTimeout.toNanos();
+        int expired = 0;
+        while (!pendingSince.isEmpty() && pendingSince.peekFirst() - expiredBefore < 0) {
+            pendingSince.pollFirst();
+            expired++;
+        }
+        if (expired > 0) {
+            log.warning("{} ingestion batches were not acknowledged within {}", expired, batchTimeout);
+            counters.expiredBatches.add(expired);
+            resumeIfCaughtUp();
+        }
+    }
+
+    private void resumeIfCaughtUp() {
+        if (suspended && pendingSince.size() <= resumeBelowBatches) {
+            suspended = false;
+            socket.tell(udpBindAddress != null ? UdpMessage.resumeReading() : TcpMessage.resumeReading(), getSelf());
+        }
+    }
+}
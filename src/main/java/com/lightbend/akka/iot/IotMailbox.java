@@ -0,0 +1,127 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.DeadLetter;
+import akka.actor.Terminated;
+import akka.dispatch.ControlMessage;
+import akka.dispatch.Envelope;
+import akka.dispatch.MailboxType;
+import akka.dispatch.MessageQueue;
+import akka.dispatch.ProducesMessageQueue;
+import com.typesafe.config.Config;
+import scala.Option;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Mailbox for the groups, managers and query actors. Control messages (akka.dispatch.ControlMessage,
+// and Terminated when terminated-is-control is set) have their own queue, drained before anything
+// else, so registrations, collection timeouts and lifecycle events are not stuck behind an
+// ingestion flood. Everything else stays in one FIFO queue, of which at most ingestion-capacity
+// Sheddable messages may be waiting; beyond that a Sheddable is dropped to dead letters and its
+// sender told its shedReply instead. Readings from a group's own devices are bounded before they
+// get here: each device has at most one message queued for them (see PendingReadings).
+public final class IotMailbox implements MailboxType, ProducesMessageQueue<IotMailbox.IotMessageQueue> {
+    // Groups and managers: their Terminated are lifecycle events that may overtake queued messages.
+    static final String OWNER = "iot.mailbox.owner";
+    // Query actors: a Terminated must not overtake the reply its actor sent before stopping.
+    static final String QUERY = "iot.mailbox.query";
+
+    // An ingestion message the mailbox may drop when too many are queued.
+    interface Sheddable {
+        // Told to the sender in place of handling the message; null to drop it silently.
+        Object shedReply(ActorRef receiver);
+    }
+
+    private final int ingestionCapacity;
+    private final boolean terminatedIsControl;
+
+    public IotMailbox(ActorSystem.Settings settings, Config config) {
+        this.ingestionCapacity = config.getInt("ingestion-capacity");
+        this.terminatedIsControl = config.getBoolean("terminated-is-control");
+        if (ingestionCapacity < 1) {
+            throw new IllegalArgumentException("ingestion-capacity must be positive: " + ingestionCapacity);
+        }
+    }
+
+    @Override
+    public MessageQueue create(Option<ActorRef> owner, Option<ActorSystem> system) {
+        return new IotMessageQueue(ingestionCapacity, terminatedIsControl,
+                system.isDefined() ? system.get().deadLetters() : ActorRef.noSender());
+    }
+
+    static final class IotMessageQueue implements MessageQueue {
+        private final Queue<Envelope> control = new ConcurrentLinkedQueue<>();
+        private final Queue<Envelope> ordinary = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queuedSheddable = new AtomicInteger();
+        private final int ingestionCapacity;
+        private final boolean terminatedIsControl;
+        private final ActorRef deadLetters;
+
+        IotMessageQueue(int ingestionCapacity, boolean terminatedIsControl, ActorRef deadLetters) {
+            this.ingestionCapacity = ingestionCapacity;
+            this.terminatedIsControl = terminatedIsControl;
+            this.deadLetters = deadLetters;
+        }
+
+        @Override
+        public void enqueue(ActorRef receiver, Envelope handle) {
+            Object message = handle.message();
+            if (message instanceof ControlMessage || (terminatedIsControl && message instanceof Terminated)) {
+                control.add(handle);
+            } else if (message instanceof Sheddable) {
+                if (queuedSheddable.incrementAndGet() > ingestionCapacity) {
+                    queuedSheddable.decrementAndGet();
+                    shed(receiver, handle, (Sheddable) message);
+                } else {
+                    ordinary.add(handle);
+                }
+            } else {
+                ordinary.add(handle);
+            }
+        }
+
+        private void shed(ActorRef receiver, Envelope handle, Sheddable message) {
+            if (deadLetters != null) {
+                deadLetters.tell(new DeadLetter(message, handle.sender(), receiver), handle.sender());
+            }
+            Object reply = message.shedReply(receiver);
+            if (reply != null && handle.sender() != null && handle.sender() != ActorRef.noSender()) {
+                handle.sender().tell(reply, receiver);
+            }
+        }
+
+        @Override
+        public Envelope dequeue() {
+            Envelope handle = control.poll();
+            if (handle != null) {
+                return handle;
+            }
+            handle = ordinary.poll();
+            if (handle != null && handle.message() instanceof Sheddable) {
+                queuedSheddable.decrementAndGet();
+            }
+            return handle;
+        }
+
+        @Override
+        public int numberOfMessages() {
+            return control.size() + ordinary.size();
+        }
+
+        @Override
+        public boolean hasMessages() {
+            return !control.isEmpty() || !ordinary.isEmpty();
+        }
+
+        @Override
+        public void cleanUp(ActorRef owner, MessageQueue deadLetters) {
+            Envelope handle;
+            while ((handle = dequeue()) != null) {
+                deadLetters.enqueue(owner, handle);
+            }
+        }
+    }
+}
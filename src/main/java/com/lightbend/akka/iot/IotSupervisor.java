@@ -6,17 +6,34 @@ import akka.actor.Props;
 import akka.actor.Terminated;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
+import com.typesafe.config.Config;
+import scala.concurrent.duration.FiniteDuration;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 public class IotSupervisor extends AbstractActor {
 
     private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
     private final Map<String, ActorRef> managerIdToActor = new HashMap<>();
     private final Map<ActorRef, String> actorToManagerId = new HashMap<>();
+    private final FiniteDuration fleetQueryTimeout;
+    private final int fleetQueryMaxConcurrency;
+    private final FiniteDuration bootstrapTimeout;
+    private final int managerPartitions;
+
+    private IotSupervisor() {
+        Config config = getContext().getSystem().settings().config().getConfig("iot.fleet-query");
+        this.fleetQueryTimeout = new FiniteDuration(config.getDuration("timeout").toNanos(), TimeUnit.NANOSECONDS);
+        this.fleetQueryMaxConcurrency = config.getInt("max-concurrency");
+        this.bootstrapTimeout = new FiniteDuration(getContext().getSystem().settings().config()
+                .getDuration("iot.bootstrap.timeout").toNanos(), TimeUnit.NANOSECONDS);
+        this.managerPartitions = getContext().getSystem().settings().config().getInt("iot.manager.partitions");
+    }
 
     public static Props props() {
         return Props.create(IotSupervisor.class, IotSupervisor::new);
@@ -42,6 +59,8 @@ public class IotSupervisor extends AbstractActor {
                 .match(RequestDeviceManagerList.class, this::onRequestDeviceManagerList)
                 .match(TrackDeviceManager.class, this::onTrackDeviceManager)
                 .match(RequestDeviceManagerById.class, this::onRequestDeviceManagerById)
+                .match(RequestFleetTemperatures.class, this::onRequestFleetTemperatures)
+                .match(BootstrapTopology.class, this::onBootstrapTopology)
                 .match(Terminated.class, this::onTerminated)
                 .build();
     }
@@ -55,6 +74,27 @@ public class IotSupervisor extends AbstractActor {
                 }, () -> log.warning("Device manager {} not managed by this supervisor", deviceManagerById));
     }
 
+    private void onRequestFleetTemperatures(RequestFleetTemperatures msg) {
+        log.debug("Requesting temperatures of all device managers for request {}", msg.requestId);
+        getContext().actorOf(IotSupervisorFleetQuery.props(new HashMap<>(actorToManagerId), msg.requestId,
+                getSender(), fleetQueryTimeout, fleetQueryMaxConcurrency));
+    }
+
+    private void onBootstrapTopology(BootstrapTopology msg) {
+        long startNanos = System.nanoTime();
+        log.info("Bootstrapping {} devices in {} groups of {} managers for request {}", msg.topology.deviceCount(),
+                msg.topology.groupCount(), msg.topology.managerCount(), msg.requestId);
+        Map<ActorRef, String> managerIds = new HashMap<>();
+        Map<ActorRef, Map<String, IotTopology.Group>> managerGroups = new HashMap<>();
+        msg.topology.managers.forEach((managerId, groups) -> {
+            ActorRef managerActor = managerActorFor(managerId);
+            managerIds.put(managerActor, managerId);
+            managerGroups.put(managerActor, groups);
+        });
+        getContext().actorOf(IotTopologyBootstrap.props(managerIds, managerGroups, msg.requestId, getSender(),
+                bootstrapTimeout, startNanos));
+    }
+
     private void onTerminated(Terminated terminated) {
         ActorRef deviceManagerRef = terminated.getActor();
         Optional.ofNullable(actorToManagerId.get(deviceManagerRef))
@@ -75,12 +115,20 @@ public class IotSupervisor extends AbstractActor {
     }
 
     private void trackNewDeviceManager(TrackDeviceManager trackDeviceManager, String deviceManagerId) {
-        log.info("Creating device manager for {}", deviceManagerId);
-        ActorRef managerActor = getContext().actorOf(IotDeviceManager.props(deviceManagerId), "iotDeviceManager-" + deviceManagerId);
-        getContext().watch(managerActor);
-        managerActor.forward(trackDeviceManager, getContext());
-        managerIdToActor.put(deviceManagerId, managerActor);
-        actorToManagerId.put(managerActor, deviceManagerId);
+        managerActorFor(deviceManagerId).forward(trackDeviceManager, getContext());
+    }
+
+    private ActorRef managerActorFor(String deviceManagerId) {
+        return Optional.ofNullable(managerIdToActor.get(deviceManagerId)).orElseGet(() -> {
+            log.info("Creating device manager for {}", deviceManagerId);
+            ActorRef managerActor = managerPartitions > 1
+                    ? IotDeviceManagerPartitions.start(getContext(), deviceManagerId, managerPartitions)
+                    : getContext().actorOf(IotDeviceManager.props(deviceManagerId), "iotDeviceManager-" + deviceManagerId);
+            getContext().watch(managerActor);
+            managerIdToActor.put(deviceManagerId, managerActor);
+            actorToManagerId.put(managerActor, deviceManagerId);
+            return managerActor;
+        });
     }
 
     private void onRequestDeviceManagerList(RequestDeviceManagerList requestDeviceManagerList) {
@@ -136,6 +184,67 @@ public class IotSupervisor extends AbstractActor {
         }
     }
 
+    public static final class RequestFleetTemperatures {
+        final long requestId;
+
+        public RequestFleetTemperatures(long requestId) {
+            this.requestId = requestId;
+        }
+    }
+
+    // Temperatures per manager and group; managers that stopped, missed the deadline or shed the
+    // query are listed separately, so a partial answer is still usable.
+    public static final class RespondFleetTemperatures {
+        final long requestId;
+        final Map<String, Map<String, IotDeviceManager.DeviceGroupTemperatureReading>> managerTemperatures;
+        final Set<String> managersNotAvailable;
+        final Set<String> managersTimedOut;
+        final Set<String> managersOverloaded;
+
+        RespondFleetTemperatures(long requestId,
+                                 Map<String, Map<String, IotDeviceManager.DeviceGroupTemperatureReading>> managerTemperatures,
+                                 Set<String> managersNotAvailable, Set<String> managersTimedOut,
+                                 Set<String> managersOverloaded) {
+            this.requestId = requestId;
+            this.managerTemperatures = managerTemperatures;
+            this.managersNotAvailable = managersNotAvailable;
+            this.managersTimedOut = managersTimedOut;
+            this.managersOverloaded = managersOverloaded;
+        }
+    }
+
+    // Creates every manager, group and device of the topology that does not exist yet, without
+    // acknowledging each device, and answers with TopologyBootstrapped.
+    public static final class BootstrapTopology {
+        final long requestId;
+        final IotTopology topology;
+
+        public BootstrapTopology(long requestId, IotTopology topology) {
+            this.requestId = requestId;
+            this.topology = topology;
+        }
+    }
+
+    // Groups that did not confirm before iot.bootstrap.timeout are listed as "<manager>/<group>".
+    public static final class TopologyBootstrapped {
+        final long requestId;
+        final int managers;
+        final int groups;
+        final int devices;
+        final Set<String> groupsTimedOut;
+        final Duration elapsed;
+
+        TopologyBootstrapped(long requestId, int managers, int groups, int devices, Set<String> groupsTimedOut,
+                             Duration elapsed) {
+            this.requestId = requestId;
+            this.managers = managers;
+            this.groups = groups;
+            this.devices = devices;
+            this.groupsTimedOut = groupsTimedOut;
+            this.elapsed = elapsed;
+        }
+    }
+
     static final class DeviceManagerRegistered {
         final long requestId;
 
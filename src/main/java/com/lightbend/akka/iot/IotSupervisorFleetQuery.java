@@ -0,0 +1,151 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+import akka.actor.Props;
+import akka.actor.Terminated;
+import akka.dispatch.ControlMessage;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Scatter-gather of RequestAllGroupTemperatures over every manager of a supervisor. At most
+// maxConcurrency managers are asked at a time; the next one is asked as soon as one answers or
+// stops. One deadline covers the whole query: managers still outstanding or not yet asked when it
+// fires are reported as timed out next to the temperatures that did arrive. Each manager gets a
+// share of the remaining time for its own group query, so slow groups inside a manager surface as
+// DeviceGroupTimedOut entries rather than costing the whole manager.
+//
+// Managers answer with the manager or its query actor as sender, so replies are matched on the
+// per-manager request id rather than on the sender.
+public class IotSupervisorFleetQuery extends AbstractActor {
+    private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
+
+    private static final class CollectionTimeout implements ControlMessage {
+    }
+
+    private final Map<ActorRef, String> actorToManagerId;
+    private final long requestId;
+    private final ActorRef requester;
+    private final int maxConcurrency;
+    private final long deadlineNanos;
+    private final Cancellable queryTimeoutTimer;
+
+    private final Deque<ActorRef> notAsked;
+    private final Map<Long, ActorRef> inFlight = new HashMap<>();
+    private final Map<String, Map<String, IotDeviceManager.DeviceGroupTemperatureReading>> replies = new HashMap<>();
+    private final Set<String> notAvailable = new HashSet<>();
+    private final Set<String> overloaded = new HashSet<>();
+    private long nextManagerRequestId = 0L;
+
+    private IotSupervisorFleetQuery(Map<ActorRef, String> actorToManagerId, long requestId, ActorRef requester,
+                                    FiniteDuration timeout, int maxConcurrency) {
+        this.actorToManagerId = actorToManagerId;
+        this.requestId = requestId;
+        this.requester = requester;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.notAsked = new ArrayDeque<>(actorToManagerId.keySet());
+        this.deadlineNanos = System.nanoTime() + timeout.toNanos();
+
+        queryTimeoutTimer = getContext()
+                .getSystem()
+                .scheduler()
+                .scheduleOnce(timeout, getSelf(), new CollectionTimeout(), getContext().getDispatcher(), getSelf());
+    }
+
+    public static Props props(Map<ActorRef, String> actorToManagerId, long requestId, ActorRef requester,
+                              FiniteDuration timeout, int maxConcurrency) {
+        return Props.create(IotSupervisorFleetQuery.class, () ->
+                new IotSupervisorFleetQuery(actorToManagerId, requestId, requester, timeout, maxConcurrency))
+                .withMailbox(IotMailbox.QUERY);
+    }
+
+    @Override
+    public void preStart() {
+        askMore();
+    }
+
+    @Override
+    public void postStop() {
+        queryTimeoutTimer.cancel();
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(IotDeviceManager.RespondAllGroupTemperatures.class, this::onRespondAllGroupTemperatures)
+                .match(QueryAdmission.Overloaded.class, this::onOverloaded)
+                .match(Terminated.class, t -> onTerminated(t.getActor()))
+                .match(CollectionTimeout.class, ignored -> onCollectionTimeout())
+                .build();
+    }
+
+    private void onRespondAllGroupTemperatures(IotDeviceManager.RespondAllGroupTemperatures msg) {
+        ActorRef managerActor = inFlight.remove(msg.requestId);
+        if (managerActor != null) {
+            getContext().unwatch(managerActor);
+            replies.put(actorToManagerId.get(managerActor), msg.groupTemperatures);
+            askMore();
+        }
+    }
+
+    private void onOverloaded(QueryAdmission.Overloaded msg) {
+        ActorRef managerActor = inFlight.remove(msg.requestId);
+        if (managerActor != null) {
+            getContext().unwatch(managerActor);
+            overloaded.add(actorToManagerId.get(managerActor));
+            askMore();
+        }
+    }
+
+    private void onTerminated(ActorRef managerActor) {
+        if (inFlight.values().remove(managerActor)) {
+            notAvailable.add(actorToManagerId.get(managerActor));
+            askMore();
+        }
+    }
+
+    private void onCollectionTimeout() {
+        Set<String> timedOut = new HashSet<>();
+        inFlight.values().forEach(actorRef -> timedOut.add(actorToManagerId.get(actorRef)));
+        notAsked.forEach(actorRef -> timedOut.add(actorToManagerId.get(actorRef)));
+        log.warning("Fleet query {} timed out waiting for managers {}", requestId, timedOut);
+        finish(timedOut);
+    }
+
+    private void askMore() {
+        while (inFlight.size() < maxConcurrency && !notAsked.isEmpty()) {
+            ActorRef managerActor = notAsked.poll();
+            long managerRequestId = nextManagerRequestId++;
+            inFlight.put(managerRequestId, managerActor);
+            getContext().watch(managerActor);
+            managerActor.tell(new IotDeviceManager.RequestAllGroupTemperatures(managerRequestId, managerTimeout()),
+                    getSelf());
+        }
+        if (inFlight.isEmpty()) {
+            finish(Set.of());
+        }
+    }
+
+    // Leaves a quarter of the remaining time for the manager's partial reply to reach us.
+    private FiniteDuration managerTimeout() {
+        long remaining = Math.max(0L, deadlineNanos - System.nanoTime());
+        return new FiniteDuration(remaining * 3 / 4, TimeUnit.NANOSECONDS);
+    }
+
+    private void finish(Set<String> timedOut) {
+        requester.tell(new IotSupervisor.RespondFleetTemperatures(requestId, replies, notAvailable, timedOut,
+                overloaded),
+                getContext().getParent());
+        getContext().stop(getSelf());
+    }
+}
@@ -1,17 +1,13 @@
 package com.lightbend.akka.iot;
 
-import akka.actor.ActorPath;
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
-import akka.util.Timeout;
-import scala.concurrent.Await;
 
+import java.nio.file.Paths;
 import java.time.Duration;
-import java.util.Optional;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
-import static akka.pattern.Patterns.ask;
-
 public class IotSystem {
 
     private final ActorSystem system;
@@ -20,87 +16,46 @@ public class IotSystem {
     @SuppressWarnings("ResultOfMethodCallIgnored")
     public static void main(String[] args) {
         IotSystem system = new IotSystem("iotSystem");
+        IotClient client = new IotClient(system.supervisor, Duration.ofSeconds(30));
         try {
-            // Do something meaningful....
-            // 6. Get all temperatures from device group
-
-            // Track device manager
-            String deviceManagerId = "iot-device-manger";
-            IotSupervisor.TrackDeviceManager deviceManagerMsg = new IotSupervisor.TrackDeviceManager(1L, deviceManagerId);
-            IotSupervisor.DeviceManagerRegistered trackDeviceManagerResponse = (IotSupervisor.DeviceManagerRegistered) Await.result(ask(system.supervisor, deviceManagerMsg, Timeout.create(Duration.ofSeconds(30))),
-                    Timeout.create(Duration.ofSeconds(30)).duration());
-
-            if (trackDeviceManagerResponse == null) {
-                System.err.println("Errors occurred setting up device manager...");
-            }
-
-            // Get device manager list
-            IotSupervisor.RequestDeviceManagerList deviceManagerListRequest = new IotSupervisor.RequestDeviceManagerList(2L);
-            IotSupervisor.ReplyDeviceManagerList replyDeviceManagerList = (IotSupervisor.ReplyDeviceManagerList) Await.result(ask(system.supervisor, deviceManagerListRequest, Timeout.create(Duration.ofSeconds(30))),
-                    Timeout.create(Duration.ofSeconds(30)).duration());
-
-            // Make sure deviceManagerId is in the list
-            if (replyDeviceManagerList.ids.contains(deviceManagerId)) {
-                System.out.println("Found device manager id in list");
-            }
-
-            // Get device manager from list
-            IotSupervisor.RequestDeviceManagerById requestDeviceManagerById = new IotSupervisor.RequestDeviceManagerById(3L, deviceManagerId);
-            IotSupervisor.ResponseDeviceManagerById deviceManagerResponse = (IotSupervisor.ResponseDeviceManagerById) Await.result(ask(system.supervisor, requestDeviceManagerById, Timeout.create(Duration.ofSeconds(30))),
-                    Timeout.create(Duration.ofSeconds(30)).duration());
-
-            ActorRef deviceManager = Optional.ofNullable(deviceManagerResponse)
-                    .map(resp -> resp.deviceManager)
-                    .orElse(null);
-
-            if (deviceManager == null) {
-                System.err.println("Problems obtaining device manager");
-                throw new RuntimeException("ByeBye");
+            String bootstrapFile = system.system.settings().config().getString("iot.bootstrap.file");
+            if (!bootstrapFile.isEmpty()) {
+                long startNanos = System.nanoTime();
+                IotTopology topology = IotTopology.read(Paths.get(bootstrapFile));
+                long parsedNanos = System.nanoTime();
+                IotSupervisor.TopologyBootstrapped bootstrapped = client.bootstrap(topology,
+                        system.system.settings().config().getDuration("iot.bootstrap.timeout"))
+                        .toCompletableFuture().join();
+                System.out.println(String.format("Bootstrapped %d devices in %d groups of %d managers from %s: " +
+                                "parsed in %d ms, created in %d ms, %d groups timed out",
+                        bootstrapped.devices, bootstrapped.groups, bootstrapped.managers, bootstrapFile,
+                        TimeUnit.NANOSECONDS.toMillis(parsedNanos - startNanos), bootstrapped.elapsed.toMillis(),
+                        bootstrapped.groupsTimedOut.size()));
             }
 
+            String deviceManagerId = "iot-device-manger";
+            ActorRef deviceManager = client.trackDeviceManager(deviceManagerId)
+                    .thenCompose(manager -> client.deviceManagerIds().thenApply(ids -> {
+                        // Make sure deviceManagerId is in the list
+                        if (ids.contains(deviceManagerId)) {
+                            System.out.println("Found device manager id in list");
+                        }
+                        return manager;
+                    }))
+                    .toCompletableFuture().join();
 
-            // Track device with device manager
-            IotDeviceManager.RequestTrackDevice requestTrackDevice = new IotDeviceManager.RequestTrackDevice("iot-group", "iot-device-1");
-            IotDeviceManager.DeviceRegistered trackDeviceResponse = (IotDeviceManager.DeviceRegistered) Await.result(ask(deviceManager, requestTrackDevice, Timeout.create(Duration.ofSeconds(30))),
-                    Timeout.create(Duration.ofSeconds(30)).duration());
-
-            if (trackDeviceResponse == null) {
-                System.err.println("Problems registering device");
-            }
-
-            // Lets send a message to the device from outside of system....
-            // Hope this works....
-            ActorPath deviceManagerPath = deviceManager.path();
-            Optional.ofNullable(deviceManagerPath.child("iotGroup-iot-group"))
-                    .flatMap(groupPath -> Optional.ofNullable(groupPath.child("iotDevice-iot-device-1")))
-                    .ifPresentOrElse(childPath -> {
-                        ActorRef childActor = system.system.actorFor(childPath);
-                        IotDevice.RecordTemperature recordTemperature = new IotDevice.RecordTemperature(4L, 33.5);
-                        childActor.tell(recordTemperature, ActorRef.noSender());
-                    }, () -> {
-                        System.err.println("Problems getting device reference");
-                        throw new RuntimeException("ByeBye");
-                    });
-
-            TimeUnit.SECONDS.sleep(5);
-
-            IotDeviceManager.RequestDeviceGroupById requestDeviceGroupById = new IotDeviceManager.RequestDeviceGroupById(5L, "iot-group");
-            IotDeviceManager.RespondDeviceGroupById deviceGroupByIdResponse = (IotDeviceManager.RespondDeviceGroupById) Await.result(ask(deviceManager, requestDeviceGroupById, Timeout.create(Duration.ofSeconds(30))),
-                    Timeout.create(Duration.ofSeconds(30)).duration());
-
-            ActorRef deviceGroup = Optional.ofNullable(deviceGroupByIdResponse)
-                    .map(resp -> resp.deviceGroupActor)
-                    .orElseGet(() -> {
-                        System.err.println("Problems obtaining device group");
-                        throw new RuntimeException("ByeBye");
-                    });
+            // Track the device with the device manager and record a reading through the returned ref
+            client.trackDevice(deviceManager, "iot-group", "iot-device-1")
+                    .thenCompose(device -> client.recordTemperature(device, 33.5))
+                    .toCompletableFuture().join();
 
-            IotDeviceGroup.RequestAllTemperatures requestAllTemperatures = new IotDeviceGroup.RequestAllTemperatures(9L);
-            IotDeviceGroup.RespondAllTemperatures respondAllTemperatures = (IotDeviceGroup.RespondAllTemperatures) Await.result(ask(deviceGroup, requestAllTemperatures, Timeout.create(Duration.ofSeconds(30))),
-                    Timeout.create(Duration.ofSeconds(30)).duration());
+            Map<String, IotDeviceGroup.TemperatureReading> groupTemperatures =
+                    client.deviceGroup(deviceManager, "iot-group")
+                            .thenCompose(client::groupTemperatures)
+                            .toCompletableFuture().join();
 
             System.out.println("RespondAllTemperatures for device group directly finished...");
-            respondAllTemperatures.temperatures.forEach((key, val) -> {
+            groupTemperatures.forEach((key, val) -> {
                 if (val instanceof IotDeviceGroup.TemperatureNotAvailable) {
                     System.out.println(String.format("Tempererature for device %s is not available", key));
                 } else if (val instanceof IotDeviceGroup.DeviceNotAvailable) {
@@ -110,15 +65,20 @@ public class IotSystem {
                 } else if (val instanceof IotDeviceGroup.Temperature) {
                     IotDeviceGroup.Temperature tempVal = (IotDeviceGroup.Temperature) val;
                     System.out.println(String.format("Tempererature for device %s is %f", key, tempVal.value));
+                } else if (val instanceof IotDeviceGroup.StaleTemperature) {
+                    IotDeviceGroup.StaleTemperature staleVal = (IotDeviceGroup.StaleTemperature) val;
+                    System.out.println(String.format("Last tempererature for device %s is %f but stale", key, staleVal.value));
+                } else if (val instanceof IotDeviceGroup.HedgedTemperature) {
+                    IotDeviceGroup.HedgedTemperature hedgedVal = (IotDeviceGroup.HedgedTemperature) val;
+                    System.out.println(String.format("Device %s was slow to answer, last known tempererature is %f", key, hedgedVal.value));
                 }
             });
 
-            IotDeviceManager.RequestAllGroupTemperatures requestAllGroupTemperatures = new IotDeviceManager.RequestAllGroupTemperatures(6L);
-            IotDeviceManager.RespondAllGroupTemperatures respondAllGroupTemperatures = (IotDeviceManager.RespondAllGroupTemperatures) Await.result(ask(deviceManager, requestAllGroupTemperatures, Timeout.create(Duration.ofSeconds(30))),
-                    Timeout.create(Duration.ofSeconds(30)).duration());
+            Map<String, IotDeviceManager.DeviceGroupTemperatureReading> managerTemperatures =
+                    client.managerTemperatures(deviceManager).toCompletableFuture().join();
 
             System.out.println("RespondAllGroupTemperatures for device manager finished...");
-            respondAllGroupTemperatures.groupTemperatures
+            managerTemperatures
                     .forEach((key, value) -> {
                         if (value instanceof IotDeviceManager.DeviceGroupTemperatures) {
                             IotDeviceManager.DeviceGroupTemperatures deviceTempList = (IotDeviceManager.DeviceGroupTemperatures) value;
@@ -133,6 +93,12 @@ public class IotSystem {
                                         } else if (val1 instanceof IotDeviceGroup.Temperature) {
                                             IotDeviceGroup.Temperature tempVal = (IotDeviceGroup.Temperature) val1;
                                             System.out.println(String.format("Tempererature for device %s of group %s is %f", key1, key, tempVal.value));
+                                        } else if (val1 instanceof IotDeviceGroup.StaleTemperature) {
+                                            IotDeviceGroup.StaleTemperature staleVal = (IotDeviceGroup.StaleTemperature) val1;
+                                            System.out.println(String.format("Last tempererature for device %s of group %s is %f but stale", key1, key, staleVal.value));
+                                        } else if (val1 instanceof IotDeviceGroup.HedgedTemperature) {
+                                            IotDeviceGroup.HedgedTemperature hedgedVal = (IotDeviceGroup.HedgedTemperature) val1;
+                                            System.out.println(String.format("Device %s of group %s was slow to answer, last known tempererature is %f", key1, key, hedgedVal.value));
                                         }
                                     });
                         } else if (value instanceof IotDeviceManager.DeviceGroupNotAvailable) {
@@ -0,0 +1,162 @@
+package com.lightbend.akka.iot;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Managers, groups and devices to create in one go with IotSupervisor.BootstrapTopology. The file
+// form has one device per line, fields separated by whitespace:
+//
+//   # comment
+//   <manager> <group> <device> [<tag>=<value> ...]
+//
+// A device listed twice keeps the tags of its last line.
+public final class IotTopology {
+
+    public static final class Group {
+        final String groupId;
+        final List<String> deviceIds;
+        // Only devices with tags have an entry.
+        final Map<String, Map<String, String>> tags;
+
+        private Group(String groupId, List<String> deviceIds, Map<String, Map<String, String>> tags) {
+            this.groupId = groupId;
+            this.deviceIds = deviceIds;
+            this.tags = tags;
+        }
+    }
+
+    final Map<String, Map<String, Group>> managers;
+    private final int groupCount;
+    private final int deviceCount;
+
+    private IotTopology(Map<String, Map<String, Group>> managers, int groupCount, int deviceCount) {
+        this.managers = managers;
+        this.groupCount = groupCount;
+        this.deviceCount = deviceCount;
+    }
+
+    public int managerCount() {
+        return managers.size();
+    }
+
+    public int groupCount() {
+        return groupCount;
+    }
+
+    public int deviceCount() {
+        return deviceCount;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static IotTopology read(Path file) throws IOException {
+        Builder builder = new Builder();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            List<String> fields = new ArrayList<>();
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                split(line, fields);
+                int count = fields.size();
+                if (count == 0 || fields.get(0).startsWith("#")) {
+                    continue;
+                }
+                if (count < 3) {
+                    throw new IOException(file + ":" + lineNumber + ": expected <manager> <group> <device>");
+                }
+                Map<String, String> tags = Map.of();
+                if (count > 3) {
+                    tags = new HashMap<>();
+                    for (int i = 3; i < count; i++) {
+                        String tag = fields.get(i);
+                        int eq = tag.indexOf('=');
+                        if (eq <= 0) {
+                            throw new IOException(file + ":" + lineNumber + ": expected <tag>=<value>, got " + tag);
+                        }
+                        tags.put(tag.substring(0, eq), tag.substring(eq + 1));
+                    }
+                }
+                builder.add(fields.get(0), fields.get(1), fields.get(2), tags);
+            }
+        }
+        return builder.build();
+    }
+
+    private static void split(String line, List<String> fields) {
+        fields.clear();
+        int i = 0;
+        int length = line.length();
+        while (i < length) {
+            while (i < length && Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && !Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                fields.add(line.substring(start, i));
+            }
+        }
+    }
+
+    public static final class Builder {
+        private final Map<String, Map<String, Set<String>>> devices = new LinkedHashMap<>();
+        private final Map<String, Map<String, Map<String, Map<String, String>>>> tags = new HashMap<>();
+
+        private Builder() {
+        }
+
+        public Builder add(String managerId, String groupId, String deviceId) {
+            return add(managerId, groupId, deviceId, Map.of());
+        }
+
+        public Builder add(String managerId, String groupId, String deviceId, Map<String, String> deviceTags) {
+            devices.computeIfAbsent(managerId, m -> new LinkedHashMap<>())
+                    .computeIfAbsent(groupId, g -> new LinkedHashSet<>())
+                    .add(deviceId);
+            Map<String, Map<String, String>> groupTags = tags.computeIfAbsent(managerId, m -> new HashMap<>())
+                    .computeIfAbsent(groupId, g -> new HashMap<>());
+            if (deviceTags.isEmpty()) {
+                groupTags.remove(deviceId);
+            } else {
+                groupTags.put(deviceId, Map.copyOf(deviceTags));
+            }
+            return this;
+        }
+
+        public IotTopology build() {
+            Map<String, Map<String, Group>> managers = new LinkedHashMap<>();
+            int groupCount = 0;
+            int deviceCount = 0;
+            for (Map.Entry<String, Map<String, Set<String>>> manager : devices.entrySet()) {
+                Map<String, Group> groups = new LinkedHashMap<>();
+                Map<String, Map<String, Map<String, String>>> managerTags =
+                        tags.getOrDefault(manager.getKey(), Map.of());
+                for (Map.Entry<String, Set<String>> group : manager.getValue().entrySet()) {
+                    List<String> deviceIds = Collections.unmodifiableList(new ArrayList<>(group.getValue()));
+                    groups.put(group.getKey(), new Group(group.getKey(), deviceIds,
+                            managerTags.getOrDefault(group.getKey(), Map.of())));
+                    groupCount++;
+                    deviceCount += deviceIds.size();
+                }
+                managers.put(manager.getKey(), Collections.unmodifiableMap(groups));
+            }
+            return new IotTopology(Collections.unmodifiableMap(managers), groupCount, deviceCount);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+import akka.actor.Props;
+import akka.dispatch.ControlMessage;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+// Hands each manager its part of a topology and counts the groups' DevicesBootstrapped, one per
+// group rather than one per device, until the whole tree exists or the timeout passes.
+public class IotTopologyBootstrap extends AbstractActor {
+    private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
+
+    private static final class BootstrapTimeout implements ControlMessage {
+    }
+
+    private final Map<ActorRef, Map<String, IotTopology.Group>> managerGroups;
+    private final long requestId;
+    private final ActorRef requester;
+    private final long startNanos;
+    private final Cancellable timeoutTimer;
+    // "<manager>/<group>" still to confirm.
+    private final Set<String> pendingGroups = new HashSet<>();
+    private final int managers;
+    private int groups = 0;
+    private int devices = 0;
+
+    private IotTopologyBootstrap(Map<ActorRef, String> managerIds, Map<ActorRef, Map<String, IotTopology.Group>> managerGroups,
+                                 long requestId, ActorRef requester, FiniteDuration timeout, long startNanos) {
+        this.managerGroups = managerGroups;
+        this.requestId = requestId;
+        this.requester = requester;
+        this.startNanos = startNanos;
+        this.managers = managerGroups.size();
+        managerGroups.forEach((manager, groupsOfManager) ->
+                groupsOfManager.keySet().forEach(groupId -> pendingGroups.add(managerIds.get(manager) + "/" + groupId)));
+        this.timeoutTimer = getContext().getSystem().scheduler().scheduleOnce(timeout, getSelf(), new BootstrapTimeout(),
+                getContext().getDispatcher(), getSelf());
+    }
+
+    static Props props(Map<ActorRef, String> managerIds, Map<ActorRef, Map<String, IotTopology.Group>> managerGroups,
+                       long requestId, ActorRef requester, FiniteDuration timeout, long startNanos) {
+        return Props.create(IotTopologyBootstrap.class, () ->
+                new IotTopologyBootstrap(managerIds, managerGroups, requestId, requester, timeout, startNanos))
+                .withMailbox(IotMailbox.QUERY);
+    }
+
+    @Override
+    public void preStart() {
+        managerGroups.forEach((manager, groupsOfManager) ->
+                manager.tell(new IotDeviceManager.BootstrapGroups(requestId, groupsOfManager), getSelf()));
+        finishIfDone();
+    }
+
+    @Override
+    public void postStop() {
+        timeoutTimer.cancel();
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(IotDeviceGroup.DevicesBootstrapped.class, this::onDevicesBootstrapped)
+                .match(BootstrapTimeout.class, t -> {
+                    log.warning("Topology bootstrap {} timed out with {} groups unconfirmed", requestId, pendingGroups.size());
+                    finish();
+                })
+                .build();
+    }
+
+    private void onDevicesBootstrapped(IotDeviceGroup.DevicesBootstrapped msg) {
+        if (pendingGroups.remove(msg.managerId + "/" + msg.groupId)) {
+            groups++;
+            devices += msg.devices;
+            finishIfDone();
+        }
+    }
+
+    private void finishIfDone() {
+        if (pendingGroups.isEmpty()) {
+            finish();
+        }
+    }
+
+    private void finish() {
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - startNanos);
+        log.info("Bootstrapped {} devices in {} groups of {} managers in {} ms", devices, groups, managers,
+                elapsed.toMillis());
+        requester.tell(new IotSupervisor.TopologyBootstrapped(requestId, managers, groups, devices,
+                Set.copyOf(pendingGroups), elapsed), getContext().getParent());
+        getContext().stop(getSelf());
+    }
+}
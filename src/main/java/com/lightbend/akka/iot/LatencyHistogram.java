@@ -0,0 +1,88 @@
+package com.lightbend.akka.iot;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// Fixed-size log-linear histogram of non-negative durations in nanoseconds. Values are bucketed by
+// their highest set bit and the next SUB_BUCKET_BITS bits, which bounds the relative error of a
+// reported percentile to about 1/16 while recording stays a few shifts and an array increment.
+// Not thread safe.
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long[] counts = new long[(64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS];
+    private long count = 0L;
+    private long sum = 0L;
+    private long max = 0L;
+
+    public void record(long nanos) {
+        long value = Math.max(0L, nanos);
+        counts[index(value)]++;
+        count++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public double mean() {
+        return count == 0 ? 0.0 : (double) sum / count;
+    }
+
+    // Upper bound of the bucket holding the requested percentile (0 < percentile <= 100); 0 if empty.
+    public long percentile(double percentile) {
+        if (count == 0) {
+            return 0L;
+        }
+        long rank = (long) Math.ceil(percentile / 100.0 * count);
+        long seen = 0L;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(1L, rank)) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0L);
+        count = 0L;
+        sum = 0L;
+        max = 0L;
+    }
+
+    public String summary(TimeUnit unit) {
+        return String.format("n=%d mean=%.1f p50=%d p90=%d p99=%d p99.9=%d max=%d (%s)",
+                count, mean() / unit.toNanos(1), unit.convert(percentile(50), TimeUnit.NANOSECONDS),
+                unit.convert(percentile(90), TimeUnit.NANOSECONDS), unit.convert(percentile(99), TimeUnit.NANOSECONDS),
+                unit.convert(percentile(99.9), TimeUnit.NANOSECONDS), unit.convert(max, TimeUnit.NANOSECONDS),
+                unit.name().toLowerCase());
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+        int subBucket = (int) (value >>> (magnitude - 1)) & (SUB_BUCKETS - 1);
+        return magnitude * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBound(int index) {
+        int magnitude = index / SUB_BUCKETS;
+        long subBucket = index % SUB_BUCKETS;
+        if (magnitude == 0) {
+            return subBucket;
+        }
+        long lower = (SUB_BUCKETS | subBucket) << (magnitude - 1);
+        return lower + (1L << (magnitude - 1)) - 1;
+    }
+}
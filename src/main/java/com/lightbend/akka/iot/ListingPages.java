@@ -0,0 +1,98 @@
+package com.lightbend.akka.iot;
+
+import com.typesafe.config.Config;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+// Keyset pagination over a sorted id set. A cursor is the opaque, URL-safe encoding of the last id
+// handed out, so each page is a fresh bounded copy taken after that id: ids added or removed
+// between pages never shift the others, and every id present for the whole listing is seen once.
+final class ListingPages {
+    private final String kind;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+
+    private ListingPages(String kind, int defaultPageSize, int maxPageSize) {
+        this.kind = kind;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+    }
+
+    // kind is baked into cursors so one listing's cursor is rejected by another.
+    static ListingPages fromConfig(String kind, Config config) {
+        return new ListingPages(kind, config.getInt("default-page-size"), config.getInt("max-page-size"));
+    }
+
+    static final class Page {
+        final List<String> ids;
+        final String nextCursor;
+
+        Page(List<String> ids, String nextCursor) {
+            this.ids = ids;
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    // cursor == null starts from the first id and pageSize <= 0 uses the default. nextCursor is null
+    // on the last page. Throws IllegalArgumentException for cursors not issued for this kind.
+    Page page(NavigableSet<String> ids, String cursor, int pageSize) {
+        int limit = pageSize <= 0 ? defaultPageSize : Math.min(pageSize, maxPageSize);
+        NavigableSet<String> remaining = cursor == null ? ids : ids.tailSet(decode(cursor), false);
+        List<String> page = new ArrayList<>(Math.min(limit, 256));
+        for (String id : remaining) {
+            if (page.size() == limit) {
+                break;
+            }
+            page.add(id);
+        }
+        String last = page.isEmpty() ? null : page.get(page.size() - 1);
+        String nextCursor = last != null && ids.higher(last) != null ? encode(last) : null;
+        return new Page(Collections.unmodifiableList(page), nextCursor);
+    }
+
+    // The page the union of disjoint id sets would give, from pages each set gave for the same cursor
+    // and pageSize; used by a partitioned manager, whose group ids are spread over its partitions.
+    Page merge(List<Page> pages, int pageSize) {
+        int limit = pageSize <= 0 ? defaultPageSize : Math.min(pageSize, maxPageSize);
+        TreeSet<String> union = new TreeSet<>();
+        boolean more = false;
+        for (Page part : pages) {
+            union.addAll(part.ids);
+            more |= part.nextCursor != null;
+        }
+        List<String> page = new ArrayList<>(Math.min(limit, union.size()));
+        for (String id : union) {
+            if (page.size() == limit) {
+                more = true;
+                break;
+            }
+            page.add(id);
+        }
+        String nextCursor = more && !page.isEmpty() ? encode(page.get(page.size() - 1)) : null;
+        return new Page(Collections.unmodifiableList(page), nextCursor);
+    }
+
+    private String encode(String lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((kind + ':' + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String decode(String cursor) {
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed " + kind + " cursor: " + cursor);
+        }
+        if (!decoded.startsWith(kind + ':')) {
+            throw new IllegalArgumentException("Not a " + kind + " cursor: " + cursor);
+        }
+        return decoded.substring(kind.length() + 1);
+    }
+}
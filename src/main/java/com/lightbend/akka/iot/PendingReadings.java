@@ -0,0 +1,85 @@
+package com.lightbend.akka.iot;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+// Readings and sealed blocks a device has produced and its group has not handled yet, shared by
+// the two actors. The device tells its group only when nothing was pending, so however fast it
+// reports, a device has at most one IotDeviceGroup.DeviceReadingsPending in its group's mailbox.
+// A group that falls behind loses the oldest readings and blocks past the capacities instead of
+// queueing without bound.
+final class PendingReadings {
+    private final double[] values;
+    private final long[] recordedAt;
+    private final int maxBlocks;
+    private final Deque<GorillaBlock> blocks = new ArrayDeque<>();
+    private int first = 0;
+    private int size = 0;
+    private long dropped = 0L;
+
+    PendingReadings(int capacity, int maxBlocks) {
+        if (capacity < 1 || maxBlocks < 1) {
+            throw new IllegalArgumentException("capacity and maxBlocks must be positive");
+        }
+        this.values = new double[capacity];
+        this.recordedAt = new long[capacity];
+        this.maxBlocks = maxBlocks;
+    }
+
+    // Both add methods return true when nothing was pending, that is when the group must be told.
+    synchronized boolean add(double value, long at) {
+        boolean wasEmpty = isEmpty();
+        if (size == values.length) {
+            first = (first + 1) % values.length;
+            size--;
+            dropped++;
+        }
+        int index = (first + size) % values.length;
+        values[index] = value;
+        recordedAt[index] = at;
+        size++;
+        return wasEmpty;
+    }
+
+    synchronized boolean addBlock(GorillaBlock block) {
+        boolean wasEmpty = isEmpty();
+        if (blocks.size() == maxBlocks) {
+            blocks.removeFirst();
+            dropped++;
+        }
+        blocks.addLast(block);
+        return wasEmpty;
+    }
+
+    // Moves everything pending out, oldest first: readings into intoValues and intoRecordedAt, which
+    // hold at least capacity() entries, and blocks into intoBlocks. Returns the number of readings.
+    synchronized int drainTo(double[] intoValues, long[] intoRecordedAt, List<GorillaBlock> intoBlocks) {
+        for (int i = 0; i < size; i++) {
+            int index = (first + i) % values.length;
+            intoValues[i] = values[index];
+            intoRecordedAt[i] = recordedAt[index];
+        }
+        int drained = size;
+        first = 0;
+        size = 0;
+        intoBlocks.addAll(blocks);
+        blocks.clear();
+        return drained;
+    }
+
+    // Readings and blocks dropped since the last call.
+    synchronized long takeDropped() {
+        long taken = dropped;
+        dropped = 0L;
+        return taken;
+    }
+
+    int capacity() {
+        return values.length;
+    }
+
+    private boolean isEmpty() {
+        return size == 0 && blocks.isEmpty();
+    }
+}
@@ -0,0 +1,118 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.ActorRef;
+import com.typesafe.config.Config;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Supplier;
+
+// Bounds the query actors one group or manager runs at a time. Up to maxInFlight queries run; the
+// next maxQueued wait in arrival order and start as running ones terminate; anything beyond that
+// is rejected so the owner can answer Overloaded instead of spawning another actor and timer.
+// The owner watches the query actors it starts and hands their Terminated to release.
+final class QueryAdmission {
+
+    enum Decision {
+        STARTED, QUEUED, REJECTED
+    }
+
+    // Sent instead of the normal reply when a query is shed.
+    public static final class Overloaded {
+        final long requestId;
+        final String owner;
+
+        Overloaded(long requestId, String owner) {
+            this.requestId = requestId;
+            this.owner = owner;
+        }
+    }
+
+    public static final class RequestAdmissionMetrics {
+        final long requestId;
+
+        public RequestAdmissionMetrics(long requestId) {
+            this.requestId = requestId;
+        }
+    }
+
+    public static final class AdmissionMetrics {
+        final long requestId;
+        final String owner;
+        final int inFlight;
+        final int queued;
+        final int maxInFlight;
+        final int maxQueued;
+        final long started;
+        final long queuedTotal;
+        final long rejected;
+
+        AdmissionMetrics(long requestId, String owner, int inFlight, int queued, int maxInFlight, int maxQueued,
+                         long started, long queuedTotal, long rejected) {
+            this.requestId = requestId;
+            this.owner = owner;
+            this.inFlight = inFlight;
+            this.queued = queued;
+            this.maxInFlight = maxInFlight;
+            this.maxQueued = maxQueued;
+            this.started = started;
+            this.queuedTotal = queuedTotal;
+            this.rejected = rejected;
+        }
+    }
+
+    private final int maxInFlight;
+    private final int maxQueued;
+    private final Set<ActorRef> inFlight = new HashSet<>();
+    private final Deque<Supplier<ActorRef>> queue = new ArrayDeque<>();
+    private long started = 0L;
+    private long queuedTotal = 0L;
+    private long rejected = 0L;
+
+    QueryAdmission(int maxInFlight, int maxQueued) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.maxQueued = Math.max(0, maxQueued);
+    }
+
+    static QueryAdmission fromConfig(Config config) {
+        return new QueryAdmission(config.getInt("max-in-flight"), config.getInt("max-queued"));
+    }
+
+    // The starter creates (and should watch) the query actor; it may run now or when a slot frees up.
+    Decision offer(Supplier<ActorRef> starter) {
+        if (inFlight.size() < maxInFlight) {
+            start(starter);
+            return Decision.STARTED;
+        }
+        if (queue.size() < maxQueued) {
+            queue.add(starter);
+            queuedTotal++;
+            return Decision.QUEUED;
+        }
+        rejected++;
+        return Decision.REJECTED;
+    }
+
+    // Returns false if the actor was not a query started through this admission.
+    boolean release(ActorRef query) {
+        if (!inFlight.remove(query)) {
+            return false;
+        }
+        while (inFlight.size() < maxInFlight && !queue.isEmpty()) {
+            start(queue.poll());
+        }
+        return true;
+    }
+
+    AdmissionMetrics metrics(long requestId, String owner) {
+        return new AdmissionMetrics(requestId, owner, inFlight.size(), queue.size(), maxInFlight, maxQueued,
+                started, queuedTotal, rejected);
+    }
+
+    private void start(Supplier<ActorRef> starter) {
+        inFlight.add(starter.get());
+        started++;
+    }
+}
@@ -0,0 +1,183 @@
+package com.lightbend.akka.iot;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Tumbling-window rollups (count, min, max, sum) for every device of a group. Each device owns
+// a slot; each window keeps a ring of buckets per slot in flat primitive arrays, so recording a
+// reading is a handful of array writes. The arrays only grow when the slot capacity is exceeded.
+public final class RollupStore {
+
+    public static final class Rollup {
+        final long windowStart;
+        final int count;
+        final double min;
+        final double max;
+        final double sum;
+
+        Rollup(long windowStart, int count, double min, double max, double sum) {
+            this.windowStart = windowStart;
+            this.count = count;
+            this.min = min;
+            this.max = max;
+            this.sum = sum;
+        }
+
+        public double mean() {
+            return count == 0 ? Double.NaN : sum / count;
+        }
+
+        @Override
+        public String toString() {
+            return "Rollup{" +
+                    "windowStart=" + windowStart +
+                    ", count=" + count +
+                    ", min=" + min +
+                    ", max=" + max +
+                    ", sum=" + sum +
+                    '}';
+        }
+    }
+
+    private final TumblingWindow[] windows;
+    private int capacity;
+
+    RollupStore(List<Duration> windowSizes, int bucketsRetained, int initialSlots) {
+        this.capacity = Math.max(1, initialSlots);
+        this.windows = new TumblingWindow[windowSizes.size()];
+        for (int i = 0; i < windows.length; i++) {
+            windows[i] = new TumblingWindow(windowSizes.get(i).toMillis(), bucketsRetained, capacity);
+        }
+    }
+
+    void ensureSlot(int slot) {
+        if (slot < capacity) {
+            return;
+        }
+        int newCapacity = capacity;
+        while (newCapacity <= slot) {
+            newCapacity <<= 1;
+        }
+        for (TumblingWindow window : windows) {
+            window.grow(newCapacity);
+        }
+        capacity = newCapacity;
+    }
+
+    // Grows straight to the given number of slots, for callers that know how many devices are coming.
+    void reserve(int slots) {
+        if (slots <= capacity) {
+            return;
+        }
+        for (TumblingWindow window : windows) {
+            window.grow(slots);
+        }
+        capacity = slots;
+    }
+
+    void record(int slot, long timestamp, double value) {
+        for (TumblingWindow window : windows) {
+            window.record(slot, timestamp, value);
+        }
+    }
+
+    void clear(int slot) {
+        for (TumblingWindow window : windows) {
+            window.clear(slot);
+        }
+    }
+
+    boolean hasWindow(Duration windowSize) {
+        return window(windowSize) != null;
+    }
+
+    // Retained buckets of the slot for the given window, oldest first.
+    List<Rollup> rollups(int slot, Duration windowSize, long now) {
+        TumblingWindow window = window(windowSize);
+        return window == null ? Collections.emptyList() : window.rollups(slot, now);
+    }
+
+    private TumblingWindow window(Duration windowSize) {
+        long millis = windowSize.toMillis();
+        for (TumblingWindow window : windows) {
+            if (window.windowMillis == millis) {
+                return window;
+            }
+        }
+        return null;
+    }
+
+    private static final class TumblingWindow {
+        private static final long EMPTY = Long.MIN_VALUE;
+
+        final long windowMillis;
+        final int buckets;
+        long[] starts;
+        int[] counts;
+        double[] mins;
+        double[] maxs;
+        double[] sums;
+
+        TumblingWindow(long windowMillis, int buckets, int slots) {
+            this.windowMillis = windowMillis;
+            this.buckets = buckets;
+            this.starts = new long[slots * buckets];
+            Arrays.fill(starts, EMPTY);
+            this.counts = new int[slots * buckets];
+            this.mins = new double[slots * buckets];
+            this.maxs = new double[slots * buckets];
+            this.sums = new double[slots * buckets];
+        }
+
+        void grow(int slots) {
+            int oldLength = starts.length;
+            starts = Arrays.copyOf(starts, slots * buckets);
+            Arrays.fill(starts, oldLength, starts.length, EMPTY);
+            counts = Arrays.copyOf(counts, slots * buckets);
+            mins = Arrays.copyOf(mins, slots * buckets);
+            maxs = Arrays.copyOf(maxs, slots * buckets);
+            sums = Arrays.copyOf(sums, slots * buckets);
+        }
+
+        void record(int slot, long timestamp, double value) {
+            long bucketNumber = Math.floorDiv(timestamp, windowMillis);
+            long start = bucketNumber * windowMillis;
+            int i = slot * buckets + (int) Math.floorMod(bucketNumber, (long) buckets);
+            if (starts[i] != start) {
+                if (starts[i] > start) {
+                    // Older than anything the ring still holds for this position.
+                    return;
+                }
+                starts[i] = start;
+                counts[i] = 1;
+                mins[i] = value;
+                maxs[i] = value;
+                sums[i] = value;
+            } else {
+                counts[i]++;
+                mins[i] = Math.min(mins[i], value);
+                maxs[i] = Math.max(maxs[i], value);
+                sums[i] += value;
+            }
+        }
+
+        void clear(int slot) {
+            Arrays.fill(starts, slot * buckets, (slot + 1) * buckets, EMPTY);
+        }
+
+        List<Rollup> rollups(int slot, long now) {
+            long oldestStart = (Math.floorDiv(now, windowMillis) - buckets + 1) * windowMillis;
+            List<Rollup> rollups = new ArrayList<>();
+            for (int i = slot * buckets; i < (slot + 1) * buckets; i++) {
+                if (starts[i] != EMPTY && starts[i] >= oldestStart) {
+                    rollups.add(new Rollup(starts[i], counts[i], mins[i], maxs[i], sums[i]));
+                }
+            }
+            rollups.sort((a, b) -> Long.compare(a.windowStart, b.windowStart));
+            return rollups;
+        }
+    }
+}
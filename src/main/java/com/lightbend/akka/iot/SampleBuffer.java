@@ -0,0 +1,42 @@
+package com.lightbend.akka.iot;
+
+import java.util.Arrays;
+
+// Growable pair of primitive columns used to collect decoded samples without boxing.
+final class SampleBuffer implements DeviceHistory.SampleConsumer {
+    private long[] timestamps;
+    private double[] values;
+    private int size = 0;
+
+    SampleBuffer(int initialCapacity) {
+        this.timestamps = new long[Math.max(1, initialCapacity)];
+        this.values = new double[Math.max(1, initialCapacity)];
+    }
+
+    @Override
+    public void accept(long timestamp, double value) {
+        if (size == timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps, size << 1);
+            values = Arrays.copyOf(values, size << 1);
+        }
+        timestamps[size] = timestamp;
+        values[size] = value;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long[] timestamps() {
+        return Arrays.copyOf(timestamps, size);
+    }
+
+    double[] values() {
+        return Arrays.copyOf(values, size);
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
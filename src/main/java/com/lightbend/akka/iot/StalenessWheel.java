@@ -0,0 +1,131 @@
+package com.lightbend.akka.iot;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+// One timing wheel per group that finds device slots whose last reading is older than the TTL.
+// A slot sits in at most one bucket and is only placed there when it is not scheduled already, so
+// a fresh reading costs one array read; a slot that kept reporting is simply moved to the bucket
+// of its new deadline when its old bucket comes round. Cancelling takes the slot out of its bucket.
+final class StalenessWheel {
+    private static final int INITIAL_BUCKET_CAPACITY = 8;
+    // bucketOf a slot taken out of its bucket by advance and not yet handled.
+    private static final int DUE = -2;
+
+    private final long ttlMillis;
+    private final long tickMillis;
+    private final int[][] buckets;
+    private final int[] bucketSizes;
+    private int[] spare = new int[INITIAL_BUCKET_CAPACITY];
+    // Bucket each slot is scheduled in, or -1, and its index there.
+    private int[] bucketOf = new int[0];
+    private int[] indexOf = new int[0];
+    private long currentTick;
+
+    StalenessWheel(long ttlMillis, int bucketCount, long now) {
+        if (ttlMillis <= 0 || bucketCount <= 0) {
+            throw new IllegalArgumentException("ttl and bucket count must be positive");
+        }
+        this.ttlMillis = ttlMillis;
+        this.tickMillis = Math.max(1L, (ttlMillis + bucketCount - 1) / bucketCount);
+        this.buckets = new int[bucketCount][];
+        this.bucketSizes = new int[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            buckets[i] = new int[INITIAL_BUCKET_CAPACITY];
+        }
+        this.currentTick = now / tickMillis;
+    }
+
+    long ttlMillis() {
+        return ttlMillis;
+    }
+
+    long tickMillis() {
+        return tickMillis;
+    }
+
+    boolean isScheduled(int slot) {
+        return slot < bucketOf.length && bucketOf[slot] >= 0;
+    }
+
+    // Entries across all buckets, one per scheduled slot.
+    int entries() {
+        int entries = 0;
+        for (int size : bucketSizes) {
+            entries += size;
+        }
+        return entries;
+    }
+
+    // Schedules the slot's check for when a reading recorded at recordedAt turns stale.
+    void schedule(int slot, long recordedAt) {
+        if (slot >= bucketOf.length) {
+            int previous = bucketOf.length;
+            bucketOf = Arrays.copyOf(bucketOf, Math.max(slot + 1, previous << 1));
+            indexOf = Arrays.copyOf(indexOf, bucketOf.length);
+            Arrays.fill(bucketOf, previous, bucketOf.length, -1);
+        }
+        cancel(slot);
+        long tick = (recordedAt + ttlMillis + tickMillis - 1) / tickMillis;
+        tick = Math.max(currentTick + 1, Math.min(tick, currentTick + buckets.length));
+        int bucket = (int) (tick % buckets.length);
+        if (bucketSizes[bucket] == buckets[bucket].length) {
+            buckets[bucket] = Arrays.copyOf(buckets[bucket], bucketSizes[bucket] << 1);
+        }
+        indexOf[slot] = bucketSizes[bucket];
+        buckets[bucket][bucketSizes[bucket]++] = slot;
+        bucketOf[slot] = bucket;
+    }
+
+    // The last slot of the bucket takes the cancelled slot's place.
+    void cancel(int slot) {
+        if (slot >= bucketOf.length || bucketOf[slot] == -1) {
+            return;
+        }
+        int bucket = bucketOf[slot];
+        bucketOf[slot] = -1;
+        if (bucket == DUE) {
+            return;
+        }
+        int last = buckets[bucket][--bucketSizes[bucket]];
+        buckets[bucket][indexOf[slot]] = last;
+        indexOf[last] = indexOf[slot];
+    }
+
+    // Turns the wheel up to now. Each due slot whose reading is at least ttl old is unscheduled and
+    // passed to expired; the others are rescheduled from their latest recordedAt.
+    void advance(long now, long[] lastRecordedAt, IntConsumer expired) {
+        long nowTick = now / tickMillis;
+        // After a long pause one full turn visits every bucket.
+        long from = Math.max(currentTick + 1, nowTick - buckets.length + 1);
+        for (long tick = from; tick <= nowTick; tick++) {
+            currentTick = tick;
+            int bucket = (int) (tick % buckets.length);
+            int size = bucketSizes[bucket];
+            if (size == 0) {
+                continue;
+            }
+            int[] due = buckets[bucket];
+            buckets[bucket] = spare;
+            bucketSizes[bucket] = 0;
+            for (int i = 0; i < size; i++) {
+                bucketOf[due[i]] = DUE;
+            }
+            // expired may cancel or schedule slots that are still due; those are skipped here.
+            for (int i = 0; i < size; i++) {
+                int slot = due[i];
+                if (bucketOf[slot] != DUE) {
+                    continue;
+                }
+                bucketOf[slot] = -1;
+                if (now - lastRecordedAt[slot] >= ttlMillis) {
+                    expired.accept(slot);
+                } else {
+                    schedule(slot, lastRecordedAt[slot]);
+                }
+            }
+            spare = due;
+        }
+        currentTick = Math.max(currentTick, nowTick);
+    }
+}
@@ -0,0 +1,126 @@
+package com.lightbend.akka.iot;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+// Inverted index from device tags to the devices of one manager. Every tagged device gets a dense
+// ordinal, reused once the device is removed, and every key=value pair a bitmap over the ordinals,
+// so a query is the intersection of a few bitmaps, smallest first.
+final class TagIndex {
+    private final Map<String, BitSet> postings = new HashMap<>();
+    private final Map<String, Map<String, Integer>> ordinalsByGroup = new HashMap<>();
+    private final BitSet freeOrdinals = new BitSet();
+    private String[] groupIds = new String[16];
+    private String[] deviceIds = new String[16];
+    private String[][] tagPostings = new String[16][];
+    private int nextOrdinal = 0;
+    private int size = 0;
+
+    int size() {
+        return size;
+    }
+
+    // Replaces the device's tags; an empty map removes it from the index.
+    void put(String groupId, String deviceId, Map<String, String> tags) {
+        remove(groupId, deviceId);
+        if (tags.isEmpty()) {
+            return;
+        }
+        int ordinal = allocateOrdinal();
+        groupIds[ordinal] = groupId;
+        deviceIds[ordinal] = deviceId;
+        String[] keys = new String[tags.size()];
+        int i = 0;
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            keys[i] = postingKey(tag.getKey(), tag.getValue());
+            postings.computeIfAbsent(keys[i], k -> new BitSet()).set(ordinal);
+            i++;
+        }
+        tagPostings[ordinal] = keys;
+        ordinalsByGroup.computeIfAbsent(groupId, g -> new HashMap<>()).put(deviceId, ordinal);
+        size++;
+    }
+
+    void remove(String groupId, String deviceId) {
+        Map<String, Integer> ordinals = ordinalsByGroup.get(groupId);
+        Integer ordinal = ordinals == null ? null : ordinals.remove(deviceId);
+        if (ordinal == null) {
+            return;
+        }
+        if (ordinals.isEmpty()) {
+            ordinalsByGroup.remove(groupId);
+        }
+        release(ordinal);
+    }
+
+    void removeGroup(String groupId) {
+        Map<String, Integer> ordinals = ordinalsByGroup.remove(groupId);
+        if (ordinals != null) {
+            ordinals.values().forEach(this::release);
+        }
+    }
+
+    // Devices carrying every one of the given tags, by group. No tags match nothing.
+    Map<String, Set<String>> match(Map<String, String> tags) {
+        Map<String, Set<String>> matches = new HashMap<>();
+        if (tags.isEmpty()) {
+            return matches;
+        }
+        BitSet[] bitmaps = new BitSet[tags.size()];
+        int i = 0;
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            BitSet bitmap = postings.get(postingKey(tag.getKey(), tag.getValue()));
+            if (bitmap == null) {
+                return matches;
+            }
+            bitmaps[i++] = bitmap;
+        }
+        Arrays.sort(bitmaps, (a, b) -> Integer.compare(a.cardinality(), b.cardinality()));
+        BitSet result = (BitSet) bitmaps[0].clone();
+        for (int j = 1; j < bitmaps.length && !result.isEmpty(); j++) {
+            result.and(bitmaps[j]);
+        }
+        for (int ordinal = result.nextSetBit(0); ordinal >= 0; ordinal = result.nextSetBit(ordinal + 1)) {
+            matches.computeIfAbsent(groupIds[ordinal], g -> new HashSet<>()).add(deviceIds[ordinal]);
+        }
+        return matches;
+    }
+
+    private static String postingKey(String key, String value) {
+        return key + '\u0000' + value;
+    }
+
+    private int allocateOrdinal() {
+        int ordinal = freeOrdinals.nextSetBit(0);
+        if (ordinal >= 0) {
+            freeOrdinals.clear(ordinal);
+            return ordinal;
+        }
+        ordinal = nextOrdinal++;
+        if (ordinal == groupIds.length) {
+            groupIds = Arrays.copyOf(groupIds, ordinal << 1);
+            deviceIds = Arrays.copyOf(deviceIds, ordinal << 1);
+            tagPostings = Arrays.copyOf(tagPostings, ordinal << 1);
+        }
+        return ordinal;
+    }
+
+    private void release(int ordinal) {
+        for (String key : tagPostings[ordinal]) {
+            BitSet bitmap = postings.get(key);
+            bitmap.clear(ordinal);
+            if (bitmap.isEmpty()) {
+                postings.remove(key);
+            }
+        }
+        groupIds[ordinal] = null;
+        deviceIds[ordinal] = null;
+        tagPostings[ordinal] = null;
+        freeOrdinals.set(ordinal);
+        size--;
+    }
+}
@@ -0,0 +1,104 @@
+package com.lightbend.akka.iot;
+
+import java.io.Serializable;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+
+// Filter for temperature queries, evaluated where the readings are collected so that only
+// matching entries are sent back. A reading matches when its kind is accepted and, for kinds that
+// carry a value, the value lies within [min, max]. Immutable and serializable, so it can travel
+// inside query messages.
+public final class TemperaturePredicate implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public enum Kind {
+        TEMPERATURE, STALE_TEMPERATURE, HEDGED_TEMPERATURE, TEMPERATURE_NOT_AVAILABLE, DEVICE_NOT_AVAILABLE, DEVICE_TIMED_OUT
+    }
+
+    private static final TemperaturePredicate ALL = new TemperaturePredicate(
+            EnumSet.allOf(Kind.class), Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+
+    private final EnumSet<Kind> kinds;
+    private final double min;
+    private final double max;
+
+    private TemperaturePredicate(EnumSet<Kind> kinds, double min, double max) {
+        this.kinds = kinds;
+        this.min = min;
+        this.max = max;
+    }
+
+    public static TemperaturePredicate all() {
+        return ALL;
+    }
+
+    // Fresh, stale and hedged readings with min <= value <= max.
+    public static TemperaturePredicate valueBetween(double min, double max) {
+        return new TemperaturePredicate(EnumSet.of(Kind.TEMPERATURE, Kind.STALE_TEMPERATURE, Kind.HEDGED_TEMPERATURE),
+                min, max);
+    }
+
+    public static TemperaturePredicate valueAtLeast(double min) {
+        return valueBetween(min, Double.POSITIVE_INFINITY);
+    }
+
+    public static TemperaturePredicate valueAtMost(double max) {
+        return valueBetween(Double.NEGATIVE_INFINITY, max);
+    }
+
+    // Readings of the given kinds, whatever their value; e.g. the devices in an error state.
+    public static TemperaturePredicate kinds(Set<Kind> kinds) {
+        return new TemperaturePredicate(kinds.isEmpty() ? EnumSet.noneOf(Kind.class) : EnumSet.copyOf(kinds),
+                Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+    }
+
+    public boolean acceptsAll() {
+        return equals(ALL);
+    }
+
+    public boolean test(IotDeviceGroup.TemperatureReading reading) {
+        if (reading instanceof IotDeviceGroup.Temperature) {
+            return kinds.contains(Kind.TEMPERATURE) && inRange(((IotDeviceGroup.Temperature) reading).value);
+        } else if (reading instanceof IotDeviceGroup.StaleTemperature) {
+            return kinds.contains(Kind.STALE_TEMPERATURE) && inRange(((IotDeviceGroup.StaleTemperature) reading).value);
+        } else if (reading instanceof IotDeviceGroup.HedgedTemperature) {
+            return kinds.contains(Kind.HEDGED_TEMPERATURE) && inRange(((IotDeviceGroup.HedgedTemperature) reading).value);
+        } else if (reading instanceof IotDeviceGroup.TemperatureNotAvailable) {
+            return kinds.contains(Kind.TEMPERATURE_NOT_AVAILABLE);
+        } else if (reading instanceof IotDeviceGroup.DeviceNotAvailable) {
+            return kinds.contains(Kind.DEVICE_NOT_AVAILABLE);
+        } else if (reading instanceof IotDeviceGroup.DeviceTimedOut) {
+            return kinds.contains(Kind.DEVICE_TIMED_OUT);
+        }
+        return false;
+    }
+
+    private boolean inRange(double value) {
+        return value >= min && value <= max;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TemperaturePredicate that = (TemperaturePredicate) o;
+        return Double.compare(that.min, min) == 0 &&
+                Double.compare(that.max, max) == 0 &&
+                kinds.equals(that.kinds);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(kinds, min, max);
+    }
+
+    @Override
+    public String toString() {
+        return "TemperaturePredicate{" +
+                "kinds=" + kinds +
+                ", min=" + min +
+                ", max=" + max +
+                '}';
+    }
+}
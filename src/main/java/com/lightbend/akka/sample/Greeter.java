@@ -1,11 +1,13 @@
 package com.lightbend.akka.sample;
 
-import akka.actor.AbstractActor;
+import akka.actor.AbstractActorWithStash;
 import akka.actor.ActorRef;
 import akka.actor.Props;
 import com.lightbend.akka.sample.Printer.Greeting;
 
-public class Greeter extends AbstractActor {
+// While the printer has asked it to slow down, a greeter stashes what it is asked to do and
+// catches up, in order, once the printer resumes.
+public class Greeter extends AbstractActorWithStash {
     static public Props props(String message, ActorRef printerActor) {
         return Props.create(Greeter.class, () -> new Greeter(message, printerActor));
     }
@@ -41,6 +43,23 @@ public class Greeter extends AbstractActor {
                 .match(Greet.class, x ->
                     printerActor.tell(new Greeting(greeting), getSelf())
                 )
+                .match(Printer.SlowDown.class, s ->
+                    getContext().become(slowedDown())
+                )
+                .match(Printer.Resume.class, r -> {
+                })
+                .build();
+    }
+
+    private Receive slowedDown() {
+        return receiveBuilder()
+                .match(Printer.Resume.class, r -> {
+                    getContext().become(createReceive());
+                    unstashAll();
+                })
+                .match(Printer.SlowDown.class, s -> {
+                })
+                .matchAny(x -> stash())
                 .build();
     }
 }
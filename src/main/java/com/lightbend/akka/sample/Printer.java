@@ -1,13 +1,48 @@
 package com.lightbend.akka.sample;
 
 import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
 import akka.actor.Props;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
+import com.typesafe.config.Config;
+import scala.concurrent.duration.FiniteDuration;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Prints greetings one per line, in batches: greetings are appended to a buffer that is handed to
+// a PrinterChannelWriter once it holds batch-size bytes or flush-interval after its first greeting,
+// so the blocking channel writes happen on the writer's own dispatcher. Once more than
+// high-watermark bytes are buffered or being written, senders of further greetings are told to
+// SlowDown, and told to Resume when writes have brought that back to low-watermark.
 public class Printer extends AbstractActor {
     static public Props props() {
-        return Props.create(Printer.class, Printer::new);
+        return props(null);
+    }
+
+    // Appends to file, or prints to stdout when file is null.
+    static public Props props(Path file) {
+        return Props.create(Printer.class, () -> new Printer(file, null));
+    }
+
+    static public Props props(Path file, int batchBytes, FiniteDuration flushInterval, long highWatermark,
+                              long lowWatermark) {
+        return Props.create(Printer.class, () ->
+                new Printer(file, new Settings(batchBytes, flushInterval, highWatermark, lowWatermark)));
     }
 
     static public class Greeting {
@@ -18,17 +53,186 @@ public class Printer extends AbstractActor {
         }
     }
 
+    // Sent to a greeting's sender when the printer is behind.
+    static public class SlowDown {
+    }
+
+    static public class Resume {
+    }
+
+    // Answered with Flushed once every greeting received before it has been written.
+    static public class Flush {
+    }
+
+    static public class Flushed {
+    }
+
+    private static final class FlushTick {
+    }
+
+    static final class Settings {
+        final int batchBytes;
+        final FiniteDuration flushInterval;
+        final long highWatermark;
+        final long lowWatermark;
+
+        Settings(int batchBytes, FiniteDuration flushInterval, long highWatermark, long lowWatermark) {
+            if (batchBytes <= 0 || lowWatermark > highWatermark) {
+                throw new IllegalArgumentException("Invalid printer settings: batch " + batchBytes
+                        + " bytes, watermarks " + lowWatermark + "/" + highWatermark);
+            }
+            this.batchBytes = batchBytes;
+            this.flushInterval = flushInterval;
+            this.highWatermark = highWatermark;
+            this.lowWatermark = lowWatermark;
+        }
+
+        static Settings fromConfig(Config config) {
+            return new Settings(Math.toIntExact(config.getBytes("batch-size")),
+                    FiniteDuration.create(config.getDuration("flush-interval", TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS),
+                    config.getBytes("high-watermark"), config.getBytes("low-watermark"));
+        }
+    }
+
+    private static final class FlushWaiter {
+        final long untilBytes;
+        final ActorRef replyTo;
+
+        FlushWaiter(long untilBytes, ActorRef replyTo) {
+            this.untilBytes = untilBytes;
+            this.replyTo = replyTo;
+        }
+    }
+
     private LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
 
-    private Printer() {
+    private final Path file;
+    private final Settings settings;
+    private final Set<ActorRef> slowedDown = new HashSet<>();
+    private final List<FlushWaiter> flushWaiters = new ArrayList<>();
+    // Batches handed to the writer and not yet reported Written, oldest first.
+    private final Deque<PrinterChannelWriter.Write> unwritten = new ArrayDeque<>();
+    private final AtomicLong lastBatchDone = new AtomicLong();
+    private long lastBatch = 0L;
+    private ActorRef writer;
+    private byte[] batch;
+    private int batchLength = 0;
+    private Cancellable flushTimer = null;
+    // Bytes received and bytes the writer has reported written; the difference is pending.
+    private long receivedBytes = 0L;
+    private long writtenBytes = 0L;
+
+    private Printer(Path file, Settings settings) {
+        this.file = file;
+        this.settings = settings != null ? settings
+                : Settings.fromConfig(getContext().getSystem().settings().config().getConfig("sample.printer"));
+        this.batch = new byte[this.settings.batchBytes];
+    }
+
+    @Override
+    public void preStart() {
+        writer = getContext().actorOf(PrinterChannelWriter.props(file, lastBatchDone).withDispatcher("sample.printer.dispatcher"),
+                "writer");
+    }
+
+    // The writer, a child, has stopped by now, leaving the batches still in its mailbox unwritten.
+    // Those, and what is still buffered, are written here, on the way out.
+    @Override
+    public void postStop() throws IOException {
+        if (flushTimer != null) {
+            flushTimer.cancel();
+        }
+        long done = lastBatchDone.get();
+        unwritten.removeIf(w -> w.batch <= done);
+        if (!unwritten.isEmpty() || batchLength > 0) {
+            try (WritableByteChannel channel = PrinterChannelWriter.open(file)) {
+                for (PrinterChannelWriter.Write w : unwritten) {
+                    PrinterChannelWriter.writeFully(channel, ByteBuffer.wrap(w.bytes, 0, w.length));
+                }
+                PrinterChannelWriter.writeFully(channel, ByteBuffer.wrap(batch, 0, batchLength));
+            }
+        }
     }
 
     @Override
     public Receive createReceive() {
         return receiveBuilder()
-                .match(Greeting.class, greeting ->
-                    log.info(greeting.message)
-               )
+                .match(Greeting.class, this::onGreeting)
+                .match(FlushTick.class, t -> {
+                    flushTimer = null;
+                    sealBatch();
+                })
+                .match(Flush.class, f -> {
+                    sealBatch();
+                    flushWaiters.add(new FlushWaiter(receivedBytes, getSender()));
+                    onWritten(0);
+                })
+                .match(PrinterChannelWriter.Written.class, w -> {
+                    unwritten.pollFirst();
+                    onWritten(w.bytes);
+                })
                 .build();
     }
+
+    private void onGreeting(Greeting greeting) {
+        byte[] line = (greeting.message + '\n').getBytes(StandardCharsets.UTF_8);
+        receivedBytes += line.length;
+        if (batchLength + line.length > batch.length) {
+            sealBatch();
+            if (line.length > batch.length) {
+                // A single greeting larger than a batch goes out on its own.
+                write(line, line.length);
+                line = new byte[0];
+            }
+        }
+        System.arraycopy(line, 0, batch, batchLength, line.length);
+        batchLength += line.length;
+        if (batchLength == batch.length) {
+            sealBatch();
+        } else if (batchLength > 0 && flushTimer == null) {
+            flushTimer = getContext().getSystem().scheduler().scheduleOnce(settings.flushInterval, getSelf(),
+                    new FlushTick(), getContext().getDispatcher(), getSelf());
+        }
+
+        ActorRef sender = getSender();
+        if (receivedBytes - writtenBytes > settings.highWatermark
+                && !sender.equals(getContext().getSystem().deadLetters()) && slowedDown.add(sender)) {
+            log.debug("{} bytes pending, slowing down {}", receivedBytes - writtenBytes, sender);
+            sender.tell(new SlowDown(), getSelf());
+        }
+    }
+
+    private void sealBatch() {
+        if (flushTimer != null) {
+            flushTimer.cancel();
+            flushTimer = null;
+        }
+        if (batchLength > 0) {
+            // The writer owns the sealed array; the printer fills a fresh one.
+            write(batch, batchLength);
+            batch = new byte[settings.batchBytes];
+            batchLength = 0;
+        }
+    }
+
+    private void write(byte[] bytes, int length) {
+        PrinterChannelWriter.Write w = new PrinterChannelWriter.Write(++lastBatch, bytes, length);
+        unwritten.addLast(w);
+        writer.tell(w, getSelf());
+    }
+
+    private void onWritten(int bytes) {
+        writtenBytes += bytes;
+        if (!slowedDown.isEmpty() && receivedBytes - writtenBytes <= settings.lowWatermark) {
+            slowedDown.forEach(sender -> sender.tell(new Resume(), getSelf()));
+            slowedDown.clear();
+        }
+        for (Iterator<FlushWaiter> it = flushWaiters.iterator(); it.hasNext(); ) {
+            FlushWaiter waiter = it.next();
+            if (writtenBytes >= waiter.untilBytes) {
+                waiter.replyTo.tell(new Flushed(), getSelf());
+                it.remove();
+            }
+        }
+    }
 }
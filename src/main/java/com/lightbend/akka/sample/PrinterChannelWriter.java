@@ -0,0 +1,105 @@
+package com.lightbend.akka.sample;
+
+import akka.actor.AbstractActor;
+import akka.actor.Props;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Writes the Printer's batches to a file or stdout channel, one blocking write per batch, on a
+// dispatcher of its own. Every batch is answered with Written, also when the write failed, so the
+// printer's accounting of pending bytes never stalls. The number of the last batch done is also
+// shared with the printer, which can tell what the writer left behind when both stop.
+public class PrinterChannelWriter extends AbstractActor {
+    private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
+
+    static Props props(Path file, AtomicLong lastBatchDone) {
+        return Props.create(PrinterChannelWriter.class, () -> new PrinterChannelWriter(file, lastBatchDone));
+    }
+
+    static final class Write {
+        // Numbered from 1, in the order the printer sends them.
+        final long batch;
+        final byte[] bytes;
+        final int length;
+
+        Write(long batch, byte[] bytes, int length) {
+            this.batch = batch;
+            this.bytes = bytes;
+            this.length = length;
+        }
+    }
+
+    static final class Written {
+        final int bytes;
+
+        Written(int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    private final Path file;
+    private final AtomicLong lastBatchDone;
+    private WritableByteChannel channel;
+
+    private PrinterChannelWriter(Path file, AtomicLong lastBatchDone) {
+        this.file = file;
+        this.lastBatchDone = lastBatchDone;
+    }
+
+    // Appends to file; a null file is stdout, which closing the channel leaves open.
+    static WritableByteChannel open(Path file) throws IOException {
+        if (file == null) {
+            return Channels.newChannel(new FileOutputStream(FileDescriptor.out) {
+                @Override
+                public void close() {
+                }
+            });
+        }
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public void preStart() throws IOException {
+        channel = open(file);
+    }
+
+    @Override
+    public void postStop() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(Write.class, w -> {
+                    try {
+                        writeFully(channel, ByteBuffer.wrap(w.bytes, 0, w.length));
+                    } catch (IOException e) {
+                        log.error(e, "Dropped {} bytes that could not be written to {}", w.length,
+                                file != null ? file : "stdout");
+                    }
+                    lastBatchDone.set(w.batch);
+                    getSender().tell(new Written(w.length), getSelf());
+                })
+                .build();
+    }
+}
@@ -0,0 +1,66 @@
+package com.lightbend.akka.iot;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveTimeoutTest {
+
+    private static final long MS = 1_000_000L;
+
+    private static long[] latencies(int count, long nanos) {
+        long[] latencies = new long[count];
+        Arrays.fill(latencies, nanos);
+        return latencies;
+    }
+
+    @Test
+    public void testScalePercentileWithinBounds() {
+        AdaptiveTimeout timeout = new AdaptiveTimeout(99, 4, 100 * MS, 3_000 * MS, 100, 10_000);
+        assertEquals(3_000 * MS, timeout.timeoutNanos());
+
+        timeout.observe(latencies(100, 200 * MS), 0, 0L);
+        long scaled = timeout.timeoutNanos();
+        assertTrue(scaled >= 800 * MS && scaled < 860 * MS);
+        assertEquals(scaled, timeout.timeout().toNanos());
+
+        AdaptiveTimeout fast = new AdaptiveTimeout(99, 4, 100 * MS, 3_000 * MS, 100, 10_000);
+        fast.observe(latencies(100, MS), 0, 0L);
+        assertEquals(100 * MS, fast.timeoutNanos());
+    }
+
+    @Test
+    public void testGrowBackAfterTimingOut() {
+        AdaptiveTimeout timeout = new AdaptiveTimeout(90, 1, MS, 10_000 * MS, 10, 10_000);
+        timeout.observe(latencies(10, 100 * MS), 0, 0L);
+        long tight = timeout.timeoutNanos();
+        // Every reply of the next queries missed that timeout.
+        timeout.observe(latencies(0, 0L), 20, tight);
+        assertTrue(timeout.timeoutNanos() >= 2 * tight);
+    }
+
+    @Test
+    public void testReportMetricsOfTheWindowInUse() {
+        AdaptiveTimeout timeout = new AdaptiveTimeout(99, 2, MS, 3_000 * MS, 10, 20);
+        AdaptiveTimeout.TimeoutMetrics initial = timeout.metrics(1L, "owner");
+        assertEquals(3_000 * MS, initial.timeoutNanos);
+        assertEquals(0L, initial.samples);
+
+        timeout.observe(latencies(15, 10 * MS), 0, 0L);
+        timeout.observe(latencies(5, 50 * MS), 0, 0L);
+        AdaptiveTimeout.TimeoutMetrics metrics = timeout.metrics(2L, "owner");
+        assertEquals(2L, metrics.requestId);
+        assertEquals("owner", metrics.owner);
+        assertEquals(20L, metrics.samples);
+        assertTrue(metrics.p50Nanos >= 10 * MS && metrics.p50Nanos < 11 * MS);
+        assertTrue(metrics.p99Nanos >= 50 * MS && metrics.p99Nanos <= metrics.maxNanos);
+        assertEquals(timeout.timeoutNanos(), metrics.timeoutNanos);
+
+        // The window restarted, the metrics still describe the current timeout.
+        timeout.observe(latencies(1, MS), 0, 0L);
+        assertEquals(20L, timeout.metrics(3L, "owner").samples);
+    }
+}
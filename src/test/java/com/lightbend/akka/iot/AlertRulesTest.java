@@ -0,0 +1,78 @@
+package com.lightbend.akka.iot;
+
+import com.typesafe.config.ConfigFactory;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class AlertRulesTest {
+
+    private static final long T = 1_000_000L;
+
+    @Test
+    public void testRaiseAndClearThresholdsWithHysteresis() {
+        AlertRules rules = new AlertRules(List.of(AlertRule.above("hot", 30.0, 28.0),
+                AlertRule.below("cold", 5.0, 7.0)), 4);
+
+        assertEquals(0L, rules.evaluate(0, 29.9, T));
+        assertEquals(0b01L, rules.evaluate(0, 30.0, T + 1));
+        assertEquals(0b01L, rules.active(0));
+        // Back under the threshold but not yet at the clear level: still raised.
+        assertEquals(0L, rules.evaluate(0, 29.0, T + 2));
+        assertEquals(0L, rules.evaluate(0, 31.0, T + 3));
+        assertEquals(0b01L, rules.evaluate(0, 28.0, T + 4));
+        assertEquals(0L, rules.active(0));
+
+        assertEquals(0b10L, rules.evaluate(0, 4.0, T + 5));
+        assertEquals(0b10L, rules.active(0));
+        assertEquals(0L, rules.evaluate(0, 6.5, T + 6));
+        assertEquals(0b10L, rules.evaluate(0, 7.0, T + 7));
+        assertEquals(0L, rules.active(0));
+    }
+
+    @Test
+    public void testRateOfChangeBetweenConsecutiveReadings() {
+        AlertRules rules = new AlertRules(List.of(AlertRule.risingFasterThan("rising", 1.0, 0.5),
+                AlertRule.fallingFasterThan("falling", 2.0, 1.0)), 1);
+
+        // The first reading of a device has no rate.
+        assertEquals(0L, rules.evaluate(0, 20.0, T));
+        // +2 degrees in one second.
+        assertEquals(0b01L, rules.evaluate(0, 22.0, T + 1_000L));
+        // +0.6 degrees per second keeps it raised, +0.5 clears it.
+        assertEquals(0L, rules.evaluate(0, 22.6, T + 2_000L));
+        assertEquals(0b01L, rules.evaluate(0, 23.1, T + 3_000L));
+        // -3 degrees in one second.
+        assertEquals(0b10L, rules.evaluate(0, 20.1, T + 4_000L));
+        assertEquals(0b10L, rules.active(0));
+        assertEquals(0b10L, rules.evaluate(0, 20.1, T + 5_000L));
+        assertEquals(0L, rules.active(0));
+    }
+
+    @Test
+    public void testIgnoreOutOfOrderReadingsAndForgetClearedSlots() {
+        AlertRules rules = new AlertRules(List.of(AlertRule.above("hot", 30.0, 28.0)), 1);
+        assertEquals(1L, rules.evaluate(3, 35.0, T));
+        assertEquals(0L, rules.evaluate(3, 10.0, T - 1));
+        assertEquals(1L, rules.active(3));
+        assertEquals(0L, rules.active(7));
+
+        assertEquals(1L, rules.clear(3));
+        assertEquals(0L, rules.active(3));
+        assertEquals(0L, rules.clear(3));
+    }
+
+    @Test
+    public void testParseRulesFromConfig() {
+        AlertRule rule = AlertRule.fromConfig(ConfigFactory.parseString(
+                "name = spike, kind = rising-faster-than, threshold = 2.5, clear = 1"));
+        assertEquals(AlertRule.risingFasterThan("spike", 2.5, 1.0), rule);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectClearLevelBeyondThreshold() {
+        AlertRule.above("inverted", 30.0, 31.0);
+    }
+}
@@ -0,0 +1,88 @@
+package com.lightbend.akka.iot;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GorillaBlockTest {
+
+    private static void assertRoundTrip(long[] timestamps, double[] values) {
+        GorillaEncoder encoder = new GorillaEncoder(timestamps.length);
+        for (int i = 0; i < timestamps.length; i++) {
+            encoder.append(timestamps[i], values[i]);
+        }
+        assertTrue(encoder.isFull());
+        GorillaBlock block = encoder.seal();
+        assertTrue(encoder.isEmpty());
+        assertEquals(timestamps.length, block.count);
+        assertEquals(timestamps[0], block.firstTimestamp);
+        assertEquals(timestamps[timestamps.length - 1], block.lastTimestamp);
+
+        GorillaBlock.Decoder decoder = block.decoder();
+        for (int i = 0; i < timestamps.length; i++) {
+            assertTrue(decoder.next());
+            assertEquals(timestamps[i], decoder.timestamp());
+            assertEquals(Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(decoder.value()));
+        }
+        assertFalse(decoder.next());
+    }
+
+    @Test
+    public void testRoundTripRegularReadings() {
+        long[] timestamps = new long[120];
+        double[] values = new double[120];
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = 1_570_000_000_000L + i * 5_000L;
+            values[i] = 21.0 + (i % 7) * 0.1;
+        }
+        assertRoundTrip(timestamps, values);
+    }
+
+    @Test
+    public void testRoundTripIrregularTimestampsAndEdgeValues() {
+        long[] timestamps = {0L, 1L, 65L, 70L, 5_000L, 4_000L, 10_000_000_000L, 10_000_000_001L, -5L};
+        double[] values = {0.0, -0.0, Double.NaN, Double.MAX_VALUE, Double.MIN_VALUE,
+                Double.NEGATIVE_INFINITY, 1.0, 1.0, -273.15};
+        assertRoundTrip(timestamps, values);
+    }
+
+    @Test
+    public void testRoundTripRandomReadings() {
+        Random random = new Random(42L);
+        long[] timestamps = new long[500];
+        double[] values = new double[500];
+        long timestamp = 1_570_000_000_000L;
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamp += random.nextInt(10_000);
+            timestamps[i] = timestamp;
+            values[i] = random.nextGaussian() * 40.0;
+        }
+        assertRoundTrip(timestamps, values);
+    }
+
+    @Test
+    public void testCompressRegularReadingsWellBelowRawSize() {
+        GorillaEncoder encoder = new GorillaEncoder(120);
+        for (int i = 0; i < 120; i++) {
+            encoder.append(1_570_000_000_000L + i * 5_000L, 20.5);
+        }
+        // 16 bytes for the first sample, 9 for the first delta, then 2 bits per sample.
+        assertTrue(encoder.seal().sizeInBytes() <= 16 + 9 + 119 / 4 + 1);
+    }
+
+    @Test
+    public void testHistoryDecodesOnlyRequestedRange() {
+        DeviceHistory history = new DeviceHistory(4, 2);
+        for (int i = 0; i < 14; i++) {
+            history.append(i * 10L, i);
+        }
+        // Block [0..30] was dropped; [40..70] and [80..110] are sealed, [120, 130] is still open.
+        assertEquals(2, history.sealedBlocks());
+        SampleBuffer samples = new SampleBuffer(4);
+        history.forEachInRange(75L, 125L, samples);
+        assertArrayEquals(new long[]{80L, 90L, 100L, 110L, 120L}, samples.timestamps());
+        assertArrayEquals(new double[]{8.0, 9.0, 10.0, 11.0, 12.0}, samples.values(), 0.0);
+    }
+}
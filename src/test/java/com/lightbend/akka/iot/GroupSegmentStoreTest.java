@@ -0,0 +1,74 @@
+package com.lightbend.akka.iot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class GroupSegmentStoreTest {
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("segment-store-test");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static GorillaBlock block(long firstTimestamp, double value) {
+        GorillaEncoder encoder = new GorillaEncoder(4);
+        for (int i = 0; i < 4; i++) {
+            encoder.append(firstTimestamp + i * 10L, value + i);
+        }
+        return encoder.seal();
+    }
+
+    @Test
+    public void testReadBackBlocksInRangeFromMappedSegments() {
+        try (GroupSegmentStore store = new GroupSegmentStore(directory, 1024, 0)) {
+            store.append("device1", block(0L, 1.0));
+            store.append("device2", block(100L, 10.0));
+            store.append("device1", block(200L, 20.0));
+
+            List<GroupSegmentStore.StoredBlock> blocks = store.blocksInRange(105L, 205L);
+            assertEquals(2, blocks.size());
+            assertEquals("device2", blocks.get(0).deviceId);
+            assertEquals("device1", blocks.get(1).deviceId);
+
+            SampleBuffer samples = new SampleBuffer(8);
+            blocks.forEach(stored -> DeviceHistory.decodeInRange(stored.block, 105L, 205L, samples));
+            assertArrayEquals(new long[]{110L, 120L, 130L, 200L}, samples.timestamps());
+            assertArrayEquals(new double[]{11.0, 12.0, 13.0, 20.0}, samples.values(), 0.0);
+        }
+    }
+
+    @Test
+    public void testRollOverAndDeleteOldestSegments() throws IOException {
+        try (GroupSegmentStore store = new GroupSegmentStore(directory, 96, 2)) {
+            for (int i = 0; i < 5; i++) {
+                store.append("device", block(i * 100L, i));
+            }
+            assertEquals(2, store.segmentCount());
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(2L, files.count());
+            }
+            assertEquals(0, store.blocksInRange(0L, 250L).size());
+            assertEquals(2, store.blocksInRange(0L, Long.MAX_VALUE).size());
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.lightbend.akka.iot;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class GroupTemperatureCacheTest {
+
+    private static final Map<String, IotDeviceGroup.TemperatureReading> OLD =
+            Map.of("device", new IotDeviceGroup.Temperature(1.0));
+    private static final Map<String, IotDeviceGroup.TemperatureReading> NEW =
+            Map.of("device", new IotDeviceGroup.Temperature(2.0));
+
+    @Test
+    public void testServeOnlyReadingsWithinMaxStaleness() {
+        GroupTemperatureCache cache = new GroupTemperatureCache();
+        assertNull(cache.fresh("group", 1_000L, 1_000L));
+
+        cache.put("group", 1_000L, OLD);
+        assertEquals(OLD, cache.fresh("group", 1_500L, 500L));
+        assertNull(cache.fresh("group", 1_501L, 500L));
+        assertNull(cache.fresh("other", 1_500L, 500L));
+    }
+
+    @Test
+    public void testKeepTheNewestFetch() {
+        GroupTemperatureCache cache = new GroupTemperatureCache();
+        cache.put("group", 2_000L, NEW);
+        // A slower query started earlier finishes last.
+        cache.put("group", 1_000L, OLD);
+        assertEquals(NEW, cache.fresh("group", 2_000L, 0L));
+
+        cache.put("group", 3_000L, OLD);
+        assertEquals(OLD, cache.fresh("group", 3_000L, 0L));
+    }
+
+    @Test
+    public void testRemoveGroup() {
+        GroupTemperatureCache cache = new GroupTemperatureCache();
+        cache.put("group", 1_000L, OLD);
+        cache.put("other", 1_000L, NEW);
+        cache.remove("group");
+        assertNull(cache.fresh("group", 1_000L, Long.MAX_VALUE));
+        assertEquals(1, cache.size());
+    }
+}
@@ -0,0 +1,69 @@
+package com.lightbend.akka.iot;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HedgingPolicyTest {
+
+    private static final long MS = 1_000_000L;
+
+    private static long[] latencies(int count, long nanos) {
+        long[] latencies = new long[count];
+        Arrays.fill(latencies, nanos);
+        return latencies;
+    }
+
+    @Test
+    public void testStartAtMaxDelayUntilEnoughSamples() {
+        HedgingPolicy policy = new HedgingPolicy(true, 99, 5 * MS, 500 * MS, 100, 1_000);
+        assertEquals(500 * MS, policy.delayNanos());
+        policy.observe(latencies(99, MS), 0, 0L);
+        assertEquals(500 * MS, policy.delayNanos());
+        policy.observe(latencies(1, MS), 0, 0L);
+        assertEquals(5 * MS, policy.delayNanos());
+    }
+
+    @Test
+    public void testFollowPercentileWithinBounds() {
+        HedgingPolicy policy = new HedgingPolicy(true, 90, MS, 500 * MS, 10, 1_000);
+        policy.observe(latencies(95, 20 * MS), 0, 0L);
+        policy.observe(latencies(5, 400 * MS), 0, 0L);
+        long delay = policy.delayNanos();
+        assertTrue(delay >= 20 * MS && delay < 22 * MS);
+
+        policy.observe(latencies(100, 2_000 * MS), 0, 0L);
+        assertEquals(500 * MS, policy.delayNanos());
+    }
+
+    @Test
+    public void testBackOffWhenTooManyReadsAreCutOff() {
+        HedgingPolicy policy = new HedgingPolicy(true, 90, MS, 1_000 * MS, 10, 1_000);
+        policy.observe(latencies(80, 10 * MS), 0, 0L);
+        policy.observe(latencies(0, 0L), 20, 50 * MS);
+        // A fifth of the reads missed a 50ms delay: they count as 100ms, above the 90th percentile.
+        long delay = policy.delayNanos();
+        assertTrue(delay >= 100 * MS && delay < 107 * MS);
+    }
+
+    @Test
+    public void testRestartWindow() {
+        HedgingPolicy policy = new HedgingPolicy(true, 50, MS, 500 * MS, 10, 100);
+        policy.observe(latencies(100, 200 * MS), 0, 0L);
+        long slow = policy.delayNanos();
+        // The window restarted, so the old samples do not hold the delay up.
+        policy.observe(latencies(10, 10 * MS), 0, 0L);
+        assertTrue(policy.delayNanos() < slow);
+        assertTrue(policy.delayNanos() < 11 * MS);
+    }
+
+    @Test
+    public void testDisabled() {
+        HedgingPolicy policy = new HedgingPolicy(false, 99, MS, 500 * MS, 1, 100);
+        policy.observe(latencies(100, MS), 0, 0L);
+        assertEquals(Long.MAX_VALUE, policy.delayNanos());
+    }
+}
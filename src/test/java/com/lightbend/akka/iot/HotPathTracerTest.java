@@ -0,0 +1,99 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.testkit.javadsl.TestKit;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HotPathTracerTest {
+
+    private static ActorSystem system;
+
+    @BeforeClass
+    public static void classSetup() {
+        system = ActorSystem.create();
+    }
+
+    @AfterClass
+    public static void classTeardown() {
+        system.terminate();
+    }
+
+    @Test
+    public void testSamplesOneOutOfEveryNEvents() {
+        HotPathTracer tracer = new HotPathTracer(4, 16);
+        for (long i = 1; i <= 12; i++) {
+            tracer.trace(HotPathTracer.TraceEvent.RECORD_TEMPERATURE, "device", i, i);
+        }
+        List<HotPathTracer.TraceRecord> records = tracer.snapshot();
+        assertEquals(3, records.size());
+        assertEquals(4L, records.get(0).requestId);
+        assertEquals(8L, records.get(1).requestId);
+        assertEquals(12L, records.get(2).requestId);
+    }
+
+    @Test
+    public void testKeepsOnlyTheMostRecentRecordsWhenFull() {
+        HotPathTracer tracer = new HotPathTracer(1, 3);
+        assertEquals(4, tracer.capacity());
+        for (long i = 0; i < 10; i++) {
+            tracer.trace(HotPathTracer.TraceEvent.READ_TEMPERATURE, "device", i);
+        }
+        List<HotPathTracer.TraceRecord> records = tracer.snapshot();
+        assertEquals(4, records.size());
+        assertEquals(6L, records.get(0).requestId);
+        assertEquals(9L, records.get(3).requestId);
+    }
+
+    @Test
+    public void testGrowsToCapacityBeforeWrapping() {
+        HotPathTracer tracer = new HotPathTracer(1, 64);
+        for (long i = 0; i < 40; i++) {
+            tracer.trace(HotPathTracer.TraceEvent.READ_TEMPERATURE, "device", i);
+        }
+        List<HotPathTracer.TraceRecord> records = tracer.snapshot();
+        assertEquals(40, records.size());
+        assertEquals(0L, records.get(0).requestId);
+        assertEquals(39L, records.get(39).requestId);
+
+        for (long i = 40; i < 100; i++) {
+            tracer.trace(HotPathTracer.TraceEvent.READ_TEMPERATURE, "device", i);
+        }
+        records = tracer.snapshot();
+        assertEquals(64, records.size());
+        assertEquals(36L, records.get(0).requestId);
+        assertEquals(99L, records.get(63).requestId);
+    }
+
+    @Test
+    public void testDisabledTracerRecordsNothing() {
+        HotPathTracer tracer = new HotPathTracer(0, 8);
+        tracer.trace(HotPathTracer.TraceEvent.TRACK_DEVICE, "device", 1L);
+        assertTrue(tracer.snapshot().isEmpty());
+    }
+
+    @Test
+    public void testDeviceDumpsTraceOnDemand() {
+        TestKit probe = new TestKit(system);
+        ActorRef deviceActor = system.actorOf(IotDevice.props("group", "device"));
+        for (long i = 0; i < 64; i++) {
+            deviceActor.tell(new IotDevice.RecordTemperature(i, 20.0), probe.getRef());
+            probe.expectMsgClass(IotDevice.TemperatureRecorded.class);
+        }
+
+        deviceActor.tell(new HotPathTracer.DumpTrace(7L), probe.getRef());
+        HotPathTracer.TraceDump dump = probe.expectMsgClass(HotPathTracer.TraceDump.class);
+        assertEquals(7L, dump.requestId);
+        assertEquals("group-device", dump.owner);
+        assertEquals(1, dump.records.size());
+        assertEquals(HotPathTracer.TraceEvent.RECORD_TEMPERATURE, dump.records.get(0).event);
+        assertEquals(63L, dump.records.get(0).requestId);
+    }
+}
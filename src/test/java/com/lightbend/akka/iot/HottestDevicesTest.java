@@ -0,0 +1,33 @@
+package com.lightbend.akka.iot;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class HottestDevicesTest {
+
+    @Test
+    public void testRankHottestFirst() {
+        HottestDevices hottest = new HottestDevices("group");
+        hottest.update("device1", 10.0);
+        hottest.update("device2", 30.0);
+        hottest.update("device3", 20.0);
+        hottest.update("device1", 40.0);
+
+        assertEquals(List.of(new IotDeviceGroup.DeviceTemperature("group", "device1", 40.0),
+                new IotDeviceGroup.DeviceTemperature("group", "device2", 30.0)), hottest.top(2));
+    }
+
+    @Test
+    public void testDropDevicesWithNonFiniteReadings() {
+        HottestDevices hottest = new HottestDevices("group");
+        hottest.update("device1", 10.0);
+        hottest.update("device2", 20.0);
+        hottest.update("device2", Double.NaN);
+        hottest.update("device3", Double.POSITIVE_INFINITY);
+
+        assertEquals(List.of(new IotDeviceGroup.DeviceTemperature("group", "device1", 10.0)), hottest.top(3));
+    }
+}
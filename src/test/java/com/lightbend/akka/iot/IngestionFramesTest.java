@@ -0,0 +1,59 @@
+package com.lightbend.akka.iot;
+
+import akka.util.ByteString;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class IngestionFramesTest {
+
+    private static List<String> decodeAll(ByteString data, int[] consumed) {
+        List<String> readings = new ArrayList<>();
+        consumed[0] = IngestionFrames.decode(data, (groupId, deviceId, value) ->
+                readings.add(groupId + "/" + deviceId + "=" + value));
+        return readings;
+    }
+
+    @Test
+    public void testDecodeConsecutiveFrames() {
+        ByteString data = IngestionFrames.encode("group", "device1", 21.5)
+                .concat(IngestionFrames.encode("group", "device2", -3.0));
+        int[] consumed = new int[1];
+
+        assertEquals(List.of("group/device1=21.5", "group/device2=-3.0"), decodeAll(data, consumed));
+        assertEquals(data.length(), consumed[0]);
+    }
+
+    @Test
+    public void testLeavePartialFrameForNextRead() {
+        ByteString first = IngestionFrames.encode("group", "device1", 1.0);
+        ByteString second = IngestionFrames.encode("group", "device2", 2.0);
+        ByteString data = first.concat(second.take(5));
+        int[] consumed = new int[1];
+
+        assertEquals(List.of("group/device1=1.0"), decodeAll(data, consumed));
+        assertEquals(first.length(), consumed[0]);
+
+        ByteString rest = data.drop(consumed[0]).concat(second.drop(5));
+        assertEquals(List.of("group/device2=2.0"), decodeAll(rest, consumed));
+        assertEquals(second.length(), consumed[0]);
+    }
+
+    @Test(expected = IngestionFrames.MalformedFrameException.class)
+    public void testRejectFrameWhoseLengthDoesNotMatchItsContents() {
+        ByteString frame = IngestionFrames.encode("group", "device", 1.0);
+        ByteString corrupted = ByteString.fromArray(new byte[]{0, (byte) (frame.length() - 1)})
+                .concat(frame.drop(2)).concat(ByteString.fromArray(new byte[]{0}));
+        IngestionFrames.decode(corrupted, (groupId, deviceId, value) -> {
+        });
+    }
+
+    @Test(expected = IngestionFrames.MalformedFrameException.class)
+    public void testRejectFrameWithEmptyDeviceId() {
+        IngestionFrames.decode(IngestionFrames.encode("group", "", 1.0), (groupId, deviceId, value) -> {
+        });
+    }
+}
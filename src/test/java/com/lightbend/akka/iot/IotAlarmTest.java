@@ -0,0 +1,86 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.testkit.javadsl.TestKit;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class IotAlarmTest {
+
+    private static ActorSystem system;
+
+    private TestKit probe;
+
+    @Before
+    public void setup() {
+        probe = new TestKit(system);
+    }
+
+    @BeforeClass
+    public static void classSetup() {
+        system = ActorSystem.create();
+    }
+
+    @AfterClass
+    public static void classTeardown() {
+        system.terminate();
+    }
+
+    private Map<String, Set<String>> activeAlerts(ActorRef alarm, boolean armed) {
+        alarm.tell(new IotAlarm.RequestActiveAlerts(0L), probe.getRef());
+        IotAlarm.ActiveAlerts active = probe.expectMsgClass(IotAlarm.ActiveAlerts.class);
+        assertEquals(armed, active.armed);
+        return active.rulesByDevice;
+    }
+
+    @Test
+    public void testNotifySubscribersOnlyWhileArmed() {
+        ActorRef alarm = system.actorOf(IotAlarm.props("group"));
+        TestKit subscriber = new TestKit(system);
+        alarm.tell(new IotAlarm.SubscribeAlerts(subscriber.getRef()), ActorRef.noSender());
+
+        alarm.tell(new IotAlarm.AlertRaised("group", "device1", "hot", 31.0, 1L), ActorRef.noSender());
+        assertEquals("device1", subscriber.expectMsgClass(IotAlarm.AlertRaised.class).deviceId);
+
+        alarm.tell(new IotAlarm.Disarm(), ActorRef.noSender());
+        alarm.tell(new IotAlarm.AlertRaised("group", "device2", "hot", 32.0, 2L), ActorRef.noSender());
+        alarm.tell(new IotAlarm.AlertCleared("group", "device1", "hot", 27.0, 3L), ActorRef.noSender());
+        subscriber.expectNoMessage(Duration.ofMillis(100));
+        // Disarmed, the alarm still keeps track of what is raised.
+        assertEquals(Map.of("device2", Set.of("hot")), activeAlerts(alarm, false));
+
+        // Arming reports the alerts raised at that moment.
+        alarm.tell(new IotAlarm.Arm(), ActorRef.noSender());
+        IotAlarm.AlertRaised replayed = subscriber.expectMsgClass(IotAlarm.AlertRaised.class);
+        assertEquals("device2", replayed.deviceId);
+        assertEquals(32.0, replayed.value, 0.0);
+        assertEquals(Map.of("device2", Set.of("hot")), activeAlerts(alarm, true));
+    }
+
+    @Test
+    public void testIgnoreClearsOfRulesThatAreNotRaised() {
+        ActorRef alarm = system.actorOf(IotAlarm.props("group"));
+        TestKit subscriber = new TestKit(system);
+        alarm.tell(new IotAlarm.SubscribeAlerts(subscriber.getRef()), ActorRef.noSender());
+
+        alarm.tell(new IotAlarm.AlertCleared("group", "device1", "hot", 20.0, 1L), ActorRef.noSender());
+        subscriber.expectNoMessage(Duration.ofMillis(100));
+
+        alarm.tell(new IotAlarm.AlertRaised("group", "device1", "hot", 31.0, 2L), ActorRef.noSender());
+        alarm.tell(new IotAlarm.AlertRaised("group", "device1", "rising", 31.0, 2L), ActorRef.noSender());
+        alarm.tell(new IotAlarm.AlertCleared("group", "device1", "hot", 27.0, 3L), ActorRef.noSender());
+        List<Object> alerts = subscriber.receiveN(3);
+        assertTrue(alerts.get(2) instanceof IotAlarm.AlertCleared);
+        assertEquals(Map.of("device1", Set.of("rising")), activeAlerts(alarm, true));
+    }
+}
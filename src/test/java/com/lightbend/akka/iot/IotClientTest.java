@@ -0,0 +1,117 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.testkit.javadsl.TestKit;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class IotClientTest {
+
+    private static ActorSystem system;
+
+    @BeforeClass
+    public static void classSetup() {
+        system = ActorSystem.create();
+    }
+
+    @AfterClass
+    public static void classTeardown() {
+        system.terminate();
+    }
+
+    @Test
+    public void testTrackRecordAndReadWithoutBlockingBetweenSteps() {
+        IotClient client = new IotClient(system.actorOf(IotSupervisor.props()), Duration.ofSeconds(3));
+
+        Map<String, IotDeviceGroup.TemperatureReading> temperatures = client.trackDeviceManager("manager")
+                .thenCompose(manager -> client.trackDevice(manager, "group", "device")
+                        .thenCompose(device -> client.recordTemperature(device, 21.0))
+                        .thenCompose(recorded -> client.deviceGroup(manager, "group")))
+                .thenCompose(client::groupTemperatures)
+                .toCompletableFuture().join();
+
+        assertEquals(Map.of("device", new IotDeviceGroup.Temperature(21.0)), temperatures);
+    }
+
+    @Test
+    public void testStreamGroupIdsPageByPage() {
+        IotClient client = new IotClient(system.actorOf(IotSupervisor.props()), Duration.ofSeconds(3));
+        ActorRef manager = client.trackDeviceManager("manager").toCompletableFuture().join();
+        for (int i = 0; i < 7; i++) {
+            client.trackDevice(manager, "group" + i, "device").toCompletableFuture().join();
+        }
+
+        List<List<String>> pages = new ArrayList<>();
+        client.forEachGroupIdPage(manager, 3, pages::add).toCompletableFuture().join();
+
+        assertEquals(List.of(List.of("group0", "group1", "group2"), List.of("group3", "group4", "group5"),
+                List.of("group6")), pages);
+    }
+
+    @Test
+    public void testPipelineManyRequestsToOneDevice() {
+        IotClient client = new IotClient(system.actorOf(IotSupervisor.props()), Duration.ofSeconds(3));
+        ActorRef device = client.trackDeviceManager("manager")
+                .thenCompose(manager -> client.trackDevice(manager, "group", "device"))
+                .toCompletableFuture().join();
+
+        List<CompletableFuture<Void>> recorded = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            recorded.add(client.recordTemperature(device, i).toCompletableFuture());
+        }
+        CompletableFuture.allOf(recorded.toArray(new CompletableFuture<?>[0])).join();
+
+        assertEquals(Optional.of(99.0), client.readTemperature(device).toCompletableFuture().join());
+    }
+
+    @Test
+    public void testFailWithOverloadedExceptionWhenQueryIsShed() {
+        IotClient client = new IotClient(system.actorOf(IotSupervisor.props()), Duration.ofSeconds(3));
+        TestKit group = new TestKit(system);
+
+        CompletableFuture<Map<String, IotDeviceGroup.TemperatureReading>> temperatures =
+                client.groupTemperatures(group.getRef()).toCompletableFuture();
+        IotDeviceGroup.RequestAllTemperatures request = group.expectMsgClass(IotDeviceGroup.RequestAllTemperatures.class);
+        group.reply(new QueryAdmission.Overloaded(request.requestId, "group"));
+
+        try {
+            temperatures.join();
+            fail("Expected the query to fail");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof IotClient.OverloadedException);
+            assertEquals("group", ((IotClient.OverloadedException) e.getCause()).getOwner());
+        }
+    }
+
+    @Test
+    public void testFailOnUnexpectedReply() throws Exception {
+        IotClient client = new IotClient(system.actorOf(IotSupervisor.props()), Duration.ofSeconds(3));
+        TestKit group = new TestKit(system);
+
+        CompletableFuture<Map<String, IotDeviceGroup.TemperatureReading>> temperatures =
+                client.groupTemperatures(group.getRef()).toCompletableFuture();
+        group.expectMsgClass(IotDeviceGroup.RequestAllTemperatures.class);
+        group.reply("unexpected");
+
+        try {
+            temperatures.get(1, TimeUnit.SECONDS);
+            fail("Expected the query to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ClassCastException);
+        }
+    }
+}
@@ -13,9 +13,11 @@ import scala.concurrent.duration.FiniteDuration;
 import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 
 public class IotDeviceGroupQueryTest {
 
@@ -53,11 +55,12 @@ public class IotDeviceGroupQueryTest {
     public void testReturnTemperatureValueForWorkingDevices() {
         ActorRef queryActor = system.actorOf(IotDeviceGroupQuery.props(actorToDeviceId, 1L, requester.getRef(),
                 new FiniteDuration(3, TimeUnit.SECONDS)));
-        assertEquals(0L, device1.expectMsgClass(IotDevice.ReadTemperature.class).requestId);
-        assertEquals(0L, device2.expectMsgClass(IotDevice.ReadTemperature.class).requestId);
+        long read1 = device1.expectMsgClass(IotDevice.ReadTemperature.class).requestId;
+        long read2 = device2.expectMsgClass(IotDevice.ReadTemperature.class).requestId;
+        assertNotEquals(read1, read2);
 
-        queryActor.tell(new IotDevice.RespondTemperature(0L, 1.0), device1.getRef());
-        queryActor.tell(new IotDevice.RespondTemperature(0L, 2.0), device2.getRef());
+        queryActor.tell(new IotDevice.RespondTemperature(read1, 1.0), device1.getRef());
+        queryActor.tell(new IotDevice.RespondTemperature(read2, 2.0), device2.getRef());
 
         IotDeviceGroup.RespondAllTemperatures response =
                 requester.expectMsgClass(IotDeviceGroup.RespondAllTemperatures.class);
@@ -73,11 +76,12 @@ public class IotDeviceGroupQueryTest {
     public void testReturnTemperatureNotAvailableForDeviscesWithNoReadings() {
         ActorRef queryActor = system.actorOf(IotDeviceGroupQuery.props(actorToDeviceId, 1L, requester.getRef(),
                 new FiniteDuration(3, TimeUnit.SECONDS)));
-        assertEquals(0L, device1.expectMsgClass(IotDevice.ReadTemperature.class).requestId);
-        assertEquals(0L, device2.expectMsgClass(IotDevice.ReadTemperature.class).requestId);
+        long read1 = device1.expectMsgClass(IotDevice.ReadTemperature.class).requestId;
+        long read2 = device2.expectMsgClass(IotDevice.ReadTemperature.class).requestId;
+        assertNotEquals(read1, read2);
 
-        queryActor.tell(new IotDevice.RespondTemperature(0L, null), device1.getRef());
-        queryActor.tell(new IotDevice.RespondTemperature(0L, 2.0), device2.getRef());
+        queryActor.tell(new IotDevice.RespondTemperature(read1, null), device1.getRef());
+        queryActor.tell(new IotDevice.RespondTemperature(read2, 2.0), device2.getRef());
 
         IotDeviceGroup.RespondAllTemperatures response =
                 requester.expectMsgClass(IotDeviceGroup.RespondAllTemperatures.class);
@@ -93,10 +97,11 @@ public class IotDeviceGroupQueryTest {
     public void testReturnDeviceNotAvailableIfDeviceStopsBeforeAnswering() {
         ActorRef queryActor = system.actorOf(IotDeviceGroupQuery.props(actorToDeviceId, 1L, requester.getRef(),
                 new FiniteDuration(3, TimeUnit.SECONDS)));
-        assertEquals(0L, device1.expectMsgClass(IotDevice.ReadTemperature.class).requestId);
-        assertEquals(0L, device2.expectMsgClass(IotDevice.ReadTemperature.class).requestId);
+        long read1 = device1.expectMsgClass(IotDevice.ReadTemperature.class).requestId;
+        long read2 = device2.expectMsgClass(IotDevice.ReadTemperature.class).requestId;
+        assertNotEquals(read1, read2);
 
-        queryActor.tell(new IotDevice.RespondTemperature(0L, 1.0), device1.getRef());
+        queryActor.tell(new IotDevice.RespondTemperature(read1, 1.0), device1.getRef());
         device2.getRef().tell(PoisonPill.getInstance(), ActorRef.noSender());
 
         IotDeviceGroup.RespondAllTemperatures response =
@@ -113,10 +118,11 @@ public class IotDeviceGroupQueryTest {
     public void testReturnTemperatureReadingEvenIfDeviceStopsAfterAnswering() {
         ActorRef queryActor = system.actorOf(IotDeviceGroupQuery.props(actorToDeviceId, 1L, requester.getRef(),
                 new FiniteDuration(1, TimeUnit.SECONDS)));
-        assertEquals(0L, device1.expectMsgClass(IotDevice.ReadTemperature.class).requestId);
-        assertEquals(0L, device2.expectMsgClass(IotDevice.ReadTemperature.class).requestId);
+        long read1 = device1.expectMsgClass(IotDevice.ReadTemperature.class).requestId;
+        long read2 = device2.expectMsgClass(IotDevice.ReadTemperature.class).requestId;
+        assertNotEquals(read1, read2);
 
-        queryActor.tell(new IotDevice.RespondTemperature(0L, 1.0), device1.getRef());
+        queryActor.tell(new IotDevice.RespondTemperature(read1, 1.0), device1.getRef());
 
         IotDeviceGroup.RespondAllTemperatures response = requester.expectMsgClass(Duration.ofSeconds(5),
                 IotDeviceGroup.RespondAllTemperatures.class);
@@ -129,4 +135,106 @@ public class IotDeviceGroupQueryTest {
         assertEquals(expectedTemperatures, response.temperatures);
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testReturnStaleTemperatureForOldReadings() {
+        ActorRef queryActor = system.actorOf(IotDeviceGroupQuery.props(actorToDeviceId, 1L, requester.getRef(),
+                new FiniteDuration(3, TimeUnit.SECONDS), 60_000L));
+        long read1 = device1.expectMsgClass(IotDevice.ReadTemperature.class).requestId;
+        long read2 = device2.expectMsgClass(IotDevice.ReadTemperature.class).requestId;
+
+        long now = System.currentTimeMillis();
+        queryActor.tell(new IotDevice.RespondTemperature(read1, 1.0, now - 120_000L), device1.getRef());
+        queryActor.tell(new IotDevice.RespondTemperature(read2, 2.0, now), device2.getRef());
+
+        IotDeviceGroup.RespondAllTemperatures response =
+                requester.expectMsgClass(IotDeviceGroup.RespondAllTemperatures.class);
+        assertEquals(new IotDeviceGroup.StaleTemperature(1.0, now - 120_000L), response.temperatures.get(device1Name));
+        assertEquals(new IotDeviceGroup.Temperature(2.0), response.temperatures.get(device2Name));
+        assertEquals(now, ((IotDeviceGroup.Temperature) response.temperatures.get(device2Name)).recordedAt);
+    }
+
+    @Test
+    public void testDropDuplicateAndMismatchedReplies() {
+        ActorRef queryActor = system.actorOf(IotDeviceGroupQuery.props(actorToDeviceId, 1L, requester.getRef(),
+                new FiniteDuration(3, TimeUnit.SECONDS)));
+        long read1 = device1.expectMsgClass(IotDevice.ReadTemperature.class).requestId;
+        long read2 = device2.expectMsgClass(IotDevice.ReadTemperature.class).requestId;
+
+        queryActor.tell(new IotDevice.RespondTemperature(read1, 1.0), device1.getRef());
+        // A second reply to the same read and a reply to a read that was never sent are dropped.
+        queryActor.tell(new IotDevice.RespondTemperature(read1, 5.0), device1.getRef());
+        queryActor.tell(new IotDevice.RespondTemperature(read1 + read2 + 1, 6.0), device2.getRef());
+        requester.expectNoMessage(Duration.ofMillis(100));
+
+        queryActor.tell(new IotDevice.RespondTemperature(read2, 2.0), device2.getRef());
+        IotDeviceGroup.RespondAllTemperatures response =
+                requester.expectMsgClass(IotDeviceGroup.RespondAllTemperatures.class);
+        assertEquals(Map.of(device1Name, new IotDeviceGroup.Temperature(1.0),
+                device2Name, new IotDeviceGroup.Temperature(2.0)), response.temperatures);
+    }
+
+    @Test
+    public void testHedgeSilentDevicesWithLastKnownReadings() {
+        long now = System.currentTimeMillis();
+        Map<String, IotDeviceGroup.TemperatureReading> lastKnown = Map.of(
+                device1Name, new IotDeviceGroup.Temperature(1.0, now),
+                device2Name, new IotDeviceGroup.Temperature(7.0, now - 1_000L));
+        // The parent collects the observed read latencies.
+        TestKit group = new TestKit(system);
+        ActorRef queryActor = group.childActorOf(IotDeviceGroupQuery.props(actorToDeviceId, 1L, requester.getRef(),
+                new FiniteDuration(3, TimeUnit.SECONDS), Long.MAX_VALUE, Map.of(), TemperaturePredicate.all(),
+                TimeUnit.MILLISECONDS.toNanos(200)));
+        long read1 = device1.expectMsgClass(IotDevice.ReadTemperature.class).requestId;
+        long read2 = device2.expectMsgClass(IotDevice.ReadTemperature.class).requestId;
+
+        queryActor.tell(new IotDevice.RespondTemperature(read1, 2.0, now), device1.getRef());
+        // Once the hedging delay has passed, the query asks for the last known reading of device2 only.
+        IotDeviceGroup.RequestLastKnownReadings lookup = group.expectMsgClass(Duration.ofSeconds(1),
+                IotDeviceGroup.RequestLastKnownReadings.class);
+        assertEquals(Set.of(device2Name), lookup.deviceIds);
+        group.reply(new IotDeviceGroup.LastKnownReadings(lastKnown));
+        IotDeviceGroup.RespondAllTemperatures response = requester.expectMsgClass(Duration.ofSeconds(1),
+                IotDeviceGroup.RespondAllTemperatures.class);
+        assertEquals(Map.of(device1Name, new IotDeviceGroup.Temperature(2.0),
+                device2Name, new IotDeviceGroup.HedgedTemperature(7.0, now - 1_000L)), response.temperatures);
+
+        AdaptiveTimeout.RepliesObserved observed = group.expectMsgClass(AdaptiveTimeout.RepliesObserved.class);
+        assertEquals(1, observed.answeredNanos.length);
+        assertEquals(1, observed.unanswered);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(200), observed.waitedNanos);
+
+        // The hedged device's late reply does not produce a second answer.
+        queryActor.tell(new IotDevice.RespondTemperature(read2, 8.0, now), device2.getRef());
+        requester.expectNoMessage(Duration.ofMillis(100));
+    }
+
+    @Test
+    public void testCountHedgedDevicesAsUnansweredWhileWaitingForUnknownOnes() {
+        long now = System.currentTimeMillis();
+        Map<String, IotDeviceGroup.TemperatureReading> lastKnown = Map.of(
+                device2Name, new IotDeviceGroup.Temperature(7.0, now));
+        TestKit group = new TestKit(system);
+        ActorRef queryActor = group.childActorOf(IotDeviceGroupQuery.props(actorToDeviceId, 1L, requester.getRef(),
+                new FiniteDuration(3, TimeUnit.SECONDS), Long.MAX_VALUE, Map.of(), TemperaturePredicate.all(),
+                TimeUnit.MILLISECONDS.toNanos(200)));
+        long read1 = device1.expectMsgClass(IotDevice.ReadTemperature.class).requestId;
+        device2.expectMsgClass(IotDevice.ReadTemperature.class);
+
+        group.expectMsgClass(Duration.ofSeconds(1), IotDeviceGroup.RequestLastKnownReadings.class);
+        group.reply(new IotDeviceGroup.LastKnownReadings(lastKnown));
+        // device2 is hedged while device1, with no known reading, is still waited for.
+        AdaptiveTimeout.RepliesObserved hedged = group.expectMsgClass(AdaptiveTimeout.RepliesObserved.class);
+        assertEquals(0, hedged.answeredNanos.length);
+        assertEquals(1, hedged.unanswered);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(200), hedged.waitedNanos);
+
+        queryActor.tell(new IotDevice.RespondTemperature(read1, 2.0, now), device1.getRef());
+        assertEquals(Map.of(device1Name, new IotDeviceGroup.Temperature(2.0),
+                device2Name, new IotDeviceGroup.HedgedTemperature(7.0, now)),
+                requester.expectMsgClass(IotDeviceGroup.RespondAllTemperatures.class).temperatures);
+        AdaptiveTimeout.RepliesObserved rest = group.expectMsgClass(AdaptiveTimeout.RepliesObserved.class);
+        assertEquals(1, rest.answeredNanos.length);
+        assertEquals(0, rest.unanswered);
+    }
+}
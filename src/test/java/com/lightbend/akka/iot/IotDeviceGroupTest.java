@@ -4,13 +4,24 @@ import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.PoisonPill;
 import akka.testkit.javadsl.TestKit;
+import com.typesafe.config.ConfigFactory;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 
@@ -123,6 +134,57 @@ public class IotDeviceGroupTest {
         });
     }
 
+    @Test
+    public void testPageDeviceListWithCursorsWhileDevicesChange() {
+        ActorRef groupActor = system.actorOf(IotDeviceGroup.props("group"));
+        List<ActorRef> devices = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            groupActor.tell(new IotDeviceManager.RequestTrackDevice("group", "device" + i), probe.getRef());
+            probe.expectMsgClass(IotDeviceManager.DeviceRegistered.class);
+            devices.add(probe.getLastSender());
+        }
+
+        groupActor.tell(new IotDeviceGroup.RequestDeviceListPage(1L, null, 2), probe.getRef());
+        IotDeviceGroup.DeviceListPage page1 = probe.expectMsgClass(IotDeviceGroup.DeviceListPage.class);
+        assertEquals(List.of("device0", "device1"), page1.deviceIds);
+        assertNotNull(page1.nextCursor);
+
+        // Removing an already listed device and adding a later one does not shift the listing.
+        probe.watch(devices.get(0));
+        devices.get(0).tell(PoisonPill.getInstance(), ActorRef.noSender());
+        probe.expectTerminated(devices.get(0));
+        groupActor.tell(new IotDeviceManager.RequestTrackDevice("group", "device9"), probe.getRef());
+        probe.expectMsgClass(IotDeviceManager.DeviceRegistered.class);
+
+        groupActor.tell(new IotDeviceGroup.RequestDeviceListPage(2L, page1.nextCursor, 2), probe.getRef());
+        IotDeviceGroup.DeviceListPage page2 = probe.expectMsgClass(IotDeviceGroup.DeviceListPage.class);
+        assertEquals(List.of("device2", "device3"), page2.deviceIds);
+
+        groupActor.tell(new IotDeviceGroup.RequestDeviceListPage(3L, page2.nextCursor, 2), probe.getRef());
+        IotDeviceGroup.DeviceListPage page3 = probe.expectMsgClass(IotDeviceGroup.DeviceListPage.class);
+        assertEquals(List.of("device4", "device9"), page3.deviceIds);
+        assertNull(page3.nextCursor);
+    }
+
+    @Test
+    public void testRejectCursorsNotIssuedByDeviceListing() {
+        ActorRef groupActor = system.actorOf(IotDeviceGroup.props("group"));
+
+        groupActor.tell(new IotDeviceGroup.RequestDeviceListPage(1L, "not a cursor", 10), probe.getRef());
+        probe.expectMsgClass(akka.actor.Status.Failure.class);
+
+        ActorRef managerActor = system.actorOf(IotDeviceManager.props("manager"));
+        managerActor.tell(new IotDeviceManager.RequestTrackDevice("group1", "device"), probe.getRef());
+        probe.expectMsgClass(IotDeviceManager.DeviceRegistered.class);
+        managerActor.tell(new IotDeviceManager.RequestTrackDevice("group2", "device"), probe.getRef());
+        probe.expectMsgClass(IotDeviceManager.DeviceRegistered.class);
+        managerActor.tell(new IotDeviceManager.RequestGroupListPage(2L, null, 1), probe.getRef());
+        String groupCursor = probe.expectMsgClass(IotDeviceManager.GroupListPage.class).nextCursor;
+
+        groupActor.tell(new IotDeviceGroup.RequestDeviceListPage(3L, groupCursor, 10), probe.getRef());
+        probe.expectMsgClass(akka.actor.Status.Failure.class);
+    }
+
     @Test
     public void testCollectTemperaturesFrolAllActiveDevices() {
         ActorRef groupActor = system.actorOf(IotDeviceGroup.props("group"));
@@ -154,4 +216,404 @@ public class IotDeviceGroupTest {
 
         assertEquals(expectedTemperatures, response.temperatures);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testReportAdmissionMetricsOfTemperatureQueries() {
+        ActorRef groupActor = system.actorOf(IotDeviceGroup.props("group"));
+        groupActor.tell(new IotDeviceGroup.RequestAllTemperatures(0L), probe.getRef());
+        probe.expectMsgClass(IotDeviceGroup.RespondAllTemperatures.class);
+
+        probe.awaitAssert(() -> {
+            groupActor.tell(new QueryAdmission.RequestAdmissionMetrics(1L), probe.getRef());
+            QueryAdmission.AdmissionMetrics metrics = probe.expectMsgClass(QueryAdmission.AdmissionMetrics.class);
+            assertEquals("group", metrics.owner);
+            assertEquals(1L, metrics.started);
+            assertEquals(0, metrics.inFlight);
+            assertEquals(0L, metrics.rejected);
+            return null;
+        });
+    }
+
+    @Test
+    public void testDriveAlarmFromAlertRules() {
+        ActorRef groupActor = system.actorOf(IotDeviceGroup.props("group"));
+        groupActor.tell(new IotDeviceManager.RequestTrackDevice("group", "device1"), probe.getRef());
+        probe.expectMsgClass(IotDeviceManager.DeviceRegistered.class);
+        ActorRef device = probe.getLastSender();
+
+        TestKit subscriber = new TestKit(system);
+        groupActor.tell(new IotDeviceGroup.SetAlertRules(List.of(AlertRule.above("hot", 30.0, 28.0))), ActorRef.noSender());
+        groupActor.tell(new IotAlarm.SubscribeAlerts(subscriber.getRef()), ActorRef.noSender());
+
+        device.tell(new IotDevice.RecordTemperature(1L, 31.0), probe.getRef());
+        probe.expectMsgClass(IotDevice.TemperatureRecorded.class);
+        IotAlarm.AlertRaised raised = subscriber.expectMsgClass(IotAlarm.AlertRaised.class);
+        assertEquals("group", raised.groupId);
+        assertEquals("device1", raised.deviceId);
+        assertEquals("hot", raised.rule);
+        assertEquals(31.0, raised.value, 0.0);
+
+        // Within the hysteresis band nothing changes.
+        device.tell(new IotDevice.RecordTemperature(2L, 29.0), probe.getRef());
+        probe.expectMsgClass(IotDevice.TemperatureRecorded.class);
+        subscriber.expectNoMessage(Duration.ofMillis(100));
+
+        groupActor.tell(new IotAlarm.RequestActiveAlerts(3L), probe.getRef());
+        assertEquals(Map.of("device1", Set.of("hot")), probe.expectMsgClass(IotAlarm.ActiveAlerts.class).rulesByDevice);
+
+        // A stopped device clears its alerts.
+        probe.watch(device);
+        system.stop(device);
+        probe.expectTerminated(device);
+        IotAlarm.AlertCleared cleared = subscriber.expectMsgClass(IotAlarm.AlertCleared.class);
+        assertEquals("device1", cleared.deviceId);
+        assertTrue(Double.isNaN(cleared.value));
+    }
+
+    @Test
+    public void testAdaptQueryTimeoutToDeviceReadLatencies() {
+        ActorRef groupActor = system.actorOf(IotDeviceGroup.props("group"));
+        for (int d = 0; d < 50; d++) {
+            groupActor.tell(new IotDeviceManager.RequestTrackDevice("group", "device" + d), probe.getRef());
+            probe.expectMsgClass(IotDeviceManager.DeviceRegistered.class);
+        }
+        groupActor.tell(new AdaptiveTimeout.RequestTimeoutMetrics(0L), probe.getRef());
+        AdaptiveTimeout.TimeoutMetrics initial = probe.expectMsgClass(AdaptiveTimeout.TimeoutMetrics.class);
+        assertEquals(TimeUnit.SECONDS.toNanos(3), initial.timeoutNanos);
+        assertEquals(0L, initial.samples);
+
+        // Enough reads for the configured min-samples; local devices answer far below the bounds.
+        for (int q = 1; q <= 5; q++) {
+            groupActor.tell(new IotDeviceGroup.RequestAllTemperatures(q), probe.getRef());
+            assertEquals(50, probe.expectMsgClass(IotDeviceGroup.RespondAllTemperatures.class).temperatures.size());
+        }
+        probe.awaitAssert(() -> {
+            groupActor.tell(new AdaptiveTimeout.RequestTimeoutMetrics(6L), probe.getRef());
+            AdaptiveTimeout.TimeoutMetrics metrics = probe.expectMsgClass(AdaptiveTimeout.TimeoutMetrics.class);
+            assertEquals("group", metrics.owner);
+            assertEquals(250L, metrics.samples);
+            assertTrue(metrics.timeoutNanos < TimeUnit.SECONDS.toNanos(3));
+            assertTrue(metrics.timeoutNanos >= TimeUnit.MILLISECONDS.toNanos(100));
+            assertTrue(metrics.p50Nanos <= metrics.p99Nanos && metrics.p99Nanos <= metrics.maxNanos);
+            return null;
+        });
+    }
+
+    @Test
+    public void testReturnOnlyTemperaturesChangedSinceVersion() {
+        ActorRef groupActor = system.actorOf(IotDeviceGroup.props("group"));
+
+        groupActor.tell(new IotDeviceManager.RequestTrackDevice("group", "device1"), probe.getRef());
+        probe.expectMsgClass(IotDeviceManager.DeviceRegistered.class);
+        ActorRef device1Actor = probe.getLastSender();
+
+        groupActor.tell(new IotDeviceManager.RequestTrackDevice("group", "device2"), probe.getRef());
+        probe.expectMsgClass(IotDeviceManager.DeviceRegistered.class);
+        ActorRef device2Actor = probe.getLastSender();
+
+        groupActor.tell(new IotDeviceGroup.RequestTemperaturesChangedSince(0L, 0L), probe.getRef());
+        IotDeviceGroup.RespondTemperaturesChangedSince full =
+                probe.expectMsgClass(IotDeviceGroup.RespondTemperaturesChangedSince.class);
+        assertEquals(Map.of("device1", IotDeviceGroup.TemperatureNotAvailable.INSTANCE,
+                "device2", IotDeviceGroup.TemperatureNotAvailable.INSTANCE), full.temperatures);
+
+        device1Actor.tell(new IotDevice.RecordTemperature(1L, 1.0), probe.getRef());
+        probe.expectMsgClass(IotDevice.TemperatureRecorded.class);
+        device2Actor.tell(new IotDevice.RecordTemperature(2L, 2.0), probe.getRef());
+        probe.expectMsgClass(IotDevice.TemperatureRecorded.class);
+        device1Actor.tell(new IotDevice.RecordTemperature(3L, 3.0), probe.getRef());
+        probe.expectMsgClass(IotDevice.TemperatureRecorded.class);
+
+        probe.awaitAssert(() -> {
+            groupActor.tell(new IotDeviceGroup.RequestTemperaturesChangedSince(1L, full.version), probe.getRef());
+            IotDeviceGroup.RespondTemperaturesChangedSince delta =
+                    probe.expectMsgClass(IotDeviceGroup.RespondTemperaturesChangedSince.class);
+            assertEquals(full.version + 3, delta.version);
+            assertEquals(Map.of("device1", new IotDeviceGroup.Temperature(3.0),
+                    "device2", new IotDeviceGroup.Temperature(2.0)), delta.temperatures);
+            return null;
+        });
+
+        probe.watch(device2Actor);
+        device2Actor.tell(PoisonPill.getInstance(), ActorRef.noSender());
+        probe.expectTerminated(device2Actor);
+
+        probe.awaitAssert(() -> {
+            groupActor.tell(new IotDeviceGroup.RequestTemperaturesChangedSince(2L, full.version + 3), probe.getRef());
+            IotDeviceGroup.RespondTemperaturesChangedSince afterStop =
+                    probe.expectMsgClass(IotDeviceGroup.RespondTemperaturesChangedSince.class);
+            assertEquals(Map.of("device2", IotDeviceGroup.DeviceNotAvailable.INSTANCE), afterStop.temperatures);
+            return null;
+        });
+    }
+
+    @Test
+    public void testForgetRemovedDevicesAfterTombstoneRetention() {
+        ActorSystem retaining = ActorSystem.create("retaining", ConfigFactory.parseString(
+                "iot.delta.tombstone-retention = 2").withFallback(ConfigFactory.load()));
+        try {
+            TestKit probe = new TestKit(retaining);
+            ActorRef groupActor = retaining.actorOf(IotDeviceGroup.props("group"));
+            groupActor.tell(new IotDeviceManager.RequestTrackDevice("group", "device1"), probe.getRef());
+            probe.expectMsgClass(IotDeviceManager.DeviceRegistered.class);
+            groupActor.tell(new IotDeviceManager.RequestTrackDevice("group", "gone"), probe.getRef());
+            probe.expectMsgClass(IotDeviceManager.DeviceRegistered.class);
+            ActorRef goneActor = probe.getLastSender();
+            groupActor.tell(new IotDeviceGroup.RequestTemperaturesChangedSince(0L, 0L), probe.getRef());
+            long tracked = probe.expectMsgClass(IotDeviceGroup.RespondTemperaturesChangedSince.class).version;
+
+            probe.watch(goneActor);
+            goneActor.tell(PoisonPill.getInstance(), ActorRef.noSender());
+            probe.expectTerminated(goneActor);
+            probe.awaitAssert(() -> {
+                groupActor.tell(new IotDeviceGroup.RequestTemperaturesChangedSince(1L, tracked), probe.getRef());
+                IotDeviceGroup.RespondTemperaturesChangedSince removal =
+                        probe.expectMsgClass(IotDeviceGroup.RespondTemperaturesChangedSince.class);
+                assertEquals(Map.of("gone", IotDeviceGroup.DeviceNotAvailable.INSTANCE), removal.temperatures);
+                assertFalse(removal.full);
+                return null;
+            });
+
+            for (String deviceId : List.of("device3", "device4")) {
+                groupActor.tell(new IotDeviceManager.RequestTrackDevice("group", deviceId), probe.getRef());
+                probe.expectMsgClass(IotDeviceManager.DeviceRegistered.class);
+            }
+
+            // The removal is forgotten, so a caller that has not seen it gets every device.
+            groupActor.tell(new IotDeviceGroup.RequestTemperaturesChangedSince(2L, tracked), probe.getRef());
+            IotDeviceGroup.RespondTemperaturesChangedSince behind =
+                    probe.expectMsgClass(IotDeviceGroup.RespondTemperaturesChangedSince.class);
+            assertTrue(behind.full);
+            assertEquals(tracked + 3, behind.version);
+            assertEquals(Set.of("device1", "device3", "device4"), behind.temperatures.keySet());
+
+            groupActor.tell(new IotDeviceGroup.RequestTemperaturesChangedSince(3L, tracked + 1), probe.getRef());
+            IotDeviceGroup.RespondTemperaturesChangedSince current =
+                    probe.expectMsgClass(IotDeviceGroup.RespondTemperaturesChangedSince.class);
+            assertFalse(current.full);
+            assertEquals(Set.of("device3", "device4"), current.temperatures.keySet());
+        } finally {
+            TestKit.shutdownActorSystem(retaining);
+        }
+    }
+
+    @Test
+    public void testReplyInFullToVersionsOfAnEarlierGroupWithTheSameId() {
+        ActorRef earlier = system.actorOf(IotDeviceGroup.props("recreated"));
+        for (int i = 0; i < 3; i++) {
+            earlier.tell(new IotDeviceManager.RequestTrackDevice("recreated", "device" + i), probe.getRef());
+            probe.expectMsgClass(IotDeviceManager.DeviceRegistered.class);
+        }
+        earlier.tell(new IotDeviceGroup.RequestTemperaturesChangedSince(1L, 0L), probe.getRef());
+        long earlierVersion = probe.expectMsgClass(IotDeviceGroup.RespondTemperaturesChangedSince.class).version;
+        probe.watch(earlier);
+        system.stop(earlier);
+        probe.expectTerminated(earlier);
+
+        ActorRef recreated = system.actorOf(IotDeviceGroup.props("recreated"));
+        recreated.tell(new IotDeviceManager.RequestTrackDevice("recreated", "device0"), probe.getRef());
+        probe.expectMsgClass(IotDeviceManager.DeviceRegistered.class);
+        for (long sinceVersion : new long[]{earlierVersion, Long.MAX_VALUE}) {
+            recreated.tell(new IotDeviceGroup.RequestTemperaturesChangedSince(2L, sinceVersion), probe.getRef());
+            IotDeviceGroup.RespondTemperaturesChangedSince reply =
+                    probe.expectMsgClass(IotDeviceGroup.RespondTemperaturesChangedSince.class);
+            assertTrue(reply.full);
+            assertEquals(Map.of("device0", IotDeviceGroup.TemperatureNotAvailable.INSTANCE), reply.temperatures);
+        }
+    }
+
+    @Test
+    public void testKeepHottestDevicesUpToDate() {
+        ActorRef groupActor = system.actorOf(IotDeviceGroup.props("group"));
+        ActorRef[] devices = new ActorRef[4];
+        for (int i = 0; i < devices.length; i++) {
+            groupActor.tell(new IotDeviceManager.RequestTrackDevice("group", "device" + i), probe.getRef());
+            probe.expectMsgClass(IotDeviceManager.DeviceRegistered.class);
+            devices[i] = probe.getLastSender();
+            devices[i].tell(new IotDevice.RecordTemperature(i, 10.0 * i), probe.getRef());
+            probe.expectMsgClass(IotDevice.TemperatureRecorded.class);
+        }
+        devices[0].tell(new IotDevice.RecordTemperature(4L, 100.0), probe.getRef());
+        probe.expectMsgClass(IotDevice.TemperatureRecorded.class);
+
+        probe.awaitAssert(() -> {
+            groupActor.tell(new IotDeviceGroup.RequestHottestDevices(0L, 2), probe.getRef());
+            IotDeviceGroup.RespondHottestDevices response = probe.expectMsgClass(IotDeviceGroup.RespondHottestDevices.class);
+            assertEquals(List.of(new IotDeviceGroup.DeviceTemperature("group", "device0", 100.0),
+                    new IotDeviceGroup.DeviceTemperature("group", "device3", 30.0)), response.hottest);
+            return null;
+        });
+    }
+
+    @Test
+    public void testDropStaleDevicesFromHottest() {
+        ActorSystem staling = ActorSystem.create("staling", ConfigFactory.parseString(
+                "iot.staleness.ttl = 1s\niot.staleness.wheel-buckets = 4").withFallback(ConfigFactory.load()));
+        try {
+            TestKit probe = new TestKit(staling);
+            ActorRef groupActor = staling.actorOf(IotDeviceGroup.props("group"));
+            ActorRef[] devices = new ActorRef[2];
+            for (int i = 0; i < devices.length; i++) {
+                groupActor.tell(new IotDeviceManager.RequestTrackDevice("group", "device" + i), probe.getRef());
+                probe.expectMsgClass(IotDeviceManager.DeviceRegistered.class);
+                devices[i] = probe.getLastSender();
+            }
+            devices[0].tell(new IotDevice.RecordTemperature(0L, 100.0), probe.getRef());
+            probe.expectMsgClass(IotDevice.TemperatureRecorded.class);
+
+            probe.awaitAssert(Duration.ofSeconds(5), () -> {
+                groupActor.tell(new IotDeviceGroup.RequestHottestDevices(1L, 2), probe.getRef());
+                assertEquals(List.of(), probe.expectMsgClass(IotDeviceGroup.RespondHottestDevices.class).hottest);
+                return null;
+            });
+
+            devices[1].tell(new IotDevice.RecordTemperature(2L, 10.0), probe.getRef());
+            probe.expectMsgClass(IotDevice.TemperatureRecorded.class);
+            probe.awaitAssert(() -> {
+                groupActor.tell(new IotDeviceGroup.RequestHottestDevices(3L, 2), probe.getRef());
+                assertEquals(List.of(new IotDeviceGroup.DeviceTemperature("group", "device1", 10.0)),
+                        probe.expectMsgClass(IotDeviceGroup.RespondHottestDevices.class).hottest);
+                return null;
+            });
+        } finally {
+            TestKit.shutdownActorSystem(staling);
+        }
+    }
+
+    @Test
+    public void testReturnRollupsForRecordedReadings() {
+        ActorRef groupActor = system.actorOf(IotDeviceGroup.props("group"));
+        groupActor.tell(new IotDeviceManager.RequestTrackDevice("group", "device1"), probe.getRef());
+        probe.expectMsgClass(IotDeviceManager.DeviceRegistered.class);
+        ActorRef deviceActor = probe.getLastSender();
+
+        deviceActor.tell(new IotDevice.RecordTemperature(0L, 10.0), probe.getRef());
+        probe.expectMsgClass(IotDevice.TemperatureRecorded.class);
+        deviceActor.tell(new IotDevice.RecordTemperature(1L, 20.0), probe.getRef());
+        probe.expectMsgClass(IotDevice.TemperatureRecorded.class);
+
+        probe.awaitAssert(() -> {
+            groupActor.tell(new IotDeviceGroup.RequestRollups(2L, null, Duration.ofHours(1)), probe.getRef());
+            IotDeviceGroup.RespondRollups response = probe.expectMsgClass(IotDeviceGroup.RespondRollups.class);
+            assertEquals(Set.of("device1"), response.rollups.keySet());
+            List<RollupStore.Rollup> hourly = response.rollups.get("device1");
+            assertEquals(1, hourly.size());
+            assertEquals(2, hourly.get(0).count);
+            assertEquals(15.0, hourly.get(0).mean(), 0.0);
+            return null;
+        });
+    }
+
+    @Test
+    public void testStreamSealedHistoryInChunks() {
+        ActorRef groupActor = system.actorOf(IotDeviceGroup.props("group"));
+        groupActor.tell(new IotDeviceManager.RequestTrackDevice("group", "device1"), probe.getRef());
+        probe.expectMsgClass(IotDeviceManager.DeviceRegistered.class);
+        ActorRef deviceActor = probe.getLastSender();
+
+        // Two full blocks of iot.history.block-samples get sealed and spilled to the group.
+        for (long i = 0; i < 250; i++) {
+            deviceActor.tell(new IotDevice.RecordTemperature(i, i), probe.getRef());
+            probe.expectMsgClass(IotDevice.TemperatureRecorded.class);
+        }
+
+        probe.awaitAssert(() -> {
+            groupActor.tell(new IotDeviceGroup.RequestGroupHistory(1L, 0L, Long.MAX_VALUE, 100), probe.getRef());
+            List<Double> values = new ArrayList<>();
+            IotDeviceGroup.GroupHistoryChunk chunk;
+            do {
+                chunk = probe.expectMsgClass(IotDeviceGroup.GroupHistoryChunk.class);
+                assertTrue(chunk.values.length <= 100);
+                for (double value : chunk.values) {
+                    values.add(value);
+                }
+                if (!chunk.last) {
+                    probe.getLastSender().tell(new IotDeviceGroup.RequestNextHistoryChunk(1L), probe.getRef());
+                }
+            } while (!chunk.last);
+            assertEquals(240, values.size());
+            assertEquals(0.0, values.get(0), 0.0);
+            assertEquals(239.0, values.get(239), 0.0);
+            return null;
+        });
+    }
+
+    @Test
+    public void testClampRequestedChunkSize() {
+        ActorSystem clamping = ActorSystem.create("clamping", ConfigFactory.parseString(
+                "iot.history.max-chunk-samples = 6").withFallback(ConfigFactory.load()));
+        try {
+            TestKit probe = new TestKit(clamping);
+            ActorRef groupActor = clamping.actorOf(IotDeviceGroup.props("clampedGroup"));
+            groupActor.tell(sealed(block(0L, 1.0)), ActorRef.noSender());
+            groupActor.tell(sealed(block(100L, 10.0)), ActorRef.noSender());
+
+            groupActor.tell(new IotDeviceGroup.RequestGroupHistory(1L, 0L, Long.MAX_VALUE, Integer.MAX_VALUE),
+                    probe.getRef());
+            IotDeviceGroup.GroupHistoryChunk first = probe.expectMsgClass(IotDeviceGroup.GroupHistoryChunk.class);
+            assertEquals(6, first.values.length);
+            assertFalse(first.last);
+            probe.getLastSender().tell(new IotDeviceGroup.RequestNextHistoryChunk(1L), probe.getRef());
+            IotDeviceGroup.GroupHistoryChunk second = probe.expectMsgClass(IotDeviceGroup.GroupHistoryChunk.class);
+            assertArrayEquals(new double[]{12.0, 13.0}, second.values, 0.0);
+            assertTrue(second.last);
+        } finally {
+            TestKit.shutdownActorSystem(clamping);
+        }
+    }
+
+    private static GorillaBlock block(long firstTimestamp, double value) {
+        GorillaEncoder encoder = new GorillaEncoder(4);
+        for (int i = 0; i < 4; i++) {
+            encoder.append(firstTimestamp + i * 10L, value + i);
+        }
+        return encoder.seal();
+    }
+
+    private static long segmentDirectories(Path groupDirectory) {
+        if (!Files.exists(groupDirectory)) {
+            return 0L;
+        }
+        try (Stream<Path> directories = Files.list(groupDirectory)) {
+            return directories.count();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static IotDeviceGroup.DeviceReadingsPending sealed(GorillaBlock block) {
+        PendingReadings pending = new PendingReadings(1, 1);
+        pending.addBlock(block);
+        return new IotDeviceGroup.DeviceReadingsPending("device1", pending);
+    }
+
+    @Test
+    public void testKeepSpillingHistoryAfterRestart() {
+        Path groupDirectory = Paths.get(system.settings().config().getString("iot.history.segment-directory"))
+                .resolve("restartedGroup");
+        ActorRef groupActor = system.actorOf(IotDeviceGroup.props("restartedGroup"));
+        groupActor.tell(sealed(block(0L, 1.0)), ActorRef.noSender());
+        probe.awaitAssert(() -> {
+            assertEquals(1L, segmentDirectories(groupDirectory));
+            return null;
+        });
+
+        // A block larger than a segment fails the group, which restarts.
+        int segmentSize = (int) system.settings().config().getBytes("iot.history.segment-size").longValue();
+        GorillaBlock oversized = new GorillaBlock(10L, 20L, 2, new byte[segmentSize + 1]);
+        groupActor.tell(sealed(oversized), ActorRef.noSender());
+        groupActor.tell(sealed(block(100L, 10.0)), ActorRef.noSender());
+
+        groupActor.tell(new IotDeviceGroup.RequestGroupHistory(1L, 0L, Long.MAX_VALUE, 100), probe.getRef());
+        IotDeviceGroup.GroupHistoryChunk chunk = probe.expectMsgClass(IotDeviceGroup.GroupHistoryChunk.class);
+        assertTrue(chunk.last);
+        assertArrayEquals(new double[]{10.0, 11.0, 12.0, 13.0}, chunk.values, 0.0);
+        // The segments of the failed instance are gone.
+        assertEquals(1L, segmentDirectories(groupDirectory));
+
+        probe.watch(groupActor);
+        groupActor.tell(PoisonPill.getInstance(), ActorRef.noSender());
+        probe.expectTerminated(groupActor);
+        assertFalse(Files.exists(groupDirectory));
+    }
+}
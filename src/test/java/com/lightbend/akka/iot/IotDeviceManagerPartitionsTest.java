@@ -0,0 +1,194 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.testkit.javadsl.TestKit;
+import com.typesafe.config.ConfigFactory;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+public class IotDeviceManagerPartitionsTest {
+
+    private static ActorSystem system;
+
+    private TestKit probe;
+
+    @Before
+    public void setup() {
+        probe = new TestKit(system);
+    }
+
+    @BeforeClass
+    public static void classSetup() {
+        system = ActorSystem.create("partitions", ConfigFactory.parseString("iot.manager.partitions = 4")
+                .withFallback(ConfigFactory.load()));
+    }
+
+    @AfterClass
+    public static void classTeardown() {
+        system.terminate();
+    }
+
+    private ActorRef trackManager(ActorRef supervisor, String managerId) {
+        supervisor.tell(new IotSupervisor.TrackDeviceManager(0L, managerId), probe.getRef());
+        probe.expectMsgClass(IotSupervisor.DeviceManagerRegistered.class);
+        return probe.getLastSender();
+    }
+
+    private ActorRef trackDevice(ActorRef manager, String groupId, String deviceId) {
+        manager.tell(new IotDeviceManager.RequestTrackDevice(groupId, deviceId), probe.getRef());
+        return probe.expectMsgClass(IotDeviceManager.DeviceRegistered.class).device;
+    }
+
+    @Test
+    public void testRouteGroupsToTheirPartitionAndMergeGroupList() {
+        ActorRef supervisor = system.actorOf(IotSupervisor.props());
+        ActorRef manager = trackManager(supervisor, "manager");
+        Set<String> groupIds = new HashSet<>();
+        Set<String> partitionPaths = new HashSet<>();
+        for (int g = 0; g < 16; g++) {
+            ActorRef device = trackDevice(manager, "group" + g, "device");
+            groupIds.add("group" + g);
+            // device -> group -> partition
+            partitionPaths.add(device.path().parent().parent().toString());
+            // The same group always lands in the same partition.
+            assertEquals(device, trackDevice(manager, "group" + g, "device"));
+        }
+        assertEquals(4, partitionPaths.size());
+
+        manager.tell(new IotDeviceManager.RequestGroupList(1L, "manager"), probe.getRef());
+        IotDeviceManager.ReplyGroupList reply = probe.expectMsgClass(IotDeviceManager.ReplyGroupList.class);
+        assertEquals(1L, reply.requestId);
+        assertEquals(groupIds, reply.groupList);
+
+        manager.tell(new IotDeviceManager.RequestDeviceGroupById(2L, "group5"), probe.getRef());
+        assertNotNull(probe.expectMsgClass(IotDeviceManager.RespondDeviceGroupById.class).deviceGroupActor);
+    }
+
+    @Test
+    public void testMergeTemperaturesAcrossPartitions() {
+        ActorRef supervisor = system.actorOf(IotSupervisor.props());
+        ActorRef manager = trackManager(supervisor, "manager");
+        for (int g = 0; g < 8; g++) {
+            ActorRef device = trackDevice(manager, "group" + g, "device");
+            device.tell(new IotDevice.RecordTemperature(0L, g), probe.getRef());
+            probe.expectMsgClass(IotDevice.TemperatureRecorded.class);
+        }
+
+        manager.tell(new IotDeviceManager.RequestAllGroupTemperatures(3L), probe.getRef());
+        IotDeviceManager.RespondAllGroupTemperatures all =
+                probe.expectMsgClass(IotDeviceManager.RespondAllGroupTemperatures.class);
+        assertEquals(3L, all.requestId);
+        assertEquals(8, all.groupTemperatures.size());
+        assertEquals(Map.of("device", new IotDeviceGroup.Temperature(5.0)),
+                ((IotDeviceManager.DeviceGroupTemperatures) all.groupTemperatures.get("group5")).groupTemperatureReading);
+
+        manager.tell(new IotDeviceManager.RequestHottestDevicesAcrossGroups(4L, 3), probe.getRef());
+        List<IotDeviceGroup.DeviceTemperature> hottest =
+                probe.expectMsgClass(IotDeviceManager.RespondHottestDevicesAcrossGroups.class).hottest;
+        assertEquals(List.of(new IotDeviceGroup.DeviceTemperature("group7", "device", 7.0),
+                new IotDeviceGroup.DeviceTemperature("group6", "device", 6.0),
+                new IotDeviceGroup.DeviceTemperature("group5", "device", 5.0)), hottest);
+
+        // The fleet query sees the partitioned manager as one manager.
+        supervisor.tell(new IotSupervisor.RequestFleetTemperatures(5L), probe.getRef());
+        IotSupervisor.RespondFleetTemperatures fleet = probe.expectMsgClass(IotSupervisor.RespondFleetTemperatures.class);
+        assertEquals(8, fleet.managerTemperatures.get("manager").size());
+        assertTrue(fleet.managersNotAvailable.isEmpty());
+
+        manager.tell(new AdaptiveTimeout.RequestTimeoutMetrics(6L), probe.getRef());
+        AdaptiveTimeout.TimeoutMetrics timeout = probe.expectMsgClass(AdaptiveTimeout.TimeoutMetrics.class);
+        assertEquals(6L, timeout.requestId);
+        assertEquals("manager", timeout.owner);
+        assertTrue(timeout.timeoutNanos > 0L);
+    }
+
+    @Test
+    public void testPageGroupListAcrossPartitions() {
+        ActorRef supervisor = system.actorOf(IotSupervisor.props());
+        ActorRef manager = trackManager(supervisor, "manager");
+        TreeSet<String> groupIds = new TreeSet<>();
+        for (int g = 0; g < 25; g++) {
+            trackDevice(manager, String.format("group%02d", g), "device");
+            groupIds.add(String.format("group%02d", g));
+        }
+
+        List<String> listed = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            manager.tell(new IotDeviceManager.RequestGroupListPage(6L, cursor, 10), probe.getRef());
+            IotDeviceManager.GroupListPage page = probe.expectMsgClass(IotDeviceManager.GroupListPage.class);
+            listed.addAll(page.groupIds);
+            cursor = page.nextCursor;
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(new ArrayList<>(groupIds), listed);
+    }
+
+    @Test
+    public void testBootstrapAcrossPartitions() {
+        ActorRef supervisor = system.actorOf(IotSupervisor.props());
+        IotTopology.Builder builder = IotTopology.builder();
+        for (int g = 0; g < 12; g++) {
+            for (int d = 0; d < 10; d++) {
+                builder.add("manager", "group" + g, "device" + d, d == 0 ? Map.of("role", "lead") : Map.of());
+            }
+        }
+        supervisor.tell(new IotSupervisor.BootstrapTopology(7L, builder.build()), probe.getRef());
+        IotSupervisor.TopologyBootstrapped bootstrapped = probe.expectMsgClass(IotSupervisor.TopologyBootstrapped.class);
+        assertEquals(12, bootstrapped.groups);
+        assertEquals(120, bootstrapped.devices);
+        assertEquals(Set.of(), bootstrapped.groupsTimedOut);
+
+        supervisor.tell(new IotSupervisor.RequestDeviceManagerById(8L, "manager"), probe.getRef());
+        ActorRef manager = probe.expectMsgClass(IotSupervisor.ResponseDeviceManagerById.class).deviceManager;
+        manager.tell(new IotDeviceManager.RequestDevicesByTags(9L, Map.of("role", "lead")), probe.getRef());
+        assertEquals(12, probe.expectMsgClass(IotDeviceManager.RespondDevicesByTags.class).deviceIdsByGroup.size());
+    }
+
+    @Test
+    public void testExportAllPartitionsIntoOneFile() throws Exception {
+        ActorRef supervisor = system.actorOf(IotSupervisor.props());
+        ActorRef manager = trackManager(supervisor, "manager");
+        Set<String> devices = new TreeSet<>();
+        for (int g = 0; g < 8; g++) {
+            trackDevice(manager, "group" + g, "device");
+            devices.add("group" + g + "/device");
+        }
+
+        Path file = Files.createTempFile("fleet-export", ".iotx");
+        try {
+            manager.tell(new IotDeviceManager.ExportFleet(3L, file), probe.getRef());
+            IotDeviceManager.FleetExported exported = probe.expectMsgClass(IotDeviceManager.FleetExported.class);
+            assertEquals(3L, exported.requestId);
+            assertEquals(8, exported.groups);
+            assertEquals(8L, exported.devices);
+
+            Set<String> exportedDevices = new TreeSet<>();
+            for (ColumnarExportReader.Section section : ColumnarExportReader.read(file)) {
+                for (String deviceId : section.deviceIds) {
+                    exportedDevices.add(section.groupId + "/" + deviceId);
+                }
+            }
+            assertEquals(devices, exportedDevices);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.testkit.javadsl.TestKit;
+import com.typesafe.config.ConfigFactory;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class IotDeviceManagerTest {
+
+    private static ActorSystem system;
+
+    private TestKit probe;
+
+    @Before
+    public void setup() {
+        probe = new TestKit(system);
+    }
+
+    @BeforeClass
+    public static void classSetup() {
+        system = ActorSystem.create();
+    }
+
+    @AfterClass
+    public static void classTeardown() {
+        system.terminate();
+    }
+
+    private ActorRef trackDevice(ActorRef managerActor, String groupId, String deviceId) {
+        managerActor.tell(new IotDeviceManager.RequestTrackDevice(groupId, deviceId), probe.getRef());
+        probe.expectMsgClass(IotDeviceManager.DeviceRegistered.class);
+        return probe.getLastSender();
+    }
+
+    private void recordTemperature(ActorRef deviceActor, long requestId, double value) {
+        deviceActor.tell(new IotDevice.RecordTemperature(requestId, value), probe.getRef());
+        probe.expectMsgClass(IotDevice.TemperatureRecorded.class);
+    }
+
+    private ActorRef trackTaggedDevice(ActorRef managerActor, String groupId, String deviceId, Map<String, String> tags) {
+        managerActor.tell(new IotDeviceManager.RequestTrackDevice(groupId, deviceId, tags), probe.getRef());
+        probe.expectMsgClass(IotDeviceManager.DeviceRegistered.class);
+        return probe.getLastSender();
+    }
+
+    @Test
+    public void testAdaptQueryTimeoutToGroupReplyLatencies() {
+        ActorRef managerActor = system.actorOf(IotDeviceManager.props("manager"));
+        for (int g = 0; g < 10; g++) {
+            trackDevice(managerActor, "group" + g, "device");
+        }
+        for (int q = 0; q < 5; q++) {
+            managerActor.tell(new IotDeviceManager.RequestAllGroupTemperatures(q), probe.getRef());
+            assertEquals(10, probe.expectMsgClass(IotDeviceManager.RespondAllGroupTemperatures.class)
+                    .groupTemperatures.size());
+        }
+        probe.awaitAssert(() -> {
+            managerActor.tell(new AdaptiveTimeout.RequestTimeoutMetrics(5L), probe.getRef());
+            AdaptiveTimeout.TimeoutMetrics metrics = probe.expectMsgClass(AdaptiveTimeout.TimeoutMetrics.class);
+            assertEquals("manager", metrics.owner);
+            assertEquals(50L, metrics.samples);
+            assertTrue(metrics.timeoutNanos < TimeUnit.SECONDS.toNanos(30));
+            assertTrue(metrics.timeoutNanos >= TimeUnit.MILLISECONDS.toNanos(500));
+            return null;
+        });
+    }
+
+    @Test
+    public void testQueryTemperaturesOfTaggedDevicesOnly() {
+        ActorRef managerActor = system.actorOf(IotDeviceManager.props("manager"));
+        recordTemperature(trackTaggedDevice(managerActor, "group1", "device1", Map.of("floor", "3", "model", "X")), 1L, 21.0);
+        recordTemperature(trackTaggedDevice(managerActor, "group1", "device2", Map.of("floor", "4", "model", "X")), 2L, 22.0);
+        recordTemperature(trackTaggedDevice(managerActor, "group2", "device3", Map.of("floor", "3")), 3L, 23.0);
+        trackDevice(managerActor, "group3", "device4");
+
+        managerActor.tell(new IotDeviceManager.RequestDevicesByTags(4L, Map.of("model", "X")), probe.getRef());
+        assertEquals(Map.of("group1", Set.of("device1", "device2")),
+                probe.expectMsgClass(IotDeviceManager.RespondDevicesByTags.class).deviceIdsByGroup);
+
+        managerActor.tell(new IotDeviceManager.RequestTemperaturesByTags(5L, Map.of("floor", "3")), probe.getRef());
+        IotDeviceManager.RespondTemperaturesByTags response =
+                probe.expectMsgClass(IotDeviceManager.RespondTemperaturesByTags.class);
+        assertEquals(5L, response.requestId);
+        assertEquals(Map.of(
+                "group1", Map.of("device1", new IotDeviceGroup.Temperature(21.0)),
+                "group2", Map.of("device3", new IotDeviceGroup.Temperature(23.0))), response.temperatures);
+        assertEquals(Set.of(), response.groupsNotAvailable);
+        assertEquals(Set.of(), response.groupsTimedOut);
+    }
+
+    @Test
+    public void testReportGroupsThatShedATagQueryAsOverloaded() {
+        TestKit quietGroup = new TestKit(system);
+        TestKit busyGroup = new TestKit(system);
+        Map<ActorRef, String> groups = Map.of(quietGroup.getRef(), "quiet", busyGroup.getRef(), "busy");
+        system.actorOf(IotDeviceManagerTagQuery.props(groups, Map.of("quiet", Set.of("device1"), "busy", Set.of("device2")),
+                6L, probe.getRef(), FiniteDuration.create(10, TimeUnit.SECONDS)));
+
+        busyGroup.expectMsgClass(IotDeviceGroup.RequestDeviceTemperatures.class);
+        busyGroup.reply(new QueryAdmission.Overloaded(6L, "busy"));
+        quietGroup.expectMsgClass(IotDeviceGroup.RequestDeviceTemperatures.class);
+        quietGroup.reply(new IotDeviceGroup.RespondAllTemperatures(6L,
+                Map.of("device1", new IotDeviceGroup.Temperature(21.0))));
+
+        IotDeviceManager.RespondTemperaturesByTags response =
+                probe.expectMsgClass(Duration.ofSeconds(3), IotDeviceManager.RespondTemperaturesByTags.class);
+        assertEquals(Map.of("quiet", Map.of("device1", new IotDeviceGroup.Temperature(21.0))), response.temperatures);
+        assertEquals(Set.of("busy"), response.groupsOverloaded);
+        assertEquals(Set.of(), response.groupsTimedOut);
+    }
+
+    @Test
+    public void testSubscribeToTheUpdatesOfOneGroup() {
+        ActorRef managerActor = system.actorOf(IotDeviceManager.props("manager"));
+        trackDevice(managerActor, "group1", "device1");
+        trackDevice(managerActor, "group2", "device2");
+        TestKit subscriber = new TestKit(system);
+        managerActor.tell(new IotDeviceGroup.SubscribeTemperatureUpdates(subscriber.getRef(), "group1"),
+                ActorRef.noSender());
+
+        // Tracking again goes through the manager after the subscription, so the groups have it by now.
+        ActorRef device1 = trackDevice(managerActor, "group1", "device1");
+        ActorRef device2 = trackDevice(managerActor, "group2", "device2");
+        ActorRef device3 = trackDevice(managerActor, "group3", "device3");
+        recordTemperature(device2, 1L, 20.0);
+        recordTemperature(device3, 2L, 21.0);
+        recordTemperature(device1, 3L, 22.0);
+
+        IotDeviceGroup.TemperatureUpdate update = subscriber.expectMsgClass(IotDeviceGroup.TemperatureUpdate.class);
+        assertEquals("group1", update.groupId);
+        assertEquals(22.0, update.value, 0.0);
+        subscriber.expectNoMessage(Duration.ofMillis(200));
+    }
+
+    @Test
+    public void testEndTemperatureStreamWithOverloadedGroups() {
+        TestKit busyGroup = new TestKit(system);
+        system.actorOf(IotDeviceManagerStreamQuery.props(Map.of(busyGroup.getRef(), "busy"), 7L, probe.getRef(),
+                FiniteDuration.create(10, TimeUnit.SECONDS)));
+
+        busyGroup.expectMsgClass(IotDeviceGroup.RequestAllTemperatures.class);
+        busyGroup.reply(new QueryAdmission.Overloaded(7L, "busy"));
+
+        IotDeviceManager.GroupTemperaturesComplete complete =
+                probe.expectMsgClass(Duration.ofSeconds(3), IotDeviceManager.GroupTemperaturesComplete.class);
+        assertEquals(0, complete.groups);
+        assertEquals(Set.of("busy"), complete.overloaded);
+        assertEquals(Set.of(), complete.timedOut);
+    }
+
+    @Test
+    public void testKeepTagsWhenRetrackedWithoutTags() {
+        ActorRef managerActor = system.actorOf(IotDeviceManager.props("manager"));
+        trackTaggedDevice(managerActor, "group1", "device1", Map.of("floor", "3"));
+        trackDevice(managerActor, "group1", "device1");
+        managerActor.tell(new IotDeviceManager.RequestDevicesByTags(1L, Map.of("floor", "3")), probe.getRef());
+        assertEquals(Map.of("group1", Set.of("device1")),
+                probe.expectMsgClass(IotDeviceManager.RespondDevicesByTags.class).deviceIdsByGroup);
+
+        // Explicitly no tags removes them.
+        trackTaggedDevice(managerActor, "group1", "device1", Map.of());
+        managerActor.tell(new IotDeviceManager.RequestDevicesByTags(2L, Map.of("floor", "3")), probe.getRef());
+        assertEquals(Map.of(), probe.expectMsgClass(IotDeviceManager.RespondDevicesByTags.class).deviceIdsByGroup);
+    }
+
+    @Test
+    public void testServeBoundedStaleReadsFromCache() {
+        ActorRef managerActor = system.actorOf(IotDeviceManager.props("manager"));
+        ActorRef device1 = trackDevice(managerActor, "group1", "device1");
+        recordTemperature(device1, 1L, 21.0);
+        FiniteDuration minute = new FiniteDuration(1, TimeUnit.MINUTES);
+
+        managerActor.tell(new IotDeviceManager.RequestAllGroupTemperatures(2L, null, TemperaturePredicate.all(), minute),
+                probe.getRef());
+        assertEquals(Map.of("device1", new IotDeviceGroup.Temperature(21.0)),
+                groupReadings(probe.expectMsgClass(IotDeviceManager.RespondAllGroupTemperatures.class), "group1"));
+
+        // group1 comes from the cache and only the new group2 is asked.
+        recordTemperature(device1, 3L, 30.0);
+        recordTemperature(trackDevice(managerActor, "group2", "device2"), 4L, 25.0);
+        managerActor.tell(new IotDeviceManager.RequestAllGroupTemperatures(5L, null, TemperaturePredicate.all(), minute),
+                probe.getRef());
+        IotDeviceManager.RespondAllGroupTemperatures bounded =
+                probe.expectMsgClass(IotDeviceManager.RespondAllGroupTemperatures.class);
+        assertEquals(5L, bounded.requestId);
+        assertEquals(Map.of("device1", new IotDeviceGroup.Temperature(21.0)), groupReadings(bounded, "group1"));
+        assertEquals(Map.of("device2", new IotDeviceGroup.Temperature(25.0)), groupReadings(bounded, "group2"));
+
+        // Filtered reads are answered from the same cache.
+        managerActor.tell(new IotDeviceManager.RequestAllGroupTemperatures(6L, null,
+                TemperaturePredicate.valueAtLeast(24.0), minute), probe.getRef());
+        assertEquals(Set.of("group2"),
+                probe.expectMsgClass(IotDeviceManager.RespondAllGroupTemperatures.class).groupTemperatures.keySet());
+
+        // A fresh read asks every group and refreshes the cache.
+        managerActor.tell(new IotDeviceManager.RequestAllGroupTemperatures(7L), probe.getRef());
+        assertEquals(Map.of("device1", new IotDeviceGroup.Temperature(30.0)),
+                groupReadings(probe.expectMsgClass(IotDeviceManager.RespondAllGroupTemperatures.class), "group1"));
+        managerActor.tell(new IotDeviceManager.RequestAllGroupTemperatures(8L, null, TemperaturePredicate.all(), minute),
+                probe.getRef());
+        assertEquals(Map.of("device1", new IotDeviceGroup.Temperature(30.0)),
+                groupReadings(probe.expectMsgClass(IotDeviceManager.RespondAllGroupTemperatures.class), "group1"));
+    }
+
+    private static Map<String, IotDeviceGroup.TemperatureReading> groupReadings(
+            IotDeviceManager.RespondAllGroupTemperatures response, String groupId) {
+        return ((IotDeviceManager.DeviceGroupTemperatures) response.groupTemperatures.get(groupId)).groupTemperatureReading;
+    }
+
+    @Test
+    public void testDropStoppedDevicesFromTagIndex() {
+        ActorRef managerActor = system.actorOf(IotDeviceManager.props("manager"));
+        ActorRef device = trackTaggedDevice(managerActor, "group1", "device1", Map.of("floor", "3"));
+        trackTaggedDevice(managerActor, "group1", "device2", Map.of("floor", "3"));
+
+        probe.watch(device);
+        system.stop(device);
+        probe.expectTerminated(device);
+
+        probe.awaitAssert(() -> {
+            managerActor.tell(new IotDeviceManager.RequestDevicesByTags(1L, Map.of("floor", "3")), probe.getRef());
+            assertEquals(Map.of("group1", Set.of("device2")),
+                    probe.expectMsgClass(IotDeviceManager.RespondDevicesByTags.class).deviceIdsByGroup);
+            return null;
+        });
+    }
+
+    @Test
+    public void testReturnOnlyReadingsMatchingPredicate() {
+        ActorRef managerActor = system.actorOf(IotDeviceManager.props("manager"));
+        recordTemperature(trackDevice(managerActor, "group1", "device1"), 1L, 35.0);
+        recordTemperature(trackDevice(managerActor, "group1", "device2"), 2L, 20.0);
+        recordTemperature(trackDevice(managerActor, "group2", "device3"), 3L, 21.0);
+        trackDevice(managerActor, "group2", "device4");
+
+        managerActor.tell(new IotDeviceManager.RequestAllGroupTemperatures(4L, TemperaturePredicate.valueAtLeast(30.0)),
+                probe.getRef());
+        Map<String, IotDeviceManager.DeviceGroupTemperatureReading> hot =
+                probe.expectMsgClass(IotDeviceManager.RespondAllGroupTemperatures.class).groupTemperatures;
+        assertEquals(Set.of("group1"), hot.keySet());
+        assertEquals(Map.of("device1", new IotDeviceGroup.Temperature(35.0)),
+                ((IotDeviceManager.DeviceGroupTemperatures) hot.get("group1")).groupTemperatureReading);
+
+        managerActor.tell(new IotDeviceManager.RequestAllGroupTemperatures(5L, TemperaturePredicate.kinds(
+                Set.of(TemperaturePredicate.Kind.TEMPERATURE_NOT_AVAILABLE))), probe.getRef());
+        Map<String, IotDeviceManager.DeviceGroupTemperatureReading> silent =
+                probe.expectMsgClass(IotDeviceManager.RespondAllGroupTemperatures.class).groupTemperatures;
+        assertEquals(Map.of("device4", IotDeviceGroup.TemperatureNotAvailable.INSTANCE),
+                ((IotDeviceManager.DeviceGroupTemperatures) silent.get("group2")).groupTemperatureReading);
+        assertEquals(Set.of("group2"), silent.keySet());
+    }
+
+    @Test
+    public void testReturnOnlyGroupsChangedSinceVersions() {
+        ActorRef managerActor = system.actorOf(IotDeviceManager.props("manager"));
+        ActorRef device1 = trackDevice(managerActor, "group1", "device1");
+        trackDevice(managerActor, "group2", "device2");
+
+        managerActor.tell(new IotDeviceManager.RequestGroupTemperaturesChangedSince(0L, Map.of()), probe.getRef());
+        IotDeviceManager.RespondGroupTemperaturesChangedSince full =
+                probe.expectMsgClass(IotDeviceManager.RespondGroupTemperaturesChangedSince.class);
+        assertEquals(Set.of("group1", "group2"), full.groupChanges.keySet());
+        long group1Version = ((IotDeviceManager.DeviceGroupTemperatureChanges) full.groupChanges.get("group1")).version;
+        long group2Version = ((IotDeviceManager.DeviceGroupTemperatureChanges) full.groupChanges.get("group2")).version;
+
+        recordTemperature(device1, 1L, 21.5);
+
+        probe.awaitAssert(() -> {
+            managerActor.tell(new IotDeviceManager.RequestGroupTemperaturesChangedSince(1L,
+                    Map.of("group1", group1Version, "group2", group2Version)), probe.getRef());
+            IotDeviceManager.RespondGroupTemperaturesChangedSince delta =
+                    probe.expectMsgClass(IotDeviceManager.RespondGroupTemperaturesChangedSince.class);
+            assertEquals(1L, delta.requestId);
+            assertEquals(Map.of("group1", new IotDeviceManager.DeviceGroupTemperatureChanges(group1Version + 1,
+                    Map.of("device1", new IotDeviceGroup.Temperature(21.5)))), delta.groupChanges);
+            return null;
+        });
+    }
+
+    @Test
+    public void testMergeHottestDevicesAcrossGroups() {
+        ActorRef managerActor = system.actorOf(IotDeviceManager.props("manager"));
+        recordTemperature(trackDevice(managerActor, "group1", "device1"), 1L, 10.0);
+        recordTemperature(trackDevice(managerActor, "group1", "device2"), 2L, 40.0);
+        recordTemperature(trackDevice(managerActor, "group2", "device3"), 3L, 30.0);
+        recordTemperature(trackDevice(managerActor, "group2", "device4"), 4L, 20.0);
+        trackDevice(managerActor, "group3", "device5");
+
+        probe.awaitAssert(() -> {
+            managerActor.tell(new IotDeviceManager.RequestHottestDevicesAcrossGroups(5L, 3), probe.getRef());
+            IotDeviceManager.RespondHottestDevicesAcrossGroups response =
+                    probe.expectMsgClass(IotDeviceManager.RespondHottestDevicesAcrossGroups.class);
+            assertEquals(5L, response.requestId);
+            assertEquals(List.of(new IotDeviceGroup.DeviceTemperature("group1", "device2", 40.0),
+                    new IotDeviceGroup.DeviceTemperature("group2", "device3", 30.0),
+                    new IotDeviceGroup.DeviceTemperature("group2", "device4", 20.0)), response.hottest);
+            assertTrue(response.missingGroups.isEmpty());
+            return null;
+        });
+    }
+
+    private static Map<String, Double> readCurrentValues(Path file) {
+        Map<String, Double> current = new HashMap<>();
+        try {
+            for (ColumnarExportReader.Section section : ColumnarExportReader.read(file)) {
+                assertFalse(section.isHistory());
+                for (int i = 0; i < section.deviceIds.length; i++) {
+                    current.put(section.groupId + "/" + section.deviceIds[i], section.values[i]);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return current;
+    }
+
+    @Test
+    public void testExportFleetToColumnarFile() throws Exception {
+        ActorRef managerActor = system.actorOf(IotDeviceManager.props("manager"));
+        recordTemperature(trackDevice(managerActor, "group1", "device1"), 1L, 11.0);
+        trackDevice(managerActor, "group1", "device2");
+        recordTemperature(trackDevice(managerActor, "group2", "device3"), 2L, 33.0);
+
+        Path file = Files.createTempFile("fleet-export", ".iotx");
+        try {
+            probe.awaitAssert(() -> {
+                managerActor.tell(new IotDeviceManager.ExportFleet(3L, file), probe.getRef());
+                IotDeviceManager.FleetExported exported = probe.expectMsgClass(IotDeviceManager.FleetExported.class);
+                assertEquals(3L, exported.requestId);
+                assertEquals(2, exported.groups);
+                assertEquals(3L, exported.devices);
+
+                Map<String, Double> current = readCurrentValues(file);
+                assertEquals(3, current.size());
+                assertEquals(11.0, current.get("group1/device1"), 0.0);
+                assertTrue(current.get("group1/device2").isNaN());
+                assertEquals(33.0, current.get("group2/device3"), 0.0);
+                return null;
+            });
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testSkipGroupsThatDoNotAnswerAnExport() throws Exception {
+        ActorRef managerActor = system.actorOf(IotDeviceManager.props("manager"));
+        recordTemperature(trackDevice(managerActor, "group1", "device1"), 1L, 11.0);
+        managerActor.tell(new IotDeviceManager.RequestDeviceGroupById(2L, "group1"), probe.getRef());
+        ActorRef group1 = probe.expectMsgClass(IotDeviceManager.RespondDeviceGroupById.class).deviceGroupActor;
+        TestKit silentGroup = new TestKit(system);
+
+        Path file = Files.createTempFile("fleet-export", ".iotx");
+        try {
+            Map<ActorRef, String> groups = new LinkedHashMap<>();
+            groups.put(silentGroup.getRef(), "silent");
+            groups.put(group1, "group1");
+            system.actorOf(IotFleetExporter.props(groups, 3L, file, 4096,
+                    FiniteDuration.create(200, TimeUnit.MILLISECONDS), probe.getRef()));
+            silentGroup.expectMsgClass(IotDeviceGroup.RequestExportSnapshot.class);
+
+            IotDeviceManager.FleetExported exported = probe.expectMsgClass(Duration.ofSeconds(3),
+                    IotDeviceManager.FleetExported.class);
+            assertEquals(3L, exported.requestId);
+            assertEquals(1, exported.groups);
+            assertEquals(1L, exported.devices);
+            assertEquals(Set.of("silent"), exported.skippedGroups);
+            assertEquals(Map.of("group1/device1", 11.0), readCurrentValues(file));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testDeleteExportThatFailed() throws Exception {
+        TestKit silentPartition = new TestKit(system);
+        Path file = Files.createTempFile("fleet-export", ".iotx");
+        try {
+            system.actorOf(IotFleetExporter.props(ConfigFactory.parseString("group-timeout = 200ms")
+                            .withFallback(system.settings().config().getConfig("iot.export")),
+                    List.of(silentPartition.getRef()), Map.of(), 3L, file, probe.getRef()));
+            silentPartition.expectMsgClass(IotDeviceManager.RequestGroupActors.class);
+
+            IotDeviceManager.FleetExportFailed failed = probe.expectMsgClass(Duration.ofSeconds(3),
+                    IotDeviceManager.FleetExportFailed.class);
+            assertEquals(3L, failed.requestId);
+            probe.awaitAssert(() -> {
+                assertFalse(Files.exists(file));
+                return null;
+            });
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -10,6 +10,7 @@ import org.junit.Test;
 
 import java.util.Optional;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 public class IotDeviceTest {
@@ -83,4 +84,19 @@ public class IotDeviceTest {
         probe.expectNoMessage();
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testReplyWithRecordedHistory() {
+        ActorRef deviceActor = system.actorOf(IotDevice.props(groupId, deviceId));
+        long before = System.currentTimeMillis();
+        for (long i = 0; i < 5; i++) {
+            deviceActor.tell(new IotDevice.RecordTemperature(i, 20.0 + i), probe.getRef());
+            probe.expectMsgClass(IotDevice.TemperatureRecorded.class);
+        }
+
+        deviceActor.tell(new IotDevice.ReadHistory(5L, before, Long.MAX_VALUE), probe.getRef());
+        IotDevice.RespondHistory response = probe.expectMsgClass(IotDevice.RespondHistory.class);
+        assertEquals(5L, response.requestId);
+        assertArrayEquals(new double[]{20.0, 21.0, 22.0, 23.0, 24.0}, response.values, 0.0);
+        assertEquals(5, response.timestamps.length);
+    }
+}
@@ -0,0 +1,136 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.testkit.javadsl.TestKit;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class IotHttpServerTest {
+
+    private static ActorSystem system;
+
+    private TestKit probe;
+
+    @Before
+    public void setup() {
+        probe = new TestKit(system);
+    }
+
+    @BeforeClass
+    public static void classSetup() {
+        system = ActorSystem.create();
+    }
+
+    @AfterClass
+    public static void classTeardown() {
+        system.terminate();
+    }
+
+    private ActorRef trackDevice(ActorRef managerActor, String groupId, String deviceId) {
+        managerActor.tell(new IotDeviceManager.RequestTrackDevice(groupId, deviceId), probe.getRef());
+        probe.expectMsgClass(IotDeviceManager.DeviceRegistered.class);
+        return probe.getLastSender();
+    }
+
+    private void recordTemperature(ActorRef deviceActor, long requestId, double value) {
+        deviceActor.tell(new IotDevice.RecordTemperature(requestId, value), probe.getRef());
+        probe.expectMsgClass(IotDevice.TemperatureRecorded.class);
+    }
+
+    private static HttpURLConnection open(IotHttpServer server, String path) throws IOException {
+        InetSocketAddress address = server.address();
+        HttpURLConnection connection = (HttpURLConnection)
+                URI.create("http://127.0.0.1:" + address.getPort() + path).toURL().openConnection();
+        connection.setReadTimeout(5000);
+        return connection;
+    }
+
+    private static String body(HttpURLConnection connection) throws IOException {
+        try (InputStream in = connection.getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void testStreamGroupTemperaturesAsJson() throws IOException {
+        ActorRef managerActor = system.actorOf(IotDeviceManager.props("manager"));
+        recordTemperature(trackDevice(managerActor, "group1", "device1"), 1L, 21.5);
+        trackDevice(managerActor, "group2", "device2");
+        IotHttpServer server = IotHttpServer.start(system, managerActor, new InetSocketAddress("127.0.0.1", 0));
+        try {
+            HttpURLConnection connection = open(server, "/groups/temperatures");
+            assertEquals(200, connection.getResponseCode());
+            assertEquals("application/json; charset=utf-8", connection.getContentType());
+            String json = body(connection);
+            assertTrue(json, json.startsWith("{\"groups\":{"));
+            assertTrue(json, json.contains("\"group1\":{\"device1\":21.5}"));
+            assertTrue(json, json.contains("\"group2\":{\"device2\":null}"));
+            assertTrue(json, json.endsWith(",\"notAvailable\":[],\"overloaded\":[],\"timedOut\":[]}"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testRejectUnknownPathsAndMethods() throws IOException {
+        ActorRef managerActor = system.actorOf(IotDeviceManager.props("manager"));
+        IotHttpServer server = IotHttpServer.start(system, managerActor, new InetSocketAddress("127.0.0.1", 0));
+        try {
+            assertEquals(404, open(server, "/groups/temperatures/extra").getResponseCode());
+            HttpURLConnection post = open(server, "/groups/temperatures");
+            post.setRequestMethod("POST");
+            assertEquals(405, post.getResponseCode());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testStreamTemperatureUpdatesAsServerSentEvents() throws IOException {
+        ActorRef managerActor = system.actorOf(IotDeviceManager.props("manager"));
+        ActorRef device = trackDevice(managerActor, "group1", "device1");
+        trackDevice(managerActor, "group2", "device2");
+        IotHttpServer server = IotHttpServer.start(system, managerActor, new InetSocketAddress("127.0.0.1", 0));
+        // The subscription reaches the group asynchronously, so keep recording until an event shows up.
+        ScheduledExecutorService recorder = Executors.newSingleThreadScheduledExecutor();
+        try {
+            HttpURLConnection connection = open(server, "/events?group=group1");
+            assertEquals(200, connection.getResponseCode());
+            assertEquals("text/event-stream; charset=utf-8", connection.getContentType());
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+            assertEquals(": subscribed", reader.readLine());
+            recorder.scheduleAtFixedRate(() -> device.tell(new IotDevice.RecordTemperature(0L, 22.5),
+                    ActorRef.noSender()), 0, 50, TimeUnit.MILLISECONDS);
+
+            String line = reader.readLine();
+            while (line != null && !line.equals("event: temperature")) {
+                line = reader.readLine();
+            }
+            assertEquals("event: temperature", line);
+            String data = reader.readLine();
+            assertTrue(data, data.startsWith("data: {\"group\":\"group1\",\"device\":\"device1\",\"value\":22.5,"));
+            connection.disconnect();
+        } finally {
+            recorder.shutdownNow();
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.io.Tcp;
+import akka.io.TcpMessage;
+import akka.testkit.javadsl.TestKit;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class IotIngestionGatewayTest {
+
+    private static ActorSystem system;
+
+    private TestKit probe;
+
+    @Before
+    public void setup() {
+        probe = new TestKit(system);
+    }
+
+    @BeforeClass
+    public static void classSetup() {
+        system = ActorSystem.create();
+    }
+
+    @AfterClass
+    public static void classTeardown() {
+        system.terminate();
+    }
+
+    private IotIngestionGateway.BoundAddresses startGateway(ActorRef manager) {
+        InetSocketAddress loopback = new InetSocketAddress("127.0.0.1", 0);
+        ActorRef gateway = system.actorOf(IotIngestionGateway.props(manager, loopback, loopback));
+        gateway.tell(new IotIngestionGateway.RequestBoundAddresses(1L), probe.getRef());
+        return probe.expectMsgClass(IotIngestionGateway.BoundAddresses.class);
+    }
+
+    private static ByteBuffer frames(String groupId, int devices, double value) {
+        ByteBuffer buffer = ByteBuffer.allocate(devices * 64);
+        byte[] group = IngestionFrames.idBytes(groupId);
+        for (int i = 0; i < devices; i++) {
+            IngestionFrames.encode(buffer, group, IngestionFrames.idBytes("device" + i), value + i);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private void awaitTemperature(ActorRef manager, String groupId, String deviceId, double value) {
+        probe.awaitAssert(() -> {
+            manager.tell(new IotDeviceManager.RequestAllGroupTemperatures(0L), probe.getRef());
+            IotDeviceManager.DeviceGroupTemperatureReading reading = probe.expectMsgClass(
+                    IotDeviceManager.RespondAllGroupTemperatures.class).groupTemperatures.get(groupId);
+            assertTrue(reading instanceof IotDeviceManager.DeviceGroupTemperatures);
+            assertEquals(new IotDeviceGroup.Temperature(value),
+                    ((IotDeviceManager.DeviceGroupTemperatures) reading).groupTemperatureReading.get(deviceId));
+            return null;
+        });
+    }
+
+    @Test
+    public void testIngestFramesSplitAcrossTcpWrites() throws IOException {
+        ActorRef manager = system.actorOf(IotDeviceManager.props("manager"));
+        IotIngestionGateway.BoundAddresses bound = startGateway(manager);
+
+        try (SocketChannel channel = SocketChannel.open(bound.tcp)) {
+            ByteBuffer data = frames("group", 10, 20.0);
+            ByteBuffer head = data.duplicate();
+            head.limit(7);
+            channel.write(head);
+            data.position(7);
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            awaitTemperature(manager, "group", "device0", 20.0);
+            awaitTemperature(manager, "group", "device9", 29.0);
+        }
+    }
+
+    @Test
+    public void testIngestUdpDatagrams() throws IOException {
+        ActorRef manager = system.actorOf(IotDeviceManager.props("manager"));
+        IotIngestionGateway.BoundAddresses bound = startGateway(manager);
+
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            channel.send(frames("udp-group", 3, 5.0), bound.udp);
+        }
+        awaitTemperature(manager, "udp-group", "device2", 7.0);
+    }
+
+    @Test
+    public void testIngestIdsThatAreNotValidActorNames() throws IOException {
+        ActorRef manager = system.actorOf(IotDeviceManager.props("manager"));
+        IotIngestionGateway.BoundAddresses bound = startGateway(manager);
+
+        ByteBuffer data = ByteBuffer.allocate(128);
+        IngestionFrames.encode(data, IngestionFrames.idBytes("floor/1"), IngestionFrames.idBytes("room 2#a"), 21.0);
+        IngestionFrames.encode(data, IngestionFrames.idBytes("group"), IngestionFrames.idBytes("$device"), 22.0);
+        data.flip();
+        try (SocketChannel channel = SocketChannel.open(bound.tcp)) {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            awaitTemperature(manager, "floor/1", "room 2#a", 21.0);
+            awaitTemperature(manager, "group", "$device", 22.0);
+        }
+    }
+
+    @Test
+    public void testResumeReadingWhenBatchesAreNeverAcknowledged() {
+        TestKit connection = new TestKit(system);
+        TestKit lostManager = new TestKit(system);
+        IotIngestionGateway.Counters counters = new IotIngestionGateway.Counters();
+        ActorRef handler = system.actorOf(IotIngestionHandler.tcp(connection.getRef(), lostManager.getRef(), 1, 0,
+                FiniteDuration.create(200, TimeUnit.MILLISECONDS), counters));
+
+        handler.tell(new Tcp.Received(IngestionFrames.encode("group", "device", 1.0)), connection.getRef());
+        lostManager.expectMsgClass(IotDeviceManager.RecordGroupTemperatures.class);
+        connection.expectMsgEquals(TcpMessage.suspendReading());
+        // The batch is never acknowledged, yet reading resumes.
+        connection.expectMsgEquals(Duration.ofSeconds(3), TcpMessage.resumeReading());
+        assertEquals(1L, counters.expiredBatches.sum());
+    }
+
+    @Test
+    public void testDropConnectionOnMalformedFrame() throws IOException {
+        ActorRef manager = system.actorOf(IotDeviceManager.props("manager"));
+        InetSocketAddress loopback = new InetSocketAddress("127.0.0.1", 0);
+        ActorRef gateway = system.actorOf(IotIngestionGateway.props(manager, loopback, loopback));
+        gateway.tell(new IotIngestionGateway.RequestBoundAddresses(1L), probe.getRef());
+        IotIngestionGateway.BoundAddresses bound = probe.expectMsgClass(IotIngestionGateway.BoundAddresses.class);
+
+        try (SocketChannel channel = SocketChannel.open(bound.tcp)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 3, 1, 2, 3}));
+            probe.awaitAssert(() -> {
+                gateway.tell(new IotIngestionGateway.RequestGatewayStats(2L), probe.getRef());
+                IotIngestionGateway.GatewayStats stats = probe.expectMsgClass(IotIngestionGateway.GatewayStats.class);
+                assertEquals(1L, stats.connections);
+                assertEquals(1L, stats.malformedFrames);
+                return null;
+            });
+            try {
+                assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+            } catch (IOException e) {
+                // The gateway aborts the connection, which usually surfaces as a reset.
+            }
+        }
+    }
+}
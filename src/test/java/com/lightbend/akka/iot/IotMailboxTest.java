@@ -0,0 +1,129 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Terminated;
+import akka.dispatch.Envelope;
+import akka.testkit.javadsl.TestKit;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class IotMailboxTest {
+
+    private static ActorSystem system;
+
+    private TestKit probe;
+
+    @Before
+    public void setup() {
+        probe = new TestKit(system);
+    }
+
+    @BeforeClass
+    public static void classSetup() {
+        system = ActorSystem.create();
+    }
+
+    @AfterClass
+    public static void classTeardown() {
+        system.terminate();
+    }
+
+    private Envelope envelope(Object message) {
+        return Envelope.apply(message, probe.getRef(), system);
+    }
+
+    private static IotDeviceManager.RecordGroupTemperatures batch(long requestId) {
+        return new IotDeviceManager.RecordGroupTemperatures(requestId, "group", new String[]{"device"}, new double[]{1.0});
+    }
+
+    @Test
+    public void testControlMessagesOvertakeQueuedMessages() {
+        IotMailbox.IotMessageQueue queue = new IotMailbox.IotMessageQueue(16, true, ActorRef.noSender());
+        ActorRef owner = probe.getRef();
+        Object list = new IotDeviceGroup.RequestDeviceList(1L);
+        Object track = new IotDeviceManager.RequestTrackDevice("group", "device");
+        queue.enqueue(owner, envelope(batch(1L)));
+        queue.enqueue(owner, envelope(list));
+        queue.enqueue(owner, envelope(track));
+
+        assertEquals(3, queue.numberOfMessages());
+        assertSame(track, queue.dequeue().message());
+        assertTrue(queue.dequeue().message() instanceof IotDeviceManager.RecordGroupTemperatures);
+        assertSame(list, queue.dequeue().message());
+        assertFalse(queue.hasMessages());
+        assertNull(queue.dequeue());
+    }
+
+    @Test
+    public void testTerminatedKeepsItsPlaceUnlessControl() {
+        Terminated terminated = new Terminated(probe.getRef(), true, false);
+        Object reply = new IotDevice.RespondTemperature(1L, 1.0);
+
+        IotMailbox.IotMessageQueue query = new IotMailbox.IotMessageQueue(16, false, ActorRef.noSender());
+        query.enqueue(probe.getRef(), envelope(reply));
+        query.enqueue(probe.getRef(), envelope(terminated));
+        assertSame(reply, query.dequeue().message());
+        assertSame(terminated, query.dequeue().message());
+
+        IotMailbox.IotMessageQueue owner = new IotMailbox.IotMessageQueue(16, true, ActorRef.noSender());
+        owner.enqueue(probe.getRef(), envelope(reply));
+        owner.enqueue(probe.getRef(), envelope(terminated));
+        assertSame(terminated, owner.dequeue().message());
+        assertSame(reply, owner.dequeue().message());
+    }
+
+    @Test
+    public void testShedIngestionBeyondCapacity() {
+        IotMailbox.IotMessageQueue queue = new IotMailbox.IotMessageQueue(2, true, system.deadLetters());
+        ActorRef owner = probe.getRef();
+        queue.enqueue(owner, envelope(batch(1L)));
+        queue.enqueue(owner, envelope(batch(2L)));
+        queue.enqueue(owner, envelope(batch(3L)));
+        // Other messages are never shed.
+        queue.enqueue(owner, envelope(new IotDeviceGroup.RequestDeviceList(4L)));
+
+        QueryAdmission.Overloaded overloaded = probe.expectMsgClass(QueryAdmission.Overloaded.class);
+        assertEquals(3L, overloaded.requestId);
+        assertEquals(3, queue.numberOfMessages());
+
+        // Handling one frees room for the next batch.
+        queue.dequeue();
+        queue.enqueue(owner, envelope(batch(5L)));
+        probe.expectNoMessage(Duration.ofMillis(100));
+        assertEquals(3, queue.numberOfMessages());
+    }
+
+    @Test
+    public void testEveryIngestionBatchIsAnsweredUnderFlood() {
+        ActorRef manager = system.actorOf(IotDeviceManager.props("manager"));
+        manager.tell(new IotDeviceManager.RequestTrackDevice("group", "device", Map.of()), probe.getRef());
+        probe.expectMsgClass(IotDeviceManager.DeviceRegistered.class);
+
+        // More batches than the configured capacity: each is either recorded or shed, never left
+        // unanswered, so a sender counting pending batches does not stall.
+        int batches = 20_000;
+        for (int i = 0; i < batches; i++) {
+            manager.tell(batch(i), probe.getRef());
+        }
+        int recorded = 0;
+        int shed = 0;
+        for (int i = 0; i < batches; i++) {
+            Object reply = probe.expectMsgAnyClassOf(IotDeviceGroup.TemperaturesRecorded.class, QueryAdmission.Overloaded.class);
+            if (reply instanceof QueryAdmission.Overloaded) {
+                shed++;
+            } else {
+                recorded++;
+            }
+        }
+        assertEquals(batches, recorded + shed);
+        assertTrue(recorded > 0);
+    }
+}
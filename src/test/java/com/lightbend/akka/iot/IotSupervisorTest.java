@@ -0,0 +1,158 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.PoisonPill;
+import akka.testkit.javadsl.TestKit;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class IotSupervisorTest {
+
+    private static ActorSystem system;
+
+    private TestKit probe;
+
+    @Before
+    public void setup() {
+        probe = new TestKit(system);
+    }
+
+    @BeforeClass
+    public static void classSetup() {
+        system = ActorSystem.create();
+    }
+
+    @AfterClass
+    public static void classTeardown() {
+        system.terminate();
+    }
+
+    private ActorRef trackManager(ActorRef supervisor, String managerId) {
+        supervisor.tell(new IotSupervisor.TrackDeviceManager(0L, managerId), probe.getRef());
+        probe.expectMsgClass(IotSupervisor.DeviceManagerRegistered.class);
+        return probe.getLastSender();
+    }
+
+    private void recordTemperature(ActorRef manager, String groupId, String deviceId, double value) {
+        manager.tell(new IotDeviceManager.RequestTrackDevice(groupId, deviceId), probe.getRef());
+        ActorRef device = probe.expectMsgClass(IotDeviceManager.DeviceRegistered.class).device;
+        device.tell(new IotDevice.RecordTemperature(0L, value), probe.getRef());
+        probe.expectMsgClass(IotDevice.TemperatureRecorded.class);
+    }
+
+    private static Map<String, IotDeviceGroup.TemperatureReading> temperatures(
+            IotSupervisor.RespondFleetTemperatures response, String managerId, String groupId) {
+        return ((IotDeviceManager.DeviceGroupTemperatures) response.managerTemperatures.get(managerId).get(groupId))
+                .groupTemperatureReading;
+    }
+
+    @Test
+    public void testMergeTemperaturesOfAllManagers() {
+        ActorRef supervisor = system.actorOf(IotSupervisor.props());
+        ActorRef manager1 = trackManager(supervisor, "manager1");
+        ActorRef manager2 = trackManager(supervisor, "manager2");
+        trackManager(supervisor, "empty");
+        recordTemperature(manager1, "group1", "device1", 20.0);
+        recordTemperature(manager2, "group2", "device2", 22.5);
+
+        supervisor.tell(new IotSupervisor.RequestFleetTemperatures(7L), probe.getRef());
+        IotSupervisor.RespondFleetTemperatures response = probe.expectMsgClass(IotSupervisor.RespondFleetTemperatures.class);
+
+        assertEquals(7L, response.requestId);
+        assertEquals(Set.of("manager1", "manager2", "empty"), response.managerTemperatures.keySet());
+        assertEquals(Map.of("device1", new IotDeviceGroup.Temperature(20.0)), temperatures(response, "manager1", "group1"));
+        assertEquals(Map.of("device2", new IotDeviceGroup.Temperature(22.5)), temperatures(response, "manager2", "group2"));
+        assertTrue(response.managerTemperatures.get("empty").isEmpty());
+        assertTrue(response.managersNotAvailable.isEmpty());
+        assertTrue(response.managersTimedOut.isEmpty());
+    }
+
+    @Test
+    public void testAskAtMostMaxConcurrencyManagersAtATime() {
+        TestKit manager1 = new TestKit(system);
+        TestKit manager2 = new TestKit(system);
+        system.actorOf(IotSupervisorFleetQuery.props(Map.of(manager1.getRef(), "manager1", manager2.getRef(), "manager2"),
+                1L, probe.getRef(), new FiniteDuration(10, TimeUnit.SECONDS), 1));
+
+        probe.awaitCond(() -> manager1.msgAvailable() || manager2.msgAvailable());
+        TestKit first = manager1.msgAvailable() ? manager1 : manager2;
+        TestKit second = first == manager1 ? manager2 : manager1;
+        IotDeviceManager.RequestAllGroupTemperatures request =
+                first.expectMsgClass(IotDeviceManager.RequestAllGroupTemperatures.class);
+        second.expectNoMessage(Duration.ofMillis(200));
+
+        first.reply(new IotDeviceManager.RespondAllGroupTemperatures(request.requestId, Map.of()));
+        request = second.expectMsgClass(IotDeviceManager.RequestAllGroupTemperatures.class);
+        second.reply(new IotDeviceManager.RespondAllGroupTemperatures(request.requestId, Map.of()));
+
+        IotSupervisor.RespondFleetTemperatures response = probe.expectMsgClass(IotSupervisor.RespondFleetTemperatures.class);
+        assertEquals(Set.of("manager1", "manager2"), response.managerTemperatures.keySet());
+    }
+
+    @Test
+    public void testReturnPartialResultAtTheDeadline() {
+        TestKit manager1 = new TestKit(system);
+        TestKit manager2 = new TestKit(system);
+        TestKit manager3 = new TestKit(system);
+        system.actorOf(IotSupervisorFleetQuery.props(
+                Map.of(manager1.getRef(), "manager1", manager2.getRef(), "manager2", manager3.getRef(), "manager3"),
+                1L, probe.getRef(), new FiniteDuration(1, TimeUnit.SECONDS), 3));
+
+        IotDeviceManager.RequestAllGroupTemperatures request =
+                manager1.expectMsgClass(IotDeviceManager.RequestAllGroupTemperatures.class);
+        assertTrue(request.timeout.lt(new FiniteDuration(1, TimeUnit.SECONDS)));
+        manager1.reply(new IotDeviceManager.RespondAllGroupTemperatures(request.requestId, Map.of()));
+        manager2.expectMsgClass(IotDeviceManager.RequestAllGroupTemperatures.class);
+        manager3.expectMsgClass(IotDeviceManager.RequestAllGroupTemperatures.class);
+        manager3.getRef().tell(PoisonPill.getInstance(), ActorRef.noSender());
+
+        IotSupervisor.RespondFleetTemperatures response = probe.expectMsgClass(IotSupervisor.RespondFleetTemperatures.class);
+        assertEquals(Set.of("manager1"), response.managerTemperatures.keySet());
+        assertEquals(Set.of("manager3"), response.managersNotAvailable);
+        assertEquals(Set.of("manager2"), response.managersTimedOut);
+    }
+
+    @Test
+    public void testBootstrapTopologyWithOneConfirmationPerGroup() {
+        ActorRef supervisor = system.actorOf(IotSupervisor.props());
+        IotTopology.Builder builder = IotTopology.builder();
+        for (int g = 0; g < 4; g++) {
+            for (int d = 0; d < 50; d++) {
+                builder.add("manager" + (g % 2), "group" + g, "device" + d, d == 0 ? Map.of("role", "lead") : Map.of());
+            }
+        }
+        supervisor.tell(new IotSupervisor.BootstrapTopology(1L, builder.build()), probe.getRef());
+
+        IotSupervisor.TopologyBootstrapped bootstrapped = probe.expectMsgClass(IotSupervisor.TopologyBootstrapped.class);
+        assertEquals(1L, bootstrapped.requestId);
+        assertEquals(2, bootstrapped.managers);
+        assertEquals(4, bootstrapped.groups);
+        assertEquals(200, bootstrapped.devices);
+        assertEquals(Set.of(), bootstrapped.groupsTimedOut);
+
+        supervisor.tell(new IotSupervisor.RequestDeviceManagerById(2L, "manager1"), probe.getRef());
+        ActorRef manager = probe.expectMsgClass(IotSupervisor.ResponseDeviceManagerById.class).deviceManager;
+        manager.tell(new IotDeviceManager.RequestDevicesByTags(3L, Map.of("role", "lead")), probe.getRef());
+        assertEquals(Map.of("group1", Set.of("device0"), "group3", Set.of("device0")),
+                probe.expectMsgClass(IotDeviceManager.RespondDevicesByTags.class).deviceIdsByGroup);
+
+        // Bootstrapped groups and devices are the same actors tracking resolves to.
+        manager.tell(new IotDeviceManager.RequestTrackDevice("group1", "device7"), probe.getRef());
+        probe.expectMsgClass(IotDeviceManager.DeviceRegistered.class);
+        manager.tell(new IotDeviceManager.RequestGroupListPage(4L, null, 0), probe.getRef());
+        assertEquals(List.of("group1", "group3"),
+                probe.expectMsgClass(IotDeviceManager.GroupListPage.class).groupIds);
+    }
+}
@@ -0,0 +1,80 @@
+package com.lightbend.akka.iot;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class IotTopologyTest {
+
+    @Test
+    public void testReadDevicesAndTagsFromFile() throws IOException {
+        Path file = Files.createTempFile("topology", ".txt");
+        try {
+            Files.write(file, List.of(
+                    "# manager group device tags",
+                    "manager1 group1 device1 floor=3 model=X",
+                    "",
+                    "manager1\tgroup1  device2",
+                    "manager1 group2 device3",
+                    "manager2 group1 device4 floor=4"));
+
+            IotTopology topology = IotTopology.read(file);
+
+            assertEquals(2, topology.managerCount());
+            assertEquals(3, topology.groupCount());
+            assertEquals(4, topology.deviceCount());
+            IotTopology.Group group = topology.managers.get("manager1").get("group1");
+            assertEquals(List.of("device1", "device2"), group.deviceIds);
+            assertEquals(Map.of("device1", Map.of("floor", "3", "model", "X")), group.tags);
+            assertEquals(Set.of("group1"), topology.managers.get("manager2").keySet());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testCountDeviceListedTwiceOnceWithTagsOfItsLastLine() {
+        IotTopology topology = IotTopology.builder()
+                .add("manager1", "group1", "device1", Map.of("floor", "3"))
+                .add("manager1", "group1", "device2", Map.of("floor", "3"))
+                .add("manager1", "group1", "device1", Map.of("floor", "4"))
+                .add("manager1", "group1", "device2")
+                .build();
+
+        assertEquals(2, topology.deviceCount());
+        IotTopology.Group group = topology.managers.get("manager1").get("group1");
+        assertEquals(List.of("device1", "device2"), group.deviceIds);
+        assertEquals(Map.of("device1", Map.of("floor", "4")), group.tags);
+    }
+
+    @Test
+    public void testRejectMalformedLinesWithTheirLineNumber() throws IOException {
+        Path file = Files.createTempFile("topology", ".txt");
+        try {
+            Files.write(file, List.of("manager1 group1 device1", "manager1 group1"));
+            try {
+                IotTopology.read(file);
+                fail("expected IOException");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains(":2:"));
+            }
+
+            Files.write(file, List.of("manager1 group1 device1 floor"));
+            try {
+                IotTopology.read(file);
+                fail("expected IOException");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("<tag>=<value>"));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.lightbend.akka.iot;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testReportPercentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1_000L);
+        }
+        assertEquals(1000L, histogram.count());
+        assertEquals(1_000_000L, histogram.max());
+        assertEquals(500_500.0, histogram.mean(), 0.0);
+        assertWithin(500_000L, histogram.percentile(50));
+        assertWithin(990_000L, histogram.percentile(99));
+        assertEquals(1_000_000L, histogram.percentile(100));
+    }
+
+    @Test
+    public void testKeepSmallValuesExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(3L);
+        histogram.record(7L);
+        histogram.record(-5L);
+        assertEquals(0L, histogram.percentile(1));
+        assertEquals(3L, histogram.percentile(50));
+        assertEquals(7L, histogram.percentile(100));
+
+        histogram.reset();
+        assertEquals(0L, histogram.count());
+        assertEquals(0L, histogram.percentile(99));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected ~" + expected + " but was " + actual,
+                actual >= expected && actual <= expected + expected / 16);
+    }
+}
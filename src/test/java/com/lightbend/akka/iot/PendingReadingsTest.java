@@ -0,0 +1,58 @@
+package com.lightbend.akka.iot;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PendingReadingsTest {
+
+    private static GorillaBlock block(long start) {
+        GorillaEncoder encoder = new GorillaEncoder(1);
+        encoder.append(start, 1.0);
+        return encoder.seal();
+    }
+
+    @Test
+    public void testAskToTellTheGroupOnlyWhenNothingWasPending() {
+        PendingReadings pending = new PendingReadings(4, 1);
+        assertTrue(pending.add(1.0, 1L));
+        assertFalse(pending.add(2.0, 2L));
+        assertFalse(pending.addBlock(block(0L)));
+
+        double[] values = new double[4];
+        long[] recordedAt = new long[4];
+        List<GorillaBlock> blocks = new ArrayList<>();
+        assertEquals(2, pending.drainTo(values, recordedAt, blocks));
+        assertEquals(1, blocks.size());
+
+        assertTrue(pending.addBlock(block(1L)));
+        assertFalse(pending.add(3.0, 3L));
+    }
+
+    @Test
+    public void testDropOldestReadingsAndBlocksPastCapacity() {
+        PendingReadings pending = new PendingReadings(3, 1);
+        for (int i = 1; i <= 5; i++) {
+            pending.add(i, i);
+        }
+        GorillaBlock newest = block(1L);
+        pending.addBlock(block(0L));
+        pending.addBlock(newest);
+
+        double[] values = new double[3];
+        long[] recordedAt = new long[3];
+        List<GorillaBlock> blocks = new ArrayList<>();
+        assertEquals(3, pending.drainTo(values, recordedAt, blocks));
+        assertArrayEquals(new double[]{3.0, 4.0, 5.0}, values, 0.0);
+        assertArrayEquals(new long[]{3L, 4L, 5L}, recordedAt);
+        assertEquals(List.of(newest), blocks);
+        assertEquals(3L, pending.takeDropped());
+        assertEquals(0L, pending.takeDropped());
+    }
+}
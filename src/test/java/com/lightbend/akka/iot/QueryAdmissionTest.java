@@ -0,0 +1,73 @@
+package com.lightbend.akka.iot;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.testkit.javadsl.TestKit;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class QueryAdmissionTest {
+
+    private static ActorSystem system;
+
+    @BeforeClass
+    public static void classSetup() {
+        system = ActorSystem.create();
+    }
+
+    @AfterClass
+    public static void classTeardown() {
+        system.terminate();
+    }
+
+    private static Supplier<ActorRef> starter(List<ActorRef> started) {
+        return () -> {
+            ActorRef query = new TestKit(system).getRef();
+            started.add(query);
+            return query;
+        };
+    }
+
+    @Test
+    public void testQueueThenRejectBeyondLimits() {
+        QueryAdmission admission = new QueryAdmission(2, 1);
+        List<ActorRef> started = new ArrayList<>();
+
+        assertEquals(QueryAdmission.Decision.STARTED, admission.offer(starter(started)));
+        assertEquals(QueryAdmission.Decision.STARTED, admission.offer(starter(started)));
+        assertEquals(QueryAdmission.Decision.QUEUED, admission.offer(starter(started)));
+        assertEquals(QueryAdmission.Decision.REJECTED, admission.offer(starter(started)));
+        assertEquals(2, started.size());
+
+        QueryAdmission.AdmissionMetrics metrics = admission.metrics(1L, "owner");
+        assertEquals(2, metrics.inFlight);
+        assertEquals(1, metrics.queued);
+        assertEquals(1L, metrics.queuedTotal);
+        assertEquals(1L, metrics.rejected);
+    }
+
+    @Test
+    public void testStartQueuedQueryWhenOneTerminates() {
+        QueryAdmission admission = new QueryAdmission(1, 1);
+        List<ActorRef> started = new ArrayList<>();
+        admission.offer(starter(started));
+        admission.offer(starter(started));
+        assertEquals(1, started.size());
+
+        assertFalse(admission.release(new TestKit(system).getRef()));
+        assertTrue(admission.release(started.get(0)));
+        assertEquals(2, started.size());
+
+        QueryAdmission.AdmissionMetrics metrics = admission.metrics(1L, "owner");
+        assertEquals(1, metrics.inFlight);
+        assertEquals(0, metrics.queued);
+        assertEquals(2L, metrics.started);
+    }
+}
@@ -0,0 +1,78 @@
+package com.lightbend.akka.iot;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RollupStoreTest {
+
+    private static final Duration MINUTE = Duration.ofMinutes(1);
+    private static final Duration HOUR = Duration.ofHours(1);
+
+    @Test
+    public void testAggregateReadingsIntoTumblingWindows() {
+        RollupStore store = new RollupStore(List.of(MINUTE, HOUR), 4, 1);
+        long base = 10 * HOUR.toMillis();
+        store.record(0, base + 1_000, 10.0);
+        store.record(0, base + 2_000, 30.0);
+        store.record(0, base + MINUTE.toMillis() + 5_000, 20.0);
+
+        List<RollupStore.Rollup> minutes = store.rollups(0, MINUTE, base + 2 * MINUTE.toMillis());
+        assertEquals(2, minutes.size());
+        assertEquals(base, minutes.get(0).windowStart);
+        assertEquals(2, minutes.get(0).count);
+        assertEquals(10.0, minutes.get(0).min, 0.0);
+        assertEquals(30.0, minutes.get(0).max, 0.0);
+        assertEquals(20.0, minutes.get(0).mean(), 0.0);
+        assertEquals(1, minutes.get(1).count);
+
+        List<RollupStore.Rollup> hours = store.rollups(0, HOUR, base + 2 * MINUTE.toMillis());
+        assertEquals(1, hours.size());
+        assertEquals(3, hours.get(0).count);
+        assertEquals(60.0, hours.get(0).sum, 0.0);
+    }
+
+    @Test
+    public void testOverwriteBucketsOutsideRetention() {
+        RollupStore store = new RollupStore(List.of(MINUTE), 2, 1);
+        long base = 10 * HOUR.toMillis();
+        store.record(0, base, 1.0);
+        store.record(0, base + MINUTE.toMillis(), 2.0);
+        store.record(0, base + 2 * MINUTE.toMillis(), 3.0);
+        // Too old for the ring position now holding the third minute.
+        store.record(0, base, 100.0);
+
+        List<RollupStore.Rollup> minutes = store.rollups(0, MINUTE, base + 2 * MINUTE.toMillis());
+        assertEquals(2, minutes.size());
+        assertEquals(2.0, minutes.get(0).max, 0.0);
+        assertEquals(3.0, minutes.get(1).max, 0.0);
+    }
+
+    @Test
+    public void testGrowAndClearSlots() {
+        RollupStore store = new RollupStore(List.of(MINUTE), 2, 1);
+        store.record(0, 0L, 1.0);
+        store.ensureSlot(5);
+        store.record(5, 0L, 5.0);
+        assertEquals(1.0, store.rollups(0, MINUTE, 0L).get(0).max, 0.0);
+        assertEquals(5.0, store.rollups(5, MINUTE, 0L).get(0).max, 0.0);
+
+        store.clear(5);
+        assertTrue(store.rollups(5, MINUTE, 0L).isEmpty());
+        assertTrue(store.rollups(0, HOUR, 0L).isEmpty());
+    }
+
+    @Test
+    public void testReserveKeepsRecordedSlots() {
+        RollupStore store = new RollupStore(List.of(MINUTE), 2, 1);
+        store.record(0, 0L, 1.0);
+        store.reserve(150);
+        store.record(149, 0L, 149.0);
+        assertEquals(1.0, store.rollups(0, MINUTE, 0L).get(0).max, 0.0);
+        assertEquals(149.0, store.rollups(149, MINUTE, 0L).get(0).max, 0.0);
+    }
+}
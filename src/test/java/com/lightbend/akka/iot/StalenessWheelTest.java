@@ -0,0 +1,85 @@
+package com.lightbend.akka.iot;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StalenessWheelTest {
+
+    private static final long TTL = 10_000L;
+
+    private static List<Integer> advance(StalenessWheel wheel, long now, long[] lastRecordedAt) {
+        List<Integer> expired = new ArrayList<>();
+        wheel.advance(now, lastRecordedAt, expired::add);
+        return expired;
+    }
+
+    @Test
+    public void testExpireSlotsOnceTheirReadingIsOlderThanTtl() {
+        long base = 1_000_000L;
+        StalenessWheel wheel = new StalenessWheel(TTL, 10, base);
+        long[] lastRecordedAt = {base, base + 5_000L};
+        wheel.schedule(0, lastRecordedAt[0]);
+        wheel.schedule(1, lastRecordedAt[1]);
+
+        assertEquals(List.of(), advance(wheel, base + TTL - 1, lastRecordedAt));
+        assertEquals(List.of(0), advance(wheel, base + TTL, lastRecordedAt));
+        assertFalse(wheel.isScheduled(0));
+        assertTrue(wheel.isScheduled(1));
+        assertEquals(List.of(1), advance(wheel, base + 5_000L + TTL, lastRecordedAt));
+    }
+
+    @Test
+    public void testRescheduleSlotsThatKeptReporting() {
+        long base = 1_000_000L;
+        StalenessWheel wheel = new StalenessWheel(TTL, 10, base);
+        long[] lastRecordedAt = {base};
+        wheel.schedule(0, base);
+
+        // Newer readings only touch lastRecordedAt; the wheel picks them up when the slot comes due.
+        lastRecordedAt[0] = base + 8_000L;
+        assertEquals(List.of(), advance(wheel, base + TTL, lastRecordedAt));
+        assertTrue(wheel.isScheduled(0));
+        assertEquals(List.of(0), advance(wheel, base + 8_000L + TTL, lastRecordedAt));
+    }
+
+    @Test
+    public void testSkipCancelledSlotsAndCatchUpAfterLongPauses() {
+        long base = 1_000_000L;
+        StalenessWheel wheel = new StalenessWheel(TTL, 10, base);
+        long[] lastRecordedAt = {base, base, base};
+        for (int slot = 0; slot < 3; slot++) {
+            wheel.schedule(slot, base);
+        }
+        wheel.cancel(1);
+
+        assertEquals(List.of(0, 2), advance(wheel, base + 100 * TTL, lastRecordedAt));
+        assertEquals(List.of(), advance(wheel, base + 200 * TTL, lastRecordedAt));
+    }
+
+    @Test
+    public void testKeepRescheduledSlotInOneBucketOnly() {
+        long base = 1_000_000L;
+        StalenessWheel wheel = new StalenessWheel(TTL, 1, base);
+        long[] lastRecordedAt = {base, base};
+        wheel.schedule(0, base);
+        wheel.schedule(1, base);
+        // A slot released and reused by another device between two ticks.
+        for (int i = 0; i < 100; i++) {
+            wheel.cancel(0);
+            wheel.schedule(0, base);
+        }
+        assertEquals(2, wheel.entries());
+
+        lastRecordedAt[1] = base + TTL / 2;
+        assertEquals(List.of(0), advance(wheel, base + TTL, lastRecordedAt));
+        assertEquals(1, wheel.entries());
+        assertEquals(List.of(1), advance(wheel, base + 2 * TTL, lastRecordedAt));
+        assertEquals(0, wheel.entries());
+    }
+}
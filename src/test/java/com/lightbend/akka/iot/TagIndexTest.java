@@ -0,0 +1,49 @@
+package com.lightbend.akka.iot;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class TagIndexTest {
+
+    @Test
+    public void testMatchDevicesCarryingAllTags() {
+        TagIndex index = new TagIndex();
+        index.put("group1", "device1", Map.of("floor", "3", "model", "X"));
+        index.put("group1", "device2", Map.of("floor", "3", "model", "Y"));
+        index.put("group2", "device3", Map.of("floor", "3", "model", "X"));
+        index.put("group2", "device4", Map.of("floor", "4", "model", "X"));
+
+        assertEquals(Map.of("group1", Set.of("device1", "device2"), "group2", Set.of("device3")),
+                index.match(Map.of("floor", "3")));
+        assertEquals(Map.of("group1", Set.of("device1"), "group2", Set.of("device3")),
+                index.match(Map.of("floor", "3", "model", "X")));
+        assertEquals(Map.of(), index.match(Map.of("floor", "5")));
+        assertEquals(Map.of(), index.match(Map.of()));
+    }
+
+    @Test
+    public void testReplaceAndRemoveTagsAndReuseOrdinals() {
+        TagIndex index = new TagIndex();
+        index.put("group1", "device1", Map.of("floor", "3"));
+        index.put("group1", "device2", Map.of("floor", "3"));
+        index.put("group2", "device3", Map.of("floor", "3"));
+
+        index.put("group1", "device1", Map.of("floor", "4"));
+        assertEquals(Map.of("group1", Set.of("device1")), index.match(Map.of("floor", "4")));
+        assertEquals(Map.of("group1", Set.of("device2"), "group2", Set.of("device3")),
+                index.match(Map.of("floor", "3")));
+
+        index.remove("group1", "device2");
+        index.removeGroup("group2");
+        assertEquals(Map.of(), index.match(Map.of("floor", "3")));
+        assertEquals(1, index.size());
+
+        index.put("group3", "device5", Map.of("floor", "3"));
+        assertEquals(Map.of("group3", Set.of("device5")), index.match(Map.of("floor", "3")));
+        assertEquals(2, index.size());
+    }
+}
@@ -0,0 +1,53 @@
+package com.lightbend.akka.iot;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.EnumSet;
+
+import static org.junit.Assert.*;
+
+public class TemperaturePredicateTest {
+
+    @Test
+    public void testMatchValueRangesOnFreshAndStaleReadings() {
+        TemperaturePredicate hot = TemperaturePredicate.valueAtLeast(30.0);
+
+        assertTrue(hot.test(new IotDeviceGroup.Temperature(30.0)));
+        assertTrue(hot.test(new IotDeviceGroup.StaleTemperature(35.0, 1L)));
+        assertTrue(hot.test(new IotDeviceGroup.HedgedTemperature(31.0, 1L)));
+        assertFalse(hot.test(new IotDeviceGroup.HedgedTemperature(20.0, 1L)));
+        assertFalse(hot.test(new IotDeviceGroup.Temperature(29.9)));
+        assertFalse(hot.test(IotDeviceGroup.TemperatureNotAvailable.INSTANCE));
+        assertFalse(hot.test(IotDeviceGroup.DeviceTimedOut.INSTANCE));
+        assertFalse(hot.acceptsAll());
+        assertTrue(TemperaturePredicate.all().acceptsAll());
+    }
+
+    @Test
+    public void testMatchReadingKinds() {
+        TemperaturePredicate failing = TemperaturePredicate.kinds(EnumSet.of(
+                TemperaturePredicate.Kind.DEVICE_NOT_AVAILABLE, TemperaturePredicate.Kind.DEVICE_TIMED_OUT));
+
+        assertTrue(failing.test(IotDeviceGroup.DeviceNotAvailable.INSTANCE));
+        assertTrue(failing.test(IotDeviceGroup.DeviceTimedOut.INSTANCE));
+        assertFalse(failing.test(new IotDeviceGroup.Temperature(20.0)));
+        assertFalse(failing.test(IotDeviceGroup.TemperatureNotAvailable.INSTANCE));
+    }
+
+    @Test
+    public void testSurviveJavaSerialization() throws IOException, ClassNotFoundException {
+        TemperaturePredicate predicate = TemperaturePredicate.valueBetween(10.0, 20.0);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(predicate);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertEquals(predicate, in.readObject());
+        }
+    }
+}
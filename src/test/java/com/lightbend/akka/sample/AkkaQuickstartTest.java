@@ -10,6 +10,8 @@ import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.time.Duration;
+
 import static org.junit.Assert.assertEquals;
 
 public class AkkaQuickstartTest {
@@ -35,4 +37,20 @@ public class AkkaQuickstartTest {
         Greeting greeting = testProbe.expectMsgClass(Greeting.class);
         assertEquals("Hello, Akka", greeting.message);
     }
+
+    @Test
+    public void testGreeterHoldsGreetingsWhileSlowedDown() {
+        final TestKit testProbe = new TestKit(system);
+        final ActorRef helloGreeter = system.actorOf(Greeter.props("Hello", testProbe.getRef()));
+        helloGreeter.tell(new WhoToGreet("Akka"), ActorRef.noSender());
+        helloGreeter.tell(new Printer.SlowDown(), testProbe.getRef());
+        helloGreeter.tell(new Greet(), ActorRef.noSender());
+        helloGreeter.tell(new WhoToGreet("Java"), ActorRef.noSender());
+        helloGreeter.tell(new Greet(), ActorRef.noSender());
+        testProbe.expectNoMessage(Duration.ofMillis(100));
+
+        helloGreeter.tell(new Printer.Resume(), testProbe.getRef());
+        assertEquals("Hello, Akka", testProbe.expectMsgClass(Greeting.class).message);
+        assertEquals("Hello, Java", testProbe.expectMsgClass(Greeting.class).message);
+    }
 }
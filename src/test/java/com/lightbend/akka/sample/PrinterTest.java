@@ -0,0 +1,136 @@
+package com.lightbend.akka.sample;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.PoisonPill;
+import akka.testkit.javadsl.TestKit;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class PrinterTest {
+    private static final FiniteDuration NEVER = FiniteDuration.create(1, TimeUnit.HOURS);
+
+    private static ActorSystem system;
+
+    private Path file;
+
+    @BeforeClass
+    public static void setup() {
+        system = ActorSystem.create();
+    }
+
+    @AfterClass
+    public static void teardown() {
+        TestKit.shutdownActorSystem(system);
+        system = null;
+    }
+
+    @Before
+    public void createFile() throws IOException {
+        file = Files.createTempFile("printer", ".txt");
+    }
+
+    @After
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testWriteFullBatchesAndFlushTheRest() throws IOException {
+        final TestKit probe = new TestKit(system);
+        // "Hello, n\n" is 9 bytes, so a batch holds two greetings.
+        final ActorRef printer = system.actorOf(Printer.props(file, 20, NEVER, 1_000, 1_000));
+        for (int i = 0; i < 5; i++) {
+            printer.tell(new Printer.Greeting("Hello, " + i), ActorRef.noSender());
+        }
+        probe.awaitAssert(() -> {
+            try {
+                assertEquals(Arrays.asList("Hello, 0", "Hello, 1", "Hello, 2", "Hello, 3"), Files.readAllLines(file));
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+            return null;
+        });
+
+        printer.tell(new Printer.Flush(), probe.getRef());
+        probe.expectMsgClass(Printer.Flushed.class);
+        assertEquals(Arrays.asList("Hello, 0", "Hello, 1", "Hello, 2", "Hello, 3", "Hello, 4"), Files.readAllLines(file));
+    }
+
+    @Test
+    public void testFlushAfterInterval() throws IOException {
+        final TestKit probe = new TestKit(system);
+        final ActorRef printer = system.actorOf(Printer.props(file, 1_000,
+                FiniteDuration.create(50, TimeUnit.MILLISECONDS), 10_000, 10_000));
+        printer.tell(new Printer.Greeting("Hello, Akka"), ActorRef.noSender());
+        probe.awaitAssert(() -> {
+            try {
+                assertEquals(Arrays.asList("Hello, Akka"), Files.readAllLines(file));
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+            return null;
+        });
+    }
+
+    @Test
+    public void testSlowDownSendersAboveHighWatermark() throws IOException {
+        final TestKit sender = new TestKit(system);
+        final TestKit probe = new TestKit(system);
+        final ActorRef printer = system.actorOf(Printer.props(file, 1_000, NEVER, 15, 0));
+        printer.tell(new Printer.Greeting("Hello, 0"), sender.getRef());
+        sender.expectNoMessage(Duration.ofMillis(100));
+        printer.tell(new Printer.Greeting("Hello, 1"), sender.getRef());
+        sender.expectMsgClass(Printer.SlowDown.class);
+        // Told once, however many greetings it sent before it noticed.
+        printer.tell(new Printer.Greeting("Hello, 2"), sender.getRef());
+        sender.expectNoMessage(Duration.ofMillis(100));
+
+        printer.tell(new Printer.Flush(), probe.getRef());
+        sender.expectMsgClass(Printer.Resume.class);
+        probe.expectMsgClass(Printer.Flushed.class);
+        assertEquals(Arrays.asList("Hello, 0", "Hello, 1", "Hello, 2"), Files.readAllLines(file));
+    }
+
+    @Test
+    public void testWriteBufferedGreetingsOnStop() throws IOException {
+        final TestKit probe = new TestKit(system);
+        final ActorRef printer = system.actorOf(Printer.props(file, 1_000, NEVER, 10_000, 10_000));
+        printer.tell(new Printer.Greeting("Goodbye, Akka"), ActorRef.noSender());
+        probe.watch(printer);
+        printer.tell(PoisonPill.getInstance(), ActorRef.noSender());
+        probe.expectTerminated(printer);
+        assertEquals(Arrays.asList("Goodbye, Akka"), Files.readAllLines(file));
+    }
+
+    @Test
+    public void testWriteBatchesStillQueuedAtWriterOnStop() throws IOException {
+        final TestKit probe = new TestKit(system);
+        // A batch per greeting, far more than the writer gets through before the stop.
+        final ActorRef printer = system.actorOf(Printer.props(file, 10, NEVER, 1_000_000, 1_000_000));
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            expected.add("Hello, " + i);
+            printer.tell(new Printer.Greeting("Hello, " + i), ActorRef.noSender());
+        }
+        probe.watch(printer);
+        printer.tell(PoisonPill.getInstance(), ActorRef.noSender());
+        probe.expectTerminated(printer);
+        assertEquals(expected, Files.readAllLines(file));
+    }
+}